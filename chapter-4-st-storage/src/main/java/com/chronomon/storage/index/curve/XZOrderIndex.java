@@ -1,9 +1,14 @@
 package com.chronomon.storage.index.curve;
 
+import com.chronomon.storage.index.metrics.IndexMemoryEstimator;
+import com.chronomon.storage.index.metrics.IndexMetrics;
+import com.chronomon.storage.index.metrics.IndexQueryStatistics;
+import com.chronomon.storage.io.FastTextReader;
 import org.geotools.geometry.jts.JTS;
 import org.locationtech.geomesa.curve.XZ2SFC;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.io.WKTReader;
 import org.locationtech.sfcurve.IndexRange;
@@ -11,9 +16,8 @@ import scala.Tuple2;
 import scala.Tuple4;
 import scala.collection.JavaConversions;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -33,8 +37,15 @@ public class XZOrderIndex {
      * key-value pair storage in format of < xz-order value, point >
      * <p>
      * TreeMap is a key-sorted map to simulate the sequential arrangement of index values in memory
+     * <p>
+     * the map is never modified after being published, so a rebuild never exposes a partial index to readers
+     */
+    private volatile TreeMap<Long, List<Geometry>> indexMap;
+
+    /**
+     * query metrics, disabled by default
      */
-    private TreeMap<Long, List<Geometry>> indexMap;
+    private volatile IndexMetrics metrics = IndexMetrics.NOOP;
 
     XZOrderIndex(int precision) {
         xz2SFC = new XZ2SFC((short) precision, new Tuple2<>(-180.0, 180.0), new Tuple2<>(-90.0, 90.0));
@@ -56,14 +67,12 @@ public class XZOrderIndex {
      * build index based on xz-order curve for geometries
      */
     public void build(List<Geometry> geometries) {
-        indexMap = new TreeMap<>();
+        TreeMap<Long, List<Geometry>> newIndexMap = new TreeMap<>();
         for (Geometry geometry : geometries) {
             long index = index(geometry);
-            if (!indexMap.containsKey(index)) {
-                indexMap.put(index, new ArrayList<>());
-            }
-            indexMap.get(index).add(geometry);
+            newIndexMap.computeIfAbsent(index, k -> new ArrayList<>()).add(geometry);
         }
+        indexMap = newIndexMap;
     }
 
     /**
@@ -72,13 +81,18 @@ public class XZOrderIndex {
      * @param contained true to select contained geometry and false to select intersected geometry
      */
     public List<Geometry> query(double minX, double maxX, double minY, double maxY, boolean contained) {
+        IndexMetrics metrics = this.metrics;
+        long startTime = metrics.isEnabled() ? System.nanoTime() : 0L;
         Polygon envelope = JTS.toGeometry(new Envelope(minX, maxX, minY, maxY));
         List<IndexRange> ranges = JavaConversions.seqAsJavaList(xz2SFC.ranges(minX, minY, maxX, maxY));
 
+        TreeMap<Long, List<Geometry>> snapshot = indexMap;
         List<Geometry> results = new ArrayList<>();
+        long candidateCount = 0L;
         for (IndexRange range : ranges) {
-            NavigableMap<Long, List<Geometry>> subMap = indexMap.subMap(range.lower(), true, range.upper(), true);
+            NavigableMap<Long, List<Geometry>> subMap = snapshot.subMap(range.lower(), true, range.upper(), true);
             for (List<Geometry> candidates : subMap.values()) {
+                candidateCount += candidates.size();
                 for (Geometry candidate : candidates) {
                     if (contained) {
                         if (envelope.contains(candidate)) {
@@ -92,9 +106,53 @@ public class XZOrderIndex {
                 }
             }
         }
+        if (metrics.isEnabled()) {
+            metrics.recordQuery(ranges.size(), candidateCount, results.size(), System.nanoTime() - startTime);
+        }
         return results;
     }
 
+    /**
+     * set the metrics to record every query, use {@link IndexMetrics#NOOP} to disable
+     */
+    public void setMetrics(IndexMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * @return the number of distinct xz-order values
+     */
+    public int getKeyCount() {
+        return indexMap.size();
+    }
+
+    /**
+     * @return the number of indexed geometries
+     */
+    public long getSize() {
+        long size = 0L;
+        for (List<Geometry> geometries : indexMap.values()) {
+            size += geometries.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return estimated heap bytes retained by the index, including the indexed geometries
+     * @see IndexMemoryEstimator
+     */
+    public long estimateRetainedBytes() {
+        long bytes = 0L;
+        for (List<Geometry> geometries : indexMap.values()) {
+            bytes += IndexMemoryEstimator.TREE_MAP_ENTRY + IndexMemoryEstimator.BOXED_LONG
+                    + IndexMemoryEstimator.growingArrayList(geometries.size());
+            for (Geometry geometry : geometries) {
+                bytes += IndexMemoryEstimator.geometry(geometry);
+            }
+        }
+        return bytes;
+    }
+
     public static void main(String[] args) throws Exception {
         // 示例一：计算单个Geometry的XZ-Order索引值，可指定不同阶数
         WKTReader wktReader = new WKTReader();
@@ -108,20 +166,22 @@ public class XZOrderIndex {
 
         // 示例二：指定阶数，创建多个Geometry的XZ-Order索引，输入查询范围，输出查询结果
         XZOrderIndex xz16 = new XZOrderIndex(-180, 180, -90, 90, 31);
-        String filePath = Objects.requireNonNull(XZOrderIndex.class.getResource("/polygons.txt")).getPath();
-        FileInputStream in = new FileInputStream(filePath);
-        InputStreamReader reader = new InputStreamReader(in);
-        BufferedReader bufferedReader = new BufferedReader(reader);
-        List<Geometry> polygons = new ArrayList<>();
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-            polygons.add(wktReader.read(line));
-        }
+        Path filePath = Paths.get(Objects.requireNonNull(XZOrderIndex.class.getResource("/polygons.txt")).toURI());
+        List<Geometry> polygons = FastTextReader.readWkt(filePath, new GeometryFactory(), '\t', 0);
         xz16.build(polygons);
 
         long startTime = System.currentTimeMillis();
         List<Geometry> query = xz16.query(116.36236773134938005, 116.37030397581409602, 39.92034877315298047, 39.92787803072206287, false);
         long endTime = System.currentTimeMillis();
         System.out.println("查询结果数量：" + query.size() + "，查询耗时毫秒：" + (endTime - startTime) + "ms");  // 12
+
+        // 示例三：开启查询统计，观察索引的内存占用、候选过滤精度与延迟分布
+        IndexQueryStatistics statistics = new IndexQueryStatistics();
+        xz16.setMetrics(statistics);
+        for (int i = 0; i < 3; i++) {
+            xz16.query(116.36236773134938005, 116.37030397581409602, 39.92034877315298047, 39.92787803072206287, false);
+        }
+        System.out.println("索引值数量：" + xz16.getKeyCount() + "，面数量：" + xz16.getSize() + "，估算内存字节：" + xz16.estimateRetainedBytes());
+        System.out.println(statistics.report());
     }
 }
@@ -1,5 +1,9 @@
 package com.chronomon.storage.index.curve;
 
+import com.chronomon.storage.index.metrics.IndexMemoryEstimator;
+import com.chronomon.storage.index.metrics.IndexMetrics;
+import com.chronomon.storage.index.metrics.IndexQueryStatistics;
+import com.chronomon.storage.io.FastTextReader;
 import org.locationtech.geomesa.curve.NormalizedDimension;
 import org.locationtech.geomesa.curve.Z2SFC;
 import org.locationtech.jts.geom.Coordinate;
@@ -8,9 +12,8 @@ import org.locationtech.sfcurve.IndexRange;
 import scala.Tuple2;
 import scala.collection.JavaConversions;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.lang.reflect.Field;
 import java.util.*;
 
@@ -30,8 +33,15 @@ public class ZOrderIndex {
      * key-value pair storage in format of < z-order value, point >
      * <p>
      * TreeMap is a key-sorted map to simulate the sequential arrangement of index values in memory
+     * <p>
+     * the map is never modified after being published, so a rebuild never exposes a partial index to readers
+     */
+    private volatile TreeMap<Long, List<Coordinate>> indexMap;
+
+    /**
+     * query metrics, disabled by default
      */
-    private TreeMap<Long, List<Coordinate>> indexMap;
+    private volatile IndexMetrics metrics = IndexMetrics.NOOP;
 
     ZOrderIndex(int precision) {
         z2SFC = new Z2SFC(precision);
@@ -63,27 +73,30 @@ public class ZOrderIndex {
      * build index based on z-order curve for points
      */
     public void build(List<Coordinate> coordinates) {
-        indexMap = new TreeMap<>();
+        TreeMap<Long, List<Coordinate>> newIndexMap = new TreeMap<>();
         for (Coordinate coordinate : coordinates) {
             long index = index(coordinate.getX(), coordinate.getY());
-            if (!indexMap.containsKey(index)) {
-                indexMap.put(index, new ArrayList<>());
-            }
-            indexMap.get(index).add(coordinate);
+            newIndexMap.computeIfAbsent(index, k -> new ArrayList<>()).add(coordinate);
         }
+        indexMap = newIndexMap;
     }
 
     /**
      * query points by a given range
      */
     public List<Coordinate> query(double minX, double maxX, double minY, double maxY) {
+        IndexMetrics metrics = this.metrics;
+        long startTime = metrics.isEnabled() ? System.nanoTime() : 0L;
         Envelope envelope = new Envelope(minX, maxX, minY, maxY);
         List<IndexRange> ranges = JavaConversions.seqAsJavaList(z2SFC.ranges(new Tuple2<>(minX, maxX), new Tuple2<>(minY, maxY)));
 
+        TreeMap<Long, List<Coordinate>> snapshot = indexMap;
         List<Coordinate> results = new ArrayList<>();
+        long candidateCount = 0L;
         for (IndexRange range : ranges) {
-            NavigableMap<Long, List<Coordinate>> subMap = indexMap.subMap(range.lower(), true, range.upper(), true);
+            NavigableMap<Long, List<Coordinate>> subMap = snapshot.subMap(range.lower(), true, range.upper(), true);
             for (List<Coordinate> candidates : subMap.values()) {
+                candidateCount += candidates.size();
                 for (Coordinate candidate : candidates) {
                     if (envelope.contains(candidate)) {
                         results.add(candidate);
@@ -91,9 +104,51 @@ public class ZOrderIndex {
                 }
             }
         }
+        if (metrics.isEnabled()) {
+            metrics.recordQuery(ranges.size(), candidateCount, results.size(), System.nanoTime() - startTime);
+        }
         return results;
     }
 
+    /**
+     * set the metrics to record every query, use {@link IndexMetrics#NOOP} to disable
+     */
+    public void setMetrics(IndexMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * @return the number of distinct z-order values
+     */
+    public int getKeyCount() {
+        return indexMap.size();
+    }
+
+    /**
+     * @return the number of indexed points
+     */
+    public long getSize() {
+        long size = 0L;
+        for (List<Coordinate> coordinates : indexMap.values()) {
+            size += coordinates.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return estimated heap bytes retained by the index, including the indexed points
+     * @see IndexMemoryEstimator
+     */
+    public long estimateRetainedBytes() {
+        long bytes = 0L;
+        for (List<Coordinate> coordinates : indexMap.values()) {
+            bytes += IndexMemoryEstimator.TREE_MAP_ENTRY + IndexMemoryEstimator.BOXED_LONG
+                    + IndexMemoryEstimator.growingArrayList(coordinates.size())
+                    + IndexMemoryEstimator.COORDINATE * coordinates.size();
+        }
+        return bytes;
+    }
+
     public static void main(String[] args) throws Exception {
         // 示例一：计算单个Point的Z-Order索引值，可指定不同阶数
         ZOrderIndex z1 = new ZOrderIndex(1);
@@ -106,21 +161,22 @@ public class ZOrderIndex {
 
         // 示例二：指定阶数，创建多个Point的Z-Order索引，输入查询范围，输出查询结果
         ZOrderIndex z16 = new ZOrderIndex(-180, 180, -90, 90, 16);
-        String filePath = Objects.requireNonNull(ZOrderIndex.class.getResource("/points.txt")).getPath();
-        FileInputStream in = new FileInputStream(filePath);
-        InputStreamReader reader = new InputStreamReader(in);
-        BufferedReader bufferedReader = new BufferedReader(reader);
-        List<Coordinate> points = new ArrayList<>();
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-            String[] items = line.split(",");
-            points.add(new Coordinate(Double.parseDouble(items[0]), Double.parseDouble(items[1])));
-        }
+        Path filePath = Paths.get(Objects.requireNonNull(ZOrderIndex.class.getResource("/points.txt")).toURI());
+        List<Coordinate> points = FastTextReader.readPoints(filePath, ',');
         z16.build(points);
 
         long startTime = System.currentTimeMillis();
         List<Coordinate> query = z16.query(116.36236773134938005, 116.37030397581409602, 39.92034877315298047, 39.92787803072206287);
         long endTime = System.currentTimeMillis();
         System.out.println("查询结果数量：" + query.size() + "，查询耗时毫秒：" + (endTime - startTime) + "ms");
+
+        // 示例三：开启查询统计，观察索引的内存占用、候选过滤精度与延迟分布
+        IndexQueryStatistics statistics = new IndexQueryStatistics();
+        z16.setMetrics(statistics);
+        for (int i = 0; i < 1000; i++) {
+            z16.query(116.36236773134938005, 116.37030397581409602, 39.92034877315298047, 39.92787803072206287);
+        }
+        System.out.println("索引值数量：" + z16.getKeyCount() + "，点数量：" + z16.getSize() + "，估算内存字节：" + z16.estimateRetainedBytes());
+        System.out.println(statistics.report());
     }
 }
@@ -0,0 +1,140 @@
+package com.chronomon.storage.index.metrics;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * 索引内存估算：按照64位JVM开启压缩指针（对象头12字节、引用4字节、8字节对齐）的对象布局估算堆内存占用
+ * <p>
+ * 估算值包含被索引的对象本身（坐标、几何），不包含JVM自身的开销，用于比较不同索引、不同参数下的内存量级
+ *
+ * @author yuzisheng
+ * @date 2026-10-19
+ */
+public final class IndexMemoryEstimator {
+
+    private static final int OBJECT_HEADER = 12;
+
+    private static final int ARRAY_HEADER = 16;
+
+    private static final int REFERENCE = 4;
+
+    /**
+     * TreeMap.Entry：key、value、left、right、parent五个引用和一个boolean
+     */
+    public static final long TREE_MAP_ENTRY = align(OBJECT_HEADER + 5 * REFERENCE + 1);
+
+    /**
+     * 装箱的Long
+     */
+    public static final long BOXED_LONG = align(OBJECT_HEADER + 8);
+
+    /**
+     * Coordinate：x、y、z三个double
+     */
+    public static final long COORDINATE = align(OBJECT_HEADER + 3 * 8);
+
+    /**
+     * Envelope：minx、maxx、miny、maxy四个double
+     */
+    public static final long ENVELOPE = align(OBJECT_HEADER + 4 * 8);
+
+    /**
+     * Geometry的公共字段：envelope、factory、userData三个引用和SRID
+     */
+    private static final long GEOMETRY = align(OBJECT_HEADER + 3 * REFERENCE + 4 + REFERENCE);
+
+    /**
+     * CoordinateArraySequence：dimension、measures和坐标数组引用
+     */
+    private static final long COORDINATE_SEQUENCE = align(OBJECT_HEADER + 4 + 4 + REFERENCE);
+
+    /**
+     * STRtree中的ItemBoundable：bounds和item两个引用
+     */
+    private static final long ITEM_BOUNDABLE = align(OBJECT_HEADER + 2 * REFERENCE);
+
+    /**
+     * STRtree的中间节点：childBoundables、bounds两个引用和level
+     */
+    private static final long TREE_NODE = align(OBJECT_HEADER + 2 * REFERENCE + 4);
+
+    private IndexMemoryEstimator() {
+    }
+
+    public static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    public static long referenceArray(int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+
+    /**
+     * ArrayList：size、modCount和数组引用，以及容量为capacity的数组
+     */
+    public static long arrayList(int capacity) {
+        return align(OBJECT_HEADER + 4 + 4 + REFERENCE) + referenceArray(capacity);
+    }
+
+    /**
+     * 按照ArrayList默认的扩容策略（初始容量10，每次扩容1.5倍）估算逐个添加size个元素后的大小
+     */
+    public static long growingArrayList(int size) {
+        int capacity = 10;
+        while (capacity < size) {
+            capacity += capacity >> 1;
+        }
+        return arrayList(capacity);
+    }
+
+    /**
+     * @return 几何对象（含坐标与缓存的外包框）的估算大小
+     */
+    public static long geometry(Geometry geometry) {
+        long bytes = GEOMETRY + ENVELOPE;
+        if (geometry instanceof GeometryCollection) {
+            bytes += referenceArray(geometry.getNumGeometries());
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                bytes += geometry(geometry.getGeometryN(i));
+            }
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            bytes += REFERENCE + referenceArray(polygon.getNumInteriorRing());
+            bytes += lineString(polygon.getExteriorRing());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                bytes += lineString(polygon.getInteriorRingN(i));
+            }
+        } else {
+            bytes += coordinateSequence(geometry.getNumPoints());
+        }
+        return bytes;
+    }
+
+    private static long lineString(LineString lineString) {
+        return GEOMETRY + coordinateSequence(lineString.getNumPoints());
+    }
+
+    private static long coordinateSequence(int coordinateCount) {
+        return COORDINATE_SEQUENCE + referenceArray(coordinateCount) + COORDINATE * coordinateCount;
+    }
+
+    /**
+     * STRtree的估算大小：每个条目一个ItemBoundable和外包框，每个节点一个节点对象、子节点列表和外包框
+     *
+     * @param itemCount    条目数量
+     * @param nodeCapacity 节点容量
+     * @return 不包含条目本身的估算大小
+     */
+    public static long strTree(int itemCount, int nodeCapacity) {
+        long bytes = (ITEM_BOUNDABLE + ENVELOPE) * itemCount;
+        long levelCount = itemCount;
+        while (levelCount > 1) {
+            levelCount = (levelCount + nodeCapacity - 1) / nodeCapacity;
+            bytes += levelCount * (TREE_NODE + arrayList(nodeCapacity) + ENVELOPE);
+        }
+        return bytes;
+    }
+}
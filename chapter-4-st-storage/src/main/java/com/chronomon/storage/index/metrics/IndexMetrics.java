@@ -0,0 +1,42 @@
+package com.chronomon.storage.index.metrics;
+
+/**
+ * 索引查询的指标采集接口，可以对接到任意指标注册中心（例如Micrometer、Dropwizard、Flink Metric）
+ * <p>
+ * 索引在查询前先调用{@link #isEnabled()}，未启用时不会读取时钟，也不会调用{@link #recordQuery}，
+ * 因此默认的{@link #NOOP}几乎没有额外开销
+ *
+ * @author yuzisheng
+ * @date 2026-10-19
+ */
+public interface IndexMetrics {
+
+    /**
+     * 不采集任何指标，索引的默认值
+     */
+    IndexMetrics NOOP = new IndexMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordQuery(int rangeCount, long candidateCount, int resultCount, long latencyInNanos) {
+        }
+    };
+
+    /**
+     * @return 是否需要采集指标
+     */
+    boolean isEnabled();
+
+    /**
+     * 记录一次查询
+     *
+     * @param rangeCount     查询范围被分解成的索引区间数量（树索引为0）
+     * @param candidateCount 扫描过的候选对象数量
+     * @param resultCount    精确过滤后返回的结果数量
+     * @param latencyInNanos 查询耗时（纳秒）
+     */
+    void recordQuery(int rangeCount, long candidateCount, int resultCount, long latencyInNanos);
+}
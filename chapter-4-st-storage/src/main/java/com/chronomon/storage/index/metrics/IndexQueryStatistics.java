@@ -0,0 +1,88 @@
+package com.chronomon.storage.index.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内置的查询统计：在内存中累计查询次数、区间数量、候选数量、结果数量以及延迟直方图
+ * <p>
+ * 可以直接打印{@link #report()}，也可以由指标注册中心周期性地读取各项getter
+ *
+ * @author yuzisheng
+ * @date 2026-10-19
+ */
+public class IndexQueryStatistics implements IndexMetrics {
+
+    private final LongAdder queryCount = new LongAdder();
+
+    private final LongAdder rangeCount = new LongAdder();
+
+    private final LongAdder candidateCount = new LongAdder();
+
+    private final LongAdder resultCount = new LongAdder();
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordQuery(int rangeCount, long candidateCount, int resultCount, long latencyInNanos) {
+        this.queryCount.increment();
+        this.rangeCount.add(rangeCount);
+        this.candidateCount.add(candidateCount);
+        this.resultCount.add(resultCount);
+        this.latencyHistogram.record(latencyInNanos);
+    }
+
+    public long getQueryCount() {
+        return queryCount.sum();
+    }
+
+    public long getRangeCount() {
+        return rangeCount.sum();
+    }
+
+    public long getCandidateCount() {
+        return candidateCount.sum();
+    }
+
+    public long getResultCount() {
+        return resultCount.sum();
+    }
+
+    /**
+     * @return 结果数量占候选数量的比例，反映索引的过滤精度（越接近1越好）
+     */
+    public double getSelectivity() {
+        long candidates = getCandidateCount();
+        return candidates == 0 ? 1.0 : (double) getResultCount() / candidates;
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    public void reset() {
+        queryCount.reset();
+        rangeCount.reset();
+        candidateCount.reset();
+        resultCount.reset();
+        latencyHistogram.reset();
+    }
+
+    public String report() {
+        long queries = Math.max(1L, getQueryCount());
+        return String.format("查询次数：%d，平均区间数：%.1f，平均候选数：%.1f，平均结果数：%.1f，过滤精度：%.3f，"
+                        + "平均延迟：%.1fus，P50：%.1fus，P99：%.1fus",
+                getQueryCount(),
+                (double) getRangeCount() / queries,
+                (double) getCandidateCount() / queries,
+                (double) getResultCount() / queries,
+                getSelectivity(),
+                latencyHistogram.getMeanInNanos() / 1000.0,
+                latencyHistogram.getQuantileInNanos(0.5) / 1000.0,
+                latencyHistogram.getQuantileInNanos(0.99) / 1000.0);
+    }
+}
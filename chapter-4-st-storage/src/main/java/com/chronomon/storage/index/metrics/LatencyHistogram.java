@@ -0,0 +1,80 @@
+package com.chronomon.storage.index.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图：按2的幂次划分桶，第i个桶记录[2^(i-1), 2^i)纳秒内的样本
+ * <p>
+ * 每个桶是一个LongAdder，多线程并发写入时没有锁竞争；分位数精度为一个桶宽（2倍以内）
+ *
+ * @author yuzisheng
+ * @date 2026-10-19
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+    private final LongAdder totalInNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long latencyInNanos) {
+        long value = Math.max(0L, latencyInNanos);
+        buckets[BUCKET_COUNT - Long.numberOfLeadingZeros(value)].increment();
+        totalInNanos.add(value);
+    }
+
+    public long getCount() {
+        long count = 0L;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public double getMeanInNanos() {
+        long count = getCount();
+        return count == 0 ? 0.0 : (double) totalInNanos.sum() / count;
+    }
+
+    /**
+     * @param quantile 分位点，取值范围[0, 1]
+     * @return 分位数所在桶的上界（纳秒），没有样本时返回0
+     */
+    public long getQuantileInNanos(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("分位点必须位于[0, 1]之间：" + quantile);
+        }
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long accumulated = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += counts[i];
+            if (accumulated >= rank) {
+                return i == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        totalInNanos.reset();
+    }
+}
@@ -0,0 +1,215 @@
+package com.chronomon.storage.index.snapshot;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 索引快照容器：写时复制（copy-on-write）地发布索引版本
+ * <p>
+ * 新版本的索引在旁路构建完成后，通过原子引用一次性替换当前版本；
+ * 读者通过{@link #acquire()}持有其开始查询时的版本，查询结束后关闭快照。
+ * 旧版本在被替换且所有读者都释放之后，才会回调释放函数。
+ *
+ * @param <T> 索引类型，例如XZOrderIndex、RTreeIndex
+ * @author yuzisheng
+ * @date 2026-10-19
+ */
+public class IndexSnapshotHolder<T> {
+
+    /**
+     * 当前对外发布的快照
+     */
+    private final AtomicReference<IndexSnapshot<T>> current = new AtomicReference<>();
+
+    /**
+     * 旧版本排空（没有读者持有）之后的释放函数
+     */
+    private final Consumer<T> releaser;
+
+    /**
+     * 版本号分配器
+     */
+    private final AtomicLong versionAssigner = new AtomicLong();
+
+    /**
+     * 已被替换但仍有读者持有的快照数量
+     */
+    private final AtomicInteger drainingCount = new AtomicInteger();
+
+    public IndexSnapshotHolder() {
+        this(index -> {
+        });
+    }
+
+    /**
+     * @param releaser 旧版本排空之后的释放函数
+     */
+    public IndexSnapshotHolder(Consumer<T> releaser) {
+        this.releaser = releaser;
+    }
+
+    /**
+     * 在旁路构建新版本的索引，构建完成后原子替换当前版本
+     *
+     * @param builder 索引构建函数
+     * @return 新发布的版本号
+     */
+    public long rebuild(Supplier<T> builder) {
+        long startTime = System.nanoTime();
+        T index = builder.get();
+        long buildDurationInNanos = System.nanoTime() - startTime;
+        return publish(index, buildDurationInNanos);
+    }
+
+    /**
+     * 发布一个已经构建好的索引
+     *
+     * @param index 索引对象
+     * @return 新发布的版本号
+     */
+    public long publish(T index) {
+        return publish(index, 0L);
+    }
+
+    private long publish(T index, long buildDurationInNanos) {
+        IndexSnapshot<T> snapshot = new IndexSnapshot<>(this, index,
+                versionAssigner.incrementAndGet(), buildDurationInNanos);
+        IndexSnapshot<T> previous = current.getAndSet(snapshot);
+        if (previous != null) {
+            drainingCount.incrementAndGet();
+            previous.retire();
+        }
+        return snapshot.version;
+    }
+
+    /**
+     * 获取当前版本的快照，使用完毕后必须关闭（推荐try-with-resources）
+     *
+     * @return 当前版本的快照
+     */
+    public IndexSnapshot<T> acquire() {
+        while (true) {
+            IndexSnapshot<T> snapshot = current.get();
+            if (snapshot == null) {
+                throw new IllegalStateException("索引尚未发布");
+            }
+            if (snapshot.tryRetain()) {
+                return snapshot;
+            }
+            // 快照在获取过程中被替换并已释放，重新读取当前版本
+        }
+    }
+
+    /**
+     * @return 当前版本号，尚未发布时为0
+     */
+    public long getVersion() {
+        IndexSnapshot<T> snapshot = current.get();
+        return snapshot == null ? 0L : snapshot.version;
+    }
+
+    /**
+     * @return 当前版本的构建耗时（毫秒）
+     */
+    public long getBuildDurationInMillis() {
+        IndexSnapshot<T> snapshot = current.get();
+        return snapshot == null ? 0L : snapshot.buildDurationInNanos / 1000000L;
+    }
+
+    /**
+     * @return 当前版本自发布以来的时长（毫秒）
+     */
+    public long getSnapshotAgeInMillis() {
+        IndexSnapshot<T> snapshot = current.get();
+        return snapshot == null ? 0L : System.currentTimeMillis() - snapshot.publishTime;
+    }
+
+    /**
+     * @return 已被替换但仍有读者未释放的旧版本数量
+     */
+    public int getDrainingCount() {
+        return drainingCount.get();
+    }
+
+    private void onDrained(IndexSnapshot<T> snapshot) {
+        drainingCount.decrementAndGet();
+        releaser.accept(snapshot.index);
+    }
+
+    /**
+     * 索引快照：带引用计数的不可变索引版本
+     */
+    public static final class IndexSnapshot<T> implements AutoCloseable {
+
+        /**
+         * 引用计数为该值时表示快照已经释放，不能再被获取
+         */
+        private static final int RELEASED = -1;
+
+        private final IndexSnapshotHolder<T> holder;
+
+        private final T index;
+
+        private final long version;
+
+        private final long buildDurationInNanos;
+
+        private final long publishTime;
+
+        private final AtomicInteger refCount = new AtomicInteger();
+
+        private volatile boolean retired = false;
+
+        private IndexSnapshot(IndexSnapshotHolder<T> holder, T index, long version, long buildDurationInNanos) {
+            this.holder = holder;
+            this.index = index;
+            this.version = version;
+            this.buildDurationInNanos = buildDurationInNanos;
+            this.publishTime = System.currentTimeMillis();
+        }
+
+        public T get() {
+            return index;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        private boolean tryRetain() {
+            while (true) {
+                int count = refCount.get();
+                if (count == RELEASED) {
+                    return false;
+                }
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void retire() {
+            retired = true;
+            tryRelease();
+        }
+
+        private void tryRelease() {
+            if (retired && refCount.compareAndSet(0, RELEASED)) {
+                holder.onDrained(this);
+            }
+        }
+
+        /**
+         * 读者释放快照
+         */
+        @Override
+        public void close() {
+            if (refCount.decrementAndGet() == 0) {
+                tryRelease();
+            }
+        }
+    }
+}
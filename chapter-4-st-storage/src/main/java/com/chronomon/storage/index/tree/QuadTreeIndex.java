@@ -1,12 +1,12 @@
 package com.chronomon.storage.index.tree;
 
+import com.chronomon.storage.io.FastTextReader;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.index.quadtree.Quadtree;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -46,16 +46,8 @@ public class QuadTreeIndex {
     }
 
     public static void main(String[] args) throws Exception {
-        String filePath = Objects.requireNonNull(QuadTreeIndex.class.getResource("/points.txt")).getPath();
-        FileInputStream in = new FileInputStream(filePath);
-        InputStreamReader reader = new InputStreamReader(in);
-        BufferedReader bufferedReader = new BufferedReader(reader);
-        List<Coordinate> points = new ArrayList<>();
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-            String[] items = line.split(",");
-            points.add(new Coordinate(Double.parseDouble(items[0]), Double.parseDouble(items[1])));
-        }
+        Path filePath = Paths.get(Objects.requireNonNull(QuadTreeIndex.class.getResource("/points.txt")).toURI());
+        List<Coordinate> points = FastTextReader.readPoints(filePath, ',');
 
         long startTime = System.currentTimeMillis();
         QuadTreeIndex quadTreeIndex = new QuadTreeIndex(points);
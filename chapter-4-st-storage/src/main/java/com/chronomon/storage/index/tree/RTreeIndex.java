@@ -1,12 +1,16 @@
 package com.chronomon.storage.index.tree;
 
+import com.chronomon.storage.io.FastTextReader;
+import com.chronomon.storage.index.metrics.IndexMemoryEstimator;
+import com.chronomon.storage.index.metrics.IndexMetrics;
+import com.chronomon.storage.index.metrics.IndexQueryStatistics;
+import com.chronomon.storage.index.snapshot.IndexSnapshotHolder;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.index.strtree.STRtree;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -26,6 +30,11 @@ public class RTreeIndex {
 
     private final double delta = 1e-7;
 
+    /**
+     * query metrics, disabled by default
+     */
+    private volatile IndexMetrics metrics = IndexMetrics.NOOP;
+
     RTreeIndex(List<Coordinate> coordinates) {
         rTree = new STRtree();
         for (Coordinate coordinate : coordinates) {
@@ -37,32 +46,80 @@ public class RTreeIndex {
     }
 
     public List query(double minX, double maxX, double minY, double maxY) {
+        IndexMetrics metrics = this.metrics;
+        long startTime = metrics.isEnabled() ? System.nanoTime() : 0L;
         Envelope envelope = new Envelope(minX, maxX, minY, maxY);
         List<Coordinate> results = new ArrayList<>();
-        for (Object o : rTree.query(envelope)) {
+        List candidates = rTree.query(envelope);
+        for (Object o : candidates) {
             if (envelope.contains((Coordinate) o)) {
                 results.add((Coordinate) o);
             }
         }
+        if (metrics.isEnabled()) {
+            metrics.recordQuery(0, candidates.size(), results.size(), System.nanoTime() - startTime);
+        }
         return results;
     }
 
+    /**
+     * set the metrics to record every query, use {@link IndexMetrics#NOOP} to disable
+     */
+    public void setMetrics(IndexMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * @return the number of indexed points
+     */
+    public int getSize() {
+        return rTree.size();
+    }
+
+    /**
+     * @return the depth of the tree
+     */
+    public int getDepth() {
+        return rTree.depth();
+    }
+
+    /**
+     * @return estimated heap bytes retained by the index, including the indexed points
+     * @see IndexMemoryEstimator
+     */
+    public long estimateRetainedBytes() {
+        int size = rTree.size();
+        return IndexMemoryEstimator.strTree(size, rTree.getNodeCapacity()) + IndexMemoryEstimator.COORDINATE * size;
+    }
+
     public static void main(String[] args) throws Exception {
-        String filePath = Objects.requireNonNull(RTreeIndex.class.getResource("/points.txt")).getPath();
-        FileInputStream in = new FileInputStream(filePath);
-        InputStreamReader reader = new InputStreamReader(in);
-        BufferedReader bufferedReader = new BufferedReader(reader);
-        List<Coordinate> points = new ArrayList<>();
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-            String[] items = line.split(",");
-            points.add(new Coordinate(Double.parseDouble(items[0]), Double.parseDouble(items[1])));
-        }
+        Path filePath = Paths.get(Objects.requireNonNull(RTreeIndex.class.getResource("/points.txt")).toURI());
+        List<Coordinate> points = FastTextReader.readPoints(filePath, ',');
 
         long startTime = System.currentTimeMillis();
         RTreeIndex rTreeIndex = new RTreeIndex(points);
         List query = rTreeIndex.query(116.392137, 116.401321, 39.913083, 39.922957);
         long endTime = System.currentTimeMillis();
         System.out.println("查询结果数量：" + query.size() + "，查询耗时毫秒：" + (endTime - startTime) + "ms");
+
+        // 示例二：通过快照容器重建索引，新索引在旁路构建完成后原子替换，查询中的读者始终使用其开始时的版本
+        IndexSnapshotHolder<RTreeIndex> holder = new IndexSnapshotHolder<>();
+        holder.rebuild(() -> new RTreeIndex(points));
+        try (IndexSnapshotHolder.IndexSnapshot<RTreeIndex> snapshot = holder.acquire()) {
+            holder.rebuild(() -> new RTreeIndex(points));  // 重建期间旧版本仍然可用
+            System.out.println("旧版本" + snapshot.getVersion() + "查询结果数量：" + snapshot.get().query(116.392137, 116.401321, 39.913083, 39.922957).size());
+            System.out.println("排空中的旧版本数量：" + holder.getDrainingCount());  // 1
+        }
+        System.out.println("当前版本：" + holder.getVersion() + "，构建耗时毫秒：" + holder.getBuildDurationInMillis()
+                + "ms，快照存活毫秒：" + holder.getSnapshotAgeInMillis() + "ms，排空中的旧版本数量：" + holder.getDrainingCount());  // 0
+
+        // 示例三：开启查询统计，观察索引的内存占用、候选过滤精度与延迟分布
+        IndexQueryStatistics statistics = new IndexQueryStatistics();
+        rTreeIndex.setMetrics(statistics);
+        for (int i = 0; i < 1000; i++) {
+            rTreeIndex.query(116.392137, 116.401321, 39.913083, 39.922957);
+        }
+        System.out.println("点数量：" + rTreeIndex.getSize() + "，树深度：" + rTreeIndex.getDepth() + "，估算内存字节：" + rTreeIndex.estimateRetainedBytes());
+        System.out.println(statistics.report());
     }
 }
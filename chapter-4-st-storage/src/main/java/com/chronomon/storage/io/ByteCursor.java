@@ -0,0 +1,199 @@
+package com.chronomon.storage.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字节游标：直接在字节缓冲区上解析一行文本，避免为每一行、每一列创建String对象
+ *
+ * @author yuzisheng
+ * @date 2026-10-19
+ */
+public final class ByteCursor {
+
+    /**
+     * 10的整数次幂，在[0, 22]范围内都可以被double精确表示
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * 尾数不超过2^53时可以被double精确表示
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final ByteBuffer buffer;
+
+    private int position;
+
+    private int limit;
+
+    public ByteCursor(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * 将游标指向缓冲区中的一段区域（通常是一行）
+     */
+    public ByteCursor reset(int from, int to) {
+        this.position = from;
+        this.limit = to;
+        return this;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * @return 当前字节，已到达末尾时返回-1
+     */
+    public int peek() {
+        return position < limit ? buffer.get(position) : -1;
+    }
+
+    public void skipWhitespace() {
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b != ' ' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * 跳过空白之后，如果当前字节等于c则消费掉它
+     *
+     * @return 是否消费了字节c
+     */
+    public boolean skip(char c) {
+        skipWhitespace();
+        if (position < limit && buffer.get(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 跳过当前列，游标停在分隔符之后
+     *
+     * @param delimiter 列分隔符
+     */
+    public void skipColumn(char delimiter) {
+        while (position < limit) {
+            if (buffer.get(position++) == delimiter) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 查找字节c的位置，不移动游标
+     *
+     * @return 字节c的位置，没有找到时返回区域的结束位置
+     */
+    public int indexOf(char c) {
+        for (int i = position; i < limit; i++) {
+            if (buffer.get(i) == c) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * 读取一个由字母组成的关键字（例如WKT的几何类型），并转为大写
+     */
+    public String nextWord() {
+        skipWhitespace();
+        int from = position;
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if ((b < 'A' || b > 'Z') && (b < 'a' || b > 'z')) {
+                break;
+            }
+            position++;
+        }
+        return substring(from, position).toUpperCase();
+    }
+
+    /**
+     * 直接从字节中解析一个十进制浮点数
+     * <p>
+     * 尾数不超过2^53且小数位不超过22位时，一次除法即可得到正确舍入的结果；
+     * 其余情况（超长尾数、科学计数法等）回退到{@link Double#parseDouble(String)}
+     *
+     * @return 浮点数
+     */
+    public double nextDouble() {
+        skipWhitespace();
+        int from = position;
+        boolean negative = false;
+        if (position < limit) {
+            byte sign = buffer.get(position);
+            if (sign == '-' || sign == '+') {
+                negative = sign == '-';
+                position++;
+            }
+        }
+
+        long mantissa = 0L;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean inFraction = false;
+        boolean exact = true;
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b >= '0' && b <= '9') {
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (inFraction) {
+                        fractionDigits++;
+                    }
+                } else {
+                    exact = false;
+                }
+                digits++;
+            } else if (b == '.' && !inFraction) {
+                inFraction = true;
+            } else if (b == 'e' || b == 'E') {
+                exact = false;
+                position++;
+                if (position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                    position++;
+                }
+                continue;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("无法解析的数字：" + substring(from, Math.min(limit, from + 32)));
+        }
+
+        if (exact && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(substring(from, position));
+    }
+
+    /**
+     * 解码一段字节，只在回退路径中使用
+     */
+    public String substring(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            bytes[i - from] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
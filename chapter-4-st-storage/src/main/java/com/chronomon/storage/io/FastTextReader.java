@@ -0,0 +1,210 @@
+package com.chronomon.storage.io;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * 高吞吐的文本文件读取器
+ * <p>
+ * 1. 通过内存映射将文件按行边界切分为多个分块，多个分块并行解析
+ * 2. 每一行直接在映射的字节上解析，数字和WKT都不经过中间String对象
+ * 3. 结果按照文件中的行顺序返回，可以直接交给索引的批量构建方法
+ *
+ * @author yuzisheng
+ * @date 2026-10-19
+ */
+public class FastTextReader {
+
+    /**
+     * 单个分块的默认大小
+     */
+    private static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * 分块末尾一行超出分块时，额外映射的初始长度
+     */
+    private static final int TAIL_SIZE = 64 * 1024;
+
+    /**
+     * 行解析器：每个分块对应一个解析器实例，因此解析器内部可以复用缓冲区
+     *
+     * @param <R> 每一行的解析结果
+     */
+    public interface LineParser<R> {
+        /**
+         * @param cursor 指向当前行的字节游标（不包含换行符）
+         * @param from   行的起始位置
+         * @param to     行的结束位置（不包含）
+         * @return 解析结果，返回null表示跳过该行
+         */
+        R parse(ByteCursor cursor, int from, int to) throws Exception;
+    }
+
+    /**
+     * 并行读取文件的每一行
+     *
+     * @param path          文件路径
+     * @param parserFactory 为每个分块创建行解析器
+     * @return 按行顺序排列的解析结果
+     */
+    public static <R> List<R> readLines(Path path, Supplier<LineParser<R>> parserFactory) throws IOException {
+        return readLines(path, parserFactory, DEFAULT_CHUNK_SIZE);
+    }
+
+    public static <R> List<R> readLines(Path path, Supplier<LineParser<R>> parserFactory,
+                                        int chunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            int chunkCount = (int) Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+
+            List<List<R>> chunkResults = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                chunkResults.add(null);
+            }
+            IntStream.range(0, chunkCount).parallel().forEach(chunkIndex -> {
+                long from = (long) chunkIndex * chunkSize;
+                long to = Math.min(fileSize, from + chunkSize);
+                try {
+                    chunkResults.set(chunkIndex, readChunk(channel, fileSize, from, to, parserFactory.get()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            int total = chunkResults.stream().mapToInt(List::size).sum();
+            List<R> results = new ArrayList<>(total);
+            chunkResults.forEach(results::addAll);
+            return results;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 解析起始位置位于[from, to)的所有行，最后一行可以越过to
+     */
+    private static <R> List<R> readChunk(FileChannel channel, long fileSize, long from, long to,
+                                         LineParser<R> parser) throws IOException {
+        // 多映射一个字节用于判断分块起始位置是否恰好是行首
+        long mapStart = from == 0 ? 0 : from - 1;
+        long tailSize = TAIL_SIZE;
+        while (true) {
+            long mapEnd = Math.min(fileSize, to + tailSize);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            List<R> results = new ArrayList<>();
+            if (parseLines(buffer, (int) (from - mapStart), (int) (to - mapStart), mapEnd == fileSize, parser, results)) {
+                return results;
+            }
+            // 最后一行超出了额外映射的范围，扩大映射范围后重新解析本分块
+            tailSize *= 4;
+        }
+    }
+
+    /**
+     * @return 最后一行是否完整地落在了映射范围内
+     */
+    private static <R> boolean parseLines(MappedByteBuffer buffer, int from, int to, boolean reachEof,
+                                          LineParser<R> parser, List<R> results) {
+        int limit = buffer.limit();
+        int lineStart = from;
+        if (from > 0 && buffer.get(from - 1) != '\n') {
+            // 分块起始位置位于上一个分块的最后一行中间，跳到下一行行首
+            while (lineStart < limit && buffer.get(lineStart) != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+
+        ByteCursor cursor = new ByteCursor(buffer);
+        while (lineStart < to && lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == limit && !reachEof) {
+                return false;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            if (contentEnd > lineStart) {
+                try {
+                    R result = parser.parse(cursor.reset(lineStart, contentEnd), lineStart, contentEnd);
+                    if (result != null) {
+                        results.add(result);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("无法解析的行：" + cursor.substring(lineStart, contentEnd), e);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return true;
+    }
+
+    /**
+     * 读取点文件，每一行的前两列分别为经度和纬度
+     *
+     * @param path      文件路径
+     * @param delimiter 列分隔符
+     * @return 坐标列表
+     */
+    public static List<Coordinate> readPoints(Path path, char delimiter) throws IOException {
+        return readLines(path, () -> (cursor, from, to) -> {
+            double x = cursor.nextDouble();
+            if (!cursor.skip(delimiter)) {
+                throw new IllegalArgumentException("缺少纬度列");
+            }
+            double y = cursor.nextDouble();
+            return new Coordinate(x, y);
+        });
+    }
+
+    /**
+     * 读取WKT文件，WKT位于每一行的第column列（从0开始）
+     *
+     * @param path      文件路径
+     * @param factory   几何工厂
+     * @param delimiter 列分隔符
+     * @param column    WKT所在的列
+     * @return 几何列表
+     */
+    public static List<Geometry> readWkt(Path path, GeometryFactory factory, char delimiter, int column) throws IOException {
+        return readLines(path, () -> {
+            WktByteParser wktParser = new WktByteParser(factory);
+            return (cursor, from, to) -> {
+                for (int i = 0; i < column; i++) {
+                    cursor.skipColumn(delimiter);
+                }
+                return wktParser.read(cursor, cursor.position(), cursor.indexOf(delimiter));
+            };
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path pointPath = Paths.get(Objects.requireNonNull(FastTextReader.class.getResource("/points.txt")).toURI());
+        long startTime = System.currentTimeMillis();
+        List<Coordinate> points = readPoints(pointPath, ',');
+        System.out.println("点数量：" + points.size() + "，读取耗时毫秒：" + (System.currentTimeMillis() - startTime) + "ms");
+
+        Path polygonPath = Paths.get(Objects.requireNonNull(FastTextReader.class.getResource("/polygons.txt")).toURI());
+        startTime = System.currentTimeMillis();
+        List<Geometry> polygons = readWkt(polygonPath, new GeometryFactory(), '\t', 0);
+        System.out.println("面数量：" + polygons.size() + "，读取耗时毫秒：" + (System.currentTimeMillis() - startTime) + "ms");
+    }
+}
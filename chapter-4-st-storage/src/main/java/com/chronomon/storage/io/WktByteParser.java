@@ -0,0 +1,185 @@
+package com.chronomon.storage.io;
+
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WKT字节解析器：直接将字节流中的二维WKT解析为坐标数组并构建几何，不产生中间字符串
+ * <p>
+ * 支持POINT、LINESTRING、POLYGON及其MULTI类型；
+ * 其余情况（EMPTY、三维/带M值坐标、GEOMETRYCOLLECTION等）回退到{@link WKTReader}。
+ * 该类不是线程安全的，每个解析线程应使用独立的实例
+ *
+ * @author yuzisheng
+ * @date 2026-10-19
+ */
+public class WktByteParser {
+
+    private final GeometryFactory factory;
+
+    private final WKTReader fallbackReader;
+
+    /**
+     * 可复用的坐标缓冲区：依次存放x,y
+     */
+    private double[] ordinates = new double[64];
+
+    public WktByteParser(GeometryFactory factory) {
+        this.factory = factory;
+        this.fallbackReader = new WKTReader(factory);
+    }
+
+    /**
+     * 解析位于[from, to)范围内的WKT几何对象
+     *
+     * @param cursor 字节游标
+     * @param from   WKT的起始位置
+     * @param to     WKT的结束位置（不包含）
+     * @return 几何对象
+     */
+    public Geometry read(ByteCursor cursor, int from, int to) throws ParseException {
+        try {
+            Geometry geometry = readTagged(cursor.reset(from, to));
+            if (geometry != null) {
+                return geometry;
+            }
+        } catch (RuntimeException ignored) {
+            // 快速路径无法处理，交给WKTReader给出准确的结果或错误信息
+        }
+        return fallbackReader.read(cursor.substring(from, to));
+    }
+
+    private Geometry readTagged(ByteCursor cursor) {
+        String type = cursor.nextWord();
+        if (!cursor.skip('(')) {
+            // EMPTY、Z/M等修饰符都回退处理
+            return null;
+        }
+        switch (type) {
+            case "POINT": {
+                int count = readCoordinates(cursor);
+                return count == 1 ? factory.createPoint(toCoordinates(1)[0]) : null;
+            }
+            case "LINESTRING":
+                return factory.createLineString(toCoordinates(readCoordinates(cursor)));
+            case "POLYGON":
+                return readPolygonBody(cursor);
+            case "MULTIPOINT": {
+                List<Point> points = new ArrayList<>();
+                do {
+                    boolean wrapped = cursor.skip('(');
+                    if (readCoordinateTuple(cursor, 0)) {
+                        return null;
+                    }
+                    if (wrapped && !cursor.skip(')')) {
+                        return null;
+                    }
+                    points.add(factory.createPoint(toCoordinates(1)[0]));
+                } while (cursor.skip(','));
+                return cursor.skip(')') ? factory.createMultiPoint(points.toArray(new Point[0])) : null;
+            }
+            case "MULTILINESTRING": {
+                List<LineString> lines = new ArrayList<>();
+                do {
+                    if (!cursor.skip('(')) {
+                        return null;
+                    }
+                    lines.add(factory.createLineString(toCoordinates(readCoordinates(cursor))));
+                } while (cursor.skip(','));
+                return cursor.skip(')') ? factory.createMultiLineString(lines.toArray(new LineString[0])) : null;
+            }
+            case "MULTIPOLYGON": {
+                List<Polygon> polygons = new ArrayList<>();
+                do {
+                    if (!cursor.skip('(')) {
+                        return null;
+                    }
+                    Polygon polygon = readPolygonBody(cursor);
+                    if (polygon == null) {
+                        return null;
+                    }
+                    polygons.add(polygon);
+                } while (cursor.skip(','));
+                return cursor.skip(')') ? factory.createMultiPolygon(polygons.toArray(new Polygon[0])) : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 解析多边形的环列表，调用前已经消费了多边形的左括号
+     */
+    private Polygon readPolygonBody(ByteCursor cursor) {
+        LinearRing shell = null;
+        List<LinearRing> holes = new ArrayList<>();
+        do {
+            if (!cursor.skip('(')) {
+                return null;
+            }
+            LinearRing ring = factory.createLinearRing(toCoordinates(readCoordinates(cursor)));
+            if (shell == null) {
+                shell = ring;
+            } else {
+                holes.add(ring);
+            }
+        } while (cursor.skip(','));
+        if (!cursor.skip(')')) {
+            return null;
+        }
+        return factory.createPolygon(shell, holes.toArray(new LinearRing[0]));
+    }
+
+    /**
+     * 解析以逗号分隔的坐标序列直到右括号，调用前已经消费了左括号
+     *
+     * @return 坐标数量
+     */
+    private int readCoordinates(ByteCursor cursor) {
+        int count = 0;
+        do {
+            if (readCoordinateTuple(cursor, count)) {
+                throw new IllegalArgumentException("不支持的坐标维度");
+            }
+            count++;
+        } while (cursor.skip(','));
+        if (!cursor.skip(')')) {
+            throw new IllegalArgumentException("坐标序列没有闭合");
+        }
+        return count;
+    }
+
+    /**
+     * 解析一个二维坐标并存入缓冲区
+     *
+     * @return 是否出现了第三个维度
+     */
+    private boolean readCoordinateTuple(ByteCursor cursor, int index) {
+        ensureCapacity(index + 1);
+        ordinates[index * 2] = cursor.nextDouble();
+        ordinates[index * 2 + 1] = cursor.nextDouble();
+        cursor.skipWhitespace();
+        int next = cursor.peek();
+        return next != ',' && next != ')';
+    }
+
+    private void ensureCapacity(int coordinateCount) {
+        if (coordinateCount * 2 > ordinates.length) {
+            double[] expanded = new double[Math.max(ordinates.length * 2, coordinateCount * 2)];
+            System.arraycopy(ordinates, 0, expanded, 0, ordinates.length);
+            ordinates = expanded;
+        }
+    }
+
+    private Coordinate[] toCoordinates(int count) {
+        Coordinate[] coordinates = new Coordinate[count];
+        for (int i = 0; i < count; i++) {
+            coordinates[i] = new Coordinate(ordinates[i * 2], ordinates[i * 2 + 1]);
+        }
+        return coordinates;
+    }
+}
@@ -1,5 +1,6 @@
 package com.chronomon.analysis.trajectory.compress;
 
+import com.chronomon.analysis.trajectory.model.ColumnarTrajectory;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.io.WKTReader;
@@ -25,9 +26,106 @@ public class TrajectoryCompress {
         return (LineString) DouglasPeuckerSimplifier.simplify(lineString, distanceTolerance);
     }
 
+    /**
+     * 直接在列式轨迹上进行道格拉斯扑克压缩，与{@link #compress(LineString, double)}保留相同的点，同时保留时间戳
+     *
+     * @param trajectory        列式轨迹
+     * @param distanceTolerance 距离阈值（与坐标单位一致）
+     * @return 压缩后的轨迹，没有点被移除时返回原轨迹
+     */
+    public static ColumnarTrajectory compress(ColumnarTrajectory trajectory, double distanceTolerance) {
+        int numPoints = trajectory.getNumPoints();
+        boolean[] reserved = new boolean[numPoints];
+        reserved[0] = true;
+        reserved[numPoints - 1] = true;
+
+        // 用栈代替递归，栈中依次存放待处理区间的起点和终点
+        int[] stack = new int[2 * numPoints];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = numPoints - 1;
+        int reservedCount = 2;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            int maxIndex = -1;
+            double maxDistance = -1.0;
+            for (int i = start + 1; i < end; i++) {
+                double distance = pointToSegment(trajectory, i, start, end);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    maxIndex = i;
+                }
+            }
+            if (maxIndex > 0 && maxDistance > distanceTolerance) {
+                reserved[maxIndex] = true;
+                reservedCount++;
+                stack[top++] = start;
+                stack[top++] = maxIndex;
+                stack[top++] = maxIndex;
+                stack[top++] = end;
+            }
+        }
+
+        if (reservedCount == numPoints) {
+            return trajectory;
+        }
+        double[] lngs = new double[reservedCount];
+        double[] lats = new double[reservedCount];
+        long[] times = new long[reservedCount];
+        int position = 0;
+        for (int i = 0; i < numPoints; i++) {
+            if (reserved[i]) {
+                lngs[position] = trajectory.getLng(i);
+                lats[position] = trajectory.getLat(i);
+                times[position] = trajectory.getTime(i);
+                position++;
+            }
+        }
+        return new ColumnarTrajectory(trajectory.getOid(), lngs, lats, times);
+    }
+
+    /**
+     * 点到线段的平面距离
+     *
+     * @see org.locationtech.jts.algorithm.Distance#pointToSegment
+     */
+    private static double pointToSegment(ColumnarTrajectory trajectory, int index, int start, int end) {
+        double x = trajectory.getLng(index), y = trajectory.getLat(index);
+        double ax = trajectory.getLng(start), ay = trajectory.getLat(start);
+        double bx = trajectory.getLng(end), by = trajectory.getLat(end);
+        double dx = bx - ax, dy = by - ay;
+        double lengthSquare = dx * dx + dy * dy;
+        if (lengthSquare == 0) {
+            return Math.hypot(x - ax, y - ay);
+        }
+        double r = ((x - ax) * dx + (y - ay) * dy) / lengthSquare;
+        if (r <= 0.0) {
+            return Math.hypot(x - ax, y - ay);
+        }
+        if (r >= 1.0) {
+            return Math.hypot(x - bx, y - by);
+        }
+        double s = ((ay - y) * dx - (ax - x) * dy) / lengthSquare;
+        return Math.abs(s) * Math.sqrt(lengthSquare);
+    }
+
     public static void main(String[] args) throws Exception {
         WKTReader wktReader = new WKTReader();
         LineString lineString = (LineString) wktReader.read("LINESTRING(10 60,12 46,15 36,23 29,28 34,30 46,30 56,27 66,26 76,30 85,34 87,40 78,42 72,43 60,44 51,46 38,46 26,49 17,58 11,63 24,61 38,60 55,59 67,58 82,64 90,68 91,79 89,84 82,85 70,83 60,80 50,79 36,82 26,86 20,94 17,113 15,127 19,133 28,134 40,134 53,131 62,124 72,116 76,105 77,99 73,94 63,95 50,102 41,111 34,123 42,122 53,116 61,109 64,106 58)");
         System.out.println(compress(lineString, 15.0)); // 54 points to 12 points
+
+        // 列式轨迹的压缩结果与几何压缩一致，并且保留了每个点的时间戳
+        int numPoints = lineString.getNumPoints();
+        double[] lngs = new double[numPoints];
+        double[] lats = new double[numPoints];
+        long[] times = new long[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            lngs[i] = lineString.getCoordinateN(i).getX();
+            lats[i] = lineString.getCoordinateN(i).getY();
+            times[i] = i * 1000L;
+        }
+        ColumnarTrajectory compressed = compress(new ColumnarTrajectory("oid", lngs, lats, times), 15.0);
+        System.out.println(compressed.getLineString() + "，时间戳：" + compressed.getTime(compressed.getNumPoints() - 1)); // 12 points
     }
 }
@@ -1,5 +1,6 @@
 package com.chronomon.analysis.trajectory.filter;
 
+import com.chronomon.analysis.trajectory.model.ColumnarTrajectory;
 import com.chronomon.analysis.trajectory.model.GpsPoint;
 import com.chronomon.analysis.trajectory.model.Trajectory;
 import org.locationtech.jts.geom.LineString;
@@ -38,16 +39,30 @@ public class TrajNoiseFilter {
     }
 
     public List<Trajectory> filter(Trajectory trajectory) {
+        List<ColumnarTrajectory> cleanTrajectoryList = filter(ColumnarTrajectory.fromTrajectory(trajectory));
+        if (cleanTrajectoryList.size() == 1 && cleanTrajectoryList.get(0).getNumPoints() == trajectory.getNumPoints()) {
+            // 没有检测到噪点，返回原始轨迹
+            return Collections.singletonList(trajectory);
+        }
+        List<Trajectory> result = new ArrayList<>(cleanTrajectoryList.size());
+        for (ColumnarTrajectory cleanTrajectory : cleanTrajectoryList) {
+            result.add(cleanTrajectory.toTrajectory());
+        }
+        return result;
+    }
+
+    /**
+     * 直接在列式轨迹上去噪，有效子轨迹是原始轨迹的视图，只有跨越噪点拼接的轨迹才会复制数组
+     */
+    public List<ColumnarTrajectory> filter(ColumnarTrajectory trajectory) {
         // 检测并标记可疑的Segment
-        int currIndex = 0;
+        int numPoints = trajectory.getNumPoints();
         List<Integer> tags = new ArrayList<>();
-        while (currIndex < trajectory.getNumPoints() - 1) {
-            double speed = trajectory.getGpsPoint(currIndex).speedInMeterPerSec(trajectory.getGpsPoint(currIndex + 1));
-            if (speed > maxSpeedInMeterPerSec) {
+        for (int currIndex = 0; currIndex < numPoints - 1; currIndex++) {
+            if (trajectory.speedInMeterPerSec(currIndex, currIndex + 1) > maxSpeedInMeterPerSec) {
                 // 当前GPS点和下一个GPS速度超过阈值，打上标签
                 tags.add(currIndex);
             }
-            currIndex++;
         }
 
         if (tags.isEmpty()) {
@@ -56,41 +71,57 @@ public class TrajNoiseFilter {
         }
 
         // 剔除噪点
-        tags.add(trajectory.getNumPoints() - 1); // 为了包含最后一段轨迹
-        List<Trajectory> cleanTrajectoryList = new ArrayList<>();
-        List<GpsPoint> reservedGpsList = new ArrayList<>();
+        tags.add(numPoints - 1); // 为了包含最后一段轨迹
+        List<ColumnarTrajectory> cleanTrajectoryList = new ArrayList<>();
+        List<int[]> reservedRanges = new ArrayList<>();
         int from = 0;
         for (Integer tag : tags) {
             int to = tag + 1;
             if (to - from > MAX_NOISE_POINT_NUM) {
                 // 是一段有效子轨迹，否则认为是噪点
-                List<GpsPoint> validGpsList = trajectory.getSortedGpsList().subList(from, to);
-                if (reservedGpsList.isEmpty()) {
-                    reservedGpsList.addAll(validGpsList);
-                } else {
-                    GpsPoint tail = reservedGpsList.get(reservedGpsList.size() - 1);
-                    if (tail.getTime().equals(trajectory.getGpsPoint(from - 1).getTime())) {
-                        // 如果tag前后的两段轨迹都不属于噪点，则认为该tag是一个误检测，不进行轨迹切分
-                        reservedGpsList.addAll(validGpsList);
-                    } else if (tail.speedInMeterPerSec(validGpsList.get(0)) <= maxSpeedInMeterPerSec) {
-                        // 前后两段有效轨迹衔接处的速度小于阈值，则可将两段轨迹连接起来，不进行轨迹切分
-                        reservedGpsList.addAll(validGpsList);
-                    } else {
-                        // 前后两段有效轨迹衔接处的速度大于阈值，要进行轨迹切分
-                        cleanTrajectoryList.add(new Trajectory(trajectory.getOid(), reservedGpsList));
-                        reservedGpsList = new ArrayList<>(validGpsList);
+                if (!reservedRanges.isEmpty()) {
+                    int tailIndex = reservedRanges.get(reservedRanges.size() - 1)[1] - 1;
+                    if (trajectory.getTime(tailIndex) != trajectory.getTime(from - 1)
+                            && trajectory.speedInMeterPerSec(tailIndex, from) > maxSpeedInMeterPerSec) {
+                        // 前后两段有效轨迹衔接处的速度大于阈值，要进行轨迹切分；
+                        // 否则tag前后的两段轨迹都不属于噪点（误检测），或者衔接处的速度小于阈值，可将两段轨迹连接起来
+                        cleanTrajectoryList.add(merge(trajectory, reservedRanges));
+                        reservedRanges = new ArrayList<>();
                     }
                 }
+                reservedRanges.add(new int[]{from, to});
             }
             from = to;
         }
-        if (reservedGpsList.size() > 0) {
-            cleanTrajectoryList.add(new Trajectory(trajectory.getOid(), reservedGpsList));
+        if (!reservedRanges.isEmpty()) {
+            cleanTrajectoryList.add(merge(trajectory, reservedRanges));
         }
 
         return cleanTrajectoryList;
     }
 
+    /**
+     * 合并保留下来的有效子轨迹：首尾相接的子轨迹合并为同一个视图，不相接的子轨迹再复制拼接
+     *
+     * @param trajectory 原始轨迹
+     * @param ranges     有效子轨迹在原始轨迹中的下标范围[from, to)
+     */
+    private static ColumnarTrajectory merge(ColumnarTrajectory trajectory, List<int[]> ranges) {
+        List<ColumnarTrajectory> pieces = new ArrayList<>(ranges.size());
+        int from = ranges.get(0)[0];
+        int to = ranges.get(0)[1];
+        for (int i = 1; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            if (range[0] != to) {
+                pieces.add(trajectory.subTrajectory(from, to));
+                from = range[0];
+            }
+            to = range[1];
+        }
+        pieces.add(trajectory.subTrajectory(from, to));
+        return ColumnarTrajectory.concat(pieces);
+    }
+
     public static void main(String[] args) throws Exception {
         List<GpsPoint> gpsList = readGpsPoint();
         TrajNoiseFilter noiseFilter = new TrajNoiseFilter(10.0);
@@ -0,0 +1,100 @@
+package com.chronomon.analysis.trajectory.flink;
+
+import com.chronomon.analysis.trajectory.mapmatch.MapMatchMetrics;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.MetricGroup;
+
+/**
+ * 将地图匹配的度量注册为Flink指标，位于子任务指标组下的mapmatch分组中
+ * <p>
+ * 计数器按子任务累加；耗时以纳秒累加，除以对应的次数即为平均耗时；
+ * 每次状态转移的最短路径搜索耗时另外记录为直方图（最近1000次，微秒），用于观察长尾
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class FlinkMapMatchMetrics implements MapMatchMetrics {
+
+    private static final int HISTOGRAM_WINDOW_SIZE = 1000;
+
+    private final Counter fixCount;
+
+    private final Counter candidateCount;
+
+    private final Counter candidateSearchTimeInNs;
+
+    private final Counter transitionCount;
+
+    private final Counter evaluationCount;
+
+    private final Counter routingCount;
+
+    private final Counter settledCount;
+
+    private final Counter routingTimeInNs;
+
+    private final Histogram routingTimeInUs;
+
+    private final Counter stuckCount;
+
+    private final Counter mustPassCommitCount;
+
+    private final Counter forcedCommitCount;
+
+    private final Counter backtrackTimeInNs;
+
+    public FlinkMapMatchMetrics(MetricGroup parentGroup) {
+        MetricGroup group = parentGroup.addGroup("mapmatch");
+        this.fixCount = group.counter("fixCount");
+        this.candidateCount = group.counter("candidateCount");
+        this.candidateSearchTimeInNs = group.counter("candidateSearchTimeNs");
+        this.transitionCount = group.counter("transitionCount");
+        this.evaluationCount = group.counter("transitionEvaluationCount");
+        this.routingCount = group.counter("routingCount");
+        this.settledCount = group.counter("settledNodeCount");
+        this.routingTimeInNs = group.counter("routingTimeNs");
+        this.routingTimeInUs = group.histogram("routingTimeUs", new SlidingWindowHistogram(HISTOGRAM_WINDOW_SIZE));
+        this.stuckCount = group.counter("stuckCount");
+        this.mustPassCommitCount = group.counter("mustPassCommitCount");
+        this.forcedCommitCount = group.counter("forcedCommitCount");
+        this.backtrackTimeInNs = group.counter("backtrackTimeNs");
+    }
+
+    @Override
+    public void onCandidateSearch(int candidateCount, long costInNs) {
+        this.fixCount.inc();
+        this.candidateCount.inc(candidateCount);
+        this.candidateSearchTimeInNs.inc(costInNs);
+    }
+
+    @Override
+    public void onTransition(int evaluationCount, long routingCount, long settledCount, long routingTimeInNs) {
+        this.transitionCount.inc();
+        this.evaluationCount.inc(evaluationCount);
+        this.routingCount.inc(routingCount);
+        this.settledCount.inc(settledCount);
+        this.routingTimeInNs.inc(routingTimeInNs);
+        this.routingTimeInUs.update(routingTimeInNs / 1000);
+    }
+
+    @Override
+    public void onStuck() {
+        stuckCount.inc();
+    }
+
+    @Override
+    public void onMustPassCommit() {
+        mustPassCommitCount.inc();
+    }
+
+    @Override
+    public void onForcedCommit() {
+        forcedCommitCount.inc();
+    }
+
+    @Override
+    public void onBacktrack(long costInNs) {
+        backtrackTimeInNs.inc(costInNs);
+    }
+}
@@ -0,0 +1,124 @@
+package com.chronomon.analysis.trajectory.flink;
+
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import org.apache.flink.api.common.eventtime.SerializableTimestampAssigner;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于事件时间定时器的GPS数据流排序
+ * <p>
+ * 1. 每个对象的GPS点按时间戳缓存在键控状态中，同一时间戳的GPS点按到达顺序保存在一起
+ * 2. 每个时间戳注册一个事件时间定时器，水位线越过该时间戳时立即输出对应的GPS点，同一对象的定时器按时间顺序触发，因此输出有序
+ * 3. 每个GPS点最多等待乱序容忍时间，而不是等到整个窗口结束，也不需要把窗口内的GPS点复制到列表中排序
+ * 4. 时间戳不晚于当前水位线的GPS点已经无法排到正确的位置，写入迟到数据的侧输出流，未指定侧输出流时丢弃
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class GpsStreamReorderFunction extends KeyedProcessFunction<String, GpsPoint, GpsPoint> {
+
+    /**
+     * 迟到GPS点的侧输出流，为null时丢弃迟到的GPS点
+     */
+    private final OutputTag<GpsPoint> lateGpsPointTag;
+
+    /**
+     * 时间戳（毫秒）到该时刻GPS点的映射
+     */
+    private transient MapState<Long, List<GpsPoint>> bufferState;
+
+    public GpsStreamReorderFunction() {
+        this(null);
+    }
+
+    public GpsStreamReorderFunction(OutputTag<GpsPoint> lateGpsPointTag) {
+        this.lateGpsPointTag = lateGpsPointTag;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        MapStateDescriptor<Long, List<GpsPoint>> bufferDesc = new MapStateDescriptor<>("gpsBuffer",
+                Types.LONG, Types.LIST(Types.GENERIC(GpsPoint.class)));
+        bufferState = getRuntimeContext().getMapState(bufferDesc);
+    }
+
+    @Override
+    public void processElement(GpsPoint gpsPoint,
+                               KeyedProcessFunction<String, GpsPoint, GpsPoint>.Context context,
+                               Collector<GpsPoint> collector) throws Exception {
+        long eventTime = gpsPoint.getTime().getTime();
+        if (eventTime <= context.timerService().currentWatermark()) {
+            // 同一时刻之前的GPS点已经输出，迟到的GPS点无法再排序
+            if (lateGpsPointTag != null) {
+                context.output(lateGpsPointTag, gpsPoint);
+            }
+            return;
+        }
+
+        List<GpsPoint> gpsPointList = bufferState.get(eventTime);
+        if (gpsPointList == null) {
+            gpsPointList = new ArrayList<>(1);
+            // 同一时间戳只需要注册一次定时器
+            context.timerService().registerEventTimeTimer(eventTime);
+        }
+        gpsPointList.add(gpsPoint);
+        bufferState.put(eventTime, gpsPointList);
+    }
+
+    @Override
+    public void onTimer(long timestamp,
+                        KeyedProcessFunction<String, GpsPoint, GpsPoint>.OnTimerContext context,
+                        Collector<GpsPoint> collector) throws Exception {
+        List<GpsPoint> gpsPointList = bufferState.get(timestamp);
+        if (gpsPointList != null) {
+            gpsPointList.forEach(collector::collect);
+            bufferState.remove(timestamp);
+        }
+    }
+
+    /**
+     * 对GPS实时数据流按照时间排序，每个GPS点的额外延迟不超过乱序容忍时间
+     *
+     * @param rawGpsStream     原始数据流
+     * @param maxWaitTimeInSec 乱序容忍时间(秒)，即水位线落后于最大时间戳的时长
+     * @return 排序后的数据流
+     */
+    public static DataStream<GpsPoint> sort(DataStream<GpsPoint> rawGpsStream, long maxWaitTimeInSec) {
+        return sort(rawGpsStream, maxWaitTimeInSec, null);
+    }
+
+    /**
+     * 对GPS实时数据流按照时间排序，迟到的GPS点写入侧输出流，通过{@link SingleOutputStreamOperator#getSideOutput}获取
+     *
+     * @param rawGpsStream     原始数据流
+     * @param maxWaitTimeInSec 乱序容忍时间(秒)，即水位线落后于最大时间戳的时长
+     * @param lateGpsPointTag  迟到GPS点的侧输出流，为null时丢弃迟到的GPS点
+     * @return 排序后的数据流
+     */
+    public static SingleOutputStreamOperator<GpsPoint> sort(DataStream<GpsPoint> rawGpsStream, long maxWaitTimeInSec,
+                                                           OutputTag<GpsPoint> lateGpsPointTag) {
+        WatermarkStrategy<GpsPoint> strategy = WatermarkStrategy
+                .<GpsPoint>forBoundedOutOfOrderness(Duration.ofSeconds(maxWaitTimeInSec))
+                .withTimestampAssigner(
+                        (SerializableTimestampAssigner<GpsPoint>) (gpsPoint, l) -> gpsPoint.getTime().getTime()
+                );
+
+        return rawGpsStream.assignTimestampsAndWatermarks(strategy)
+                .keyBy((KeySelector<GpsPoint, String>) GpsPoint::getOid)
+                .process(new GpsStreamReorderFunction(lateGpsPointTag));
+    }
+}
@@ -16,6 +16,12 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
+/**
+ * 基于滚动事件时间窗口的GPS数据流排序，每个GPS点要等到所在窗口结束才输出，额外延迟最长可达窗口大小
+ *
+ * @deprecated 使用{@link GpsStreamReorderFunction#sort(DataStream, long)}代替，延迟只受乱序容忍时间限制
+ */
+@Deprecated
 public class GpsStreamSortFunction extends ProcessWindowFunction<GpsPoint, GpsPoint, String, TimeWindow> {
 
     @Override
@@ -0,0 +1,115 @@
+package com.chronomon.analysis.trajectory.flink;
+
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.HistogramStatistics;
+
+import java.util.Arrays;
+
+/**
+ * 保留最近N个取值的直方图，只依赖flink-metrics-core的公开接口
+ * <p>
+ * 取值写入环形数组，覆盖最早的取值；统计时复制一份排序后的快照，分位数按最近秩计算
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+class SlidingWindowHistogram implements Histogram {
+
+    private final long[] values;
+
+    /**
+     * 累计写入的取值数量
+     */
+    private long count = 0;
+
+    SlidingWindowHistogram(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("直方图的窗口大小必须大于0");
+        }
+        this.values = new long[windowSize];
+    }
+
+    @Override
+    public synchronized void update(long value) {
+        values[(int) (count % values.length)] = value;
+        count++;
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public HistogramStatistics getStatistics() {
+        long[] snapshot;
+        synchronized (this) {
+            snapshot = Arrays.copyOf(values, (int) Math.min(count, values.length));
+        }
+        Arrays.sort(snapshot);
+        return new SortedStatistics(snapshot);
+    }
+
+    private static final class SortedStatistics extends HistogramStatistics {
+
+        private final long[] sortedValues;
+
+        private SortedStatistics(long[] sortedValues) {
+            this.sortedValues = sortedValues;
+        }
+
+        @Override
+        public double getQuantile(double quantile) {
+            if (sortedValues.length == 0) {
+                return 0.0;
+            }
+            int rank = (int) Math.ceil(quantile * sortedValues.length);
+            return sortedValues[Math.min(Math.max(rank - 1, 0), sortedValues.length - 1)];
+        }
+
+        @Override
+        public long[] getValues() {
+            return Arrays.copyOf(sortedValues, sortedValues.length);
+        }
+
+        @Override
+        public int size() {
+            return sortedValues.length;
+        }
+
+        @Override
+        public double getMean() {
+            if (sortedValues.length == 0) {
+                return 0.0;
+            }
+            double sum = 0.0;
+            for (long value : sortedValues) {
+                sum += value;
+            }
+            return sum / sortedValues.length;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (sortedValues.length < 2) {
+                return 0.0;
+            }
+            double mean = getMean();
+            double sum = 0.0;
+            for (long value : sortedValues) {
+                sum += (value - mean) * (value - mean);
+            }
+            return Math.sqrt(sum / (sortedValues.length - 1));
+        }
+
+        @Override
+        public long getMax() {
+            return sortedValues.length == 0 ? 0L : sortedValues[sortedValues.length - 1];
+        }
+
+        @Override
+        public long getMin() {
+            return sortedValues.length == 0 ? 0L : sortedValues[0];
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.chronomon.analysis.trajectory.flink;
 
+import com.chronomon.analysis.trajectory.mapmatch.FixedLagViterbi;
 import com.chronomon.analysis.trajectory.mapmatch.HmmMapMatcher;
 import com.chronomon.analysis.trajectory.mapmatch.MapMatchTrajectory;
 import com.chronomon.analysis.trajectory.mapmatch.project.ProjectCluster;
 import com.chronomon.analysis.trajectory.mapmatch.transfer.ClusterLinkNode;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.ShortestPathCache;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.TransitionBound;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
 import com.chronomon.analysis.trajectory.road.RoadNetworkHolder;
+import com.chronomon.analysis.trajectory.road.RoadNetworkSnapshot;
 import com.chronomon.analysis.trajectory.road.RoadSegment;
 import com.chronomon.analysis.trajectory.model.GpsPoint;
 import org.apache.flink.api.common.state.ValueState;
@@ -15,6 +20,9 @@ import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
 import org.apache.flink.util.Collector;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,35 +32,131 @@ public class TrajMapMatchFunction extends KeyedProcessFunction<String, GpsPoint,
 
     private final String rnCacheKey;
 
+    /**
+     * 随函数序列化的路段，以分布式缓存文件加载路网时为null
+     */
     private final List<RoadSegment> roadSegmentList;
 
+    /**
+     * 路网快照在分布式缓存中注册的名称，由路段构建路网时为null
+     */
+    private final String snapshotName;
+
     private final double searchDistInM;
 
+    /**
+     * 固定延迟解码的最大延迟，不大于0时使用原有的输出方式
+     */
+    private final int maxLag;
+
+    /**
+     * 是否在同一TaskManager的子任务之间共享最短路径缓存，默认关闭
+     */
+    private final boolean useShortestPathCache;
+
     private transient ValueState<ClusterLinkNode> recentState;
 
+    private transient ValueState<FixedLagViterbi> decoderState;
+
     private transient HmmMapMatcher hmmMapMatcher;
 
     public TrajMapMatchFunction(String rnCacheKey, List<RoadSegment> roadSegmentList, double searchDistInM) {
+        this(rnCacheKey, roadSegmentList, searchDistInM, 0);
+    }
+
+    /**
+     * @param maxLag 大于0时使用固定延迟的在线维特比解码，每个对象最多保留maxLag + 1个GPS点的投影点簇
+     */
+    public TrajMapMatchFunction(String rnCacheKey, List<RoadSegment> roadSegmentList, double searchDistInM,
+                                int maxLag) {
+        this(rnCacheKey, roadSegmentList, searchDistInM, maxLag, false);
+    }
+
+    /**
+     * @param maxLag               大于0时使用固定延迟的在线维特比解码
+     * @param useShortestPathCache 是否共享最短路径缓存，对象之间重复经过相同路段的场景（例如公交、固定线路）命中率高，
+     *                             其他场景下缓存占用内存且有锁竞争，默认关闭
+     */
+    public TrajMapMatchFunction(String rnCacheKey, List<RoadSegment> roadSegmentList, double searchDistInM,
+                                int maxLag, boolean useShortestPathCache) {
+        this(rnCacheKey, roadSegmentList, null, searchDistInM, maxLag, useShortestPathCache);
+    }
+
+    private TrajMapMatchFunction(String rnCacheKey, List<RoadSegment> roadSegmentList, String snapshotName,
+                                 double searchDistInM, int maxLag, boolean useShortestPathCache) {
         this.rnCacheKey = rnCacheKey;
         this.roadSegmentList = roadSegmentList;
+        this.snapshotName = snapshotName;
         this.searchDistInM = searchDistInM;
+        this.maxLag = maxLag;
+        this.useShortestPathCache = useShortestPathCache;
+    }
+
+    /**
+     * 由分布式缓存中的路网快照加载路网，函数本身只携带快照的名称和摘要
+     *
+     * @param snapshotName 快照文件在分布式缓存中注册的名称
+     * @param contentHash  快照内容的摘要，同一TaskManager中摘要相同的路网只加载一次
+     * @param maxLag       大于0时使用固定延迟的在线维特比解码
+     */
+    public static TrajMapMatchFunction fromSnapshot(String snapshotName, String contentHash, double searchDistInM,
+                                                    int maxLag) {
+        return fromSnapshot(snapshotName, contentHash, searchDistInM, maxLag, false);
+    }
+
+    /**
+     * 由分布式缓存中的路网快照加载路网，并指定是否共享最短路径缓存
+     *
+     * @param useShortestPathCache 是否共享最短路径缓存
+     */
+    public static TrajMapMatchFunction fromSnapshot(String snapshotName, String contentHash, double searchDistInM,
+                                                    int maxLag, boolean useShortestPathCache) {
+        return new TrajMapMatchFunction(contentHash, null, snapshotName, searchDistInM, maxLag, useShortestPathCache);
     }
 
     @Override
     public void open(Configuration parameters) {
-        ValueStateDescriptor<ClusterLinkNode> recentDesc = new ValueStateDescriptor<>("recent", ClusterLinkNode.class);
-        recentState = getRuntimeContext().getState(recentDesc);
-        hmmMapMatcher = new HmmMapMatcher(RoadNetworkHolder.getRoadNetwork(roadSegmentList, rnCacheKey), searchDistInM);
+        if (maxLag > 0) {
+            ValueStateDescriptor<FixedLagViterbi> decoderDesc = new ValueStateDescriptor<>("decoder", FixedLagViterbi.class);
+            decoderState = getRuntimeContext().getState(decoderDesc);
+        } else {
+            ValueStateDescriptor<ClusterLinkNode> recentDesc = new ValueStateDescriptor<>("recent", ClusterLinkNode.class);
+            recentState = getRuntimeContext().getState(recentDesc);
+        }
+        RoadNetwork roadNetwork;
+        if (snapshotName != null) {
+            File snapshotFile = getRuntimeContext().getDistributedCache().getFile(snapshotName);
+            roadNetwork = RoadNetworkHolder.getRoadNetwork(snapshotFile.toPath(), rnCacheKey);
+        } else {
+            roadNetwork = RoadNetworkHolder.getRoadNetwork(roadSegmentList, rnCacheKey);
+        }
+        hmmMapMatcher = new HmmMapMatcher(roadNetwork, searchDistInM, TransitionBound.DEFAULT, null,
+                shortestPathCacheOf(roadNetwork));
+        hmmMapMatcher.setMetrics(new FlinkMapMatchMetrics(getRuntimeContext().getMetricGroup()));
     }
 
     @Override
     public void processElement(GpsPoint gpsPoint,
                                KeyedProcessFunction<String, GpsPoint, MapMatchTrajectory>.Context context,
                                Collector<MapMatchTrajectory> collector) throws Exception {
+        RoadNetwork currentNetwork = RoadNetworkHolder.peekRoadNetwork(rnCacheKey);
+        if (currentNetwork != null && currentNetwork != hmmMapMatcher.rn) {
+            // 路网通过RoadNetworkHolder.update发布了新版本，从下一个GPS点开始在新版本上匹配，
+            // 已经缓存的投影点簇仍然引用旧版本的路段，被删除的路段在新版本中不可达
+            hmmMapMatcher = hmmMapMatcher.withRoadNetwork(currentNetwork, shortestPathCacheOf(currentNetwork));
+        }
+        if (maxLag > 0) {
+            // 固定延迟解码：只输出已经确定的路径，已输出的节点随即释放
+            FixedLagViterbi decoder = decoderState.value();
+            if (decoder == null) {
+                decoder = new FixedLagViterbi(gpsPoint.getOid(), maxLag);
+            }
+            decoder.add(hmmMapMatcher, gpsPoint).forEach(collector::collect);
+            decoderState.update(decoder);
+            return;
+        }
 
-
-        Optional<ProjectCluster> candidatePointOpt =
-                ProjectCluster.searchCandidatePoint(gpsPoint, hmmMapMatcher.rn, searchDistInM);
+        Optional<ProjectCluster> candidatePointOpt = hmmMapMatcher.searchCandidatePoint(gpsPoint);
         if (!candidatePointOpt.isPresent()) {
             return;
         }
@@ -60,7 +164,7 @@ public class TrajMapMatchFunction extends KeyedProcessFunction<String, GpsPoint,
         ClusterLinkNode prevNode = recentState.value();
         ClusterLinkNode currNode = new ClusterLinkNode(candidatePointOpt.get());
         currNode.connect(prevNode);
-        currNode.mapMatch(hmmMapMatcher.rn, hmmMapMatcher.hmmProbability);
+        hmmMapMatcher.transfer(currNode);
 
         if (!currNode.hasPrev()) {
             // 说明currNode是第一个节点
@@ -77,6 +181,7 @@ public class TrajMapMatchFunction extends KeyedProcessFunction<String, GpsPoint,
             currNode.setPrevNode(null);
         } else if (prevNode.projectCluster.mustPassIndex != -1) {
             // 前置节点中存在必经投影点，将前置节点之前的所有缓存内容输出
+            hmmMapMatcher.getMetrics().onMustPassCommit();
             List<MapMatchTrajectory> matchedPaths = hmmMapMatcher.buildMatchedTrajectory(oid, prevNode);
             matchedPaths.forEach(collector::collect);
             // 清空缓存(断开链表方便垃圾回收)
@@ -97,6 +202,10 @@ public class TrajMapMatchFunction extends KeyedProcessFunction<String, GpsPoint,
         }
     }
 
+    private ShortestPathCache shortestPathCacheOf(RoadNetwork roadNetwork) {
+        return useShortestPathCache ? ShortestPathCache.shared(roadNetwork, rnCacheKey) : null;
+    }
+
     public static DataStream<MapMatchTrajectory> mapMatch(DataStream<GpsPoint> gpsPointStream,
                                                           List<RoadSegment> roadSegmentList,
                                                           double searchDistInM) {
@@ -106,4 +215,40 @@ public class TrajMapMatchFunction extends KeyedProcessFunction<String, GpsPoint,
                 .keyBy((KeySelector<GpsPoint, String>) GpsPoint::getOid)
                 .process(new TrajMapMatchFunction(rnCacheKey, roadSegmentList, searchDistInM));
     }
+
+    /**
+     * 以固定延迟的在线维特比解码执行地图匹配，每个对象的状态大小与轨迹长度无关
+     *
+     * @param maxLag 最大延迟，即每个对象最多保留的待定GPS点数量
+     */
+    public static DataStream<MapMatchTrajectory> mapMatch(DataStream<GpsPoint> gpsPointStream,
+                                                          List<RoadSegment> roadSegmentList,
+                                                          double searchDistInM, int maxLag) {
+
+        String rnCacheKey = RoadNetworkHolder.generateKey();
+        return gpsPointStream
+                .keyBy((KeySelector<GpsPoint, String>) GpsPoint::getOid)
+                .process(new TrajMapMatchFunction(rnCacheKey, roadSegmentList, searchDistInM, maxLag));
+    }
+
+    /**
+     * 以路网快照执行地图匹配：快照注册为Flink的分布式缓存文件，由TaskManager在部署任务前拉取到本地，
+     * 作业图中不再包含路网几何，提交和部署的开销与路网大小无关
+     *
+     * @param snapshotPath 由{@link RoadNetworkSnapshot#write}生成的本地快照文件，提交作业时上传并分发到各个TaskManager
+     * @param maxLag       大于0时使用固定延迟的在线维特比解码
+     */
+    public static DataStream<MapMatchTrajectory> mapMatch(DataStream<GpsPoint> gpsPointStream,
+                                                          Path snapshotPath,
+                                                          double searchDistInM, int maxLag) throws IOException {
+
+        // 以内容摘要作为缓存键，TaskManager中各个子任务拿到的本地副本路径不同，但只加载一次
+        String contentHash = RoadNetworkSnapshot.contentHash(snapshotPath);
+        String snapshotName = "road-network-" + contentHash;
+        gpsPointStream.getExecutionEnvironment()
+                .registerCachedFile(snapshotPath.toAbsolutePath().toUri().toString(), snapshotName);
+        return gpsPointStream
+                .keyBy((KeySelector<GpsPoint, String>) GpsPoint::getOid)
+                .process(fromSnapshot(snapshotName, contentHash, searchDistInM, maxLag));
+    }
 }
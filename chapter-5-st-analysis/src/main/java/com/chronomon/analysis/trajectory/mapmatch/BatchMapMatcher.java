@@ -0,0 +1,455 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.mapmatch.project.ProjectPoint;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.ClusterLinkNode;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * 批量地图匹配器：在固定大小的线程池中并行匹配多条轨迹
+ * <p>
+ * 1. 路网构造完成后只读，{@link HmmMapMatcher}为每个线程维护独立的最短路径计算器，因此所有线程共享同一个匹配器
+ * 2. 集合形式的输入按输入顺序返回匹配结果
+ * 3. 流形式的输入限制同时在途的轨迹数量，匹配结果在工作线程中回调，回调函数需要是线程安全的
+ * 4. 很长的单条轨迹可以切分成相互重叠的窗口并行匹配，在重叠区内两个窗口的维特比路径一致的位置拼接
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class BatchMapMatcher implements AutoCloseable {
+
+    private final HmmMapMatcher mapMatcher;
+
+    private final int parallelism;
+
+    private final ExecutorService executor;
+
+    public BatchMapMatcher(HmmMapMatcher mapMatcher, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("并行度必须大于0");
+        }
+        this.mapMatcher = mapMatcher;
+        this.parallelism = parallelism;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "map-match-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 并行匹配一批轨迹
+     *
+     * @param trajectories 原始轨迹
+     * @return 每条轨迹的匹配结果，顺序与输入一致
+     */
+    public List<List<MapMatchTrajectory>> mapMatch(Collection<Trajectory> trajectories) {
+        List<Future<List<MapMatchTrajectory>>> futureList = new ArrayList<>(trajectories.size());
+        for (Trajectory trajectory : trajectories) {
+            futureList.add(executor.submit(() -> mapMatcher.mapMatch(trajectory)));
+        }
+
+        return getAll(futureList);
+    }
+
+    private static <T> List<T> getAll(List<Future<T>> futureList) {
+        List<T> resultList = new ArrayList<>(futureList.size());
+        try {
+            for (Future<T> future : futureList) {
+                resultList.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futureList.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("批量地图匹配被中断", e);
+        } catch (ExecutionException e) {
+            futureList.forEach(future -> future.cancel(true));
+            throw new RuntimeException("轨迹地图匹配失败", e.getCause());
+        }
+        return resultList;
+    }
+
+    /**
+     * 分窗并行匹配一条很长的轨迹
+     * <p>
+     * 1. 第k个窗口覆盖GPS点[k * windowSize - overlapSize, (k + 1) * windowSize + overlapSize)，各窗口独立投影、计算状态转移并标记维特比路径
+     * 2. 相邻窗口在重叠区内，从窗口分界处向两侧寻找两个窗口选择了同一投影点、且左窗口末尾的幸存路径都已汇合到该投影点的GPS点，
+     * 左窗口保留到该点，右窗口从下一个点开始，以左窗口的概率值重新计算状态转移（包括是否中断），
+     * 直到重新计算的结果与右窗口原来的结果只相差一个常数（见{@link HmmMapMatcher#relinkWindow}），之后的节点沿用右窗口的计算。
+     * 幸存路径汇合后该点的投影点不再受之后GPS点的影响，拼接后的状态转移与串行匹配只相差概率值上的一个常数。
+     * 常数差带来的舍入误差可能改变概率完全相等的候选（例如双向路两个方向上同一位置的投影点）之间的取舍，
+     * 这时投影点相同而途经坐标的顺序不同、路径长度相同，取舍不同的前置投影点也可能使个别分段在不同的位置断开
+     * 3. 重叠区内找不到一致的位置时，在左窗口之后串行继续计算右窗口的GPS点，再与下一个窗口拼接
+     * 4. 拼接完成后从最后一个节点整体回溯一次，得到与{@link HmmMapMatcher#mapMatch(Trajectory)}形式相同的结果
+     *
+     * @param trajectory  原始轨迹
+     * @param windowSize  窗口的长度（GPS点数量），必须大于重叠长度的两倍
+     * @param overlapSize 相邻窗口各自向对方延伸的GPS点数量
+     * @return 匹配到路网上的路径；轨迹不超过一个窗口时与串行匹配相同
+     */
+    public List<MapMatchTrajectory> mapMatch(Trajectory trajectory, int windowSize, int overlapSize) {
+        if (overlapSize < 1 || windowSize <= 2 * overlapSize) {
+            throw new IllegalArgumentException("重叠长度必须大于0，窗口长度必须大于重叠长度的两倍");
+        }
+        List<GpsPoint> gpsPointList = trajectory.getSortedGpsList();
+        int windowCount = (gpsPointList.size() + windowSize - 1) / windowSize;
+        if (windowCount < 2) {
+            return mapMatcher.mapMatch(trajectory);
+        }
+
+        List<Future<ClusterLinkNode[]>> futureList = new ArrayList<>(windowCount);
+        for (int k = 0; k < windowCount; k++) {
+            int from = Math.max(0, k * windowSize - overlapSize);
+            int to = Math.min(gpsPointList.size(), (k + 1) * windowSize + overlapSize);
+            futureList.add(executor.submit(() -> mapMatcher.projectWindow(gpsPointList, from, to)));
+        }
+        List<ClusterLinkNode[]> windowList = getAll(futureList);
+
+        ClusterLinkNode[] leftNodes = windowList.get(0);
+        int leftFrom = 0;
+        for (int k = 1; k < windowCount; k++) {
+            ClusterLinkNode[] rightNodes = windowList.get(k);
+            int rightFrom = k * windowSize - overlapSize;
+            int stitchIndex = findStitchIndex(leftNodes, leftFrom, rightNodes, rightFrom, k * windowSize);
+            if (stitchIndex >= 0) {
+                mapMatcher.relinkWindow(rightNodes, rightFrom, leftNodes[stitchIndex - leftFrom], stitchIndex + 1);
+                leftNodes = rightNodes;
+                leftFrom = rightFrom;
+            } else {
+                leftNodes = mapMatcher.extendWindow(leftNodes, leftFrom, gpsPointList, leftFrom + leftNodes.length,
+                        rightFrom + rightNodes.length, rightFrom);
+            }
+        }
+
+        ClusterLinkNode lastNode = null;
+        for (ClusterLinkNode node : leftNodes) {
+            lastNode = node == null ? lastNode : node;
+        }
+        if (lastNode == null) {
+            return Collections.emptyList();
+        }
+        return mapMatcher.buildMatchedTrajectory(trajectory.getOid(), lastNode);
+    }
+
+    /**
+     * 从窗口分界处向两侧交替查找两个窗口标记了同一投影点、左窗口的幸存路径已经汇合、且右窗口在该点之后还有节点的GPS点
+     *
+     * @return GPS点在轨迹中的位置，找不到时返回-1
+     */
+    private static int findStitchIndex(ClusterLinkNode[] leftNodes, int leftFrom, ClusterLinkNode[] rightNodes,
+                                       int rightFrom, int boundary) {
+        int leftTo = leftFrom + leftNodes.length;
+        for (int distance = 0; boundary - distance >= rightFrom || boundary + distance < leftTo; distance++) {
+            for (int index : new int[]{boundary + distance, boundary - distance - 1}) {
+                if (index < rightFrom || index >= leftTo) {
+                    continue;
+                }
+                ClusterLinkNode leftNode = leftNodes[index - leftFrom];
+                ClusterLinkNode rightNode = rightNodes[index - rightFrom];
+                if (leftNode != null && rightNode != null && rightNode.hasNext() &&
+                        isSameProjectPoint(markedPoint(leftNode), markedPoint(rightNode)) && isConverged(leftNode)) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 左窗口末尾所有投影点的幸存路径是否都经过该节点的标记投影点，是则无论之后的GPS点如何，该节点的投影点都不会再改变；
+     * 之后遇到匹配中断时，中断前的路径只由中断前的节点决定，同样不会再改变
+     */
+    private static boolean isConverged(ClusterLinkNode node) {
+        ClusterLinkNode endNode = node;
+        while (endNode.hasNext()) {
+            if (endNode.next().projectCluster.isStuck) {
+                return true;
+            }
+            endNode = endNode.next();
+        }
+
+        Set<Integer> survivorSet = new HashSet<>();
+        List<ProjectPoint> endPoints = endNode.projectCluster.projectPointList;
+        for (int i = 0; i < endPoints.size(); i++) {
+            if (endPoints.get(i).getMetric() > Double.NEGATIVE_INFINITY) {
+                survivorSet.add(i);
+            }
+        }
+        for (ClusterLinkNode currNode = endNode; currNode != node; currNode = currNode.prev()) {
+            Set<Integer> prevSet = new HashSet<>();
+            for (int index : survivorSet) {
+                prevSet.add(currNode.projectCluster.getProjectPoint(index).getPrevIndex());
+            }
+            survivorSet = prevSet;
+        }
+        return survivorSet.size() == 1 && survivorSet.contains(node.projectCluster.markedIndex);
+    }
+
+    private static ProjectPoint markedPoint(ClusterLinkNode node) {
+        return node.projectCluster.getProjectPoint(node.projectCluster.markedIndex);
+    }
+
+    private static boolean isSameProjectPoint(ProjectPoint point1, ProjectPoint point2) {
+        return point1.roadSegment == point2.roadSegment && point1.offsetDistInM == point2.offsetDistInM;
+    }
+
+    /**
+     * 并行匹配轨迹流，同时在途的轨迹数量不超过并行度的两倍，轨迹流可以是无界的
+     * <p>
+     * 某条轨迹匹配失败、轨迹流抛出异常、任务提交失败或者调用线程被中断时，尚未开始的轨迹不再匹配，
+     * 方法等待已经开始的轨迹完成后才抛出异常，因此方法返回或抛出异常之后不会再调用consumer
+     *
+     * @param trajectoryStream 原始轨迹流
+     * @param consumer         匹配结果的回调函数，在工作线程中调用，调用顺序与输入顺序无关
+     */
+    public void mapMatch(Stream<Trajectory> trajectoryStream,
+                         BiConsumer<Trajectory, List<MapMatchTrajectory>> consumer) {
+        int maxInFlight = 2 * parallelism;
+        Semaphore permits = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        // 调用线程已经取得、但还没有交给任务的许可数量
+        int heldPermits = 0;
+        boolean completed = false;
+        try {
+            for (Trajectory trajectory : (Iterable<Trajectory>) trajectoryStream::iterator) {
+                if (failure.get() != null) {
+                    break;
+                }
+                permits.acquire();
+                heldPermits = 1;
+                executor.execute(() -> {
+                    try {
+                        if (!stopped.get()) {
+                            consumer.accept(trajectory, mapMatcher.mapMatch(trajectory));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        stopped.set(true);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                heldPermits = 0;
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("批量地图匹配被中断", e);
+        } finally {
+            if (!completed) {
+                stopped.set(true);
+            }
+            // 取回所有许可，即等待在途的轨迹全部完成
+            permits.acquireUninterruptibly(maxInFlight - heldPermits);
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("轨迹地图匹配失败", failure.get());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 统计并行度从1增加到CPU核数时的匹配吞吐量（条轨迹/秒），并校验并行匹配的结果与串行一致
+     */
+    public static void main(String[] args) {
+        int size = 100;
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        Random random = new Random(11);
+        List<Trajectory> trajectoryList = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            trajectoryList.add(SyntheticRoadNetwork.randomWalk(size, SyntheticRoadNetwork.DEFAULT_SPACING,
+                    40, 3, 10, 0.00008, random, "oid" + i));
+        }
+
+        HmmMapMatcher mapMatcher = new HmmMapMatcher(rn, 50.0);
+        List<Integer> expectedPoints = new ArrayList<>();
+        for (Trajectory trajectory : trajectoryList) {
+            expectedPoints.add(countPoints(mapMatcher.mapMatch(trajectory)));
+        }
+
+        int maxParallelism = Runtime.getRuntime().availableProcessors();
+        double baseThroughput = 0.0;
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism = nextParallelism(parallelism, maxParallelism)) {
+            try (BatchMapMatcher batchMapMatcher = new BatchMapMatcher(mapMatcher, parallelism)) {
+                // 预热每个工作线程的最短路径计算器
+                batchMapMatcher.mapMatch(trajectoryList);
+
+                long startTime = System.nanoTime();
+                List<List<MapMatchTrajectory>> resultList = batchMapMatcher.mapMatch(trajectoryList);
+                double throughput = trajectoryList.size() / ((System.nanoTime() - startTime) / 1e9);
+                if (parallelism == 1) {
+                    baseThroughput = throughput;
+                }
+
+                boolean consistent = true;
+                for (int i = 0; i < resultList.size(); i++) {
+                    consistent &= countPoints(resultList.get(i)) == expectedPoints.get(i);
+                }
+                System.out.printf("并行度%d：%.0f条轨迹/秒，加速比%.2f，结果与串行%s%n", parallelism, throughput,
+                        throughput / baseThroughput, consistent ? "一致" : "不一致");
+            }
+        }
+
+        mapMatchLongTrajectory(maxParallelism);
+    }
+
+    /**
+     * 模拟一条10万个GPS点的长途货车轨迹，对比串行匹配与分窗并行匹配的耗时、逐点的投影点、
+     * 分段的起止时间以及相邻投影点之间途经的坐标
+     * <p>
+     * 并行度为1时的耗时即分窗匹配的总计算量，CPU核数大于1时再以CPU核数的并行度测量加速比
+     */
+    private static void mapMatchLongTrajectory(int parallelism) {
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(200, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        TrajectorySimulator simulator = new TrajectorySimulator(rn, 20.0, 10, 10.0, 0.02, 5);
+        Trajectory trajectory = simulator.simulate("truck", 100000, new Random(23)).trajectory;
+        HmmMapMatcher mapMatcher = new HmmMapMatcher(rn, 50.0);
+
+        // 预热
+        mapMatcher.mapMatch(trajectory);
+        long startTime = System.nanoTime();
+        List<MapMatchTrajectory> expectedList = mapMatcher.mapMatch(trajectory);
+        long serialTime = System.nanoTime() - startTime;
+        System.out.printf("长轨迹%d个GPS点：串行%dms%n", trajectory.getNumPoints(), serialTime / 1000000);
+
+        for (int windowParallelism : parallelism > 1 ? new int[]{1, parallelism} : new int[]{1}) {
+            try (BatchMapMatcher batchMapMatcher = new BatchMapMatcher(mapMatcher, windowParallelism)) {
+                batchMapMatcher.mapMatch(trajectory, 2000, 100);
+                startTime = System.nanoTime();
+                List<MapMatchTrajectory> windowedList = batchMapMatcher.mapMatch(trajectory, 2000, 100);
+                long windowedTime = System.nanoTime() - startTime;
+
+                Map<Long, Coordinate> expectedMap = projectCoordinates(expectedList);
+                Map<Long, Coordinate> windowedMap = projectCoordinates(windowedList);
+                int sameCount = 0;
+                for (GpsPoint gpsPoint : trajectory.getSortedGpsList()) {
+                    long time = gpsPoint.getTime().getTime();
+                    sameCount += Objects.equals(expectedMap.get(time), windowedMap.get(time)) ? 1 : 0;
+                }
+                System.out.printf("  分窗并行（并行度%d）%dms，加速比%.2f，%d个点（%.3f%%）的投影点与串行一致%n",
+                        windowParallelism, windowedTime / 1000000, (double) serialTime / windowedTime, sameCount,
+                        sameCount * 100.0 / trajectory.getNumPoints());
+                comparePieces(expectedList, windowedList);
+            }
+        }
+        if (parallelism == 1) {
+            System.out.println("  当前环境只有1个CPU核，无法测量多核加速比");
+        }
+    }
+
+    /**
+     * 逐段对比匹配结果：分段数量、起止时间相同的分段数量、途经坐标（包括相邻投影点之间最短路径上的坐标）完全相同的分段数量，
+     * 以及途经坐标不同但路径长度相同的分段数量
+     */
+    private static void comparePieces(List<MapMatchTrajectory> expectedList, List<MapMatchTrajectory> actualList) {
+        Map<Long, MapMatchTrajectory> actualMap = new HashMap<>();
+        for (MapMatchTrajectory actual : actualList) {
+            actualMap.put(actual.getStartTime().getTime(), actual);
+        }
+        int boundaryCount = 0;
+        int pathCount = 0;
+        int sameLengthCount = 0;
+        for (MapMatchTrajectory expected : expectedList) {
+            MapMatchTrajectory actual = actualMap.get(expected.getStartTime().getTime());
+            if (actual == null || !actual.getEndTime().equals(expected.getEndTime())) {
+                continue;
+            }
+            boundaryCount++;
+            List<GpsPoint> expectedPath = expected.getMatchedPath();
+            List<GpsPoint> actualPath = actual.getMatchedPath();
+            boolean samePath = expectedPath.size() == actualPath.size();
+            for (int i = 0; samePath && i < expectedPath.size(); i++) {
+                samePath = expectedPath.get(i).getGeom().getCoordinate().equals2D(actualPath.get(i).getGeom().getCoordinate())
+                        && Objects.equals(expectedPath.get(i).getTime(), actualPath.get(i).getTime());
+            }
+            if (samePath) {
+                pathCount++;
+            } else if (Math.abs(pathLengthInM(expectedPath) - pathLengthInM(actualPath)) < 1e-6) {
+                sameLengthCount++;
+            }
+        }
+        System.out.printf("  分段：串行%d段，分窗%d段，起止时间一致%d段，途经坐标一致%d段，坐标不同但路径长度相同%d段%n",
+                expectedList.size(), actualList.size(), boundaryCount, pathCount, sameLengthCount);
+    }
+
+    private static double pathLengthInM(List<GpsPoint> path) {
+        double lengthInM = 0.0;
+        for (int i = 1; i < path.size(); i++) {
+            lengthInM += path.get(i - 1).distInMeter(path.get(i));
+        }
+        return lengthInM;
+    }
+
+    /**
+     * @return GPS点的时间（毫秒）到投影点坐标的映射
+     */
+    private static Map<Long, Coordinate> projectCoordinates(List<MapMatchTrajectory> matchedList) {
+        Map<Long, Coordinate> projectMap = new HashMap<>();
+        for (MapMatchTrajectory matched : matchedList) {
+            for (GpsPoint gpsPoint : matched.getMatchedPath()) {
+                if (gpsPoint.getTime() != null) {
+                    projectMap.put(gpsPoint.getTime().getTime(), gpsPoint.getGeom().getCoordinate());
+                }
+            }
+        }
+        return projectMap;
+    }
+
+    private static int nextParallelism(int parallelism, int maxParallelism) {
+        if (parallelism == maxParallelism) {
+            return parallelism + 1;
+        }
+        return Math.min(parallelism * 2, maxParallelism);
+    }
+
+    private static int countPoints(List<MapMatchTrajectory> matchedList) {
+        int pointCount = 0;
+        for (MapMatchTrajectory matched : matchedList) {
+            pointCount += matched.toTrajectory().getNumPoints();
+        }
+        return pointCount;
+    }
+}
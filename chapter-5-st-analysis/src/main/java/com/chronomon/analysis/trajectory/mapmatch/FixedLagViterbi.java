@@ -0,0 +1,307 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.mapmatch.project.ProjectCluster;
+import com.chronomon.analysis.trajectory.mapmatch.project.ProjectPoint;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.ClusterLinkNode;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * 固定延迟的在线维特比解码：逐个接收单个对象的GPS点，只在链表中保留尚未确定的节点
+ * <p>
+ * 1. 从最后一个节点的所有投影点出发回溯，当所有幸存路径汇合到同一个投影点时，汇合点及之前的路径不会再变化，
+ * 将汇合点标记为必经投影点并输出之前的路径，结果与离线匹配完全一致
+ * 2. 待定节点超过最大延迟时，取当前概率最大的路径在最大延迟处的投影点强制提交，
+ * 并剔除之后与该投影点不相连的投影点，保证后续回溯不会与已输出的路径冲突
+ * 3. 当前节点与前置节点不连通时，前置节点及之前的路径全部确定
+ * 4. 已输出的节点从链表中断开，每个对象最多保留最大延迟加一个节点，内存为O(最大延迟 × 候选投影点数量)
+ * 5. 相邻两次输出在提交的投影点处衔接，该投影点同时是前一段的终点和后一段的起点
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class FixedLagViterbi {
+
+    private final String oid;
+
+    private final int maxLag;
+
+    /**
+     * 链表的头节点，其投影点已经输出（或者是不连通之后的第一个节点）
+     */
+    private ClusterLinkNode headNode = null;
+
+    private ClusterLinkNode lastNode = null;
+
+    /**
+     * 链表中的节点数量，包含头节点
+     */
+    private int nodeCount = 0;
+
+    /**
+     * 由于幸存路径汇合而提交的次数
+     */
+    private long convergedCommitCount = 0L;
+
+    /**
+     * 由于超过最大延迟而强制提交的次数
+     */
+    private long forcedCommitCount = 0L;
+
+    /**
+     * @param oid    对象ID
+     * @param maxLag 最大延迟，即最多保留的待定节点数量
+     */
+    public FixedLagViterbi(String oid, int maxLag) {
+        if (maxLag < 1) {
+            throw new IllegalArgumentException("最大延迟必须大于0");
+        }
+        this.oid = oid;
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * 接收下一个GPS点，GPS点需要按时间顺序到达
+     *
+     * @param mapMatcher 地图匹配器
+     * @param gpsPoint   GPS点
+     * @return 新确定的匹配结果，没有新确定的路径时返回空列表
+     */
+    public List<MapMatchTrajectory> add(HmmMapMatcher mapMatcher, GpsPoint gpsPoint) {
+        Optional<ProjectCluster> candidatePointOpt = mapMatcher.searchCandidatePoint(gpsPoint);
+        if (!candidatePointOpt.isPresent()) {
+            // 附近没有道路，作为噪点丢弃
+            return Collections.emptyList();
+        }
+
+        ClusterLinkNode currNode = new ClusterLinkNode(candidatePointOpt.get());
+        currNode.connect(lastNode);
+        mapMatcher.transfer(currNode);
+        lastNode = currNode;
+        nodeCount++;
+        if (headNode == null) {
+            headNode = currNode;
+            return Collections.emptyList();
+        }
+
+        if (currNode.projectCluster.isStuck) {
+            // 当前节点与前置节点不连通，前置节点及之前的路径全部确定
+            ClusterLinkNode prevNode = currNode.prev();
+            List<MapMatchTrajectory> matchedPaths = mapMatcher.buildMatchedTrajectory(oid, prevNode);
+            prevNode.setNextNode(null);
+            currNode.setPrevNode(null);
+            headNode = currNode;
+            nodeCount = 1;
+            return matchedPaths;
+        }
+
+        ClusterLinkNode convergedNode = findConvergedNode();
+        if (convergedNode != headNode) {
+            convergedCommitCount++;
+            mapMatcher.getMetrics().onMustPassCommit();
+            return commit(mapMatcher, convergedNode);
+        }
+
+        if (nodeCount - 1 > maxLag) {
+            // 沿当前概率最大的路径回溯最大延迟个节点，强制提交该节点上的投影点
+            ClusterLinkNode forcedNode = lastNode;
+            int forcedIndex = lastNode.projectCluster.bestIndex();
+            for (int i = 0; i < maxLag; i++) {
+                forcedIndex = forcedNode.projectCluster.getProjectPoint(forcedIndex).getPrevIndex();
+                forcedNode = forcedNode.prev();
+            }
+            forcedNode.projectCluster.mustPassIndex = forcedIndex;
+            forcedCommitCount++;
+            mapMatcher.getMetrics().onForcedCommit();
+            return commit(mapMatcher, forcedNode);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 输出剩余的所有待定路径，并清空链表，通常在轨迹结束时调用
+     *
+     * @param mapMatcher 地图匹配器
+     * @return 剩余的匹配结果
+     */
+    public List<MapMatchTrajectory> flush(HmmMapMatcher mapMatcher) {
+        if (lastNode == null) {
+            return Collections.emptyList();
+        }
+        List<MapMatchTrajectory> matchedPaths = mapMatcher.buildMatchedTrajectory(oid, lastNode);
+        headNode = null;
+        lastNode = null;
+        nodeCount = 0;
+        return matchedPaths;
+    }
+
+    /**
+     * @return 链表中当前保留的节点数量
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getConvergedCommitCount() {
+        return convergedCommitCount;
+    }
+
+    public long getForcedCommitCount() {
+        return forcedCommitCount;
+    }
+
+    /**
+     * 从最后一个节点的所有投影点出发回溯，找到最近的一个所有幸存路径都经过同一个投影点的节点，
+     * 并将该投影点标记为必经投影点
+     *
+     * @return 幸存路径汇合的节点，没有汇合时返回头节点
+     */
+    private ClusterLinkNode findConvergedNode() {
+        ClusterLinkNode node = lastNode;
+        int[] survivors = new int[node.projectCluster.projectPointList.size()];
+        for (int i = 0; i < survivors.length; i++) {
+            survivors[i] = i;
+        }
+        int survivorCount = survivors.length;
+        while (node != headNode) {
+            if (survivorCount == 1) {
+                node.projectCluster.mustPassIndex = survivors[0];
+                return node;
+            }
+
+            // 幸存投影点的前置投影点去重之后，就是前置节点上的幸存投影点
+            ClusterLinkNode prevNode = node.prev();
+            boolean[] visited = new boolean[prevNode.projectCluster.projectPointList.size()];
+            int prevCount = 0;
+            for (int i = 0; i < survivorCount; i++) {
+                int prevIndex = node.projectCluster.getProjectPoint(survivors[i]).getPrevIndex();
+                if (!visited[prevIndex]) {
+                    visited[prevIndex] = true;
+                    survivors[prevCount++] = prevIndex;
+                }
+            }
+            survivorCount = prevCount;
+            node = prevNode;
+        }
+        return headNode;
+    }
+
+    /**
+     * 提交节点上的必经投影点：剔除之后与其不相连的投影点，输出头节点到该节点之间的路径，
+     * 再断开该节点之前的链表，该节点成为新的头节点
+     */
+    private List<MapMatchTrajectory> commit(HmmMapMatcher mapMatcher, ClusterLinkNode committedNode) {
+        prune(committedNode, committedNode.projectCluster.mustPassIndex);
+        List<MapMatchTrajectory> matchedPaths = mapMatcher.buildMatchedTrajectory(oid, committedNode);
+
+        committedNode.prev().setNextNode(null);
+        committedNode.setPrevNode(null);
+        headNode = committedNode;
+        nodeCount = 1;
+        for (ClusterLinkNode node = committedNode; node != lastNode; node = node.next()) {
+            nodeCount++;
+        }
+        return matchedPaths;
+    }
+
+    /**
+     * 将提交节点上的其他投影点，以及之后前置路径不经过提交投影点的投影点的概率设为负无穷，
+     * 后续计算转移概率时不会再选择这些投影点
+     */
+    private static void prune(ClusterLinkNode committedNode, int committedIndex) {
+        List<ProjectPoint> projectPointList = committedNode.projectCluster.projectPointList;
+        boolean[] alive = new boolean[projectPointList.size()];
+        alive[committedIndex] = true;
+        for (int i = 0; i < projectPointList.size(); i++) {
+            if (!alive[i]) {
+                projectPointList.get(i).setMetric(Double.NEGATIVE_INFINITY);
+            }
+        }
+
+        ClusterLinkNode node = committedNode.next();
+        while (node != null) {
+            projectPointList = node.projectCluster.projectPointList;
+            boolean[] nextAlive = new boolean[projectPointList.size()];
+            for (int i = 0; i < projectPointList.size(); i++) {
+                ProjectPoint projectPoint = projectPointList.get(i);
+                nextAlive[i] = alive[projectPoint.getPrevIndex()];
+                if (!nextAlive[i]) {
+                    projectPoint.setMetric(Double.NEGATIVE_INFINITY);
+                }
+            }
+            alive = nextAlive;
+            node = node.next();
+        }
+    }
+
+    /**
+     * 在合成路网的长轨迹上对比离线匹配与不同最大延迟的在线匹配：结果是否一致、最多保留的节点数量和提交方式
+     */
+    public static void main(String[] args) {
+        int size = 60;
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        HmmMapMatcher mapMatcher = new HmmMapMatcher(rn, 50.0);
+        Random random = new Random(11);
+        List<Trajectory> trajectoryList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // 每条轨迹行驶2000条边，约6000个GPS点
+            trajectoryList.add(SyntheticRoadNetwork.randomWalk(size, SyntheticRoadNetwork.DEFAULT_SPACING,
+                    2000, 3, 10, 0.00008, random, "oid" + i));
+        }
+
+        List<List<Coordinate>> expectedList = new ArrayList<>();
+        long startTime = System.nanoTime();
+        for (Trajectory trajectory : trajectoryList) {
+            expectedList.add(coordinates(mapMatcher.mapMatch(trajectory)));
+        }
+        System.out.printf("离线匹配：%dms，每条轨迹保留%d个节点%n", (System.nanoTime() - startTime) / 1_000_000,
+                trajectoryList.get(0).getNumPoints());
+
+        int[] maxLags = {2, 5, 10, 20, 50};
+        for (int maxLag : maxLags) {
+            int maxNodeCount = 0;
+            long convergedCount = 0L;
+            long forcedCount = 0L;
+            int consistentCount = 0;
+            startTime = System.nanoTime();
+            for (int i = 0; i < trajectoryList.size(); i++) {
+                Trajectory trajectory = trajectoryList.get(i);
+                FixedLagViterbi decoder = new FixedLagViterbi(trajectory.getOid(), maxLag);
+                List<MapMatchTrajectory> matchedList = new ArrayList<>();
+                for (GpsPoint gpsPoint : trajectory.getSortedGpsList()) {
+                    HmmMapMatcher.appendMatched(matchedList, decoder.add(mapMatcher, gpsPoint));
+                    maxNodeCount = Math.max(maxNodeCount, decoder.getNodeCount());
+                }
+                HmmMapMatcher.appendMatched(matchedList, decoder.flush(mapMatcher));
+                convergedCount += decoder.getConvergedCommitCount();
+                forcedCount += decoder.getForcedCommitCount();
+                if (coordinates(matchedList).equals(expectedList.get(i))) {
+                    consistentCount++;
+                }
+            }
+            System.out.printf("最大延迟%d：%dms，最多保留%d个节点，汇合提交%d次，强制提交%d次，%d/%d条轨迹与离线结果一致%n",
+                    maxLag, (System.nanoTime() - startTime) / 1_000_000, maxNodeCount, convergedCount, forcedCount,
+                    consistentCount, trajectoryList.size());
+        }
+    }
+
+    private static List<Coordinate> coordinates(List<MapMatchTrajectory> matchedList) {
+        List<Coordinate> coordinateList = new ArrayList<>();
+        for (MapMatchTrajectory matched : matchedList) {
+            coordinateList.add(null);
+            for (GpsPoint gpsPoint : matched.getMatchedPath()) {
+                coordinateList.add(gpsPoint.getGeom().getCoordinate());
+            }
+        }
+        return coordinateList;
+    }
+}
@@ -3,8 +3,13 @@ package com.chronomon.analysis.trajectory.mapmatch;
 import com.chronomon.analysis.trajectory.filter.TrajNoiseFilter;
 import com.chronomon.analysis.trajectory.mapmatch.project.ProjectCluster;
 import com.chronomon.analysis.trajectory.mapmatch.project.ProjectPoint;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.CandidatePruning;
 import com.chronomon.analysis.trajectory.mapmatch.transfer.ClusterLinkNode;
 import com.chronomon.analysis.trajectory.mapmatch.transfer.HmmProbability;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.RoutingContext;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.ShortestPathCache;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.ShortestPathCalculator;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.TransitionBound;
 import com.chronomon.analysis.trajectory.model.CoordinateUtil;
 import com.chronomon.analysis.trajectory.road.DirectionEnum;
 import com.chronomon.analysis.trajectory.road.IRoadSegment;
@@ -12,6 +17,8 @@ import com.chronomon.analysis.trajectory.road.RoadNetwork;
 import com.chronomon.analysis.trajectory.model.GpsPoint;
 import com.chronomon.analysis.trajectory.model.Trajectory;
 import com.chronomon.analysis.trajectory.road.RoadSegment;
+import com.chronomon.analysis.trajectory.road.ch.ContractionHierarchy;
+import com.chronomon.analysis.trajectory.road.ch.ContractionHierarchyQuery;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.io.ParseException;
@@ -22,6 +29,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -48,10 +56,152 @@ public class HmmMapMatcher {
      */
     public final HmmProbability hmmProbability;
 
+    /**
+     * 状态转移的约束，同时决定最短路径搜索的代价上限
+     */
+    public final TransitionBound transitionBound;
+
+    /**
+     * 当前线程的最短路径计算器，默认每个线程持有一个，搜索用的堆和标签数组在多次匹配之间复用
+     */
+    private final Supplier<ShortestPathCalculator> shortestPathCalculator;
+
+    /**
+     * 地图匹配的度量，默认不记录
+     */
+    private volatile MapMatchMetrics metrics = MapMatchMetrics.NOOP;
+
+    /**
+     * 状态转移前的候选剪枝，默认不剪枝
+     */
+    private volatile CandidatePruning candidatePruning = CandidatePruning.NONE;
+
     public HmmMapMatcher(RoadNetwork rn, double searchDistInM) {
+        this(rn, searchDistInM, TransitionBound.DEFAULT);
+    }
+
+    public HmmMapMatcher(RoadNetwork rn, double searchDistInM, TransitionBound transitionBound) {
+        this(rn, searchDistInM, transitionBound, null);
+    }
+
+    /**
+     * @param rn              路网对象
+     * @param searchDistInM   GPS投影点的搜索半径（米）
+     * @param transitionBound 状态转移的约束
+     * @param ch              路网的收缩层次结构，为null时使用Dijkstra搜索计算最短路径
+     */
+    public HmmMapMatcher(RoadNetwork rn, double searchDistInM, TransitionBound transitionBound,
+                         ContractionHierarchy ch) {
+        this(rn, searchDistInM, transitionBound, ch, null);
+    }
+
+    /**
+     * @param rn              路网对象
+     * @param searchDistInM   GPS投影点的搜索半径（米）
+     * @param transitionBound 状态转移的约束
+     * @param ch              路网的收缩层次结构，为null时使用Dijkstra搜索计算最短路径
+     * @param cache           跨轨迹共享的最短路径缓存，为null时不使用缓存
+     */
+    public HmmMapMatcher(RoadNetwork rn, double searchDistInM, TransitionBound transitionBound,
+                         ContractionHierarchy ch, ShortestPathCache cache) {
+        this(ThreadLocal.withInitial(() -> ch == null ?
+                new ShortestPathCalculator(new RoutingContext(rn), cache) :
+                new ShortestPathCalculator(new ContractionHierarchyQuery(ch), cache))::get,
+                rn, searchDistInM, transitionBound);
+    }
+
+    /**
+     * 由调用方提供最短路径计算器，用于多个路网的匹配器共享每个线程的搜索上下文
+     *
+     * @param shortestPathCalculator 返回当前线程在该路网上的最短路径计算器
+     */
+    HmmMapMatcher(Supplier<ShortestPathCalculator> shortestPathCalculator,
+                  RoadNetwork rn, double searchDistInM, TransitionBound transitionBound) {
         this.rn = rn;
         this.searchDistInM = searchDistInM;
         this.hmmProbability = new HmmProbability(searchDistInM);
+        this.transitionBound = transitionBound;
+        this.shortestPathCalculator = shortestPathCalculator;
+    }
+
+    /**
+     * 以新版本的路网创建参数相同的匹配器，度量和候选剪枝随之沿用
+     * <p>
+     * 收缩层次结构的捷径边可能经过任意被修改的路段，无法局部修补，因此新的匹配器使用Dijkstra搜索，
+     * 需要收缩层次结构时应在新版本路网上重新构建，再通过构造函数创建匹配器
+     *
+     * @param newRn 新版本的路网
+     * @param cache 新版本路网的最短路径缓存，为null时不使用缓存
+     */
+    public HmmMapMatcher withRoadNetwork(RoadNetwork newRn, ShortestPathCache cache) {
+        HmmMapMatcher mapMatcher = new HmmMapMatcher(newRn, searchDistInM, transitionBound, null, cache);
+        mapMatcher.setMetrics(metrics);
+        mapMatcher.setCandidatePruning(candidatePruning);
+        return mapMatcher;
+    }
+
+    /**
+     * @return 当前线程的最短路径计算器
+     */
+    public ShortestPathCalculator getShortestPathCalculator() {
+        return shortestPathCalculator.get();
+    }
+
+    public MapMatchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics 地图匹配的度量，为null时不记录
+     */
+    public void setMetrics(MapMatchMetrics metrics) {
+        this.metrics = metrics == null ? MapMatchMetrics.NOOP : metrics;
+    }
+
+    public CandidatePruning getCandidatePruning() {
+        return candidatePruning;
+    }
+
+    /**
+     * @param candidatePruning 状态转移前的候选剪枝，为null时不剪枝
+     */
+    public void setCandidatePruning(CandidatePruning candidatePruning) {
+        this.candidatePruning = candidatePruning == null ? CandidatePruning.NONE : candidatePruning;
+    }
+
+    /**
+     * 搜索GPS点的候选投影点，并记录候选数量和搜索耗时
+     *
+     * @param gpsPoint GPS点
+     * @return 投影点簇，附近没有道路时为空
+     */
+    public Optional<ProjectCluster> searchCandidatePoint(GpsPoint gpsPoint) {
+        long startTime = System.nanoTime();
+        Optional<ProjectCluster> candidatePointOpt = ProjectCluster.searchCandidatePoint(gpsPoint, rn, searchDistInM);
+        metrics.onCandidateSearch(candidatePointOpt.map(cluster -> cluster.projectPointList.size()).orElse(0),
+                System.nanoTime() - startTime);
+        return candidatePointOpt;
+    }
+
+    /**
+     * 计算当前节点与前置节点之间的状态转移，并记录最短路径搜索的开销和匹配断开的次数
+     *
+     * @param currNode 已经与前置节点连接的当前节点
+     */
+    public void transfer(ClusterLinkNode currNode) {
+        ShortestPathCalculator calculator = getShortestPathCalculator();
+        ClusterLinkNode prevNode = currNode.prev();
+        long searchBefore = calculator.getSearchCount();
+        long settledBefore = calculator.getSettledCount();
+        long routingTimeBefore = calculator.getRoutingTimeInNs();
+        currNode.mapMatch(calculator, hmmProbability, transitionBound, candidatePruning);
+        if (prevNode != null) {
+            metrics.onTransition(currNode.getEvaluationCount(), calculator.getSearchCount() - searchBefore,
+                    calculator.getSettledCount() - settledBefore, calculator.getRoutingTimeInNs() - routingTimeBefore);
+            if (currNode.projectCluster.isStuck) {
+                metrics.onStuck();
+            }
+        }
     }
 
     /**
@@ -74,6 +224,78 @@ public class HmmMapMatcher {
         return buildMatchedTrajectory(trajectory.getOid(), lastNode);
     }
 
+    /**
+     * 执行轨迹地图匹配算法，以路段ID序列的形式输出结果，每一段与{@link #mapMatch(Trajectory)}返回的一段路径对应
+     *
+     * @param trajectory 原始的轨迹
+     * @return 匹配到路网上的路线
+     */
+    public List<MatchedRoute> mapMatchRoute(Trajectory trajectory) {
+        ClusterLinkNode lastNode = projectTrajectory(trajectory);
+        if (lastNode == null) {
+            return Collections.emptyList();
+        }
+
+        long startTime = System.nanoTime();
+        ClusterLinkNode currNode = markConfirmProjectPoint(lastNode);
+        List<MatchedRoute> routeList = new ArrayList<>();
+        MatchedRoute.Builder builder = new MatchedRoute.Builder(trajectory.getOid());
+        builder.start(markedPoint(currNode), currNode.projectCluster.gpsPoint.getTime());
+        while (currNode != lastNode && currNode.hasNext()) {
+            ClusterLinkNode nextNode = currNode.next();
+            if (nextNode.projectCluster.isStuck) {
+                if (builder.getFixCount() > 1) {
+                    routeList.add(builder.build());
+                }
+                builder.start(markedPoint(nextNode), nextNode.projectCluster.gpsPoint.getTime());
+            } else {
+                builder.append(markedPoint(currNode), markedPoint(nextNode), nextNode.projectCluster.gpsPoint.getTime());
+            }
+            currNode = nextNode;
+        }
+        if (builder.getFixCount() > 1) {
+            routeList.add(builder.build());
+        }
+        metrics.onBacktrack(System.nanoTime() - startTime);
+        return routeList;
+    }
+
+    private static ProjectPoint markedPoint(ClusterLinkNode node) {
+        return node.projectCluster.getProjectPoint(node.projectCluster.markedIndex);
+    }
+
+    /**
+     * 以固定延迟的在线维特比解码执行地图匹配，链表中最多保留maxLag + 1个节点，适合很长的轨迹
+     * 幸存路径汇合时输出的结果与{@link #mapMatch(Trajectory)}一致，超过最大延迟时强制提交的路径可能不同
+     *
+     * @param trajectory 原始的轨迹
+     * @param maxLag     最大延迟
+     * @return 匹配到路网上的路径
+     */
+    public List<MapMatchTrajectory> mapMatch(Trajectory trajectory, int maxLag) {
+        FixedLagViterbi decoder = new FixedLagViterbi(trajectory.getOid(), maxLag);
+        List<MapMatchTrajectory> matchPathList = new ArrayList<>();
+        for (GpsPoint gpsPoint : trajectory.getSortedGpsList()) {
+            appendMatched(matchPathList, decoder.add(this, gpsPoint));
+        }
+        appendMatched(matchPathList, decoder.flush(this));
+        return matchPathList;
+    }
+
+    /**
+     * 追加在线解码输出的匹配结果，与上一段在同一个投影点处衔接的结果拼接成一段
+     */
+    static void appendMatched(List<MapMatchTrajectory> matchPathList, List<MapMatchTrajectory> matchedPaths) {
+        for (MapMatchTrajectory matched : matchedPaths) {
+            int lastIndex = matchPathList.size() - 1;
+            if (lastIndex >= 0 && matchPathList.get(lastIndex).isFollowedBy(matched)) {
+                matchPathList.set(lastIndex, matchPathList.get(lastIndex).concat(matched));
+            } else {
+                matchPathList.add(matched);
+            }
+        }
+    }
+
     /**
      * 根据隐马尔科夫模型计算出来的概率值，回溯最终预测到的行驶路径
      *
@@ -82,14 +304,30 @@ public class HmmMapMatcher {
      * @return 预测到的车辆行驶路径
      */
     public List<MapMatchTrajectory> buildMatchedTrajectory(String oid, ClusterLinkNode lastNode) {
+        return buildMatchedTrajectory(oid, lastNode, -1);
+    }
+
+    /**
+     * 从最后一个节点的指定投影点开始回溯，用于最后一个节点之后的GPS点在其他路网上继续匹配的情况
+     *
+     * @param lastIndex 最后一个节点上的投影点，为-1时选择概率最大的投影点
+     */
+    List<MapMatchTrajectory> buildMatchedTrajectory(String oid, ClusterLinkNode lastNode, int lastIndex) {
+        long startTime = System.nanoTime();
+        List<MapMatchTrajectory> matchPathList = backtrack(oid, lastNode, lastIndex);
+        metrics.onBacktrack(System.nanoTime() - startTime);
+        return matchPathList;
+    }
+
+    private List<MapMatchTrajectory> backtrack(String oid, ClusterLinkNode lastNode, int lastIndex) {
         // 最优路径回溯，将路径上的投影点标记为必经投影点
-        ClusterLinkNode currNode = markConfirmProjectPoint(lastNode);
+        ClusterLinkNode currNode = markConfirmProjectPoint(lastNode, null, lastIndex);
 
         // 从前到后收集最优路径上的坐标点，形成地图匹配之后的轨迹
         List<MapMatchTrajectory> matchPathList = new ArrayList<>();
         List<GpsPoint> gpsPointList = new ArrayList<>();
         Timestamp startTime = currNode.projectCluster.gpsPoint.getTime();
-        while (currNode.hasNext()) {
+        while (currNode != lastNode && currNode.hasNext()) {
             ClusterLinkNode nextNode = currNode.next();
             if (nextNode.projectCluster.isStuck) {
                 if (gpsPointList.size() > 1) {
@@ -105,23 +343,7 @@ public class HmmMapMatcher {
                 ProjectPoint nextProjectPoint = nextNode.projectCluster.getProjectPoint(nextConfirmedIndex);
                 assert currConfirmedIndex == nextProjectPoint.getPrevIndex();
 
-                if (currentProject.onSameSegmentAndBefore(nextProjectPoint)) {
-                    // 将当前GPS点的时间存储成坐标点的Z值
-                    GpsPoint gpsPoint = new GpsPoint(oid, currentProject.point.getCoordinate());
-                    gpsPoint.setTime(currNode.projectCluster.gpsPoint.getTime());
-                    gpsPointList.add(gpsPoint);
-
-                    // 最短路径上的坐标点没有时间值
-                    IRoadSegment roadSegment = currentProject.roadSegment;
-                    for (int i = currentProject.segmentIndex + 1; i <= nextProjectPoint.segmentIndex; i++) {
-                        gpsPointList.add(new GpsPoint(oid, roadSegment.getCoordinateN(i)));
-                    }
-
-                    // 将下一个GPS点的时间存储成坐标点的Z值
-                    gpsPoint = new GpsPoint(oid, nextProjectPoint.point.getCoordinate());
-                    gpsPoint.setTime(nextNode.projectCluster.gpsPoint.getTime());
-                    gpsPointList.add(gpsPoint);
-                } else {
+                if (!currentProject.onSameSegmentAndBefore(nextProjectPoint)) {
                     List<IRoadSegment> pathSegments = nextProjectPoint.getPathSegments();
                     if (pathSegments == null || pathSegments.isEmpty()) {
                         assert currentProject.roadSegment.getToNode().equals(nextProjectPoint.roadSegment.getFromNode());
@@ -131,20 +353,9 @@ public class HmmMapMatcher {
                             assert pathSegments.get(i).getToNode().geom.getCoordinate().equals(pathSegments.get(i + 1).getFromNode().geom.getCoordinate());
                         }
                     }
-                    // 当前投影点到投影路段终点之间的坐标点，第一个坐标点是GPS的投影点，时间存储在Z中
-                    List<GpsPoint> suffixCoordinateList = currentProject.getSuffixCoordinates()
-                            .stream().map(coordinate -> new GpsPoint(oid, coordinate))
-                            .collect(Collectors.toList());
-                    suffixCoordinateList.get(0).setTime(currNode.projectCluster.gpsPoint.getTime());
-                    gpsPointList.addAll(suffixCoordinateList);
-
-                    // 当前投影路段终点到下一个投影点之间的坐标点，最后一个坐标点是GPS的投影点，时间存储在Z中
-                    List<GpsPoint> prefixCoordinateList = nextProjectPoint.getPrefixCoordinates()
-                            .stream().map(coordinate -> new GpsPoint(oid, coordinate))
-                            .collect(Collectors.toList());
-                    prefixCoordinateList.get(prefixCoordinateList.size() - 1).setTime(nextNode.projectCluster.gpsPoint.getTime());
-                    gpsPointList.addAll(prefixCoordinateList);
                 }
+                appendMatchedPath(gpsPointList, oid, currentProject, currNode.projectCluster.gpsPoint.getTime(),
+                        nextProjectPoint, nextNode.projectCluster.gpsPoint.getTime());
             }
             currNode = nextNode;
         }
@@ -156,19 +367,63 @@ public class HmmMapMatcher {
         return matchPathList;
     }
 
+    /**
+     * 追加相邻两个投影点之间的匹配路径，两端的投影点带有GPS点的时间，中间路段上的坐标点没有时间
+     *
+     * @param gpsPointList     匹配路径
+     * @param currentProject   当前投影点
+     * @param currTime         当前GPS点的时间
+     * @param nextProjectPoint 下一个投影点，不在当前投影点之后的同一路段上时，由其最短路径连接
+     * @param nextTime         下一个GPS点的时间
+     */
+    static void appendMatchedPath(List<GpsPoint> gpsPointList, String oid, ProjectPoint currentProject,
+                                  Timestamp currTime, ProjectPoint nextProjectPoint, Timestamp nextTime) {
+        if (currentProject.onSameSegmentAndBefore(nextProjectPoint)) {
+            // 将当前GPS点的时间存储成坐标点的Z值
+            GpsPoint gpsPoint = new GpsPoint(oid, currentProject.point.getCoordinate());
+            gpsPoint.setTime(currTime);
+            gpsPointList.add(gpsPoint);
+
+            // 最短路径上的坐标点没有时间值
+            IRoadSegment roadSegment = currentProject.roadSegment;
+            for (int i = currentProject.segmentIndex + 1; i <= nextProjectPoint.segmentIndex; i++) {
+                gpsPointList.add(new GpsPoint(oid, roadSegment.getCoordinateN(i)));
+            }
+
+            // 将下一个GPS点的时间存储成坐标点的Z值
+            gpsPoint = new GpsPoint(oid, nextProjectPoint.point.getCoordinate());
+            gpsPoint.setTime(nextTime);
+            gpsPointList.add(gpsPoint);
+        } else {
+            // 当前投影点到投影路段终点之间的坐标点，第一个坐标点是GPS的投影点，时间存储在Z中
+            List<GpsPoint> suffixCoordinateList = currentProject.getSuffixCoordinates()
+                    .stream().map(coordinate -> new GpsPoint(oid, coordinate))
+                    .collect(Collectors.toList());
+            suffixCoordinateList.get(0).setTime(currTime);
+            gpsPointList.addAll(suffixCoordinateList);
+
+            // 当前投影路段终点到下一个投影点之间的坐标点，最后一个坐标点是GPS的投影点，时间存储在Z中
+            List<GpsPoint> prefixCoordinateList = nextProjectPoint.getPrefixCoordinates()
+                    .stream().map(coordinate -> new GpsPoint(oid, coordinate))
+                    .collect(Collectors.toList());
+            prefixCoordinateList.get(prefixCoordinateList.size() - 1).setTime(nextTime);
+            gpsPointList.addAll(prefixCoordinateList);
+        }
+    }
+
     private ClusterLinkNode projectTrajectory(Trajectory trajectory) {
         ClusterLinkNode lastNode = null;
 
         // 投影每个GPS点
         for (GpsPoint gpsPoint : trajectory.getSortedGpsList()) {
             // 计算GPS点的投影点
-            Optional<ProjectCluster> candidatePointOpt = ProjectCluster.searchCandidatePoint(gpsPoint, rn, searchDistInM);
+            Optional<ProjectCluster> candidatePointOpt = searchCandidatePoint(gpsPoint);
             if (candidatePointOpt.isPresent()) {
                 // 建立与最后一个GPS点的链表关系
                 ClusterLinkNode currNode = new ClusterLinkNode(candidatePointOpt.get());
                 currNode.connect(lastNode);
                 // 计算与最后一个GPS之间的最短路径，并计算经过不同投影点的概率
-                currNode.mapMatch(rn, hmmProbability);
+                transfer(currNode);
                 // 当前GPS点变为最后一个GPS点
                 lastNode = currNode;
             }
@@ -178,8 +433,145 @@ public class HmmMapMatcher {
         return lastNode;
     }
 
+    /**
+     * 投影轨迹中[from, to)范围内的GPS点并计算状态转移，得到一个独立的窗口，窗口内按维特比路径标记投影点
+     *
+     * @return 以GPS点在窗口中的位置为下标的链表节点，没有投影点的GPS点为null
+     */
+    ClusterLinkNode[] projectWindow(List<GpsPoint> gpsPointList, int from, int to) {
+        ClusterLinkNode[] nodes = new ClusterLinkNode[to - from];
+        ClusterLinkNode lastNode = null;
+        for (int i = from; i < to; i++) {
+            Optional<ProjectCluster> candidatePointOpt = searchCandidatePoint(gpsPointList.get(i));
+            if (candidatePointOpt.isPresent()) {
+                ClusterLinkNode currNode = new ClusterLinkNode(candidatePointOpt.get());
+                currNode.connect(lastNode);
+                transfer(currNode);
+                nodes[i - from] = currNode;
+                lastNode = currNode;
+            }
+        }
+        markConfirmProjectPoint(lastNode, null);
+        return nodes;
+    }
+
+    /**
+     * 在窗口的链表之后继续投影[from, to)范围内的GPS点，并从新的最后一个节点开始重新标记维特比路径
+     *
+     * @param nodes     窗口的链表节点
+     * @param nodesFrom 窗口第一个GPS点在轨迹中的位置
+     * @param markFrom  重新标记到该位置为止，之前的节点已经与其他窗口拼接，不需要标记
+     * @return 扩展到to之后的窗口
+     */
+    ClusterLinkNode[] extendWindow(ClusterLinkNode[] nodes, int nodesFrom, List<GpsPoint> gpsPointList, int from,
+                                   int to, int markFrom) {
+        ClusterLinkNode[] extendedNodes = Arrays.copyOf(nodes, to - nodesFrom);
+        ClusterLinkNode lastNode = null;
+        for (ClusterLinkNode node : nodes) {
+            if (node != null) {
+                lastNode = node;
+            }
+        }
+        for (int i = from; i < to; i++) {
+            Optional<ProjectCluster> candidatePointOpt = searchCandidatePoint(gpsPointList.get(i));
+            if (candidatePointOpt.isPresent()) {
+                ClusterLinkNode currNode = new ClusterLinkNode(candidatePointOpt.get());
+                currNode.connect(lastNode);
+                transfer(currNode);
+                extendedNodes[i - nodesFrom] = currNode;
+                lastNode = currNode;
+            }
+        }
+        ClusterLinkNode stopNode = null;
+        for (int i = markFrom - nodesFrom; i < extendedNodes.length && stopNode == null; i++) {
+            stopNode = extendedNodes[i];
+        }
+        markConfirmProjectPoint(lastNode, stopNode);
+        return extendedNodes;
+    }
+
+    /**
+     * 把窗口接到前一个窗口的节点之后：从下一个GPS点开始，以前一个窗口的概率值重新搜索投影点并计算状态转移，
+     * 直到重新计算的节点与窗口中原来的节点投影点相同、概率值只相差一个常数，此后窗口内的状态转移和维特比路径都不会再改变，
+     * 原来的后继节点直接接到重新计算的节点之后；最后重新标记窗口的维特比路径
+     *
+     * @param nodes     窗口的链表节点，重新计算的节点替换原来的节点
+     * @param nodesFrom 窗口第一个GPS点在轨迹中的位置
+     * @param prevNode  前一个窗口中的节点
+     * @param from      第一个重新计算的GPS点在轨迹中的位置
+     */
+    void relinkWindow(ClusterLinkNode[] nodes, int nodesFrom, ClusterLinkNode prevNode, int from) {
+        ClusterLinkNode lastNode = prevNode;
+        for (int i = from - nodesFrom; i < nodes.length; i++) {
+            ClusterLinkNode oldNode = nodes[i];
+            if (oldNode == null) {
+                continue;
+            }
+            ClusterLinkNode currNode = new ClusterLinkNode(
+                    searchCandidatePoint(oldNode.projectCluster.gpsPoint).orElseThrow(IllegalStateException::new));
+            currNode.connect(lastNode);
+            transfer(currNode);
+            nodes[i] = currNode;
+            lastNode = currNode;
+            if (oldNode.hasNext() && isEquivalent(currNode.projectCluster, oldNode.projectCluster)) {
+                // 后继节点中投影点的前驱下标指向相同的投影点列表，概率值的常数差不影响之后的比较
+                currNode.projectCluster.mustPassIndex = oldNode.projectCluster.mustPassIndex;
+                oldNode.next().connect(currNode);
+                break;
+            }
+        }
+        ClusterLinkNode windowLastNode = lastNode;
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            if (nodes[i] != null) {
+                windowLastNode = nodes[i];
+                break;
+            }
+        }
+        markConfirmProjectPoint(windowLastNode, prevNode);
+    }
+
+    /**
+     * 两个投影点簇的投影点是否一一相同，且概率值只相差一个常数
+     */
+    private static boolean isEquivalent(ProjectCluster cluster1, ProjectCluster cluster2) {
+        List<ProjectPoint> points1 = cluster1.projectPointList;
+        List<ProjectPoint> points2 = cluster2.projectPointList;
+        if (points1.size() != points2.size()) {
+            return false;
+        }
+        double delta = points1.get(0).getMetric() - points2.get(0).getMetric();
+        for (int i = 0; i < points1.size(); i++) {
+            ProjectPoint point1 = points1.get(i);
+            ProjectPoint point2 = points2.get(i);
+            // 概率值是对数概率的累加，按其量级留出浮点误差
+            double tolerance = 1e-9 * Math.max(1.0, Math.abs(point1.getMetric()));
+            if (point1.roadSegment != point2.roadSegment || point1.offsetDistInM != point2.offsetDistInM
+                    || Math.abs(point1.getMetric() - point2.getMetric() - delta) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private ClusterLinkNode markConfirmProjectPoint(ClusterLinkNode lastNode) {
-        int prevIndex = -1;
+        return markConfirmProjectPoint(lastNode, null);
+    }
+
+    /**
+     * 从最后一个节点开始，沿维特比路径的前驱标记每个节点的投影点
+     *
+     * @param stopNode 标记到该节点为止（包括该节点），为null时标记到链表头部
+     * @return 最后标记的节点
+     */
+    private ClusterLinkNode markConfirmProjectPoint(ClusterLinkNode lastNode, ClusterLinkNode stopNode) {
+        return markConfirmProjectPoint(lastNode, stopNode, -1);
+    }
+
+    /**
+     * @param lastIndex 最后一个节点上标记的投影点，为-1时选择概率最大的投影点
+     */
+    private ClusterLinkNode markConfirmProjectPoint(ClusterLinkNode lastNode, ClusterLinkNode stopNode, int lastIndex) {
+        int prevIndex = lastIndex;
         ClusterLinkNode head = lastNode;
         while (lastNode != null) {
             int confirmedIndex;
@@ -191,6 +583,9 @@ public class HmmMapMatcher {
             lastNode.projectCluster.markedIndex = confirmedIndex;
             prevIndex = lastNode.projectCluster.getProjectPoint(confirmedIndex).getPrevIndex();
             head = lastNode;
+            if (lastNode == stopNode) {
+                break;
+            }
             lastNode = lastNode.prev();
         }
 
@@ -0,0 +1,243 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.mapmatch.TrajectorySimulator.SimulatedTrajectory;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.road.IRoadSegment;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import org.locationtech.jts.algorithm.Distance;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 地图匹配的基准测试：在模拟轨迹上执行匹配，统计吞吐量、单条轨迹的延迟分位数以及相对真实路线的准确率
+ * <p>
+ * 1. 延迟：逐条轨迹单线程匹配的耗时，报告p50、p90、p99和最大值
+ * 2. 覆盖率：匹配结果中包含投影点的GPS点占全部GPS点的比例，噪点被丢弃以及匹配断开都会降低覆盖率
+ * 3. 准确率：投影点位于真实路段上（距离不超过{@link #ON_ROAD_TOLERANCE_IN_M}米）的GPS点占全部GPS点的比例
+ * 4. 位置误差：投影点与真实位置之间的距离，只统计有投影点的GPS点
+ * <p>
+ * 路网、模拟参数和随机种子固定时结果可以复现，修改mapmatch包之后对比前后两次运行的输出即可发现性能或准确率的退化
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class MapMatchBenchmark {
+
+    /**
+     * 判断投影点是否位于真实路段上的距离阈值（米）
+     */
+    public static final double ON_ROAD_TOLERANCE_IN_M = 1.0;
+
+    private static final double METERS_PER_DEGREE = DistanceKernel.EARTH_MEAN_RADIUS_IN_M * Math.PI / 180;
+
+    private final HmmMapMatcher mapMatcher;
+
+    public MapMatchBenchmark(HmmMapMatcher mapMatcher) {
+        this.mapMatcher = mapMatcher;
+    }
+
+    /**
+     * 先匹配若干条轨迹预热，再逐条匹配全部轨迹并统计
+     *
+     * @param simulatedList 模拟的轨迹
+     * @param warmupCount   预热的轨迹数量
+     * @return 统计结果
+     */
+    public Report run(List<SimulatedTrajectory> simulatedList, int warmupCount) {
+        for (int i = 0; i < Math.min(warmupCount, simulatedList.size()); i++) {
+            mapMatcher.mapMatch(simulatedList.get(i).trajectory);
+        }
+
+        MapMatchMetrics originMetrics = mapMatcher.getMetrics();
+        MapMatchStatistics statistics = new MapMatchStatistics();
+        mapMatcher.setMetrics(statistics);
+        long[] latencyInNs = new long[simulatedList.size()];
+        long fixCount = 0L;
+        long matchedCount = 0L;
+        long onRoadCount = 0L;
+        double[] errorInM = new double[simulatedList.stream().mapToInt(s -> s.trajectory.getNumPoints()).sum()];
+        int errorCount = 0;
+        long totalTime = 0L;
+        try {
+            for (int i = 0; i < simulatedList.size(); i++) {
+                SimulatedTrajectory simulated = simulatedList.get(i);
+                long startTime = System.nanoTime();
+                List<MapMatchTrajectory> matchedList = mapMatcher.mapMatch(simulated.trajectory);
+                latencyInNs[i] = System.nanoTime() - startTime;
+                totalTime += latencyInNs[i];
+
+                Map<Long, Coordinate> projectMap = projectCoordinates(matchedList);
+                List<GpsPoint> gpsPointList = simulated.trajectory.getSortedGpsList();
+                for (int n = 0; n < gpsPointList.size(); n++) {
+                    fixCount++;
+                    Coordinate project = projectMap.get(gpsPointList.get(n).getTime().getTime());
+                    if (project == null) {
+                        continue;
+                    }
+                    matchedCount++;
+                    Coordinate trueCoordinate = simulated.getTrueCoordinate(n);
+                    errorInM[errorCount++] = DistanceKernel.haversine(project.x, project.y,
+                            trueCoordinate.x, trueCoordinate.y);
+                    if (distanceToSegmentInM(project, simulated.getTrueSegment(n)) <= ON_ROAD_TOLERANCE_IN_M) {
+                        onRoadCount++;
+                    }
+                }
+            }
+        } finally {
+            mapMatcher.setMetrics(originMetrics);
+        }
+
+        Arrays.sort(latencyInNs);
+        double[] sortedError = Arrays.copyOf(errorInM, errorCount);
+        Arrays.sort(sortedError);
+        return new Report(simulatedList.size(), fixCount, totalTime, latencyInNs, matchedCount, onRoadCount,
+                sortedError, statistics);
+    }
+
+    /**
+     * @return GPS点的时间（毫秒）到投影点坐标的映射
+     */
+    private static Map<Long, Coordinate> projectCoordinates(List<MapMatchTrajectory> matchedList) {
+        Map<Long, Coordinate> projectMap = new HashMap<>();
+        for (MapMatchTrajectory matched : matchedList) {
+            for (GpsPoint gpsPoint : matched.getMatchedPath()) {
+                if (gpsPoint.getTime() != null) {
+                    projectMap.put(gpsPoint.getTime().getTime(), gpsPoint.getGeom().getCoordinate());
+                }
+            }
+        }
+        return projectMap;
+    }
+
+    /**
+     * 以坐标点的纬度做等距圆柱投影，计算坐标点到路段折线的距离（米）
+     */
+    private static double distanceToSegmentInM(Coordinate coordinate, IRoadSegment segment) {
+        double lngScale = METERS_PER_DEGREE * Math.cos(Math.toRadians(coordinate.y));
+        Coordinate point = new Coordinate(0.0, 0.0);
+        double minDist = Double.POSITIVE_INFINITY;
+        Coordinate prev = null;
+        for (int i = 0; i < segment.getNumPoints(); i++) {
+            Coordinate curr = segment.getCoordinateN(i);
+            curr = new Coordinate((curr.x - coordinate.x) * lngScale, (curr.y - coordinate.y) * METERS_PER_DEGREE);
+            if (prev != null) {
+                minDist = Math.min(minDist, Distance.pointToSegment(point, prev, curr));
+            }
+            prev = curr;
+        }
+        return minDist;
+    }
+
+    /**
+     * 基准测试的统计结果
+     */
+    public static class Report {
+
+        public final int trajectoryCount;
+
+        public final long fixCount;
+
+        public final long totalTimeInNs;
+
+        /**
+         * 按升序排列的单条轨迹匹配耗时
+         */
+        private final long[] sortedLatencyInNs;
+
+        public final long matchedCount;
+
+        public final long onRoadCount;
+
+        /**
+         * 按升序排列的位置误差
+         */
+        private final double[] sortedErrorInM;
+
+        public final MapMatchStatistics statistics;
+
+        Report(int trajectoryCount, long fixCount, long totalTimeInNs, long[] sortedLatencyInNs, long matchedCount,
+               long onRoadCount, double[] sortedErrorInM, MapMatchStatistics statistics) {
+            this.trajectoryCount = trajectoryCount;
+            this.fixCount = fixCount;
+            this.totalTimeInNs = totalTimeInNs;
+            this.sortedLatencyInNs = sortedLatencyInNs;
+            this.matchedCount = matchedCount;
+            this.onRoadCount = onRoadCount;
+            this.sortedErrorInM = sortedErrorInM;
+            this.statistics = statistics;
+        }
+
+        /**
+         * @return 每秒匹配的GPS点数量
+         */
+        public double getFixesPerSecond() {
+            return totalTimeInNs == 0 ? 0.0 : fixCount * 1e9 / totalTimeInNs;
+        }
+
+        /**
+         * @param percentile 分位数，取值范围(0, 1]
+         * @return 单条轨迹匹配耗时的分位数（毫秒）
+         */
+        public double getLatencyInMs(double percentile) {
+            return sortedLatencyInNs[percentileIndex(percentile, sortedLatencyInNs.length)] / 1e6;
+        }
+
+        /**
+         * @param percentile 分位数，取值范围(0, 1]
+         * @return 位置误差的分位数（米），没有投影点时返回NaN
+         */
+        public double getErrorInM(double percentile) {
+            if (sortedErrorInM.length == 0) {
+                return Double.NaN;
+            }
+            return sortedErrorInM[percentileIndex(percentile, sortedErrorInM.length)];
+        }
+
+        public double getCoverage() {
+            return fixCount == 0 ? 0.0 : (double) matchedCount / fixCount;
+        }
+
+        public double getAccuracy() {
+            return fixCount == 0 ? 0.0 : (double) onRoadCount / fixCount;
+        }
+
+        private static int percentileIndex(double percentile, int length) {
+            return Math.max(0, Math.min(length - 1, (int) Math.ceil(percentile * length) - 1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("轨迹%d条，GPS点%d个，吞吐量%.0f点/秒；延迟p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms；" +
+                            "覆盖率%.2f%%，准确率%.2f%%，位置误差p50=%.1fm p90=%.1fm",
+                    trajectoryCount, fixCount, getFixesPerSecond(), getLatencyInMs(0.5), getLatencyInMs(0.9),
+                    getLatencyInMs(0.99), getLatencyInMs(1.0), getCoverage() * 100, getAccuracy() * 100,
+                    getErrorInM(0.5), getErrorInM(0.9));
+        }
+    }
+
+    /**
+     * 参数依次为：网格大小（默认200）、轨迹数量（默认1000）、采样间隔（秒，默认10）、GPS噪声（米，默认10）
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int intervalInSec = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        double noiseInM = args.length > 3 ? Double.parseDouble(args[3]) : 10.0;
+
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        // 城市道路的平均速度约10米/秒，每个采样时刻有2%的概率开始一次最多5个采样的信号中断
+        TrajectorySimulator simulator = new TrajectorySimulator(rn, 10.0, intervalInSec, noiseInM, 0.02, 5);
+        List<SimulatedTrajectory> simulatedList = simulator.simulate(count, 120, new Random(17));
+
+        Report report = new MapMatchBenchmark(new HmmMapMatcher(rn, 50.0)).run(simulatedList, Math.min(count, 200));
+        System.out.println(report);
+        System.out.println(report.statistics);
+    }
+}
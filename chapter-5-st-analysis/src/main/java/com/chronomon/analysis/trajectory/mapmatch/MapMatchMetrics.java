@@ -0,0 +1,65 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+/**
+ * 地图匹配的度量接口：匹配器在各个阶段回调，实现类自行决定如何汇总（累加计数、上报Flink指标等）
+ * <p>
+ * 1. 回调发生在匹配线程中，同一个匹配器被多个线程共享时，实现类需要是线程安全的
+ * 2. 所有方法都有空的默认实现，实现类只需覆盖关心的指标
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public interface MapMatchMetrics {
+
+    /**
+     * 不记录任何指标
+     */
+    MapMatchMetrics NOOP = new MapMatchMetrics() {
+    };
+
+    /**
+     * 完成一个GPS点的候选投影点搜索
+     *
+     * @param candidateCount 候选投影点数量，为0时该GPS点作为噪点被丢弃
+     * @param costInNs       搜索耗时（纳秒）
+     */
+    default void onCandidateSearch(int candidateCount, long costInNs) {
+    }
+
+    /**
+     * 完成一次状态转移，即相邻两个GPS点的投影点之间的概率计算
+     *
+     * @param evaluationCount 计算转移概率的投影点对数量
+     * @param routingCount    执行的单源最短路径搜索次数（命中缓存的起点不计入）
+     * @param settledCount    最短路径搜索确定最短距离的节点数量
+     * @param routingTimeInNs 最短路径搜索的耗时（纳秒）
+     */
+    default void onTransition(int evaluationCount, long routingCount, long settledCount, long routingTimeInNs) {
+    }
+
+    /**
+     * 当前GPS点与前置GPS点的所有投影点都不连通，匹配结果在此处断开
+     */
+    default void onStuck() {
+    }
+
+    /**
+     * 所有幸存路径汇合到必经投影点，在线匹配输出之前的路径
+     */
+    default void onMustPassCommit() {
+    }
+
+    /**
+     * 待定节点超过最大延迟，固定延迟解码强制输出概率最大的路径
+     */
+    default void onForcedCommit() {
+    }
+
+    /**
+     * 完成一次最优路径回溯，并收集匹配结果的坐标
+     *
+     * @param costInNs 回溯耗时（纳秒）
+     */
+    default void onBacktrack(long costInNs) {
+    }
+}
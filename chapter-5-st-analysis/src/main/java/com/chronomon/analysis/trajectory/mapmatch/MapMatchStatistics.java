@@ -0,0 +1,188 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 累加计数的地图匹配度量，线程安全，可以在{@link BatchMapMatcher}中共享，也可以每条轨迹单独统计以定位慢轨迹
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class MapMatchStatistics implements MapMatchMetrics {
+
+    private final LongAdder fixCount = new LongAdder();
+
+    private final LongAdder candidateCount = new LongAdder();
+
+    private final LongAdder candidateSearchTimeInNs = new LongAdder();
+
+    private final LongAdder transitionCount = new LongAdder();
+
+    private final LongAdder evaluationCount = new LongAdder();
+
+    private final LongAdder routingCount = new LongAdder();
+
+    private final LongAdder settledCount = new LongAdder();
+
+    private final LongAdder routingTimeInNs = new LongAdder();
+
+    private final LongAdder stuckCount = new LongAdder();
+
+    private final LongAdder mustPassCommitCount = new LongAdder();
+
+    private final LongAdder forcedCommitCount = new LongAdder();
+
+    private final LongAdder backtrackTimeInNs = new LongAdder();
+
+    @Override
+    public void onCandidateSearch(int candidateCount, long costInNs) {
+        this.fixCount.increment();
+        this.candidateCount.add(candidateCount);
+        this.candidateSearchTimeInNs.add(costInNs);
+    }
+
+    @Override
+    public void onTransition(int evaluationCount, long routingCount, long settledCount, long routingTimeInNs) {
+        this.transitionCount.increment();
+        this.evaluationCount.add(evaluationCount);
+        this.routingCount.add(routingCount);
+        this.settledCount.add(settledCount);
+        this.routingTimeInNs.add(routingTimeInNs);
+    }
+
+    @Override
+    public void onStuck() {
+        stuckCount.increment();
+    }
+
+    @Override
+    public void onMustPassCommit() {
+        mustPassCommitCount.increment();
+    }
+
+    @Override
+    public void onForcedCommit() {
+        forcedCommitCount.increment();
+    }
+
+    @Override
+    public void onBacktrack(long costInNs) {
+        backtrackTimeInNs.add(costInNs);
+    }
+
+    public long getFixCount() {
+        return fixCount.sum();
+    }
+
+    public long getCandidateCount() {
+        return candidateCount.sum();
+    }
+
+    /**
+     * @return 平均每个GPS点的候选投影点数量
+     */
+    public double getCandidatesPerFix() {
+        long fixes = fixCount.sum();
+        return fixes == 0 ? 0.0 : (double) candidateCount.sum() / fixes;
+    }
+
+    public long getCandidateSearchTimeInNs() {
+        return candidateSearchTimeInNs.sum();
+    }
+
+    public long getTransitionCount() {
+        return transitionCount.sum();
+    }
+
+    public long getEvaluationCount() {
+        return evaluationCount.sum();
+    }
+
+    public long getRoutingCount() {
+        return routingCount.sum();
+    }
+
+    public long getSettledCount() {
+        return settledCount.sum();
+    }
+
+    public long getRoutingTimeInNs() {
+        return routingTimeInNs.sum();
+    }
+
+    public long getStuckCount() {
+        return stuckCount.sum();
+    }
+
+    public long getMustPassCommitCount() {
+        return mustPassCommitCount.sum();
+    }
+
+    public long getForcedCommitCount() {
+        return forcedCommitCount.sum();
+    }
+
+    public long getBacktrackTimeInNs() {
+        return backtrackTimeInNs.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GPS点%d个（候选%.1f个/点，搜索%.2fms），转移%d次（投影点对%d，最短路径搜索%d次，" +
+                        "确定节点%d个，耗时%.2fms），断开%d次，必经点提交%d次，强制提交%d次，回溯%.2fms",
+                getFixCount(), getCandidatesPerFix(), getCandidateSearchTimeInNs() / 1e6, getTransitionCount(),
+                getEvaluationCount(), getRoutingCount(), getSettledCount(), getRoutingTimeInNs() / 1e6,
+                getStuckCount(), getMustPassCommitCount(), getForcedCommitCount(), getBacktrackTimeInNs() / 1e6);
+    }
+
+    /**
+     * 每条轨迹单独统计，对比最慢的几条轨迹与中位数轨迹在各个阶段的开销
+     */
+    public static void main(String[] args) {
+        int size = 200;
+        double spacing = SyntheticRoadNetwork.DEFAULT_SPACING;
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, spacing, 7), false);
+        HmmMapMatcher mapMatcher = new HmmMapMatcher(rn, 50.0);
+
+        // 大部分轨迹每条边3个GPS点，少数轨迹采样稀疏或噪声很大
+        Random random = new Random(5);
+        List<Trajectory> trajectoryList = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int kind = random.nextInt(20);
+            int pointsPerEdge = kind == 0 ? 1 : 3;
+            double noise = kind == 1 ? 0.0004 : 0.00008;
+            trajectoryList.add(SyntheticRoadNetwork.randomWalk(size, spacing, 40, pointsPerEdge, 10, noise,
+                    random, "oid" + i));
+        }
+        // 预热
+        trajectoryList.forEach(mapMatcher::mapMatch);
+
+        List<Object[]> resultList = new ArrayList<>();
+        for (Trajectory trajectory : trajectoryList) {
+            MapMatchStatistics statistics = new MapMatchStatistics();
+            mapMatcher.setMetrics(statistics);
+            long startTime = System.nanoTime();
+            mapMatcher.mapMatch(trajectory);
+            long costInNs = System.nanoTime() - startTime;
+            resultList.add(new Object[]{trajectory.getOid(), costInNs, statistics});
+        }
+        mapMatcher.setMetrics(MapMatchMetrics.NOOP);
+
+        resultList.sort(Comparator.comparingLong(result -> (long) result[1]));
+        Object[] median = resultList.get(resultList.size() / 2);
+        System.out.printf("中位数轨迹%s：%.2fms，%s%n", median[0], (long) median[1] / 1e6, median[2]);
+        for (int i = resultList.size() - 1; i >= resultList.size() - 3; i--) {
+            Object[] slow = resultList.get(i);
+            System.out.printf("慢轨迹%s：%.2fms（中位数的%.1f倍），%s%n", slow[0], (long) slow[1] / 1e6,
+                    (double) (long) slow[1] / (long) median[1], slow[2]);
+        }
+    }
+}
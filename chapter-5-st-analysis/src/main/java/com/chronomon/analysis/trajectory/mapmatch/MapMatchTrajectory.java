@@ -4,6 +4,7 @@ import com.chronomon.analysis.trajectory.model.GpsPoint;
 import com.chronomon.analysis.trajectory.model.Trajectory;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -44,6 +45,44 @@ public class MapMatchTrajectory {
         this.matchedPath = matchedPath;
     }
 
+    public String getOid() {
+        return oid;
+    }
+
+    public Timestamp getStartTime() {
+        return startTime;
+    }
+
+    public Timestamp getEndTime() {
+        return endTime;
+    }
+
+    public List<GpsPoint> getMatchedPath() {
+        return matchedPath;
+    }
+
+    /**
+     * 判断另一段匹配结果是否从当前结果的终点继续，即在同一个投影点处衔接
+     */
+    public boolean isFollowedBy(MapMatchTrajectory next) {
+        if (!endTime.equals(next.startTime)) {
+            return false;
+        }
+        GpsPoint lastPoint = matchedPath.get(matchedPath.size() - 1);
+        GpsPoint firstPoint = next.matchedPath.get(0);
+        return lastPoint.getGeom().getCoordinate().equals2D(firstPoint.getGeom().getCoordinate());
+    }
+
+    /**
+     * 拼接在当前结果终点处衔接的下一段匹配结果，与一次性回溯的结果相同，衔接处的投影点会出现两次
+     */
+    public MapMatchTrajectory concat(MapMatchTrajectory next) {
+        List<GpsPoint> concatPath = new ArrayList<>(matchedPath.size() + next.matchedPath.size());
+        concatPath.addAll(matchedPath);
+        concatPath.addAll(next.matchedPath);
+        return new MapMatchTrajectory(oid, startTime, next.endTime, concatPath);
+    }
+
     public Trajectory toTrajectory() {
         int startIndex = -1;
         for (int i = 0; i < matchedPath.size(); i++) {
@@ -0,0 +1,356 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.mapmatch.TrajectorySimulator.SimulatedTrajectory;
+import com.chronomon.analysis.trajectory.mapmatch.project.ProjectPoint;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.road.CompactRoadGraph;
+import com.chronomon.analysis.trajectory.road.IRoadSegment;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.chronomon.analysis.trajectory.model.DefaultUtil.GEOMETRY_FACTORY;
+
+/**
+ * 以路段ID序列表示的地图匹配结果，用于归档存储
+ * <p>
+ * 1. 路线由依次经过的路段ID（反向路段为负数）组成，不保存任何坐标
+ * 2. 每个GPS点只保存所在路段在路线中的位置、距该路段起点的路线距离以及时间，第一个和最后一个GPS点的偏移量即路线的进入和离开位置
+ * 3. 几何只在调用{@link #toMapMatchTrajectory(RoadNetwork)}时根据路网重建，与{@link HmmMapMatcher#mapMatch}的结果相同，
+ * 投影点由偏移量插值得到，与原始投影点的误差在毫米以内；投影点恰好落在路段顶点上时，重建结果可能多或少一个与投影点重合的顶点
+ * 4. {@link #toBytes()}以变长整数编码路段ID和时间的差值，偏移量按单精度存储
+ * <p>
+ * 重建几何依赖路段ID，路网更新后删除或修改过的路段无法重建，归档时需要同时记录路网版本
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class MatchedRoute {
+
+    private final String oid;
+
+    /**
+     * 依次经过的路段ID
+     */
+    private final int[] roadIds;
+
+    /**
+     * 每个GPS点所在路段在roadIds中的位置，非递减
+     */
+    private final int[] fixRoadIndexes;
+
+    /**
+     * 每个GPS点的投影点距所在路段起点的路线距离（米）
+     */
+    private final double[] fixOffsetsInM;
+
+    /**
+     * 每个GPS点的时间（毫秒）
+     */
+    private final long[] fixTimes;
+
+    MatchedRoute(String oid, int[] roadIds, int[] fixRoadIndexes, double[] fixOffsetsInM, long[] fixTimes) {
+        this.oid = oid;
+        this.roadIds = roadIds;
+        this.fixRoadIndexes = fixRoadIndexes;
+        this.fixOffsetsInM = fixOffsetsInM;
+        this.fixTimes = fixTimes;
+    }
+
+    public String getOid() {
+        return oid;
+    }
+
+    public Timestamp getStartTime() {
+        return new Timestamp(fixTimes[0]);
+    }
+
+    public Timestamp getEndTime() {
+        return new Timestamp(fixTimes[fixTimes.length - 1]);
+    }
+
+    public int[] getRoadIds() {
+        return roadIds.clone();
+    }
+
+    public int getFixCount() {
+        return fixTimes.length;
+    }
+
+    /**
+     * @return 第一个GPS点在第一条路段上的偏移量（米）
+     */
+    public double getEntryOffsetInM() {
+        return fixOffsetsInM[0];
+    }
+
+    /**
+     * @return 最后一个GPS点在最后一条路段上的偏移量（米）
+     */
+    public double getExitOffsetInM() {
+        return fixOffsetsInM[fixOffsetsInM.length - 1];
+    }
+
+    /**
+     * 根据路网重建匹配后的轨迹
+     *
+     * @param rn 匹配时使用的路网
+     * @return 与{@link HmmMapMatcher#mapMatch}相同形式的匹配结果
+     */
+    public MapMatchTrajectory toMapMatchTrajectory(RoadNetwork rn) {
+        CompactRoadGraph graph = rn.getCompactGraph();
+        IRoadSegment[] roads = new IRoadSegment[roadIds.length];
+        for (int i = 0; i < roadIds.length; i++) {
+            int edge = graph.getEdgeByRoadId(roadIds[i]);
+            if (edge < 0) {
+                throw new IllegalStateException("路网中不存在路段：" + roadIds[i]);
+            }
+            roads[i] = graph.getSegment(edge);
+        }
+
+        List<GpsPoint> matchedPath = new ArrayList<>();
+        ProjectPoint currentProject = locate(roads[fixRoadIndexes[0]], fixOffsetsInM[0]);
+        for (int n = 1; n < fixTimes.length; n++) {
+            ProjectPoint nextProjectPoint = locate(roads[fixRoadIndexes[n]], fixOffsetsInM[n]);
+            if (fixRoadIndexes[n] > fixRoadIndexes[n - 1]) {
+                nextProjectPoint.setPathSegments(Arrays.asList(roads).subList(fixRoadIndexes[n - 1] + 1, fixRoadIndexes[n]));
+            }
+            HmmMapMatcher.appendMatchedPath(matchedPath, oid, currentProject, new Timestamp(fixTimes[n - 1]),
+                    nextProjectPoint, new Timestamp(fixTimes[n]));
+            currentProject = nextProjectPoint;
+        }
+        return new MapMatchTrajectory(oid, getStartTime(), getEndTime(), matchedPath);
+    }
+
+    /**
+     * 按偏移量在路段上插值出投影点，偏移量与{@link ProjectPoint#project}一样由所在截之前的累计长度和截内的近似距离组成
+     */
+    private static ProjectPoint locate(IRoadSegment road, double offsetInM) {
+        int segmentIndex = 0;
+        while (segmentIndex < road.getNumPoints() - 2 && road.distanceFromStartInM(segmentIndex + 1) <= offsetInM) {
+            segmentIndex++;
+        }
+        Coordinate start = road.getCoordinateN(segmentIndex);
+        Coordinate end = road.getCoordinateN(segmentIndex + 1);
+        double lengthInM = DistanceKernel.fastDistInMeter(start.x, start.y, end.x, end.y);
+        double ratio = lengthInM == 0.0 ? 0.0 :
+                Math.max(0.0, Math.min(1.0, (offsetInM - road.distanceFromStartInM(segmentIndex)) / lengthInM));
+        Coordinate coordinate = new Coordinate(start.x + (end.x - start.x) * ratio, start.y + (end.y - start.y) * ratio);
+        return new ProjectPoint(road, segmentIndex, GEOMETRY_FACTORY.createPoint(coordinate), 0.0, offsetInM);
+    }
+
+    /**
+     * 编码格式：对象ID，路段数量及相邻路段ID之差，GPS点数量，第一个GPS点的时间，
+     * 以及每个GPS点所在路段位置之差、偏移量和与上一个GPS点的时间差
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + roadIds.length * 2 + fixTimes.length * 7);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(oid);
+            writeVarInt(out, roadIds.length);
+            int prevRoadId = 0;
+            for (int roadId : roadIds) {
+                writeVarInt(out, zigZag(roadId - prevRoadId));
+                prevRoadId = roadId;
+            }
+            writeVarInt(out, fixTimes.length);
+            out.writeLong(fixTimes[0]);
+            for (int n = 0; n < fixTimes.length; n++) {
+                writeVarInt(out, n == 0 ? fixRoadIndexes[0] : fixRoadIndexes[n] - fixRoadIndexes[n - 1]);
+                out.writeFloat((float) fixOffsetsInM[n]);
+                if (n > 0) {
+                    writeVarLong(out, fixTimes[n] - fixTimes[n - 1]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static MatchedRoute fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            String oid = in.readUTF();
+            int[] roadIds = new int[readVarInt(in)];
+            int prevRoadId = 0;
+            for (int i = 0; i < roadIds.length; i++) {
+                roadIds[i] = prevRoadId + unZigZag(readVarInt(in));
+                prevRoadId = roadIds[i];
+            }
+            int fixCount = readVarInt(in);
+            int[] fixRoadIndexes = new int[fixCount];
+            double[] fixOffsetsInM = new double[fixCount];
+            long[] fixTimes = new long[fixCount];
+            fixTimes[0] = in.readLong();
+            for (int n = 0; n < fixCount; n++) {
+                fixRoadIndexes[n] = (n == 0 ? 0 : fixRoadIndexes[n - 1]) + readVarInt(in);
+                fixOffsetsInM[n] = in.readFloat();
+                if (n > 0) {
+                    fixTimes[n] = fixTimes[n - 1] + readVarLong(in);
+                }
+            }
+            return new MatchedRoute(oid, roadIds, fixRoadIndexes, fixOffsetsInM, fixTimes);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("不是有效的路线编码", e);
+        }
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("变长整数过长");
+    }
+
+    /**
+     * 逐段匹配时收集路段ID和GPS点
+     */
+    static final class Builder {
+
+        private final String oid;
+
+        private final List<Integer> roadIdList = new ArrayList<>();
+
+        private final List<Integer> fixRoadIndexList = new ArrayList<>();
+
+        private final List<Double> fixOffsetList = new ArrayList<>();
+
+        private final List<Long> fixTimeList = new ArrayList<>();
+
+        Builder(String oid) {
+            this.oid = oid;
+        }
+
+        /**
+         * 清空已收集的内容，从一个新的GPS点开始
+         */
+        void start(ProjectPoint projectPoint, Timestamp time) {
+            roadIdList.clear();
+            fixRoadIndexList.clear();
+            fixOffsetList.clear();
+            fixTimeList.clear();
+            roadIdList.add(projectPoint.roadSegment.getRoadId());
+            addFix(projectPoint, time);
+        }
+
+        /**
+         * 追加下一个GPS点，不在当前投影点之后的同一路段上时，先追加两者之间最短路径上的路段
+         */
+        void append(ProjectPoint currentProject, ProjectPoint nextProjectPoint, Timestamp time) {
+            if (!currentProject.onSameSegmentAndBefore(nextProjectPoint)) {
+                List<IRoadSegment> pathSegments = nextProjectPoint.getPathSegments();
+                if (pathSegments != null) {
+                    for (IRoadSegment segment : pathSegments) {
+                        roadIdList.add(segment.getRoadId());
+                    }
+                }
+                roadIdList.add(nextProjectPoint.roadSegment.getRoadId());
+            }
+            addFix(nextProjectPoint, time);
+        }
+
+        private void addFix(ProjectPoint projectPoint, Timestamp time) {
+            fixRoadIndexList.add(roadIdList.size() - 1);
+            fixOffsetList.add(projectPoint.offsetDistInM);
+            fixTimeList.add(time.getTime());
+        }
+
+        int getFixCount() {
+            return fixTimeList.size();
+        }
+
+        MatchedRoute build() {
+            return new MatchedRoute(oid, roadIdList.stream().mapToInt(Integer::intValue).toArray(),
+                    fixRoadIndexList.stream().mapToInt(Integer::intValue).toArray(),
+                    fixOffsetList.stream().mapToDouble(Double::doubleValue).toArray(),
+                    fixTimeList.stream().mapToLong(Long::longValue).toArray());
+        }
+    }
+
+    /**
+     * 在模拟轨迹上对比路线编码与坐标序列（每个坐标点的经纬度和时间各8字节）的大小，并检查重建的几何
+     */
+    public static void main(String[] args) {
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(200, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        TrajectorySimulator simulator = new TrajectorySimulator(rn, 10.0, 10, 10.0, 0.02, 5);
+        List<SimulatedTrajectory> simulatedList = simulator.simulate(1000, 120, new Random(17));
+        HmmMapMatcher mapMatcher = new HmmMapMatcher(rn, 50.0);
+
+        long coordinateBytes = 0L;
+        long routeBytes = 0L;
+        int routeCount = 0;
+        int duplicateVertexCount = 0;
+        double maxErrorInM = 0.0;
+        for (SimulatedTrajectory simulated : simulatedList) {
+            List<MapMatchTrajectory> matchedList = mapMatcher.mapMatch(simulated.trajectory);
+            List<MatchedRoute> routeList = mapMatcher.mapMatchRoute(simulated.trajectory);
+            if (matchedList.size() != routeList.size()) {
+                throw new IllegalStateException("路线数量与匹配结果不一致：" + simulated.trajectory.getOid());
+            }
+            for (int i = 0; i < routeList.size(); i++) {
+                List<GpsPoint> matchedPath = matchedList.get(i).getMatchedPath();
+                coordinateBytes += matchedPath.size() * 24L;
+                byte[] bytes = routeList.get(i).toBytes();
+                routeBytes += bytes.length;
+                routeCount++;
+
+                List<GpsPoint> rebuiltPath = fromBytes(bytes).toMapMatchTrajectory(rn).getMatchedPath();
+                if (rebuiltPath.size() != matchedPath.size()) {
+                    // 投影点与路段顶点重合时属于前一截还是后一截会影响重复顶点的数量
+                    duplicateVertexCount++;
+                    continue;
+                }
+                for (int n = 0; n < matchedPath.size(); n++) {
+                    Coordinate expected = matchedPath.get(n).getGeom().getCoordinate();
+                    Coordinate actual = rebuiltPath.get(n).getGeom().getCoordinate();
+                    maxErrorInM = Math.max(maxErrorInM, DistanceKernel.haversine(expected.x, expected.y, actual.x, actual.y));
+                }
+            }
+        }
+        System.out.printf("路线%d条：坐标序列%dKB，路线编码%dKB，压缩比%.1f；重复顶点数量不同的路线%d条，其余路线重建坐标的最大误差%.4fm%n",
+                routeCount, coordinateBytes / 1024, routeBytes / 1024, (double) coordinateBytes / routeBytes,
+                duplicateVertexCount, maxErrorInM);
+    }
+}
@@ -0,0 +1,133 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.RoadNetworkSnapshot;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 路网快照的基准测试：对比由路段构建路网与加载快照的耗时、加载后占用的堆内存，并校验两者的匹配结果一致
+ * <p>
+ * 1000×1000的网格路网有100万个节点、约200万条有向路段，与一个省的可通行道路网处于同一量级，作为省级规模的测量；
+ * 构建该路网、写入快照和加载快照需要约4GB堆内存（-Xmx4g），堆内存上限不足{@link #PROVINCE_MIN_HEAP}时默认跳过。
+ * 网格路网的路段都是短直线，真实路网的折线更长，同样节点数量下的快照更大，加载耗时按快照大小估计更可靠
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class RoadNetworkSnapshotBenchmark {
+
+    /**
+     * 省级规模的网格大小
+     */
+    private static final int PROVINCE_SIZE = 1000;
+
+    /**
+     * 默认测量省级规模时需要的最大堆内存
+     */
+    private static final long PROVINCE_MIN_HEAP = 3L << 30;
+
+    /**
+     * 参数为需要测量的网格大小，默认依次测量400（城市规模）和1000（省级规模）
+     */
+    public static void main(String[] args) throws IOException {
+        int[] sizes;
+        if (args.length > 0) {
+            sizes = Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        } else if (Runtime.getRuntime().maxMemory() >= PROVINCE_MIN_HEAP) {
+            sizes = new int[]{400, PROVINCE_SIZE};
+        } else {
+            sizes = new int[]{400};
+            System.out.printf("最大堆内存%.1fGB，跳过省级规模（%d×%d网格），需要以-Xmx4g运行%n",
+                    Runtime.getRuntime().maxMemory() / 1073741824.0, PROVINCE_SIZE, PROVINCE_SIZE);
+        }
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int size) throws IOException {
+        long startTime = System.nanoTime();
+        RoadNetwork builtNetwork = new RoadNetwork(
+                SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        long buildTime = System.nanoTime() - startTime;
+
+        Path path = Files.createTempFile("road_network", ".snapshot");
+        try {
+            startTime = System.nanoTime();
+            RoadNetworkSnapshot.write(builtNetwork, path);
+            long writeTime = System.nanoTime() - startTime;
+            System.out.printf("%d×%d网格路网%d个节点、%d条路段：构建%dms，写入快照%dms，快照大小%.1fMB%n",
+                    size, size, builtNetwork.getMaxNodeId(), builtNetwork.getRoadSegments().size(),
+                    buildTime / 1_000_000, writeTime / 1_000_000, Files.size(path) / 1048576.0);
+
+            // 先在构建的路网上匹配并保留结果，再释放构建的路网，避免其占用的堆内存影响加载耗时
+            List<Trajectory> trajectoryList = new ArrayList<>();
+            Random random = new Random(11);
+            for (int i = 0; i < 100; i++) {
+                trajectoryList.add(SyntheticRoadNetwork.randomWalk(size, SyntheticRoadNetwork.DEFAULT_SPACING,
+                        40, 3, 10, 0.00008, random, "oid" + i));
+            }
+            HmmMapMatcher builtMatcher = new HmmMapMatcher(builtNetwork, 50.0);
+            List<List<Coordinate>> expectedList = new ArrayList<>();
+            for (Trajectory trajectory : trajectoryList) {
+                expectedList.add(coordinates(builtMatcher.mapMatch(trajectory)));
+            }
+            builtMatcher = null;
+            builtNetwork = null;
+            long baseHeap = usedHeapAfterGc();
+            RoadNetwork loadedNetwork = null;
+            long[] loadTimes = new long[5];
+            for (int round = 0; round < loadTimes.length; round++) {
+                loadedNetwork = null;
+                System.gc();
+                startTime = System.nanoTime();
+                loadedNetwork = RoadNetworkSnapshot.read(path);
+                loadTimes[round] = System.nanoTime() - startTime;
+            }
+            long loadedHeap = usedHeapAfterGc() - baseHeap;
+            Arrays.sort(loadTimes);
+            System.out.printf("  加载快照%d次：最快%dms，中位数%dms，最慢%dms，加载后的路网占用堆内存%.1fMB%n",
+                    loadTimes.length, loadTimes[0] / 1_000_000, loadTimes[loadTimes.length / 2] / 1_000_000,
+                    loadTimes[loadTimes.length - 1] / 1_000_000, loadedHeap / 1048576.0);
+
+            HmmMapMatcher loadedMatcher = new HmmMapMatcher(loadedNetwork, 50.0);
+            int consistentCount = 0;
+            for (int i = 0; i < trajectoryList.size(); i++) {
+                if (expectedList.get(i).equals(coordinates(loadedMatcher.mapMatch(trajectoryList.get(i))))) {
+                    consistentCount++;
+                }
+            }
+            System.out.printf("  %d/%d条轨迹的匹配结果一致%n", consistentCount, trajectoryList.size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<Coordinate> coordinates(List<MapMatchTrajectory> matchedList) {
+        List<Coordinate> coordinateList = new ArrayList<>();
+        for (MapMatchTrajectory matched : matchedList) {
+            coordinateList.add(null);
+            for (GpsPoint gpsPoint : matched.getMatchedPath()) {
+                coordinateList.add(gpsPoint.getGeom().getCoordinate());
+            }
+        }
+        return coordinateList;
+    }
+}
@@ -0,0 +1,143 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.mapmatch.TrajectorySimulator.SimulatedTrajectory;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.ShortestPathCache;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.TransitionBound;
+import com.chronomon.analysis.trajectory.model.DefaultUtil;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.road.DirectionEnum;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.RoadNetworkUpdate;
+import com.chronomon.analysis.trajectory.road.RoadSegment;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 路网增量更新的基准测试：在网格路网上封闭部分道路、把部分双向路改为单行、新增若干条斜向道路，
+ * 对比增量更新与整体重建的耗时，以及两者的匹配结果是否一致
+ * <p>
+ * 最短路径缓存在增量更新时只记录修改的路段，条目在新版本中第一次被读取时才校验，
+ * 因此同时报告更新缓存的耗时、沿用缓存与使用空缓存时的匹配耗时，以及校验失败的条目数量和命中率
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class RoadNetworkUpdateBenchmark {
+
+    public static void main(String[] args) {
+        int size = 200;
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        TrajectorySimulator simulator = new TrajectorySimulator(rn, 10.0, 10, 10.0, 0.0, 1);
+        List<SimulatedTrajectory> simulatedList = simulator.simulate(500, 60, new Random(17));
+        ShortestPathCache cache = new ShortestPathCache(rn);
+        HmmMapMatcher warmMatcher = new HmmMapMatcher(rn, 50.0, TransitionBound.DEFAULT, null, cache);
+        simulatedList.forEach(simulated -> warmMatcher.mapMatch(simulated.trajectory));
+
+        Random random = new Random(23);
+        List<RoadSegment> segmentList = new ArrayList<>(rn.getRoadSegments());
+        segmentList.sort((a, b) -> Integer.compare(a.getRoadId(), b.getRoadId()));
+        RoadNetworkUpdate update = new RoadNetworkUpdate();
+        Set<Integer> changedRoadIds = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            RoadSegment segment = segmentList.get(random.nextInt(segmentList.size()));
+            if (!changedRoadIds.add(segment.getRoadId())) {
+                continue;
+            }
+            if (i % 2 == 0) {
+                update.removeSegment(segment.getRoadId());
+            } else {
+                update.modifySegment(segment.getRoadId(), new RoadSegment(
+                        (LineString) segment.getRoadLine().copy(), DirectionEnum.FORWARD_DIRECT));
+            }
+        }
+        double spacing = SyntheticRoadNetwork.DEFAULT_SPACING;
+        Coordinate origin = segmentList.get(0).getCoordinateN(0);
+        for (int i = 0; i < 20; i++) {
+            int column = random.nextInt(size - 1);
+            int row = random.nextInt(size - 1);
+            Coordinate[] coordinates = {
+                    new Coordinate(origin.x + column * spacing, origin.y + row * spacing),
+                    new Coordinate(origin.x + (column + 1) * spacing, origin.y + (row + 1) * spacing)};
+            update.addSegment(new RoadSegment(DefaultUtil.GEOMETRY_FACTORY.createLineString(coordinates),
+                    DirectionEnum.DUAL_DIRECT));
+        }
+
+        long startTime = System.nanoTime();
+        RoadNetwork updatedNetwork = rn.update(update);
+        long updateTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        ShortestPathCache updatedCache = cache.update(updatedNetwork);
+        long cacheTime = System.nanoTime() - startTime;
+
+        List<RoadSegment> copyList = new ArrayList<>();
+        for (RoadSegment segment : updatedNetwork.getRoadSegments()) {
+            copyList.add(new RoadSegment(segment.getRoadLine(), segment.direction));
+        }
+        startTime = System.nanoTime();
+        RoadNetwork rebuiltNetwork = new RoadNetwork(copyList, false);
+        long rebuildTime = System.nanoTime() - startTime;
+        System.out.printf("删除%d条路段，新增%d条路段：增量更新%.1fms，更新缓存%.1fms，合计%.1fms；整体重建%.1fms%n",
+                updatedNetwork.getLastChange().getRemovedRoadIds().size(),
+                updatedNetwork.getLastChange().getAddedSegments().size(), updateTime / 1e6, cacheTime / 1e6,
+                (updateTime + cacheTime) / 1e6, rebuildTime / 1e6);
+        System.out.printf("边数：增量更新%d条，整体重建%d条%n", updatedNetwork.getCompactGraph().getEdgeCount(),
+                rebuiltNetwork.getCompactGraph().getEdgeCount());
+
+        // 沿用缓存时，条目的校验耗时计入匹配耗时；与使用空缓存匹配相同的轨迹对比，计时之前先用独立的空缓存预热
+        HmmMapMatcher warmUpMatcher = warmMatcher.withRoadNetwork(updatedNetwork, new ShortestPathCache(updatedNetwork));
+        simulatedList.forEach(simulated -> warmUpMatcher.mapMatch(simulated.trajectory));
+        HmmMapMatcher updatedMatcher = warmMatcher.withRoadNetwork(updatedNetwork, updatedCache);
+        startTime = System.nanoTime();
+        List<Map<Long, Coordinate>> updatedMapList = new ArrayList<>();
+        for (SimulatedTrajectory simulated : simulatedList) {
+            updatedMapList.add(projectCoordinates(updatedMatcher.mapMatch(simulated.trajectory)));
+        }
+        long updatedMatchTime = System.nanoTime() - startTime;
+        HmmMapMatcher coldMatcher = warmMatcher.withRoadNetwork(updatedNetwork, new ShortestPathCache(updatedNetwork));
+        startTime = System.nanoTime();
+        simulatedList.forEach(simulated -> coldMatcher.mapMatch(simulated.trajectory));
+        long coldMatchTime = System.nanoTime() - startTime;
+        System.out.printf("匹配耗时：沿用缓存%.1fms（校验失败%d条，命中率%.1f%%），空缓存%.1fms%n",
+                updatedMatchTime / 1e6, updatedCache.getStaleCount(), updatedCache.stats().hitRate() * 100,
+                coldMatchTime / 1e6);
+
+        HmmMapMatcher rebuiltMatcher = new HmmMapMatcher(rebuiltNetwork, 50.0);
+        int fixCount = 0;
+        int sameCount = 0;
+        for (int i = 0; i < simulatedList.size(); i++) {
+            SimulatedTrajectory simulated = simulatedList.get(i);
+            Map<Long, Coordinate> updatedMap = updatedMapList.get(i);
+            Map<Long, Coordinate> rebuiltMap = projectCoordinates(rebuiltMatcher.mapMatch(simulated.trajectory));
+            for (GpsPoint gpsPoint : simulated.trajectory.getSortedGpsList()) {
+                fixCount++;
+                Coordinate updated = updatedMap.get(gpsPoint.getTime().getTime());
+                Coordinate rebuilt = rebuiltMap.get(gpsPoint.getTime().getTime());
+                if (updated == null ? rebuilt == null : rebuilt != null && updated.distance(rebuilt) < 1e-9) {
+                    sameCount++;
+                }
+            }
+        }
+        System.out.printf("匹配结果一致的GPS点：%d/%d%n", sameCount, fixCount);
+    }
+
+    private static Map<Long, Coordinate> projectCoordinates(List<MapMatchTrajectory> matchedList) {
+        Map<Long, Coordinate> projectMap = new HashMap<>();
+        for (MapMatchTrajectory matched : matchedList) {
+            for (GpsPoint gpsPoint : matched.getMatchedPath()) {
+                if (gpsPoint.getTime() != null) {
+                    projectMap.put(gpsPoint.getTime().getTime(), gpsPoint.getGeom().getCoordinate());
+                }
+            }
+        }
+        return projectMap;
+    }
+}
@@ -0,0 +1,484 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.mapmatch.TrajectorySimulator.SimulatedTrajectory;
+import com.chronomon.analysis.trajectory.mapmatch.project.ProjectCluster;
+import com.chronomon.analysis.trajectory.mapmatch.project.ProjectPoint;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.ClusterLinkNode;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.RoutingContext;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.ShortestPathCalculator;
+import com.chronomon.analysis.trajectory.mapmatch.transfer.TransitionBound;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.CompactRoadGraph;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import com.chronomon.analysis.trajectory.road.TiledRoadNetwork;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 基于分块路网的地图匹配器：轨迹依次在若干个瓦片（或相邻瓦片合并后）的路网上匹配，隐马尔科夫模型的概率在路网之间延续
+ * <p>
+ * 1. 每次状态转移之前，由前后两个GPS点的候选路段端点和最短路径搜索的代价上限估计最短路径可能经过的范围：
+ * 长度不超过上限L的路径一定位于 端点外包框向外扩展L/2 的范围内。当前路网的瓦片不能覆盖该范围（搜索可能越过缓冲区）时，
+ * 切换到覆盖该范围的瓦片，需要多个瓦片时使用相邻瓦片合并后的路网（{@link TiledRoadNetwork#getRoadNetwork(List)}）
+ * 2. 切换路网时，在新路网中重新搜索上一个GPS点的投影点，与原路网中坐标、路段相同的投影点沿用原来的维特比概率，
+ * 作为新路网中链表的头节点，因此切换前后的维特比解码是连续的
+ * 3. 全部GPS点处理完成后，从最后一个路网开始回溯，每个路网的头节点上标记的投影点决定前一个路网最后一个节点的投影点，
+ * 匹配结果在同一个投影点处拼接成一段
+ * 4. 代价上限为无穷大（无界搜索）以及需要超过{@link #MAX_MERGED_TILE_COUNT}个瓦片时，
+ * 只保证候选路段的搜索范围，最短路径仍可能被缓冲区截断
+ * 5. 每个路网的匹配器在线程之间共享，路网被缓存淘汰时同步移除；每个线程只持有一个搜索上下文，
+ * 切换路网时复用其中的数组，一次匹配结束后释放对路网的引用，因此被淘汰的路网不会被匹配器或线程保留。
+ * 搜索上下文的容量为该线程用过的最大路网的节点数量，每个节点约37字节，不计入瓦片缓存的预算
+ * 6. 已知的差异：状态转移只检查维特比概率最大的前置投影点是否满足绕行比的约束，掉头绕行与同向行驶的概率恰好相等时，
+ * 不同路网中投影距离1e-5米量级的舍入差异会决定是否断开，因此与在完整路网上匹配相比，少数轨迹的分段数量不同，
+ * 这是基础匹配器的局限，分块匹配没有修正
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class TiledMapMatcher {
+
+    /**
+     * 一次状态转移最多合并的瓦片数量
+     */
+    public static final int MAX_MERGED_TILE_COUNT = 4;
+
+    private static final double METERS_PER_DEGREE = DistanceKernel.EARTH_MEAN_RADIUS_IN_M * Math.PI / 180;
+
+    /**
+     * 不同瓦片的网格索引按各自的纬度换算投影，同一投影点的坐标存在1e-12度量级的误差
+     */
+    private static final double SAME_POINT_TOLERANCE = 1e-9;
+
+    private final TiledRoadNetwork tiledNetwork;
+
+    private final double searchDistInM;
+
+    private final TransitionBound transitionBound;
+
+    /**
+     * 每个已加载路网的匹配器，键为路网对象
+     */
+    private final Map<RoadNetwork, HmmMapMatcher> matcherMap = new ConcurrentHashMap<>();
+
+    /**
+     * 每个线程的最短路径计算器，搜索上下文在不同路网之间切换
+     */
+    private final ThreadLocal<ShortestPathCalculator> shortestPathCalculator = new ThreadLocal<>();
+
+    public TiledMapMatcher(TiledRoadNetwork tiledNetwork, double searchDistInM) {
+        this(tiledNetwork, searchDistInM, TransitionBound.DEFAULT);
+    }
+
+    public TiledMapMatcher(TiledRoadNetwork tiledNetwork, double searchDistInM, TransitionBound transitionBound) {
+        this.tiledNetwork = tiledNetwork;
+        this.searchDistInM = searchDistInM;
+        this.transitionBound = transitionBound;
+        tiledNetwork.addRemovalListener(matcherMap::remove);
+    }
+
+    /**
+     * 执行轨迹地图匹配算法
+     *
+     * @param trajectory 原始的轨迹
+     * @return 匹配到路网上的路径
+     */
+    public List<MapMatchTrajectory> mapMatch(Trajectory trajectory) {
+        try {
+            return doMapMatch(trajectory);
+        } finally {
+            ShortestPathCalculator calculator = shortestPathCalculator.get();
+            if (calculator != null) {
+                // 保留数组供下一次匹配复用，只释放对路网的引用
+                calculator.getContext().bind(null);
+            }
+        }
+    }
+
+    private List<MapMatchTrajectory> doMapMatch(Trajectory trajectory) {
+        List<TileChain> chainList = new ArrayList<>();
+        TileChain chain = null;
+        for (GpsPoint gpsPoint : trajectory.getSortedGpsList()) {
+            ProjectCluster cluster = null;
+            List<Integer> tiles = tiledNetwork.getTiles(searchEnvelope(gpsPoint));
+            // 第一次按当前路网的候选路段估计范围，切换路网后按新路网的候选路段再估计一次
+            for (int round = 0; round < 2; round++) {
+                if (chain != null && chain.tiles.containsAll(tiles)) {
+                    cluster = chain.mapMatcher == null ? null :
+                            chain.mapMatcher.searchCandidatePoint(gpsPoint).orElse(null);
+                    if (cluster == null || chain.tail == null) {
+                        break;
+                    }
+                    List<Integer> routeTiles = tiledNetwork.getTiles(routeEnvelope(chain.tail, cluster));
+                    if (routeTiles.size() > MAX_MERGED_TILE_COUNT || chain.tiles.containsAll(routeTiles)) {
+                        break;
+                    }
+                    // 转移需要的范围包括当前GPS点的候选路段搜索范围
+                    tiles = routeTiles;
+                }
+                chain = switchTiles(chain, tiles);
+                chainList.add(chain);
+                cluster = null;
+            }
+            if (cluster == null && chain.mapMatcher != null) {
+                cluster = chain.mapMatcher.searchCandidatePoint(gpsPoint).orElse(null);
+            }
+            if (cluster == null) {
+                // 附近没有道路，该GPS点作为噪点被丢弃
+                continue;
+            }
+            ClusterLinkNode currNode = new ClusterLinkNode(cluster);
+            currNode.connect(chain.tail);
+            chain.mapMatcher.transfer(currNode);
+            chain.tail = currNode;
+        }
+
+        // 从最后一个路网开始回溯，头节点的标记决定前一个路网最后一个节点的投影点
+        List<List<MapMatchTrajectory>> chainResultList = new ArrayList<>();
+        int lastIndex = -1;
+        for (int i = chainList.size() - 1; i >= 0; i--) {
+            TileChain currChain = chainList.get(i);
+            if (currChain.tail == null) {
+                lastIndex = -1;
+                continue;
+            }
+            chainResultList.add(currChain.mapMatcher.buildMatchedTrajectory(trajectory.getOid(), currChain.tail, lastIndex));
+            lastIndex = currChain.prevIndexes == null ? -1 :
+                    currChain.prevIndexes[currChain.head.projectCluster.markedIndex];
+        }
+        List<MapMatchTrajectory> matchPathList = new ArrayList<>();
+        for (int i = chainResultList.size() - 1; i >= 0; i--) {
+            HmmMapMatcher.appendMatched(matchPathList, chainResultList.get(i));
+        }
+        return matchPathList;
+    }
+
+    /**
+     * 切换到瓦片对应的路网，并在新路网中以原路网最后一个节点的维特比概率建立头节点
+     */
+    private TileChain switchTiles(TileChain chain, List<Integer> tiles) {
+        RoadNetwork rn = tiledNetwork.getRoadNetwork(tiles);
+        HmmMapMatcher mapMatcher = null;
+        if (rn != null) {
+            mapMatcher = matcherMap.computeIfAbsent(rn, key ->
+                    new HmmMapMatcher(() -> getShortestPathCalculator(key), key, searchDistInM, transitionBound));
+            if (!tiledNetwork.isLoaded(tiles, rn)) {
+                // 路网在加入映射之前已被淘汰，淘汰的通知不会再移除该匹配器
+                matcherMap.remove(rn);
+            }
+        }
+        TileChain newChain = new TileChain(tiles, mapMatcher);
+        if (mapMatcher == null || chain == null || chain.tail == null) {
+            return newChain;
+        }
+
+        ClusterLinkNode prevTail = chain.tail;
+        List<ProjectPoint> prevPoints = prevTail.projectCluster.projectPointList;
+        List<ProjectPoint> bridgePoints = new ArrayList<>();
+        List<Integer> prevIndexList = new ArrayList<>();
+        Optional<ProjectCluster> clusterOpt = mapMatcher.searchCandidatePoint(prevTail.projectCluster.gpsPoint);
+        for (ProjectPoint point : clusterOpt.map(cluster -> cluster.projectPointList).orElse(Collections.emptyList())) {
+            for (int prevIndex = 0; prevIndex < prevPoints.size(); prevIndex++) {
+                ProjectPoint prevPoint = prevPoints.get(prevIndex);
+                if (isSameProjectPoint(point, prevPoint)) {
+                    // 使用原路网中投影点的坐标，两个路网的匹配结果在该点处可以拼接
+                    ProjectPoint bridgePoint = new ProjectPoint(point.roadSegment, point.segmentIndex, prevPoint.point,
+                            point.projectDistInM, point.offsetDistInM);
+                    bridgePoint.setMetric(prevPoint.getMetric());
+                    bridgePoints.add(bridgePoint);
+                    prevIndexList.add(prevIndex);
+                    break;
+                }
+            }
+        }
+        if (!bridgePoints.isEmpty()) {
+            newChain.head = new ClusterLinkNode(new ProjectCluster(prevTail.projectCluster.gpsPoint, bridgePoints));
+            newChain.tail = newChain.head;
+            newChain.prevIndexes = prevIndexList.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return newChain;
+    }
+
+    /**
+     * @return 当前线程在路网上的最短路径计算器，容量不足时重新分配搜索上下文
+     */
+    private ShortestPathCalculator getShortestPathCalculator(RoadNetwork rn) {
+        CompactRoadGraph graph = rn.getCompactGraph();
+        ShortestPathCalculator calculator = shortestPathCalculator.get();
+        if (calculator == null || calculator.getContext().getCapacity() < graph.getNodeCount()) {
+            calculator = new ShortestPathCalculator(new RoutingContext(graph));
+            shortestPathCalculator.set(calculator);
+        } else if (calculator.getContext().getGraph() != graph) {
+            calculator.getContext().bind(graph);
+        }
+        return calculator;
+    }
+
+    /**
+     * 两个路网中的投影点是否相同：路段的起终点坐标相同，投影点坐标在误差范围内相同
+     */
+    private static boolean isSameProjectPoint(ProjectPoint point1, ProjectPoint point2) {
+        return point1.roadSegment.getFromNode().geom.getCoordinate().equals2D(point2.roadSegment.getFromNode().geom.getCoordinate())
+                && point1.roadSegment.getToNode().geom.getCoordinate().equals2D(point2.roadSegment.getToNode().geom.getCoordinate())
+                && point1.point.getCoordinate().equals2D(point2.point.getCoordinate(), SAME_POINT_TOLERANCE);
+    }
+
+    /**
+     * @return GPS点的候选路段搜索范围
+     */
+    private Envelope searchEnvelope(GpsPoint gpsPoint) {
+        Envelope env = new Envelope(gpsPoint.getGeom().getCoordinate());
+        expandByMeters(env, searchDistInM);
+        return env;
+    }
+
+    /**
+     * @return 前一个节点与当前GPS点之间的状态转移需要的范围：两个GPS点的候选路段搜索范围，以及最短路径可能经过的范围
+     */
+    private Envelope routeEnvelope(ClusterLinkNode prevNode, ProjectCluster cluster) {
+        GpsPoint prevGpsPoint = prevNode.projectCluster.gpsPoint;
+        Envelope env = searchEnvelope(cluster.gpsPoint);
+        env.expandToInclude(searchEnvelope(prevGpsPoint));
+        double maxPathLength = transitionBound.maxPathLength(prevGpsPoint.distInMeter(cluster.gpsPoint),
+                maxProjectDistInM(prevNode.projectCluster.projectPointList), maxProjectDistInM(cluster.projectPointList),
+                prevGpsPoint.timeIntervalInSec(cluster.gpsPoint));
+        if (maxPathLength == Double.POSITIVE_INFINITY) {
+            return env;
+        }
+        // 最短路径在前一个投影点所在路段的终点与当前投影点所在路段的起点之间搜索
+        Envelope nodeEnv = new Envelope();
+        for (ProjectPoint point : prevNode.projectCluster.projectPointList) {
+            nodeEnv.expandToInclude(point.roadSegment.getToNode().geom.getCoordinate());
+        }
+        for (ProjectPoint point : cluster.projectPointList) {
+            nodeEnv.expandToInclude(point.roadSegment.getFromNode().geom.getCoordinate());
+        }
+        expandByMeters(nodeEnv, maxPathLength / 2);
+        env.expandToInclude(nodeEnv);
+        return env;
+    }
+
+    private static void expandByMeters(Envelope env, double distInM) {
+        double deltaLat = distInM / METERS_PER_DEGREE;
+        double maxAbsLat = Math.min(89.0, Math.max(Math.abs(env.getMinY()), Math.abs(env.getMaxY())) + deltaLat);
+        env.expandBy(deltaLat / Math.cos(Math.toRadians(maxAbsLat)), deltaLat);
+    }
+
+    private static double maxProjectDistInM(List<ProjectPoint> projectPoints) {
+        double maxDist = 0.0;
+        for (ProjectPoint projectPoint : projectPoints) {
+            maxDist = Math.max(maxDist, projectPoint.projectDistInM);
+        }
+        return maxDist;
+    }
+
+    /**
+     * 在同一个路网上连续匹配的一段轨迹
+     */
+    private static final class TileChain {
+
+        private final List<Integer> tiles;
+
+        /**
+         * 路网对应的匹配器，瓦片中没有路段时为null
+         */
+        private final HmmMapMatcher mapMatcher;
+
+        private ClusterLinkNode head;
+
+        private ClusterLinkNode tail;
+
+        /**
+         * 头节点的投影点在前一个路网最后一个节点中对应的下标，头节点不是由前一个路网延续而来时为null
+         */
+        private int[] prevIndexes;
+
+        private TileChain(List<Integer> tiles, HmmMapMatcher mapMatcher) {
+            this.tiles = tiles;
+            this.mapMatcher = mapMatcher;
+        }
+    }
+
+    /**
+     * 模拟全国范围的轨迹负载：轨迹集中在若干个热点城市，统计瓦片的命中率、已加载路网的估计堆内存和实测堆内存的峰值，
+     * 并与在完整路网上匹配的结果对比
+     */
+    public static void main(String[] args) throws IOException {
+        int size = 400;
+        double spacing = SyntheticRoadNetwork.DEFAULT_SPACING;
+        Path directory = Files.createTempDirectory("tiled_road_network");
+        try {
+            long startTime = System.nanoTime();
+            // 瓦片边长0.1度（约50个网格），缓冲区1500米
+            TiledRoadNetwork.build(SyntheticRoadNetwork.grid(size, spacing, 7), 0.1, 1500.0, directory);
+            long buildTime = System.nanoTime() - startTime;
+
+            // 逐个加载瓦片估计全部瓦片占用的堆内存，预算取其四分之一
+            TiledRoadNetwork probe = new TiledRoadNetwork(directory, 0L);
+            long totalHeap = 0L;
+            for (int tile = 0; tile < probe.getTileCount(); tile++) {
+                RoadNetwork tileNetwork = probe.getRoadNetwork(tile);
+                totalHeap += tileNetwork == null ? 0L : TiledRoadNetwork.estimateHeapBytes(tileNetwork);
+            }
+            long maxHeap = totalHeap / 4;
+            TiledRoadNetwork tiledNetwork = new TiledRoadNetwork(directory, maxHeap);
+            System.out.printf("划分%d个瓦片：%dms，快照共%.1fMB，全部加载估计占用堆内存%.1fMB，加载预算%.1fMB%n",
+                    tiledNetwork.getTileCount(), buildTime / 1_000_000, probe.getTotalBytes() / 1048576.0,
+                    totalHeap / 1048576.0, maxHeap / 1048576.0);
+            probe = null;
+
+            // 6个热点城市，80%的轨迹从热点附近出发，其余均匀分布
+            Random random = new Random(11);
+            int[][] hotspots = new int[6][];
+            for (int i = 0; i < hotspots.length; i++) {
+                hotspots[i] = new int[]{random.nextInt(size), random.nextInt(size)};
+            }
+            List<Trajectory> trajectoryList = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                int column;
+                int row;
+                if (random.nextInt(10) < 8) {
+                    int[] hotspot = hotspots[random.nextInt(hotspots.length)];
+                    column = clamp(hotspot[0] + (int) (random.nextGaussian() * 15), size);
+                    row = clamp(hotspot[1] + (int) (random.nextGaussian() * 15), size);
+                } else {
+                    column = random.nextInt(size);
+                    row = random.nextInt(size);
+                }
+                trajectoryList.add(SyntheticRoadNetwork.randomWalk(size, spacing, column, row,
+                        60, 3, 10, 0.00008, random, "oid" + i));
+            }
+
+            TiledMapMatcher tiledMatcher = new TiledMapMatcher(tiledNetwork, 50.0);
+            List<List<MapMatchTrajectory>> tiledResultList = new ArrayList<>();
+            long maxLoadedBytes = 0L;
+            long maxUsedHeap = 0L;
+            long baseHeap = usedHeapAfterGc();
+            startTime = System.nanoTime();
+            for (int i = 0; i < trajectoryList.size(); i++) {
+                List<MapMatchTrajectory> matchedList = tiledMatcher.mapMatch(trajectoryList.get(i));
+                if (i < 200) {
+                    // 只保留用于对比的结果，避免匹配结果占用的堆内存干扰统计
+                    tiledResultList.add(matchedList);
+                }
+                maxLoadedBytes = Math.max(maxLoadedBytes, tiledNetwork.getLoadedBytes());
+                if (i % 200 == 199) {
+                    tiledNetwork.cleanUp();
+                    maxUsedHeap = Math.max(maxUsedHeap, usedHeapAfterGc() - baseHeap);
+                }
+            }
+            long matchTime = System.nanoTime() - startTime;
+            CacheStats stats = tiledNetwork.stats();
+            System.out.printf("匹配%d条轨迹：%dms，瓦片请求%d次，命中率%.1f%%，加载%d次（平均%.0fms），淘汰%d次%n",
+                    trajectoryList.size(), matchTime / 1_000_000, stats.requestCount(), stats.hitRate() * 100,
+                    stats.loadCount(), stats.averageLoadPenalty() / 1e6, stats.evictionCount());
+            // 堆内存的增量还包括保留的200条匹配结果（十几MB）和每个线程的搜索上下文，不保留结果时比估计值多3MB左右
+            System.out.printf("已加载路网的估计堆内存最多%.1fMB，GC后的堆内存比匹配前最多增加%.1fMB%n",
+                    maxLoadedBytes / 1048576.0, maxUsedHeap / 1048576.0);
+
+            // 在完整路网上匹配，按GPS点的时间对比投影点：按下标对齐时，一侧多断开一次会让之后的GPS点全部错位。
+            // 随机游走的轨迹常有掉头，掉头绕行与同向行驶的维特比概率可能恰好相等，
+            // 而转移只检查概率最大的前置投影点的绕行比，投影距离1e-5米量级的差异就会让其中一侧断开
+            RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, spacing, 7), false);
+            HmmMapMatcher mapMatcher = new HmmMapMatcher(rn, 50.0);
+            compare("前200条轨迹", trajectoryList.subList(0, 200), tiledResultList, mapMatcher);
+
+            // 随机游走的轨迹大多不离开出发的瓦片，另外模拟100条300个点、车速20米/秒的长轨迹，跨越多个瓦片
+            TrajectorySimulator simulator = new TrajectorySimulator(rn, 20.0, 10, 10.0, 0.02, 5);
+            List<Trajectory> longTrajectoryList = new ArrayList<>();
+            for (SimulatedTrajectory simulated : simulator.simulate(100, 300, new Random(5))) {
+                longTrajectoryList.add(simulated.trajectory);
+            }
+            CacheStats statsBefore = tiledNetwork.stats();
+            List<List<MapMatchTrajectory>> longResultList = new ArrayList<>();
+            startTime = System.nanoTime();
+            for (Trajectory trajectory : longTrajectoryList) {
+                longResultList.add(tiledMatcher.mapMatch(trajectory));
+            }
+            matchTime = System.nanoTime() - startTime;
+            stats = tiledNetwork.stats().minus(statsBefore);
+            System.out.printf("匹配%d条跨瓦片长轨迹：%dms，瓦片请求%d次，加载%d次（平均%.0fms）%n",
+                    longTrajectoryList.size(), matchTime / 1_000_000, stats.requestCount(), stats.loadCount(),
+                    stats.averageLoadPenalty() / 1e6);
+            compare("跨瓦片长轨迹", longTrajectoryList, longResultList, mapMatcher);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+
+    /**
+     * 在完整路网上重新匹配，统计分段数量相同的轨迹和投影点相同的GPS点
+     */
+    private static void compare(String label, List<Trajectory> trajectoryList,
+                                List<List<MapMatchTrajectory>> tiledResultList, HmmMapMatcher mapMatcher) {
+        int samePieceCount = 0;
+        int consistentCount = 0;
+        long sameFixCount = 0L;
+        long fixCount = 0L;
+        for (int i = 0; i < trajectoryList.size(); i++) {
+            List<MapMatchTrajectory> expectedList = mapMatcher.mapMatch(trajectoryList.get(i));
+            List<MapMatchTrajectory> actualList = tiledResultList.get(i);
+            Map<Long, Coordinate> expected = fixCoordinates(expectedList);
+            Map<Long, Coordinate> actual = fixCoordinates(actualList);
+            int sameCount = 0;
+            for (GpsPoint gpsPoint : trajectoryList.get(i).getSortedGpsList()) {
+                Coordinate expectedCoord = expected.get(gpsPoint.getTime().getTime());
+                Coordinate actualCoord = actual.get(gpsPoint.getTime().getTime());
+                boolean same = expectedCoord == null ? actualCoord == null
+                        : actualCoord != null && expectedCoord.distance(actualCoord) < 1e-7;
+                sameCount += same ? 1 : 0;
+            }
+            samePieceCount += expectedList.size() == actualList.size() ? 1 : 0;
+            consistentCount += sameCount == trajectoryList.get(i).getNumPoints() ? 1 : 0;
+            sameFixCount += sameCount;
+            fixCount += trajectoryList.get(i).getNumPoints();
+        }
+        System.out.printf("%s与完整路网对比：%d/%d条轨迹分段数量相同，%d条完全一致，%d/%d个GPS点的投影点一致%n",
+                label, samePieceCount, trajectoryList.size(), consistentCount, sameFixCount, fixCount);
+    }
+
+    /**
+     * @return GPS点的时间（毫秒）到投影点坐标的映射，未匹配的GPS点不在其中
+     */
+    private static Map<Long, Coordinate> fixCoordinates(List<MapMatchTrajectory> matchedList) {
+        Map<Long, Coordinate> coordinateMap = new HashMap<>();
+        for (MapMatchTrajectory matched : matchedList) {
+            for (GpsPoint gpsPoint : matched.getMatchedPath()) {
+                if (gpsPoint.getTime() != null) {
+                    coordinateMap.put(gpsPoint.getTime().getTime(), gpsPoint.getGeom().getCoordinate());
+                }
+            }
+        }
+        return coordinateMap;
+    }
+}
@@ -0,0 +1,211 @@
+package com.chronomon.analysis.trajectory.mapmatch;
+
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.CompactRoadGraph;
+import com.chronomon.analysis.trajectory.road.IRoadSegment;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 轨迹模拟器：车辆沿路网的有向边随机行驶，按固定的时间间隔采样，得到带噪声的GPS轨迹以及每个GPS点真实所在的路段
+ * <p>
+ * 1. 行驶路线遵守路段方向，在路口随机选择一条出边，只有无路可走时才掉头
+ * 2. 每辆车的速度在指定速度的0.7到1.3倍之间随机取值，行驶过程中保持不变
+ * 3. GPS噪声是均值为0的二维正态分布，标准差以米为单位
+ * 4. 信号中断：每个采样时刻以指定的概率开始一次中断，中断期间的GPS点全部丢失，持续的采样次数在1到最大值之间随机取值，
+ * 第一个和最后一个采样不会丢失
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public class TrajectorySimulator {
+
+    private static final double METERS_PER_DEGREE = DistanceKernel.EARTH_MEAN_RADIUS_IN_M * Math.PI / 180;
+
+    private static final long START_TIME = 1600000000000L;
+
+    private final CompactRoadGraph graph;
+
+    private final double speedInMps;
+
+    private final int intervalInSec;
+
+    private final double noiseInM;
+
+    private final double outageProbability;
+
+    private final int maxOutageCount;
+
+    /**
+     * @param rn                路网
+     * @param speedInMps        平均行驶速度（米/秒）
+     * @param intervalInSec     采样间隔（秒）
+     * @param noiseInM          GPS噪声的标准差（米）
+     * @param outageProbability 每个采样时刻开始信号中断的概率
+     * @param maxOutageCount    一次信号中断最多丢失的GPS点数量
+     */
+    public TrajectorySimulator(RoadNetwork rn, double speedInMps, int intervalInSec, double noiseInM,
+                               double outageProbability, int maxOutageCount) {
+        if (speedInMps <= 0.0 || intervalInSec <= 0 || noiseInM < 0.0) {
+            throw new IllegalArgumentException("速度和采样间隔必须大于0，噪声不能小于0");
+        }
+        if (outageProbability < 0.0 || outageProbability >= 1.0 || maxOutageCount < 1) {
+            throw new IllegalArgumentException("信号中断的概率必须在[0, 1)之间，中断时长必须大于0");
+        }
+        this.graph = rn.getCompactGraph();
+        this.speedInMps = speedInMps;
+        this.intervalInSec = intervalInSec;
+        this.noiseInM = noiseInM;
+        this.outageProbability = outageProbability;
+        this.maxOutageCount = maxOutageCount;
+    }
+
+    /**
+     * 模拟多辆车的轨迹
+     *
+     * @param count    车辆数量
+     * @param duration 每辆车的采样次数（包括信号中断期间丢失的采样）
+     * @param random   随机数生成器
+     * @return 模拟的轨迹，对象ID为"sim" + 序号
+     */
+    public List<SimulatedTrajectory> simulate(int count, int duration, Random random) {
+        List<SimulatedTrajectory> simulatedList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            simulatedList.add(simulate("sim" + i, duration, random));
+        }
+        return simulatedList;
+    }
+
+    /**
+     * 模拟一辆车的轨迹
+     *
+     * @param oid      对象ID
+     * @param duration 采样次数（包括信号中断期间丢失的采样）
+     * @param random   随机数生成器
+     * @return 模拟的轨迹
+     */
+    public SimulatedTrajectory simulate(String oid, int duration, Random random) {
+        if (duration < 2) {
+            throw new IllegalArgumentException("采样次数不能小于2");
+        }
+        double stepInM = speedInMps * (0.7 + 0.6 * random.nextDouble()) * intervalInSec;
+        int edge = random.nextInt(graph.getEdgeCount());
+        double offsetInM = random.nextDouble() * graph.getWeight(edge);
+
+        List<GpsPoint> gpsPointList = new ArrayList<>(duration);
+        List<Coordinate> trueCoordinateList = new ArrayList<>(duration);
+        List<IRoadSegment> trueSegmentList = new ArrayList<>(duration);
+        int outageRemaining = 0;
+        for (int n = 0; n < duration; n++) {
+            if (n > 0) {
+                // 沿路网前进一个采样间隔的距离
+                offsetInM += stepInM;
+                while (offsetInM > graph.getWeight(edge)) {
+                    offsetInM -= graph.getWeight(edge);
+                    edge = nextEdge(edge, random);
+                }
+            }
+            if (n > 0 && outageRemaining == 0 && random.nextDouble() < outageProbability) {
+                outageRemaining = 1 + random.nextInt(maxOutageCount);
+            }
+            if (outageRemaining > 0 && n < duration - 1) {
+                outageRemaining--;
+                continue;
+            }
+
+            IRoadSegment segment = graph.getSegment(edge);
+            Coordinate trueCoordinate = interpolate(segment, offsetInM);
+            double noiseLat = random.nextGaussian() * noiseInM / METERS_PER_DEGREE;
+            double noiseLng = random.nextGaussian() * noiseInM
+                    / (METERS_PER_DEGREE * Math.cos(Math.toRadians(trueCoordinate.y)));
+            Coordinate noisyCoordinate = new Coordinate(trueCoordinate.x + noiseLng, trueCoordinate.y + noiseLat);
+            gpsPointList.add(new GpsPoint(oid, noisyCoordinate, new Timestamp(START_TIME + n * intervalInSec * 1000L)));
+            trueCoordinateList.add(trueCoordinate);
+            trueSegmentList.add(segment);
+        }
+        return new SimulatedTrajectory(new Trajectory(oid, gpsPointList, true), trueCoordinateList, trueSegmentList);
+    }
+
+    /**
+     * 在路口随机选择一条出边，排除掉头的边，没有其他出边时才掉头
+     */
+    private int nextEdge(int edge, Random random) {
+        int source = graph.getSource(edge);
+        int target = graph.getTarget(edge);
+        int firstEdge = graph.getFirstEdge(target);
+        int endEdge = graph.getEndEdge(target);
+        List<Integer> candidateList = new ArrayList<>(endEdge - firstEdge);
+        for (int next = firstEdge; next < endEdge; next++) {
+            if (graph.getTarget(next) != source) {
+                candidateList.add(next);
+            }
+        }
+        if (!candidateList.isEmpty()) {
+            return candidateList.get(random.nextInt(candidateList.size()));
+        }
+        if (endEdge > firstEdge) {
+            return firstEdge + random.nextInt(endEdge - firstEdge);
+        }
+        // 断头的单行路，从任意一条边重新出发
+        return random.nextInt(graph.getEdgeCount());
+    }
+
+    /**
+     * @return 路段上距离起点指定长度处的坐标
+     */
+    private static Coordinate interpolate(IRoadSegment segment, double offsetInM) {
+        for (int i = 1; i < segment.getNumPoints(); i++) {
+            double endOffset = segment.distanceFromStartInM(i);
+            if (offsetInM <= endOffset || i == segment.getNumPoints() - 1) {
+                double startOffset = segment.distanceFromStartInM(i - 1);
+                double ratio = endOffset > startOffset ?
+                        Math.min(1.0, Math.max(0.0, (offsetInM - startOffset) / (endOffset - startOffset))) : 0.0;
+                Coordinate start = segment.getCoordinateN(i - 1);
+                Coordinate end = segment.getCoordinateN(i);
+                return new Coordinate(start.x + (end.x - start.x) * ratio, start.y + (end.y - start.y) * ratio);
+            }
+        }
+        return segment.getCoordinateN(0).copy();
+    }
+
+    /**
+     * 模拟的轨迹：带噪声的GPS轨迹，以及与每个GPS点一一对应的真实位置和真实路段
+     */
+    public static class SimulatedTrajectory {
+
+        public final Trajectory trajectory;
+
+        private final List<Coordinate> trueCoordinateList;
+
+        private final List<IRoadSegment> trueSegmentList;
+
+        public SimulatedTrajectory(Trajectory trajectory, List<Coordinate> trueCoordinateList,
+                                   List<IRoadSegment> trueSegmentList) {
+            this.trajectory = trajectory;
+            this.trueCoordinateList = Collections.unmodifiableList(trueCoordinateList);
+            this.trueSegmentList = Collections.unmodifiableList(trueSegmentList);
+        }
+
+        /**
+         * @return 第index个GPS点的真实位置
+         */
+        public Coordinate getTrueCoordinate(int index) {
+            return trueCoordinateList.get(index);
+        }
+
+        /**
+         * @return 第index个GPS点真实所在的有向路段
+         */
+        public IRoadSegment getTrueSegment(int index) {
+            return trueSegmentList.get(index);
+        }
+    }
+}
@@ -1,17 +1,28 @@
 package com.chronomon.analysis.trajectory.mapmatch.project;
 
 import com.chronomon.analysis.trajectory.model.DistanceUtil;
+import com.chronomon.analysis.trajectory.road.RoadEdgeGrid;
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.index.strtree.STRtree;
 import com.chronomon.analysis.trajectory.road.ReversedRoadSegment;
 import com.chronomon.analysis.trajectory.road.RoadNetwork;
 import com.chronomon.analysis.trajectory.road.RoadSegment;
 import com.chronomon.analysis.trajectory.road.RoadSegmentVisitor;
 import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 
 /**
  * 投影点簇：维护了一个GPS点在搜索半径内的路段上的投影点集合
@@ -52,6 +63,11 @@ public class ProjectCluster {
      */
     public int mustPassIndex = -1;
 
+    /**
+     * 默认最多保留的候选路段数量
+     */
+    public static final int DEFAULT_MAX_CANDIDATE_COUNT = 8;
+
     public ProjectCluster(GpsPoint gpsPoint, List<ProjectPoint> projectPointList) {
         this.gpsPoint = gpsPoint;
         this.projectPointList = projectPointList;
@@ -89,7 +105,7 @@ public class ProjectCluster {
     }
 
     /**
-     * 在路网集合上搜索GPS点的投影点簇的静态方法
+     * 在路网集合上搜索GPS点的投影点簇的静态方法，最多保留{@link #DEFAULT_MAX_CANDIDATE_COUNT}条候选路段
      *
      * @param gpsPoint      GPS点
      * @param rn            路网对象
@@ -97,6 +113,47 @@ public class ProjectCluster {
      * @return 投影点簇
      */
     public static Optional<ProjectCluster> searchCandidatePoint(GpsPoint gpsPoint, RoadNetwork rn, double searchDistInM) {
+        return searchCandidatePoint(gpsPoint, rn, searchDistInM, DEFAULT_MAX_CANDIDATE_COUNT);
+    }
+
+    /**
+     * 在路段折线边的网格索引上搜索GPS点的投影点簇
+     *
+     * @param gpsPoint          GPS点
+     * @param rn                路网对象
+     * @param searchDistInM     投影点的搜索半径（米）
+     * @param maxCandidateCount 最多保留的候选路段数量（按投影距离从近到远），双向路的两个方向算作一条路段
+     * @return 投影点簇
+     */
+    public static Optional<ProjectCluster> searchCandidatePoint(GpsPoint gpsPoint, RoadNetwork rn, double searchDistInM,
+                                                                int maxCandidateCount) {
+        Point gpsGeom = gpsPoint.getGeom();
+        List<RoadEdgeGrid.Candidate> candidateList = rn.getRoadEdgeGrid()
+                .search(gpsGeom.getX(), gpsGeom.getY(), searchDistInM, maxCandidateCount);
+
+        List<ProjectPoint> projectPointList = new ArrayList<>(2 * candidateList.size());
+        for (RoadEdgeGrid.Candidate candidate : candidateList) {
+            Point point = gpsGeom.getFactory().createPoint(new Coordinate(candidate.x, candidate.y));
+            addProjectPoint(projectPointList, new ProjectPoint(candidate.roadSegment, candidate.segmentIndex,
+                    point, candidate.projectDistInM, candidate.offsetDistInM));
+        }
+
+        if (projectPointList.size() > 0) {
+            return Optional.of(new ProjectCluster(gpsPoint, projectPointList));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 基于整条路段的RTree搜索GPS点的投影点簇，逐个路段用JTS计算投影，不限制候选路段数量，作为网格索引搜索的对照
+     *
+     * @param gpsPoint      GPS点
+     * @param rn            路网对象
+     * @param searchDistInM 投影点的搜索半径（米）
+     * @return 投影点簇
+     */
+    public static Optional<ProjectCluster> searchCandidatePointByRtree(GpsPoint gpsPoint, RoadNetwork rn, double searchDistInM) {
         // 获取路段构成的RTree空间索引
         STRtree roadRtree = rn.getRoadRtree();
 
@@ -111,17 +168,7 @@ public class ProjectCluster {
         for (RoadSegment segment : candidateSegmentList) {
             ProjectPoint projectPoint = ProjectPoint.project(gpsPoint.getGeom(), segment);
             if (projectPoint.projectDistInM <= searchDistInM) {
-                projectPointList.add(projectPoint);
-                if (segment.getReversedOne().isPresent()) {
-                    // 如果是双向路，复制投影点
-                    ReversedRoadSegment reversedSegment = segment.getReversedOne().get();
-                    int reversedSegmentIndex = segment.getNumPoints() - projectPoint.segmentIndex - 2;
-                    double reversedOffsetDistInM = segment.getLengthInM() - projectPoint.offsetDistInM;
-                    ProjectPoint reversed = new ProjectPoint(reversedSegment, reversedSegmentIndex,
-                            projectPoint.point, projectPoint.projectDistInM,
-                            reversedOffsetDistInM);
-                    projectPointList.add(reversed);
-                }
+                addProjectPoint(projectPointList, projectPoint);
             }
         }
 
@@ -131,4 +178,78 @@ public class ProjectCluster {
             return Optional.empty();
         }
     }
+
+    private static void addProjectPoint(List<ProjectPoint> projectPointList, ProjectPoint projectPoint) {
+        projectPointList.add(projectPoint);
+        RoadSegment segment = (RoadSegment) projectPoint.roadSegment;
+        if (segment.getReversedOne().isPresent()) {
+            // 如果是双向路，复制投影点
+            ReversedRoadSegment reversedSegment = segment.getReversedOne().get();
+            int reversedSegmentIndex = segment.getNumPoints() - projectPoint.segmentIndex - 2;
+            double reversedOffsetDistInM = segment.getLengthInM() - projectPoint.offsetDistInM;
+            ProjectPoint reversed = new ProjectPoint(reversedSegment, reversedSegmentIndex,
+                    projectPoint.point, projectPoint.projectDistInM,
+                    reversedOffsetDistInM);
+            projectPointList.add(reversed);
+        }
+    }
+
+    /**
+     * 对比网格索引与RTree的候选搜索：单次搜索耗时、最近候选路段是否一致以及投影距离的差异
+     */
+    public static void main(String[] args) {
+        int size = 150;
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        Random random = new Random(11);
+        List<GpsPoint> gpsPointList = new ArrayList<>();
+        for (Trajectory trajectory : Arrays.asList(
+                SyntheticRoadNetwork.randomWalk(size, SyntheticRoadNetwork.DEFAULT_SPACING, 2000, 3, 10, 0.0002, random, "oid"),
+                SyntheticRoadNetwork.randomWalk(size, SyntheticRoadNetwork.DEFAULT_SPACING, 2000, 3, 10, 0.0002, random, "oid"))) {
+            gpsPointList.addAll(trajectory.getSortedGpsList());
+        }
+        double searchDistInM = 50.0;
+
+        for (int round = 0; round < 3; round++) {
+            long startTime = System.nanoTime();
+            List<Optional<ProjectCluster>> rtreeResult = new ArrayList<>(gpsPointList.size());
+            for (GpsPoint gpsPoint : gpsPointList) {
+                rtreeResult.add(searchCandidatePointByRtree(gpsPoint, rn, searchDistInM));
+            }
+            long rtreeTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            List<Optional<ProjectCluster>> gridResult = new ArrayList<>(gpsPointList.size());
+            for (GpsPoint gpsPoint : gpsPointList) {
+                gridResult.add(searchCandidatePoint(gpsPoint, rn, searchDistInM, Integer.MAX_VALUE));
+            }
+            long gridTime = System.nanoTime() - startTime;
+
+            int sameCount = 0;
+            int sameNearest = 0;
+            double maxDistDiff = 0.0;
+            for (int i = 0; i < gpsPointList.size(); i++) {
+                List<ProjectPoint> expected = rtreeResult.get(i).map(cluster -> cluster.projectPointList).orElse(Collections.emptyList());
+                List<ProjectPoint> actual = gridResult.get(i).map(cluster -> cluster.projectPointList).orElse(Collections.emptyList());
+                Map<Integer, Double> expectedDist = new HashMap<>();
+                expected.forEach(projectPoint -> expectedDist.put(projectPoint.roadSegment.getRoadId(), projectPoint.projectDistInM));
+                Map<Integer, Double> actualDist = new HashMap<>();
+                actual.forEach(projectPoint -> actualDist.put(projectPoint.roadSegment.getRoadId(), projectPoint.projectDistInM));
+                if (expectedDist.keySet().equals(actualDist.keySet())) {
+                    sameCount++;
+                    for (Map.Entry<Integer, Double> entry : expectedDist.entrySet()) {
+                        maxDistDiff = Math.max(maxDistDiff, Math.abs(entry.getValue() - actualDist.get(entry.getKey())));
+                    }
+                }
+                Optional<ProjectPoint> expectedNearest = expected.stream().min(Comparator.comparingDouble(projectPoint -> projectPoint.projectDistInM));
+                Optional<ProjectPoint> actualNearest = actual.stream().min(Comparator.comparingDouble(projectPoint -> projectPoint.projectDistInM));
+                if (expectedNearest.map(projectPoint -> Math.abs(projectPoint.roadSegment.getRoadId()))
+                        .equals(actualNearest.map(projectPoint -> Math.abs(projectPoint.roadSegment.getRoadId())))) {
+                    sameNearest++;
+                }
+            }
+            System.out.printf("第%d轮（%d个GPS点）：RTree %.2fus/次，网格 %.2fus/次，候选路段一致%.2f%%，最近路段一致%.2f%%，投影距离最大差异%.3f米%n",
+                    round + 1, gpsPointList.size(), rtreeTime / 1e3 / gpsPointList.size(), gridTime / 1e3 / gpsPointList.size(),
+                    100.0 * sameCount / gpsPointList.size(), 100.0 * sameNearest / gpsPointList.size(), maxDistDiff);
+        }
+    }
 }
@@ -6,7 +6,7 @@ import org.locationtech.jts.operation.distance.DistanceOp;
 import org.locationtech.jts.operation.distance.GeometryLocation;
 import com.chronomon.analysis.trajectory.road.IRoadSegment;
 import com.chronomon.analysis.trajectory.road.RoadSegment;
-import com.chronomon.analysis.trajectory.model.DistanceUtil;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -151,8 +151,11 @@ public class ProjectPoint {
         GeometryLocation projectLocation = distanceOp.nearestLocations()[0];
         Point projectPoint = gpsPoint.getFactory().createPoint(projectLocation.getCoordinate());
         int segmentIndex = projectLocation.getSegmentIndex();
-        double projectDistanceInM = DistanceUtil.distInMeter(gpsPoint, projectPoint);
-        double offsetDistanceInM = roadSegment.distanceFromStartInM(segmentIndex) + DistanceUtil.distInMeter(roadSegment.getPointN(segmentIndex), projectPoint);
+        Coordinate projectCoordinate = projectPoint.getCoordinate();
+        Coordinate segmentStart = roadSegment.getRoadLine().getCoordinateN(segmentIndex);
+        // 投影距离和段内偏移都是短距离，使用误差有界的快速近似
+        double projectDistanceInM = DistanceKernel.fastDistInMeter(gpsPoint.getX(), gpsPoint.getY(), projectCoordinate.x, projectCoordinate.y);
+        double offsetDistanceInM = roadSegment.distanceFromStartInM(segmentIndex) + DistanceKernel.fastDistInMeter(segmentStart.x, segmentStart.y, projectCoordinate.x, projectCoordinate.y);
         return new ProjectPoint(roadSegment, segmentIndex, projectPoint, projectDistanceInM, offsetDistanceInM);
     }
 }
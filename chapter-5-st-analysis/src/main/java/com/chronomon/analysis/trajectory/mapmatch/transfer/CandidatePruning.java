@@ -0,0 +1,157 @@
+package com.chronomon.analysis.trajectory.mapmatch.transfer;
+
+import com.chronomon.analysis.trajectory.mapmatch.HmmMapMatcher;
+import com.chronomon.analysis.trajectory.mapmatch.MapMatchBenchmark;
+import com.chronomon.analysis.trajectory.mapmatch.MapMatchStatistics;
+import com.chronomon.analysis.trajectory.mapmatch.TrajectorySimulator;
+import com.chronomon.analysis.trajectory.mapmatch.TrajectorySimulator.SimulatedTrajectory;
+import com.chronomon.analysis.trajectory.mapmatch.project.ProjectPoint;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * 状态转移前的候选剪枝：减少参与计算的前后投影点对，以及需要搜索最短路径的起止节点
+ * <p>
+ * 1. 集束剪枝：前一个GPS点只保留维特比概率最大的{@link #beamWidth}个投影点作为前置投影点，其余投影点不再向后转移
+ * 2. 发射概率截断：当前GPS点的投影点中，发射概率比最大值低{@link #maxEmissionGap}以上的投影点不参与转移，也不作为最短路径的终点，
+ * 即投影距离明显远于最近投影点的候选路段直接放弃
+ * <p>
+ * 与{@link TransitionBound}不同，剪枝可能丢弃最终位于最优路径上的投影点，是用准确率换取吞吐量；
+ * 概率最大的前置投影点和发射概率最大的投影点总会保留，但保留的投影点对之间都不连通时匹配会在此断开
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class CandidatePruning {
+
+    /**
+     * 不剪枝，与剪枝之前的结果完全相同
+     */
+    public static final CandidatePruning NONE = new CandidatePruning(Integer.MAX_VALUE, Double.POSITIVE_INFINITY);
+
+    /**
+     * 前置投影点的最大数量
+     */
+    private final int beamWidth;
+
+    /**
+     * 当前投影点的发射概率（对数）与最大值之间允许的最大差值
+     */
+    private final double maxEmissionGap;
+
+    public CandidatePruning(int beamWidth, double maxEmissionGap) {
+        if (beamWidth < 1) {
+            throw new IllegalArgumentException("前置投影点的数量必须大于0");
+        }
+        if (!(maxEmissionGap >= 0.0)) {
+            throw new IllegalArgumentException("发射概率的截断差值不能小于0");
+        }
+        this.beamWidth = beamWidth;
+        this.maxEmissionGap = maxEmissionGap;
+    }
+
+    /**
+     * @param maxProjectDistGapInM 投影距离比最近投影点远多少米时截断
+     * @param hmmProbability       隐马尔科夫的概率计算模型
+     * @return 以最近投影点为基准，按投影距离之差换算出的发射概率截断
+     */
+    public static double emissionGapOf(double maxProjectDistGapInM, HmmProbability hmmProbability) {
+        return hmmProbability.emissionProbability(0.0) - hmmProbability.emissionProbability(maxProjectDistGapInM);
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public double getMaxEmissionGap() {
+        return maxEmissionGap;
+    }
+
+    /**
+     * @param prevProjectPoints 前一个GPS点的投影点
+     * @return 保留的前置投影点的下标，按下标升序排列，保证未剪枝时的比较顺序与原来相同
+     */
+    int[] selectPrev(List<ProjectPoint> prevProjectPoints) {
+        if (prevProjectPoints.size() <= beamWidth) {
+            return IntStream.range(0, prevProjectPoints.size()).toArray();
+        }
+        return IntStream.range(0, prevProjectPoints.size()).boxed()
+                .sorted(Comparator.comparingDouble(index -> -prevProjectPoints.get(index).getMetric()))
+                .limit(beamWidth)
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * @param emissionProbabilities 当前GPS点每个投影点的发射概率
+     * @return 每个投影点是否参与转移
+     */
+    boolean[] selectCurr(double[] emissionProbabilities) {
+        double maxEmission = Double.NEGATIVE_INFINITY;
+        for (double emission : emissionProbabilities) {
+            maxEmission = Math.max(maxEmission, emission);
+        }
+        boolean[] selected = new boolean[emissionProbabilities.length];
+        for (int i = 0; i < emissionProbabilities.length; i++) {
+            selected[i] = emissionProbabilities[i] >= maxEmission - maxEmissionGap;
+        }
+        return selected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("集束宽度%s，发射概率截断%s", beamWidth == Integer.MAX_VALUE ? "不限" : beamWidth,
+                maxEmissionGap == Double.POSITIVE_INFINITY ? "不限" : String.format("%.1f", maxEmissionGap));
+    }
+
+    /**
+     * 分别在默认间距和1/4间距（路口密集，搜索半径内的候选路段更多）的网格路网上，
+     * 对比不同剪枝参数的吞吐量、每次转移计算的投影点对数量和确定的节点数量，以及覆盖率和准确率
+     * <p>
+     * 参数依次为：网格大小（默认200）、轨迹数量（默认500）、GPS噪声（米，默认10）
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        double noiseInM = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        for (double spacing : new double[]{SyntheticRoadNetwork.DEFAULT_SPACING, SyntheticRoadNetwork.DEFAULT_SPACING / 4}) {
+            RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, spacing, 7), false);
+            TrajectorySimulator simulator = new TrajectorySimulator(rn, 10.0, 10, noiseInM, 0.02, 5);
+            List<SimulatedTrajectory> simulatedList = simulator.simulate(count, 120, new Random(17));
+
+            HmmMapMatcher mapMatcher = new HmmMapMatcher(rn, 50.0);
+            List<CandidatePruning> pruningList = new ArrayList<>();
+            pruningList.add(NONE);
+            for (int beamWidth : new int[]{8, 4, 2}) {
+                pruningList.add(new CandidatePruning(beamWidth, Double.POSITIVE_INFINITY));
+            }
+            for (double distGapInM : new double[]{40.0, 20.0}) {
+                pruningList.add(new CandidatePruning(Integer.MAX_VALUE, emissionGapOf(distGapInM, mapMatcher.hmmProbability)));
+                pruningList.add(new CandidatePruning(4, emissionGapOf(distGapInM, mapMatcher.hmmProbability)));
+            }
+
+            System.out.printf("网格间距%.4f度%n", spacing);
+            MapMatchBenchmark benchmark = new MapMatchBenchmark(mapMatcher);
+            // 预热
+            benchmark.run(simulatedList, 0);
+            for (CandidatePruning pruning : pruningList) {
+                mapMatcher.setCandidatePruning(pruning);
+                MapMatchBenchmark.Report report = benchmark.run(simulatedList, Math.min(count, 200));
+                MapMatchStatistics statistics = report.statistics;
+                long transitionCount = Math.max(1L, statistics.getTransitionCount());
+                System.out.printf("  %s：吞吐量%.0f点/秒，每次转移%.1f对投影点、确定%.1f个节点，覆盖率%.2f%%，准确率%.2f%%%n",
+                        pruning, report.getFixesPerSecond(), (double) statistics.getEvaluationCount() / transitionCount,
+                        (double) statistics.getSettledCount() / transitionCount, report.getCoverage() * 100,
+                        report.getAccuracy() * 100);
+            }
+        }
+    }
+}
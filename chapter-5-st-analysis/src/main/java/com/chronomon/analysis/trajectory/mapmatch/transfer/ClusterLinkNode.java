@@ -2,7 +2,7 @@ package com.chronomon.analysis.trajectory.mapmatch.transfer;
 
 import com.chronomon.analysis.trajectory.mapmatch.project.ProjectCluster;
 import com.chronomon.analysis.trajectory.mapmatch.project.ProjectPoint;
-import com.chronomon.analysis.trajectory.model.DistanceUtil;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
 import com.chronomon.analysis.trajectory.road.IRoadSegment;
 import com.chronomon.analysis.trajectory.road.RoadNetwork;
 import com.chronomon.analysis.trajectory.road.RoadNode;
@@ -24,6 +24,8 @@ public class ClusterLinkNode {
      */
     private static final int MAX_TIME_INTERVAL_IN_SEC = Integer.MAX_VALUE;
 
+    private static final int[] NO_PREV_INDEXES = new int[0];
+
     /**
      * 当前节点中存储的投影点簇
      */
@@ -39,6 +41,11 @@ public class ClusterLinkNode {
      */
     private ClusterLinkNode nextNode = null;
 
+    /**
+     * 最近一次状态转移计算的前后投影点对数量
+     */
+    private int evaluationCount = 0;
+
     public ClusterLinkNode(ProjectCluster projectCluster) {
         this.projectCluster = projectCluster;
     }
@@ -74,40 +81,100 @@ public class ClusterLinkNode {
         this.nextNode = nextNode;
     }
 
+    public int getEvaluationCount() {
+        return evaluationCount;
+    }
+
     public double mapMatch(RoadNetwork rn, HmmProbability hmmProbability) {
+        return mapMatch(new ShortestPathCalculator(rn), hmmProbability);
+    }
+
+    public double mapMatch(ShortestPathCalculator calculator, HmmProbability hmmProbability) {
+        return mapMatch(calculator, hmmProbability, TransitionBound.DEFAULT);
+    }
+
+    /**
+     * 计算当前GPS点的投影点与前置GPS点的投影点之间的转移概率
+     *
+     * @param calculator      最短路径计算器，应在同一线程的多次调用之间复用
+     * @param hmmProbability  隐马尔科夫的概率计算模型
+     * @param transitionBound 状态转移的约束，同时决定最短路径搜索的代价上限
+     * @return 最小的路网距离
+     */
+    public double mapMatch(ShortestPathCalculator calculator, HmmProbability hmmProbability,
+                           TransitionBound transitionBound) {
+        return mapMatch(calculator, hmmProbability, transitionBound, CandidatePruning.NONE);
+    }
+
+    /**
+     * 计算当前GPS点的投影点与前置GPS点的投影点之间的转移概率，只计算剪枝后保留的投影点对
+     *
+     * @param calculator      最短路径计算器，应在同一线程的多次调用之间复用
+     * @param hmmProbability  隐马尔科夫的概率计算模型
+     * @param transitionBound 状态转移的约束，同时决定最短路径搜索的代价上限
+     * @param pruning         状态转移前的候选剪枝
+     * @return 最小的路网距离
+     */
+    public double mapMatch(ShortestPathCalculator calculator, HmmProbability hmmProbability,
+                           TransitionBound transitionBound, CandidatePruning pruning) {
         List<ProjectPoint> currProjectPoints = projectCluster.projectPointList;
+        evaluationCount = 0;
 
-        if (prevNode != null &&
-                prevNode.projectCluster.gpsPoint.timeIntervalInSec(projectCluster.gpsPoint) < MAX_TIME_INTERVAL_IN_SEC) {
+        long timeIntervalInSec = prevNode == null ? 0L :
+                prevNode.projectCluster.gpsPoint.timeIntervalInSec(projectCluster.gpsPoint);
+        if (prevNode != null && timeIntervalInSec < MAX_TIME_INTERVAL_IN_SEC) {
 
             //准备前后两个GPS点对应的投影点的集合
             ProjectCluster prevProjectCluster = prevNode.projectCluster;
             List<ProjectPoint> prevProjectPointList = prevProjectCluster.projectPointList;
 
-            Set<RoadNode> prevRoadNodes = prevProjectPointList.stream()
+            //剪枝：保留概率最大的前置投影点，放弃发射概率过低的当前投影点
+            int[] prevIndexes = pruning.selectPrev(prevProjectPointList);
+            double[] emissionProbabilities = new double[currProjectPoints.size()];
+            for (int i = 0; i < currProjectPoints.size(); i++) {
+                emissionProbabilities[i] = hmmProbability.emissionProbability(currProjectPoints.get(i).projectDistInM);
+            }
+            boolean[] currSelected = pruning.selectCurr(emissionProbabilities);
+            List<ProjectPoint> selectedPrevProjectPoints = new ArrayList<>(prevIndexes.length);
+            for (int prevIndex : prevIndexes) {
+                selectedPrevProjectPoints.add(prevProjectPointList.get(prevIndex));
+            }
+            List<ProjectPoint> selectedCurrProjectPoints = new ArrayList<>(currProjectPoints.size());
+            for (int i = 0; i < currProjectPoints.size(); i++) {
+                if (currSelected[i]) {
+                    selectedCurrProjectPoints.add(currProjectPoints.get(i));
+                }
+            }
+            evaluationCount = selectedPrevProjectPoints.size() * selectedCurrProjectPoints.size();
+
+            Set<RoadNode> prevRoadNodes = selectedPrevProjectPoints.stream()
                     .map(projectPoint -> projectPoint.roadSegment.getToNode())
                     .collect(Collectors.toSet());
-            Set<RoadNode> currRoadNodes = currProjectPoints.stream()
+            Set<RoadNode> currRoadNodes = selectedCurrProjectPoints.stream()
                     .map(projectPoint -> projectPoint.roadSegment.getFromNode())
                     .collect(Collectors.toSet());
 
-            //计算两个投影点之间的最短路径
-           ShortestPathCalculator calculator = new ShortestPathCalculator(rn);
-           ShortestPathCalculator.ShortestPathSet shortestPathSet = calculator.calculate(prevRoadNodes, currRoadNodes);
+            //计算两个投影点之间的最短路径，超过代价上限的路径不可能被接受，不用继续搜索
+            double maxPathLength = transitionBound.maxPathLength(
+                    prevProjectCluster.gpsPoint.distInMeter(projectCluster.gpsPoint),
+                    maxProjectDistInM(selectedPrevProjectPoints), maxProjectDistInM(selectedCurrProjectPoints),
+                    timeIntervalInSec);
+            ShortestPathCalculator.ShortestPathSet shortestPathSet = calculator.calculate(prevRoadNodes, currRoadNodes, maxPathLength);
 
             //计算当前GPS点对应投影点的概率值
             int unConnectiveCount = 0;
             List<ProjectPoint> validCurrProjectPoints = new ArrayList<>(currProjectPoints.size());
             double minGraphDistance = Double.MAX_VALUE;
-            for (ProjectPoint currProjectPoint : currProjectPoints) {
-                double emissionProbability = hmmProbability.emissionProbability(currProjectPoint.projectDistInM);
+            for (int currIndex = 0; currIndex < currProjectPoints.size(); currIndex++) {
+                ProjectPoint currProjectPoint = currProjectPoints.get(currIndex);
+                double emissionProbability = emissionProbabilities[currIndex];
 
                 double bestMetric = Double.NEGATIVE_INFINITY;
                 int bestPrevIndex = -1;
                 List<IRoadSegment> bestPathSegments = null;
                 double bestGraphDistance = 0.0;
                 double bestLinearDistance = 0.0;
-                for (int prevIndex = 0; prevIndex < prevProjectPointList.size(); prevIndex++) {
+                for (int prevIndex : currSelected[currIndex] ? prevIndexes : NO_PREV_INDEXES) {
                     ProjectPoint prevProjectPoint = prevProjectPointList.get(prevIndex);
                     IRoadSegment prevRoadSegment = prevProjectPoint.roadSegment;
                     IRoadSegment currRoadSegment = currProjectPoint.roadSegment;
@@ -135,7 +202,8 @@ public class ClusterLinkNode {
                     // 计算当前投影点上的概率值
                     if (graphDistance < Double.POSITIVE_INFINITY) {
                         // 投影点之间在路网上是可达的
-                        double linearDistance = DistanceUtil.distInMeter(prevProjectPoint.point, currProjectPoint.point);
+                        double linearDistance = DistanceKernel.haversine(prevProjectPoint.point.getX(), prevProjectPoint.point.getY(),
+                                currProjectPoint.point.getX(), currProjectPoint.point.getY());
                         double transitionProbability = hmmProbability.transitionProbability(graphDistance, linearDistance);
                         double metric = prevProjectPoint.getMetric() + emissionProbability + transitionProbability;
                         if (metric > bestMetric) {
@@ -149,7 +217,7 @@ public class ClusterLinkNode {
                     }
                 }
                 //save hmm metric of the current project point
-                if (bestPrevIndex != -1  && bestGraphDistance / bestLinearDistance < 5) {
+                if (bestPrevIndex != -1 && transitionBound.accept(bestGraphDistance, bestLinearDistance, timeIntervalInSec)) {
                     currProjectPoint.setPrevIndex(bestPrevIndex);
                     currProjectPoint.setMetric(bestMetric);
                     currProjectPoint.setPathSegments(bestPathSegments);
@@ -186,4 +254,12 @@ public class ClusterLinkNode {
         }
         return Double.MAX_VALUE;
     }
+
+    private static double maxProjectDistInM(List<ProjectPoint> projectPoints) {
+        double maxDist = 0.0;
+        for (ProjectPoint projectPoint : projectPoints) {
+            maxDist = Math.max(maxDist, projectPoint.projectDistInM);
+        }
+        return maxDist;
+    }
 }
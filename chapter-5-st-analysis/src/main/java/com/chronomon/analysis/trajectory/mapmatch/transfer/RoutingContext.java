@@ -0,0 +1,422 @@
+package com.chronomon.analysis.trajectory.mapmatch.transfer;
+
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import com.chronomon.analysis.trajectory.road.CompactRoadGraph;
+import com.chronomon.analysis.trajectory.road.IRoadSegment;
+import com.chronomon.analysis.trajectory.road.RoadGraph;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.RoadNode;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 路径搜索上下文：在紧凑路网图{@link CompactRoadGraph}上执行单源多目标的Dijkstra搜索或单对单的A*搜索，
+ * 搜索所需的堆、距离标签、前驱边等数组在多次搜索之间复用
+ * <p>
+ * 1. 所有数组都以路网节点ID为下标，节点ID在路网中是连续分配的
+ * 2. 每次搜索分配一个新的版本号，标签的版本号与当前版本号不一致即视为未访问，因此重置的代价为O(1)
+ * 3. 可以指定代价上限，堆顶节点的距离超过上限时提前结束搜索，上限之外的节点视为不可达
+ * 4. 该类不是线程安全的，每个线程（或Flink的每个子任务）应持有独立的实例
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class RoutingContext {
+
+    /**
+     * 节点已进入堆，距离标签有效但不一定是最短距离
+     */
+    private static final byte STATE_IN_HEAP = 1;
+
+    /**
+     * 节点已出堆，距离标签为最短距离
+     */
+    private static final byte STATE_SETTLED = 2;
+
+    /**
+     * A*启发函数的缩放系数：路段长度是按折线逐段累加的球面距离，不小于端点间的球面距离，
+     * 略微缩小以抵消浮点误差，保证启发函数不高估
+     */
+    private static final double HEURISTIC_FACTOR = 0.99999;
+
+    /**
+     * 当前搜索的紧凑图，可以切换到节点数量不超过数组容量的其他紧凑图
+     */
+    private CompactRoadGraph graph;
+
+    /**
+     * 节点标签的版本号，与searchVersion不一致的标签视为未访问
+     */
+    private final int[] labelVersion;
+
+    private final byte[] state;
+
+    private final double[] distance;
+
+    /**
+     * 堆中的排序键：Dijkstra为距离，A*为距离加启发值
+     */
+    private final double[] key;
+
+    /**
+     * 到达节点的最短路径上的最后一条边，起点为-1
+     */
+    private final int[] prevEdge;
+
+    /**
+     * 目标节点的版本号，与searchVersion一致表示该节点是本次搜索的目标
+     */
+    private final int[] targetVersion;
+
+    /**
+     * 二叉堆：heap中存放节点ID，heapPosition记录节点在堆中的位置
+     */
+    private final int[] heap;
+
+    private final int[] heapPosition;
+
+    private int heapSize;
+
+    private int searchVersion = 0;
+
+    /**
+     * 累计出堆（确定最短距离）的节点数量
+     */
+    private long settledCount = 0L;
+
+    private long searchCount = 0L;
+
+    public RoutingContext(RoadNetwork rn) {
+        this(rn.getCompactGraph());
+    }
+
+    public RoutingContext(CompactRoadGraph graph) {
+        this.graph = graph;
+        int capacity = graph.getNodeCount();
+        this.labelVersion = new int[capacity];
+        this.state = new byte[capacity];
+        this.distance = new double[capacity];
+        this.key = new double[capacity];
+        this.prevEdge = new int[capacity];
+        this.targetVersion = new int[capacity];
+        this.heap = new int[capacity];
+        this.heapPosition = new int[capacity];
+    }
+
+    /**
+     * 从起点出发搜索最短路径，直到所有目标节点的最短距离都已确定
+     *
+     * @param source  起点
+     * @param targets 目标节点
+     * @return 已确定最短距离的目标节点数量
+     */
+    public int search(RoadNode source, Collection<RoadNode> targets) {
+        return search(source, targets, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * 从起点出发搜索最短路径，直到所有目标节点的最短距离都已确定，或者堆顶节点的距离超过代价上限
+     *
+     * @param source  起点
+     * @param targets 目标节点
+     * @param maxCost 代价上限（米），距离超过该值的节点不会被确定
+     * @return 已确定最短距离的目标节点数量
+     */
+    public int search(RoadNode source, Collection<RoadNode> targets, double maxCost) {
+        nextVersion();
+        searchCount++;
+        int remaining = 0;
+        for (RoadNode target : targets) {
+            if (targetVersion[target.nodeId] != searchVersion) {
+                targetVersion[target.nodeId] = searchVersion;
+                remaining++;
+            }
+        }
+        int targetCount = remaining;
+
+        heapSize = 0;
+        touch(source.nodeId, 0.0, 0.0, -1);
+        while (heapSize > 0 && remaining > 0) {
+            if (key[heap[0]] > maxCost) {
+                // 堆中剩余节点的距离都超过了上限
+                break;
+            }
+            int nodeId = settle();
+            if (targetVersion[nodeId] == searchVersion) {
+                remaining--;
+            }
+            relax(nodeId, -1);
+        }
+        return targetCount - remaining;
+    }
+
+    /**
+     * 以到终点的球面距离为启发函数，执行单对单的A*搜索
+     *
+     * @param source  起点
+     * @param target  终点
+     * @param maxCost 代价上限（米）
+     * @return 最短距离，不可达或超过上限时返回正无穷
+     */
+    public double searchAStar(RoadNode source, RoadNode target, double maxCost) {
+        nextVersion();
+        searchCount++;
+        int targetId = target.nodeId;
+        targetVersion[targetId] = searchVersion;
+
+        heapSize = 0;
+        touch(source.nodeId, 0.0, heuristic(source.nodeId, targetId), -1);
+        while (heapSize > 0) {
+            if (key[heap[0]] > maxCost) {
+                // 启发函数不高估，堆顶的键值是经过剩余节点的路径长度的下界
+                break;
+            }
+            int nodeId = settle();
+            if (nodeId == targetId) {
+                return distance[nodeId];
+            }
+            relax(nodeId, targetId);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * 切换到另一个紧凑图并复用已有的数组，切换前的标签版本号都小于之后的搜索版本，视为未访问
+     *
+     * @param graph 节点数量不超过{@link #getCapacity()}的紧凑图，为null时只释放对当前紧凑图的引用
+     */
+    public void bind(CompactRoadGraph graph) {
+        if (graph != null && graph.getNodeCount() > labelVersion.length) {
+            throw new IllegalArgumentException("紧凑图的节点数量超过了搜索上下文的容量");
+        }
+        this.graph = graph;
+        nextVersion();
+    }
+
+    /**
+     * @return 当前搜索的紧凑图，释放后返回null
+     */
+    public CompactRoadGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return 可以搜索的紧凑图的最大节点数量
+     */
+    public int getCapacity() {
+        return labelVersion.length;
+    }
+
+    /**
+     * @return 上一次搜索中节点的最短距离，未确定时返回正无穷
+     */
+    public double getDistance(RoadNode node) {
+        int nodeId = node.nodeId;
+        if (labelVersion[nodeId] == searchVersion && state[nodeId] == STATE_SETTLED) {
+            return distance[nodeId];
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return 上一次搜索中从起点到该节点的最短路径途经的路段，未确定时返回null
+     */
+    public List<IRoadSegment> getPath(RoadNode node) {
+        if (getDistance(node) == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        List<IRoadSegment> path = new ArrayList<>();
+        int edge = prevEdge[node.nodeId];
+        while (edge >= 0) {
+            path.add(graph.getSegment(edge));
+            edge = prevEdge[graph.getSource(edge)];
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * @return 累计确定最短距离的节点数量
+     */
+    public long getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * @return 累计搜索次数
+     */
+    public long getSearchCount() {
+        return searchCount;
+    }
+
+    private int settle() {
+        int nodeId = poll();
+        state[nodeId] = STATE_SETTLED;
+        settledCount++;
+        return nodeId;
+    }
+
+    /**
+     * 松弛节点的所有出边
+     *
+     * @param nodeId   已确定最短距离的节点
+     * @param targetId A*搜索的终点，Dijkstra搜索为-1
+     */
+    private void relax(int nodeId, int targetId) {
+        double nodeDistance = distance[nodeId];
+        int endEdge = graph.getEndEdge(nodeId);
+        for (int edge = graph.getFirstEdge(nodeId); edge < endEdge; edge++) {
+            int toId = graph.getTarget(edge);
+            double toDistance = nodeDistance + graph.getWeight(edge);
+            if (labelVersion[toId] != searchVersion) {
+                touch(toId, toDistance, targetId < 0 ? toDistance : toDistance + heuristic(toId, targetId), edge);
+            } else if (state[toId] == STATE_IN_HEAP && toDistance < distance[toId]) {
+                distance[toId] = toDistance;
+                key[toId] = targetId < 0 ? toDistance : toDistance + heuristic(toId, targetId);
+                prevEdge[toId] = edge;
+                siftUp(heapPosition[toId]);
+            }
+        }
+    }
+
+    private double heuristic(int nodeId, int targetId) {
+        return HEURISTIC_FACTOR * DistanceKernel.haversine(graph.getNodeLng(nodeId), graph.getNodeLat(nodeId),
+                graph.getNodeLng(targetId), graph.getNodeLat(targetId));
+    }
+
+    private void nextVersion() {
+        searchVersion++;
+        if (searchVersion == Integer.MAX_VALUE) {
+            // 版本号用尽时才真正清空数组
+            Arrays.fill(labelVersion, 0);
+            Arrays.fill(targetVersion, 0);
+            searchVersion = 1;
+        }
+    }
+
+    private void touch(int nodeId, double nodeDistance, double nodeKey, int edge) {
+        labelVersion[nodeId] = searchVersion;
+        state[nodeId] = STATE_IN_HEAP;
+        distance[nodeId] = nodeDistance;
+        key[nodeId] = nodeKey;
+        prevEdge[nodeId] = edge;
+        heap[heapSize] = nodeId;
+        heapPosition[nodeId] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private int poll() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            heapPosition[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int position) {
+        int nodeId = heap[position];
+        double nodeKey = key[nodeId];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentId = heap[parent];
+            if (key[parentId] <= nodeKey) {
+                break;
+            }
+            heap[position] = parentId;
+            heapPosition[parentId] = position;
+            position = parent;
+        }
+        heap[position] = nodeId;
+        heapPosition[nodeId] = position;
+    }
+
+    private void siftDown(int position) {
+        int nodeId = heap[position];
+        double nodeKey = key[nodeId];
+        int half = heapSize >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < heapSize && key[heap[right]] < key[heap[child]]) {
+                child = right;
+            }
+            int childId = heap[child];
+            if (nodeKey <= key[childId]) {
+                break;
+            }
+            heap[position] = childId;
+            heapPosition[childId] = position;
+            position = child;
+        }
+        heap[position] = nodeId;
+        heapPosition[nodeId] = position;
+    }
+
+    /**
+     * 对比jgrapht的Dijkstra、基于紧凑图的Dijkstra以及A*的单对单最短路径查询耗时
+     */
+    public static void main(String[] args) {
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(150, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        RoadGraph roadGraph = rn.getRoadGraph();
+        CompactRoadGraph graph = rn.getCompactGraph();
+        System.out.printf("节点%d个，边%d条%n", roadGraph.vertexSet().size(), graph.getEdgeCount());
+
+        List<RoadNode> nodeList = new ArrayList<>(roadGraph.vertexSet());
+        Random random = new Random(42);
+        int queryCount = 200;
+        RoadNode[] sourceNodes = new RoadNode[queryCount];
+        RoadNode[] targetNodes = new RoadNode[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            sourceNodes[i] = nodeList.get(random.nextInt(nodeList.size()));
+            targetNodes[i] = nodeList.get(random.nextInt(nodeList.size()));
+        }
+
+        DijkstraShortestPath<RoadNode, IRoadSegment> jgraphtDijkstra = new DijkstraShortestPath<>(roadGraph);
+        RoutingContext context = new RoutingContext(rn);
+        for (int round = 0; round < 3; round++) {
+            double jgraphtSum = 0.0;
+            long startTime = System.nanoTime();
+            for (int i = 0; i < queryCount; i++) {
+                double distance = jgraphtDijkstra.getPathWeight(sourceNodes[i], targetNodes[i]);
+                jgraphtSum += Double.isInfinite(distance) ? 0.0 : distance;
+            }
+            long jgraphtTime = System.nanoTime() - startTime;
+
+            double dijkstraSum = 0.0;
+            long settledBefore = context.getSettledCount();
+            startTime = System.nanoTime();
+            for (int i = 0; i < queryCount; i++) {
+                context.search(sourceNodes[i], Collections.singletonList(targetNodes[i]));
+                double distance = context.getDistance(targetNodes[i]);
+                dijkstraSum += Double.isInfinite(distance) ? 0.0 : distance;
+            }
+            long dijkstraTime = System.nanoTime() - startTime;
+            long dijkstraSettled = context.getSettledCount() - settledBefore;
+
+            double aStarSum = 0.0;
+            settledBefore = context.getSettledCount();
+            startTime = System.nanoTime();
+            for (int i = 0; i < queryCount; i++) {
+                double distance = context.searchAStar(sourceNodes[i], targetNodes[i], Double.POSITIVE_INFINITY);
+                aStarSum += Double.isInfinite(distance) ? 0.0 : distance;
+            }
+            long aStarTime = System.nanoTime() - startTime;
+            long aStarSettled = context.getSettledCount() - settledBefore;
+
+            System.out.printf("第%d轮（ms/次）：jgrapht %.2f，紧凑图Dijkstra %.2f（确定%d个节点），紧凑图A* %.2f（确定%d个节点），距离之和差异%.6f/%.6f%n",
+                    round + 1, jgraphtTime / 1e6 / queryCount, dijkstraTime / 1e6 / queryCount,
+                    dijkstraSettled / queryCount, aStarTime / 1e6 / queryCount, aStarSettled / queryCount,
+                    Math.abs(jgraphtSum - dijkstraSum), Math.abs(jgraphtSum - aStarSum));
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package com.chronomon.analysis.trajectory.mapmatch.transfer;
+
+import com.chronomon.analysis.trajectory.mapmatch.HmmMapMatcher;
+import com.chronomon.analysis.trajectory.mapmatch.MapMatchTrajectory;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.CompactRoadGraph;
+import com.chronomon.analysis.trajectory.road.IRoadSegment;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.RoadNetworkChange;
+import com.chronomon.analysis.trajectory.road.RoadNode;
+import com.chronomon.analysis.trajectory.road.RoadSegment;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 跨轨迹共享的最短路径缓存：车辆每天在相同的道路上行驶，相同节点之间的最短路径会被反复计算
+ * <p>
+ * 1. 键为起终点的节点ID，值为最短路径长度以及途经路段的ID，路段对象在读取时由紧凑图还原
+ * 2. 搜索设置了代价上限，上限内不可达的结果同样缓存并记录当时的上限，后续上限不超过该值的查询可以直接命中
+ * 3. 按途经路段数量计算权重，超过最大权重时由Caffeine淘汰，缓存是线程安全的，可以被多个匹配器共享
+ * 4. 路网构造完成后不再修改，因此缓存与路网对象一一对应，路网重新构建时应使用新的缓存；
+ * 路网增量更新时由{@link #update}得到新版本路网的缓存，新旧版本共享同一份存储，
+ * 条目记录写入时的版本，在新版本中第一次被读取时才检查是否受更新影响，更新本身只需要为新增的边建立索引
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class ShortestPathCache {
+
+    /**
+     * 默认的最大权重，约等于缓存的路段ID总数
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 4_000_000L;
+
+    /**
+     * 每个条目除路段ID之外的固定权重（键、长度和对象头）
+     */
+    private static final int ENTRY_WEIGHT = 8;
+
+    /**
+     * 表示在代价上限内不可达的查询结果
+     */
+    static final ShortestPathCalculator.ShortestPath UNREACHABLE =
+            new ShortestPathCalculator.ShortestPath(Double.POSITIVE_INFINITY, Collections.emptyList());
+
+    private final RoadNetwork rn;
+
+    private final CompactRoadGraph graph;
+
+    /**
+     * 估算新增边能否缩短缓存的路径时，对直线距离下界留出的浮点误差余量
+     */
+    private static final double LOWER_BOUND_FACTOR = 0.99999;
+
+    private static final double METERS_PER_DEGREE = DistanceKernel.EARTH_MEAN_RADIUS_IN_M * Math.PI / 180;
+
+    /**
+     * 新增边索引的网格边长（度），约1公里
+     */
+    private static final double ADDED_EDGE_CELL_IN_DEGREE = 0.01;
+
+    /**
+     * 一次更新修改的路段超过路网路段数量的该比例时，不再沿用缓存：大部分条目都会失效，逐条检查的耗时接近重新计算
+     */
+    private static final double MAX_MIGRATE_CHANGE_RATIO = 0.1;
+
+    /**
+     * 最多记录的增量更新次数，写入后经历的更新超过该次数的条目视为失效
+     */
+    private static final int MAX_CHANGE_HISTORY = 16;
+
+    /**
+     * 按缓存键共享的缓存数量上限，与RoadNetworkHolder缓存的路网数量一致
+     */
+    private static final long MAX_SHARED_CACHE_COUNT = 3;
+
+    /**
+     * 按路网缓存键共享的缓存，同一JVM（Flink的TaskManager）中匹配同一路网的所有匹配器共享
+     */
+    private static final Cache<String, ShortestPathCache> sharedCacheMap =
+            Caffeine.newBuilder().maximumSize(MAX_SHARED_CACHE_COUNT).build();
+
+    private final long maxWeight;
+
+    /**
+     * 存储，增量更新前后的缓存共享同一个存储
+     */
+    private final Cache<Long, CachedPath> cache;
+
+    /**
+     * 当前路网在共享存储中的版本号，每次增量更新加1
+     */
+    private final int generation;
+
+    /**
+     * 最近的增量更新，changes[i]将版本generation - changes.length + i更新为下一个版本
+     */
+    private final ChangeIndex[] changes;
+
+    /**
+     * 读取时校验失败（受增量更新影响）的条目数量
+     */
+    private final LongAdder staleCount = new LongAdder();
+
+    public ShortestPathCache(RoadNetwork rn) {
+        this(rn, DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param rn        路网对象
+     * @param maxWeight 最大权重，每个条目的权重为途经路段数量加上固定开销
+     */
+    public ShortestPathCache(RoadNetwork rn, long maxWeight) {
+        this.rn = rn;
+        this.graph = rn.getCompactGraph();
+        this.maxWeight = maxWeight;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Long key, CachedPath value) -> ENTRY_WEIGHT + value.roadIds.length)
+                .recordStats()
+                .build();
+        this.generation = 0;
+        this.changes = new ChangeIndex[0];
+    }
+
+    /**
+     * 获取缓存键对应的共享缓存：路网通过增量更新发布新版本后，第一次以新版本获取时由{@link #update}得到新版本的缓存，
+     * 新旧版本共享存储，不需要复制条目，也不占用发布路网时的锁；路网被重新构建时使用新的缓存
+     *
+     * @param rn       匹配器当前使用的路网
+     * @param cacheKey 路网的缓存键，与RoadNetworkHolder中的一致
+     * @return 路网对应的缓存
+     */
+    public static synchronized ShortestPathCache shared(RoadNetwork rn, String cacheKey) {
+        ShortestPathCache cache = sharedCacheMap.getIfPresent(cacheKey);
+        if (cache != null && cache.rn == rn) {
+            return cache;
+        }
+        if (cache != null && rn.getVersion() < cache.rn.getVersion()) {
+            // 共享的缓存已经属于更新的版本，旧版本的匹配器使用独立的缓存，不替换共享的缓存
+            return new ShortestPathCache(rn);
+        }
+        cache = cache == null ? new ShortestPathCache(rn) : cache.update(rn);
+        sharedCacheMap.put(cacheKey, cache);
+        return cache;
+    }
+
+    /**
+     * 增量更新后的路网对应的缓存，与更新前的缓存共享存储
+     */
+    private ShortestPathCache(RoadNetwork newRn, ShortestPathCache base, ChangeIndex change) {
+        this.rn = newRn;
+        this.graph = newRn.getCompactGraph();
+        this.maxWeight = base.maxWeight;
+        this.cache = base.cache;
+        this.generation = base.generation + 1;
+        int keepCount = Math.min(base.changes.length, MAX_CHANGE_HISTORY - 1);
+        this.changes = Arrays.copyOfRange(base.changes, base.changes.length - keepCount, base.changes.length + 1);
+        this.changes[keepCount] = change;
+    }
+
+    /**
+     * 查询缓存的最短路径
+     *
+     * @param from    起点
+     * @param to      终点
+     * @param maxCost 本次查询的代价上限（米）
+     * @return 缓存的最短路径；缓存表明上限内不可达时返回{@link #UNREACHABLE}；无法由缓存确定时返回null
+     */
+    ShortestPathCalculator.ShortestPath get(RoadNode from, RoadNode to, double maxCost) {
+        Long key = key(from, to);
+        CachedPath cachedPath = cache.getIfPresent(key);
+        if (cachedPath != null && cachedPath.generation != generation) {
+            cachedPath = revalidate(key, cachedPath);
+        }
+        if (cachedPath == null) {
+            return null;
+        }
+        if (cachedPath.pathLength == Double.POSITIVE_INFINITY) {
+            // 缓存的是不可达结果，只有当本次上限不超过当时的上限时才能确定
+            return maxCost <= cachedPath.searchedCost ? UNREACHABLE : null;
+        }
+        if (cachedPath.pathLength > maxCost) {
+            return UNREACHABLE;
+        }
+        List<IRoadSegment> segmentList = new ArrayList<>(cachedPath.roadIds.length);
+        for (int roadId : cachedPath.roadIds) {
+            int edge = graph.getEdgeByRoadId(roadId);
+            if (edge < 0) {
+                // 路段已不在当前的路网中
+                return null;
+            }
+            segmentList.add(graph.getSegment(edge));
+        }
+        return new ShortestPathCalculator.ShortestPath(cachedPath.pathLength, segmentList);
+    }
+
+    /**
+     * 写入一次搜索的结果
+     *
+     * @param from         起点
+     * @param to           终点
+     * @param searchedCost 搜索时的代价上限（米）
+     * @param shortestPath 最短路径，上限内不可达时为null
+     */
+    void put(RoadNode from, RoadNode to, double searchedCost, ShortestPathCalculator.ShortestPath shortestPath) {
+        CachedPath cachedPath;
+        if (shortestPath == null) {
+            cachedPath = new CachedPath(from.nodeId, to.nodeId, Double.POSITIVE_INFINITY, new int[0], searchedCost,
+                    generation);
+        } else {
+            int[] roadIds = new int[shortestPath.segmentList.size()];
+            for (int i = 0; i < roadIds.length; i++) {
+                roadIds[i] = shortestPath.segmentList.get(i).getRoadId();
+            }
+            cachedPath = new CachedPath(from.nodeId, to.nodeId, shortestPath.pathLength, roadIds, searchedCost,
+                    generation);
+        }
+        cache.put(key(from, to), cachedPath);
+    }
+
+    /**
+     * 其他版本写入的条目：检查写入之后的每次增量更新是否影响该条目，不受影响时以当前版本写回
+     *
+     * @return 校验通过的条目，受影响或者无法判断时返回null
+     */
+    private CachedPath revalidate(Long key, CachedPath cachedPath) {
+        int firstChange = cachedPath.generation - (generation - changes.length);
+        if (cachedPath.generation > generation || firstChange < 0) {
+            // 由更新版本的路网写入，或者写入后经历的更新已经不在记录中
+            staleCount.increment();
+            return null;
+        }
+        for (int i = firstChange; i < changes.length; i++) {
+            if (changes[i].isAffected(cachedPath, graph)) {
+                staleCount.increment();
+                return null;
+            }
+        }
+        CachedPath validPath = cachedPath.withGeneration(generation);
+        cache.put(key, validPath);
+        return validPath;
+    }
+
+    /**
+     * 得到增量更新后的路网对应的缓存，新旧版本共享存储，更新的耗时只与修改的路段数量有关
+     * <p>
+     * 1. 删除路段只会使经过该路段的路径失效，不可达的结果仍然不可达
+     * 2. 新增的边(u, v)只有在 直线距离(起点, u) + 边长 + 直线距离(v, 终点) 小于缓存的路径长度
+     * （不可达的结果为当时的代价上限）时才可能产生更短的路径，路段长度不小于端点间的直线距离，因此该估计是下界
+     * 3. 新增的边按起点所在的网格单元建立索引，校验条目时只检查起点在 起点±下界 范围内、终点在 终点±下界 范围内的边，
+     * 通过外包框筛选后才计算球面距离
+     * 4. 条目在新版本中第一次被读取时才校验，校验通过后以新版本写回；此后旧版本读取该条目视为未命中
+     * 5. 新版本路网不是由当前路网直接更新得到，或者修改的路段过多时，返回空的缓存
+     *
+     * @param newRn 由当前路网{@link RoadNetwork#update}得到的路网
+     * @return 新版本路网的缓存
+     */
+    public ShortestPathCache update(RoadNetwork newRn) {
+        RoadNetworkChange change = newRn.getLastChange();
+        if (change == null || change.baseVersion != rn.getVersion()) {
+            return new ShortestPathCache(newRn, maxWeight);
+        }
+        int changeCount = change.getRemovedRoadIds().size() + change.getAddedSegments().size();
+        if (changeCount > rn.getRoadSegments().size() * MAX_MIGRATE_CHANGE_RATIO) {
+            return new ShortestPathCache(newRn, maxWeight);
+        }
+        return new ShortestPathCache(newRn, this, new ChangeIndex(change));
+    }
+
+    /**
+     * 一次增量更新的索引：删除的路段ID，以及新增的边
+     */
+    private static final class ChangeIndex {
+
+        private final int[] removedRoadIds;
+
+        private final AddedEdgeGrid addedEdgeGrid;
+
+        private ChangeIndex(RoadNetworkChange change) {
+            this.removedRoadIds = change.getRemovedRoadIds().stream().mapToInt(Integer::intValue).sorted().toArray();
+            this.addedEdgeGrid = new AddedEdgeGrid(change.getAddedSegments());
+        }
+
+        private boolean isAffected(CachedPath cachedPath, CompactRoadGraph graph) {
+            for (int roadId : cachedPath.roadIds) {
+                if (Arrays.binarySearch(removedRoadIds, Math.abs(roadId)) >= 0) {
+                    return true;
+                }
+            }
+            if (addedEdgeGrid.isEmpty()) {
+                return false;
+            }
+            double bound = cachedPath.pathLength == Double.POSITIVE_INFINITY ? cachedPath.searchedCost : cachedPath.pathLength;
+            if (bound == Double.POSITIVE_INFINITY) {
+                // 无界搜索不可达的结果，任何新增的边都可能使其可达
+                return true;
+            }
+            double fromLng = graph.getNodeLng(cachedPath.fromNodeId);
+            double fromLat = graph.getNodeLat(cachedPath.fromNodeId);
+            double toLng = graph.getNodeLng(cachedPath.toNodeId);
+            double toLat = graph.getNodeLat(cachedPath.toNodeId);
+            // 直线距离不超过下界的点一定在外包框内：纬度差按子午线换算，经度差按外包框内的最高纬度换算
+            double maxLatDiff = bound / METERS_PER_DEGREE / LOWER_BOUND_FACTOR;
+            double maxAbsLat = Math.min(89.0, Math.max(Math.abs(fromLat), Math.abs(toLat)) + maxLatDiff);
+            double maxLngDiff = maxLatDiff / Math.cos(Math.toRadians(maxAbsLat));
+            return addedEdgeGrid.anyMatch(fromLng, fromLat, maxLngDiff, maxLatDiff, edge -> {
+                RoadNode u = edge.getFromNode();
+                RoadNode v = edge.getToNode();
+                if (Math.abs(u.geom.getX() - fromLng) > maxLngDiff || Math.abs(u.geom.getY() - fromLat) > maxLatDiff
+                        || Math.abs(v.geom.getX() - toLng) > maxLngDiff || Math.abs(v.geom.getY() - toLat) > maxLatDiff) {
+                    return false;
+                }
+                double lowerBound = DistanceKernel.haversine(fromLng, fromLat, u.geom.getX(), u.geom.getY())
+                        + edge.getLengthInM() + DistanceKernel.haversine(v.geom.getX(), v.geom.getY(), toLng, toLat);
+                return LOWER_BOUND_FACTOR * lowerBound <= bound;
+            });
+        }
+    }
+
+    /**
+     * 新增边的网格索引，按边的起点所在的网格单元分组
+     */
+    private static final class AddedEdgeGrid {
+
+        private final Map<Long, List<IRoadSegment>> cellEdgeMap = new HashMap<>();
+
+        private AddedEdgeGrid(List<RoadSegment> addedSegments) {
+            for (RoadSegment segment : addedSegments) {
+                add(segment);
+                segment.getReversedOne().ifPresent(this::add);
+            }
+        }
+
+        private void add(IRoadSegment edge) {
+            long cell = cellKey(cellOf(edge.getFromNode().geom.getX()), cellOf(edge.getFromNode().geom.getY()));
+            cellEdgeMap.computeIfAbsent(cell, key -> new ArrayList<>(1)).add(edge);
+        }
+
+        private boolean isEmpty() {
+            return cellEdgeMap.isEmpty();
+        }
+
+        /**
+         * @return 起点在 (lng ± lngDiff, lat ± latDiff) 范围内的网格单元中，是否存在满足条件的边
+         */
+        private boolean anyMatch(double lng, double lat, double lngDiff, double latDiff, Predicate<IRoadSegment> predicate) {
+            double rangeCellCount = (2 * lngDiff / ADDED_EDGE_CELL_IN_DEGREE + 2) * (2 * latDiff / ADDED_EDGE_CELL_IN_DEGREE + 2);
+            if (rangeCellCount > cellEdgeMap.size()) {
+                // 范围内的单元比非空单元还多，直接遍历所有非空单元
+                for (List<IRoadSegment> edgeList : cellEdgeMap.values()) {
+                    for (IRoadSegment edge : edgeList) {
+                        if (predicate.test(edge)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+            long minColumn = cellOf(lng - lngDiff);
+            long maxColumn = cellOf(lng + lngDiff);
+            long maxRow = cellOf(lat + latDiff);
+            for (long row = cellOf(lat - latDiff); row <= maxRow; row++) {
+                for (long column = minColumn; column <= maxColumn; column++) {
+                    List<IRoadSegment> edgeList = cellEdgeMap.get(cellKey(column, row));
+                    if (edgeList == null) {
+                        continue;
+                    }
+                    for (IRoadSegment edge : edgeList) {
+                        if (predicate.test(edge)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static long cellOf(double degree) {
+            return (long) Math.floor(degree / ADDED_EDGE_CELL_IN_DEGREE);
+        }
+
+        private static long cellKey(long column, long row) {
+            return (row << 32) | (column & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * 清空缓存，共享同一存储的其他版本的缓存也随之清空
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public RoadNetwork getRoadNetwork() {
+        return rn;
+    }
+
+    /**
+     * @return 存储中的条目数量，包括其他版本写入的条目
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return 当前版本读取时发现受增量更新影响而失效的条目数量
+     */
+    public long getStaleCount() {
+        return staleCount.sum();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 起终点ID拼接成long之后，Long.hashCode等于两个ID的异或，连续分配的节点ID会产生大量哈希冲突，
+     * 因此再经过一次可逆的混合函数（MurmurHash3的fmix64），键仍然是唯一的
+     */
+    private static Long key(RoadNode from, RoadNode to) {
+        long key = ((long) from.nodeId << 32) | (to.nodeId & 0xFFFFFFFFL);
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    private static final class CachedPath {
+        private final int fromNodeId;
+
+        private final int toNodeId;
+
+        private final double pathLength;
+
+        private final int[] roadIds;
+
+        /**
+         * 计算该结果时的代价上限，仅对不可达的结果有意义
+         */
+        private final double searchedCost;
+
+        /**
+         * 写入（或最近一次校验通过）时的路网版本
+         */
+        private final int generation;
+
+        private CachedPath(int fromNodeId, int toNodeId, double pathLength, int[] roadIds, double searchedCost,
+                           int generation) {
+            this.fromNodeId = fromNodeId;
+            this.toNodeId = toNodeId;
+            this.pathLength = pathLength;
+            this.roadIds = roadIds;
+            this.searchedCost = searchedCost;
+            this.generation = generation;
+        }
+
+        private CachedPath withGeneration(int generation) {
+            return new CachedPath(fromNodeId, toNodeId, pathLength, roadIds, searchedCost, generation);
+        }
+    }
+
+    /**
+     * 模拟车队在固定线路上反复行驶，对比有无缓存时的匹配耗时，并输出缓存命中率
+     */
+    public static void main(String[] args) {
+        int size = 60;
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        // 分别模拟高频采样（每条边3个点，间隔10秒）和低频采样（每条边1个点，间隔30秒）
+        int[][] samplings = {{3, 10}, {1, 30}};
+        for (int[] sampling : samplings) {
+            // 20条线路，每条线路行驶20趟，每一趟在线路的基础上再叠加一次GPS噪声
+            Random random = new Random(11);
+            List<Trajectory> routeList = new ArrayList<>();
+            for (int route = 0; route < 20; route++) {
+                routeList.add(SyntheticRoadNetwork.randomWalk(size, SyntheticRoadNetwork.DEFAULT_SPACING,
+                        40, sampling[0], sampling[1], 0.00005, random, "oid" + route));
+            }
+            List<Trajectory> trajectoryList = new ArrayList<>();
+            for (int trip = 0; trip < 20; trip++) {
+                for (Trajectory route : routeList) {
+                    List<GpsPoint> gpsPointList = new ArrayList<>();
+                    for (GpsPoint gpsPoint : route.getSortedGpsList()) {
+                        gpsPointList.add(new GpsPoint(route.getOid(),
+                                gpsPoint.getGeom().getX() + random.nextGaussian() * 0.00005,
+                                gpsPoint.getGeom().getY() + random.nextGaussian() * 0.00005, gpsPoint.getTime()));
+                    }
+                    trajectoryList.add(new Trajectory(route.getOid(), gpsPointList, true));
+                }
+            }
+
+            System.out.printf("每条边%d个点，采样间隔%d秒%n", sampling[0], sampling[1]);
+            TransitionBound[] bounds = {TransitionBound.DEFAULT, TransitionBound.UNBOUNDED};
+            String[] boundNames = {"有界搜索", "无界搜索"};
+            for (int b = 0; b < bounds.length; b++) {
+                HmmMapMatcher plainMatcher = new HmmMapMatcher(rn, 50.0, bounds[b]);
+                for (int round = 0; round < 4; round++) {
+                    ShortestPathCache cache = new ShortestPathCache(rn);
+                    HmmMapMatcher cachedMatcher = new HmmMapMatcher(rn, 50.0, bounds[b], null, cache);
+                    // 交替先后顺序，减少JIT和GC对对比结果的影响
+                    HmmMapMatcher[] matchers = {plainMatcher, cachedMatcher};
+                    long[] costTimes = new long[2];
+                    int[] pointCounts = new int[2];
+                    for (int i = 0; i < 2; i++) {
+                        int index = (round + i) % 2;
+                        long startTime = System.nanoTime();
+                        pointCounts[index] = matchAll(matchers[index], trajectoryList);
+                        costTimes[index] = System.nanoTime() - startTime;
+                    }
+                    System.out.printf("  %s第%d轮：无缓存%dms（%d个点），有缓存%dms（%d个点），缓存条目%d个，命中率%.1f%%%n",
+                            boundNames[b], round + 1, costTimes[0] / 1_000_000, pointCounts[0],
+                            costTimes[1] / 1_000_000, pointCounts[1], cache.size(), cache.stats().hitRate() * 100);
+                }
+            }
+        }
+    }
+
+    private static int matchAll(HmmMapMatcher mapMatcher, List<Trajectory> trajectoryList) {
+        int pointCount = 0;
+        for (Trajectory trajectory : trajectoryList) {
+            for (MapMatchTrajectory matched : mapMatcher.mapMatch(trajectory)) {
+                pointCount += matched.toTrajectory().getNumPoints();
+            }
+        }
+        return pointCount;
+    }
+}
@@ -1,52 +1,222 @@
 package com.chronomon.analysis.trajectory.mapmatch.transfer;
 
 
+import com.chronomon.analysis.trajectory.mapmatch.HmmMapMatcher;
 import com.chronomon.analysis.trajectory.road.IRoadSegment;
 import com.chronomon.analysis.trajectory.road.RoadNetwork;
 import com.chronomon.analysis.trajectory.road.RoadNode;
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.BidirectionalDijkstraManyToManyShortestPaths;
-import org.jgrapht.alg.util.Pair;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+import com.chronomon.analysis.trajectory.road.ch.ContractionHierarchy;
+import com.chronomon.analysis.trajectory.road.ch.ContractionHierarchyQuery;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
+/**
+ * 最短路径计算器：对每个起点执行一次单源多目标的Dijkstra搜索，或者基于收缩层次结构执行多对多查询
+ * <p>
+ * 搜索状态保存在{@link RoutingContext}（或{@link ContractionHierarchyQuery}）中并在多次计算之间复用，因此该类不是线程安全的
+ * <p>
+ * 可以指定跨轨迹共享的{@link ShortestPathCache}，命中缓存的起终点不再参与搜索，所有终点都命中时跳过该起点的搜索
+ * <p>
+ * 每次计算对应HMM的一次状态转移，计算器累计转移次数和确定最短距离的节点数量，用于评估有界搜索的效果
+ */
 public class ShortestPathCalculator {
 
-    // jgrapht原生的ManyToMany最短路径计算有Bug，而且效率低
-    // private final DijkstraManyToManyShortestPaths<RoadNode, RoadSegment> algorithm;
-    private final BidirectionalDijkstraManyToManyShortestPaths<RoadNode, IRoadSegment> algorithm;
+    /**
+     * Dijkstra搜索的上下文，使用收缩层次结构时为null
+     */
+    private final RoutingContext context;
 
+    /**
+     * 收缩层次结构的查询器，使用Dijkstra搜索时为null
+     */
+    private final ContractionHierarchyQuery chQuery;
+
+    /**
+     * 累计计算次数，即状态转移的次数
+     */
+    private long transitionCount = 0L;
+
+    /**
+     * 累计确定最短距离的节点数量
+     */
+    private long settledCount = 0L;
+
+    /**
+     * 累计执行的单源搜索次数，命中缓存的起点不计入
+     */
+    private long searchCount = 0L;
+
+    /**
+     * 累计计算耗时（纳秒）
+     */
+    private long routingTimeInNs = 0L;
+
+    /**
+     * 跨轨迹共享的最短路径缓存，为null时不使用缓存
+     */
+    private final ShortestPathCache cache;
 
     public ShortestPathCalculator(RoadNetwork rn) {
-        //this.algorithm = new DijkstraManyToManyShortestPaths<>(rn.getRoadGraph());
-        this.algorithm = new BidirectionalDijkstraManyToManyShortestPaths<>(rn.getRoadGraph());
+        this(new RoutingContext(rn));
+    }
+
+    public ShortestPathCalculator(RoutingContext context) {
+        this(context, null);
+    }
+
+    public ShortestPathCalculator(ContractionHierarchyQuery chQuery) {
+        this(chQuery, null);
+    }
+
+    public ShortestPathCalculator(RoutingContext context, ShortestPathCache cache) {
+        this.context = context;
+        this.chQuery = null;
+        this.cache = cache;
+    }
+
+    public ShortestPathCalculator(ContractionHierarchyQuery chQuery, ShortestPathCache cache) {
+        this.context = null;
+        this.chQuery = chQuery;
+        this.cache = cache;
+    }
+
+    /**
+     * @return 最短路径缓存，未使用缓存时返回null
+     */
+    public ShortestPathCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return Dijkstra搜索的上下文，使用收缩层次结构时返回null
+     */
+    public RoutingContext getContext() {
+        return context;
     }
 
     public ShortestPathSet calculate(Set<RoadNode> fromPoints, Set<RoadNode> toPoints) {
-        Map<Pair<RoadNode, RoadNode>, GraphPath<RoadNode, IRoadSegment>> paths = algorithm.getPaths(fromPoints, toPoints);
+        return calculate(fromPoints, toPoints, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * 计算多个起点到多个终点之间的最短路径
+     *
+     * @param fromPoints 起点集合
+     * @param toPoints   终点集合
+     * @param maxCost    路径长度上限（米），超过上限的路径视为不存在
+     * @return 最短路径集合
+     */
+    public ShortestPathSet calculate(Set<RoadNode> fromPoints, Set<RoadNode> toPoints, double maxCost) {
+        long startTime = System.nanoTime();
+        long settledBefore = getEngineSettledCount();
         Map<SourceAndDest, ShortestPath> result = new HashMap<>();
+        List<RoadNode> searchPoints = new ArrayList<>(toPoints.size());
+        boolean targetsReady = false;
         for (RoadNode fromPoint : fromPoints) {
+            searchPoints.clear();
             for (RoadNode toPoint : toPoints) {
                 if (fromPoint.equals(toPoint)) {
                     // 两点相同，最短路径长度为0.0，不用经过任何路段
                     result.put(new SourceAndDest(fromPoint, toPoint), new ShortestPath(0.0, Collections.emptyList()));
-                } else {
-                    GraphPath<RoadNode, IRoadSegment> path = paths.get(new Pair<>(fromPoint, toPoint));
-                    if (path != null && path.getWeight() != Double.POSITIVE_INFINITY) {
-                        // 说明两点之间存在最短路径，加入结果集
-                        result.put(new SourceAndDest(fromPoint, toPoint), new ShortestPath(path.getWeight(), path.getEdgeList()));
-                    }
+                    continue;
+                }
+                ShortestPath cachedPath = cache == null ? null : cache.get(fromPoint, toPoint, maxCost);
+                if (cachedPath == null) {
+                    searchPoints.add(toPoint);
+                } else if (cachedPath != ShortestPathCache.UNREACHABLE) {
+                    result.put(new SourceAndDest(fromPoint, toPoint), cachedPath);
+                }
+            }
+            if (searchPoints.isEmpty()) {
+                // 所有终点都命中了缓存
+                continue;
+            }
+
+            if (chQuery != null) {
+                if (!targetsReady) {
+                    // 终点的反向搜索只执行一次，所有起点共享
+                    chQuery.setTargets(toPoints, maxCost);
+                    targetsReady = true;
+                }
+                chQuery.search(fromPoint, maxCost);
+            } else {
+                context.search(fromPoint, searchPoints, maxCost);
+            }
+            searchCount++;
+            for (RoadNode toPoint : searchPoints) {
+                ShortestPath shortestPath = null;
+                double pathLength = chQuery != null ? chQuery.getDistance(toPoint) : context.getDistance(toPoint);
+                if (pathLength != Double.POSITIVE_INFINITY) {
+                    // 说明两点之间存在最短路径，加入结果集
+                    List<IRoadSegment> path = chQuery != null ? chQuery.getPath(toPoint) : context.getPath(toPoint);
+                    shortestPath = new ShortestPath(pathLength, path);
+                    result.put(new SourceAndDest(fromPoint, toPoint), shortestPath);
+                }
+                if (cache != null) {
+                    cache.put(fromPoint, toPoint, maxCost, shortestPath);
                 }
             }
         }
-        return new ShortestPathSet(result);
+        long settled = getEngineSettledCount() - settledBefore;
+        transitionCount++;
+        settledCount += settled;
+        routingTimeInNs += System.nanoTime() - startTime;
+        return new ShortestPathSet(result, settled);
+    }
+
+    private long getEngineSettledCount() {
+        return chQuery != null ? chQuery.getSettledCount() : context.getSettledCount();
+    }
+
+    public long getTransitionCount() {
+        return transitionCount;
+    }
+
+    public long getSettledCount() {
+        return settledCount;
+    }
+
+    public long getSearchCount() {
+        return searchCount;
+    }
+
+    public long getRoutingTimeInNs() {
+        return routingTimeInNs;
+    }
+
+    /**
+     * @return 平均每次状态转移确定最短距离的节点数量
+     */
+    public double getSettledPerTransition() {
+        return transitionCount == 0 ? 0.0 : (double) settledCount / transitionCount;
+    }
+
+    public void resetCounters() {
+        transitionCount = 0L;
+        settledCount = 0L;
+        searchCount = 0L;
+        routingTimeInNs = 0L;
     }
 
     public static final class ShortestPathSet {
         private final Map<SourceAndDest, ShortestPath> shortestPathMap;
 
-        public ShortestPathSet(Map<SourceAndDest, ShortestPath> shortestPathMap) {
+        /**
+         * 本次计算确定最短距离的节点数量
+         */
+        private final long settledCount;
+
+        public ShortestPathSet(Map<SourceAndDest, ShortestPath> shortestPathMap, long settledCount) {
             this.shortestPathMap = shortestPathMap;
+            this.settledCount = settledCount;
+        }
+
+        public long getSettledCount() {
+            return settledCount;
         }
 
         public Optional<ShortestPath> getShortestPath(RoadNode sourceNode, RoadNode destNode) {
@@ -66,7 +236,7 @@ public class ShortestPathCalculator {
 
         @Override
         public int hashCode() {
-            return Integer.hashCode(sourceNode.nodeId + destNode.nodeId);
+            return 31 * sourceNode.nodeId + destNode.nodeId;
         }
 
         @Override
@@ -90,4 +260,101 @@ public class ShortestPathCalculator {
             this.segmentList = segmentList;
         }
     }
+
+    /**
+     * 收缩层次结构的预处理耗时与相对Dijkstra的查询加速比：示例路网（如果存在）以及不同规模的合成网格路网
+     */
+    public static void main(String[] args) throws Exception {
+        try {
+            benchmark("road_mapmatch.csv", HmmMapMatcher.readRoadNetwork());
+        } catch (Exception e) {
+            System.out.println("未找到road_mapmatch.csv，跳过示例路网");
+        }
+        for (int size : new int[]{50, 150}) {
+            RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+            benchmark(size + "x" + size + "网格", rn);
+        }
+    }
+
+    private static void benchmark(String name, RoadNetwork rn) throws IOException {
+        List<RoadNode> nodeList = new ArrayList<>(rn.getRoadGraph().vertexSet());
+        System.out.printf("%s：%d个节点，%d条边%n", name, nodeList.size(), rn.getRoadGraph().edgeSet().size());
+
+        // 预处理与持久化
+        long startTime = System.nanoTime();
+        ContractionHierarchy ch = ContractionHierarchy.build(rn);
+        long buildTime = System.nanoTime() - startTime;
+        Path file = Files.createTempFile("road", ".ch");
+        ch.save(file);
+        startTime = System.nanoTime();
+        ch = ContractionHierarchy.load(file, rn);
+        long loadTime = System.nanoTime() - startTime;
+        System.out.printf("  预处理%dms，新增捷径%d条，文件%dKB，加载%dms%n", buildTime / 1_000_000,
+                ch.getShortcutCount(), Files.size(file) / 1024, loadTime / 1_000_000);
+        Files.delete(file);
+
+        // 随机选取5个起点和5个终点的多对多查询
+        Random random = new Random(42);
+        int queryCount = 200;
+        List<List<RoadNode>> sourceList = new ArrayList<>();
+        List<List<RoadNode>> targetList = new ArrayList<>();
+        for (int i = 0; i < queryCount; i++) {
+            List<RoadNode> sources = new ArrayList<>();
+            List<RoadNode> targets = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                sources.add(nodeList.get(random.nextInt(nodeList.size())));
+                targets.add(nodeList.get(random.nextInt(nodeList.size())));
+            }
+            sourceList.add(sources);
+            targetList.add(targets);
+        }
+
+        RoutingContext context = new RoutingContext(rn);
+        ContractionHierarchyQuery query = new ContractionHierarchyQuery(ch);
+        for (int round = 0; round < 3; round++) {
+            double dijkstraSum = 0.0;
+            startTime = System.nanoTime();
+            for (int i = 0; i < queryCount; i++) {
+                for (RoadNode source : sourceList.get(i)) {
+                    context.search(source, targetList.get(i));
+                    for (RoadNode target : targetList.get(i)) {
+                        dijkstraSum += finite(context.getDistance(target));
+                    }
+                }
+            }
+            long dijkstraTime = System.nanoTime() - startTime;
+
+            double chSum = 0.0;
+            int pathLengthError = 0;
+            startTime = System.nanoTime();
+            for (int i = 0; i < queryCount; i++) {
+                query.setTargets(targetList.get(i), Double.POSITIVE_INFINITY);
+                for (RoadNode source : sourceList.get(i)) {
+                    query.search(source, Double.POSITIVE_INFINITY);
+                    for (RoadNode target : targetList.get(i)) {
+                        double distance = query.getDistance(target);
+                        chSum += finite(distance);
+                        if (round == 0 && distance != Double.POSITIVE_INFINITY) {
+                            // 校验展开后的路段长度之和
+                            double pathLength = 0.0;
+                            for (IRoadSegment segment : query.getPath(target)) {
+                                pathLength += segment.getLengthInM();
+                            }
+                            if (Math.abs(pathLength - distance) > 1e-6) {
+                                pathLengthError++;
+                            }
+                        }
+                    }
+                }
+            }
+            long chTime = System.nanoTime() - startTime;
+            System.out.printf("  第%d轮：Dijkstra %.2fms/次，CH %.3fms/次，加速%.1f倍，距离之和差异%.6f，路径展开错误%d%n",
+                    round + 1, dijkstraTime / 1e6 / queryCount, chTime / 1e6 / queryCount,
+                    (double) dijkstraTime / chTime, Math.abs(dijkstraSum - chSum), pathLengthError);
+        }
+    }
+
+    private static double finite(double distance) {
+        return distance == Double.POSITIVE_INFINITY ? 0.0 : distance;
+    }
 }
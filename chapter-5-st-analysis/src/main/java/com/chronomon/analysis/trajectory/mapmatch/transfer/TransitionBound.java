@@ -0,0 +1,194 @@
+package com.chronomon.analysis.trajectory.mapmatch.transfer;
+
+import com.chronomon.analysis.trajectory.mapmatch.HmmMapMatcher;
+import com.chronomon.analysis.trajectory.mapmatch.MapMatchTrajectory;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.SyntheticRoadNetwork;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * 状态转移的约束：限制前后两个GPS点的投影点之间的路网距离，并据此为最短路径搜索设置代价上限
+ * <p>
+ * 1. 绕行比例：路网距离不小于投影点直线距离的{@link #maxDetourRatio}倍时，认为该转移不合理
+ * 2. 最大速度：路网距离超过最大速度与时间差的乘积时，认为该转移不合理（默认不限制）
+ * 3. 搜索上限：投影点之间的直线距离不超过GPS点直线距离加上两侧最大的投影距离，
+ * 因此超过上限的路径一定不满足上面两个约束，搜索到该距离即可停止，不会丢失任何有效的转移
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class TransitionBound {
+
+    /**
+     * 默认的约束：绕行比例为5倍，不限制速度，开启有界搜索
+     */
+    public static final TransitionBound DEFAULT = new TransitionBound(5.0, Double.POSITIVE_INFINITY, true);
+
+    /**
+     * 与默认约束相同，但最短路径搜索不设上限，用于对照
+     */
+    public static final TransitionBound UNBOUNDED = new TransitionBound(5.0, Double.POSITIVE_INFINITY, false);
+
+    /**
+     * 路网距离与直线距离的最大比例
+     */
+    private final double maxDetourRatio;
+
+    /**
+     * 最大行驶速度（米/秒），正无穷表示不限制
+     */
+    private final double maxSpeedInMeterPerSec;
+
+    /**
+     * 是否为最短路径搜索设置代价上限
+     */
+    private final boolean boundedSearch;
+
+    public TransitionBound(double maxDetourRatio, double maxSpeedInMeterPerSec, boolean boundedSearch) {
+        if (maxDetourRatio <= 1.0) {
+            throw new IllegalArgumentException("绕行比例必须大于1");
+        }
+        if (maxSpeedInMeterPerSec <= 0.0) {
+            throw new IllegalArgumentException("最大速度必须大于0");
+        }
+        this.maxDetourRatio = maxDetourRatio;
+        this.maxSpeedInMeterPerSec = maxSpeedInMeterPerSec;
+        this.boundedSearch = boundedSearch;
+    }
+
+    /**
+     * @return 在当前约束的基础上限制最大速度
+     */
+    public TransitionBound withMaxSpeed(double maxSpeedInMeterPerSec) {
+        return new TransitionBound(maxDetourRatio, maxSpeedInMeterPerSec, boundedSearch);
+    }
+
+    public double getMaxDetourRatio() {
+        return maxDetourRatio;
+    }
+
+    public double getMaxSpeedInMeterPerSec() {
+        return maxSpeedInMeterPerSec;
+    }
+
+    public boolean isBoundedSearch() {
+        return boundedSearch;
+    }
+
+    /**
+     * 判断一次状态转移是否合理
+     *
+     * @param graphDistance     投影点之间的路网距离
+     * @param linearDistance    投影点之间的直线距离
+     * @param timeIntervalInSec GPS点之间的时间差
+     * @return 是否接受该转移
+     */
+    public boolean accept(double graphDistance, double linearDistance, long timeIntervalInSec) {
+        return graphDistance / linearDistance < maxDetourRatio
+                && graphDistance <= maxTravelDistance(timeIntervalInSec);
+    }
+
+    /**
+     * 计算最短路径搜索的代价上限，路径长度超过该值的转移一定会被{@link #accept}拒绝
+     *
+     * @param gpsDistInM            GPS点之间的直线距离
+     * @param maxPrevProjectDistInM 前一个GPS点到其投影点的最大距离
+     * @param maxCurrProjectDistInM 当前GPS点到其投影点的最大距离
+     * @param timeIntervalInSec     GPS点之间的时间差
+     * @return 代价上限（米），不设上限时返回正无穷
+     */
+    public double maxPathLength(double gpsDistInM, double maxPrevProjectDistInM, double maxCurrProjectDistInM,
+                                long timeIntervalInSec) {
+        if (!boundedSearch) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // 投影距离是近似计算的，额外留出1米的余量
+        double maxLinearDistance = gpsDistInM + maxPrevProjectDistInM + maxCurrProjectDistInM + 1.0;
+        return Math.min(maxDetourRatio * maxLinearDistance, maxTravelDistance(timeIntervalInSec));
+    }
+
+    private double maxTravelDistance(long timeIntervalInSec) {
+        // 时间差按秒取整，不足1秒时按1秒计算
+        return maxSpeedInMeterPerSec * Math.max(1L, timeIntervalInSec);
+    }
+
+    /**
+     * 在合成路网上对比有界搜索与无界搜索：匹配结果、每次状态转移确定的节点数量以及耗时，
+     * 并逐个GPS点对比匹配位置与无界搜索是否相同
+     */
+    public static void main(String[] args) {
+        int size = 40;
+        RoadNetwork rn = new RoadNetwork(SyntheticRoadNetwork.grid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 7), false);
+        // 分别模拟高频采样（每条边3个点，间隔10秒）和低频采样（每条边1个点，间隔30秒）
+        int[][] samplings = {{3, 10}, {1, 30}};
+        TransitionBound[] bounds = {UNBOUNDED, DEFAULT, DEFAULT.withMaxSpeed(30.0)};
+        String[] boundNames = {"无界搜索", "有界搜索", "有界搜索+限速30m/s"};
+        for (int[] sampling : samplings) {
+            Random random = new Random(11);
+            List<Trajectory> trajectoryList = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                trajectoryList.add(SyntheticRoadNetwork.randomWalk(size, SyntheticRoadNetwork.DEFAULT_SPACING,
+                        40, sampling[0], sampling[1], 0.00008, random, "oid" + i));
+            }
+
+            System.out.printf("每条边%d个点，采样间隔%d秒%n", sampling[0], sampling[1]);
+            List<Map<Long, String>> unboundedFixList = null;
+            for (int b = 0; b < bounds.length; b++) {
+                HmmMapMatcher mapMatcher = new HmmMapMatcher(rn, 50.0, bounds[b]);
+                // 预热
+                for (Trajectory trajectory : trajectoryList) {
+                    mapMatcher.mapMatch(trajectory);
+                }
+                ShortestPathCalculator calculator = mapMatcher.getShortestPathCalculator();
+                calculator.resetCounters();
+                int pathCount = 0;
+                int pointCount = 0;
+                List<List<MapMatchTrajectory>> matchedList = new ArrayList<>(trajectoryList.size());
+                long startTime = System.nanoTime();
+                for (Trajectory trajectory : trajectoryList) {
+                    matchedList.add(mapMatcher.mapMatch(trajectory));
+                }
+                long costInMs = (System.nanoTime() - startTime) / 1_000_000;
+
+                List<Map<Long, String>> fixList = new ArrayList<>(trajectoryList.size());
+                for (List<MapMatchTrajectory> matchedTrajList : matchedList) {
+                    Map<Long, String> fixMap = new HashMap<>();
+                    for (MapMatchTrajectory matched : matchedTrajList) {
+                        Trajectory matchedTraj = matched.toTrajectory();
+                        pathCount++;
+                        pointCount += matchedTraj.getNumPoints();
+                        for (GpsPoint gpsPoint : matchedTraj.getSortedGpsList()) {
+                            fixMap.putIfAbsent(gpsPoint.getTime().getTime(), gpsPoint.getGeom().toText());
+                        }
+                    }
+                    fixList.add(fixMap);
+                }
+                if (unboundedFixList == null) {
+                    unboundedFixList = fixList;
+                }
+                int diffCount = 0;
+                int fixCount = 0;
+                for (int t = 0; t < trajectoryList.size(); t++) {
+                    for (GpsPoint gpsPoint : trajectoryList.get(t).getSortedGpsList()) {
+                        long time = gpsPoint.getTime().getTime();
+                        fixCount++;
+                        if (!Objects.equals(fixList.get(t).get(time), unboundedFixList.get(t).get(time))) {
+                            diffCount++;
+                        }
+                    }
+                }
+                System.out.printf("  %s：匹配路径%d段（%d个点），与无界搜索不同的GPS点%d/%d个，状态转移%d次，平均每次确定%.1f个节点，耗时%dms%n",
+                        boundNames[b], pathCount, pointCount, diffCount, fixCount, calculator.getTransitionCount(),
+                        calculator.getSettledPerTransition(), costInMs);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.chronomon.analysis.trajectory.model;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 列式轨迹：经度、纬度、时间戳分别存放在基本类型数组中，整条轨迹只保存一个对象ID
+ * <p>
+ * 1. 每个GPS点只占用24字节（两个double和一个long），而{@link Trajectory}中的每个GpsPoint对象需要150字节以上
+ * 2. {@link #subTrajectory(int, int)}返回共享底层数组的视图，分段、去噪时不复制坐标
+ * 3. 轨迹不可变，因此{@link #getLineString()}的结果可以缓存
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class ColumnarTrajectory {
+
+    /**
+     * 对象ID
+     */
+    private final String oid;
+
+    /**
+     * 经度数组，视图之间共享
+     */
+    private final double[] lngs;
+
+    /**
+     * 纬度数组，视图之间共享
+     */
+    private final double[] lats;
+
+    /**
+     * 时间戳数组（毫秒），视图之间共享
+     */
+    private final long[] times;
+
+    /**
+     * 当前轨迹在底层数组中的起始下标
+     */
+    private final int offset;
+
+    /**
+     * 当前轨迹的GPS点数量
+     */
+    private final int length;
+
+    /**
+     * 缓存的轨迹几何
+     */
+    private volatile LineString lineString;
+
+    public ColumnarTrajectory(String oid, double[] lngs, double[] lats, long[] times) {
+        this(oid, lngs, lats, times, true);
+    }
+
+    /**
+     * @param oid      对象ID
+     * @param lngs     经度数组
+     * @param lats     纬度数组
+     * @param times    时间戳数组（毫秒）
+     * @param isSorted 是否已经按照时间戳排序，否则在构造时排序（会复制数组）
+     */
+    public ColumnarTrajectory(String oid, double[] lngs, double[] lats, long[] times, boolean isSorted) {
+        if (lngs.length != lats.length || lngs.length != times.length) {
+            throw new IllegalArgumentException("经度、纬度、时间戳数组的长度必须一致");
+        }
+        if (times.length < 2) {
+            throw new IllegalArgumentException("轨迹至少应该包含2个GPS点");
+        }
+        this.oid = oid;
+        this.offset = 0;
+        this.length = times.length;
+        if (isSorted) {
+            this.lngs = lngs;
+            this.lats = lats;
+            this.times = times;
+        } else {
+            Integer[] order = new Integer[times.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> times[i]));
+            this.lngs = new double[length];
+            this.lats = new double[length];
+            this.times = new long[length];
+            for (int i = 0; i < length; i++) {
+                this.lngs[i] = lngs[order[i]];
+                this.lats[i] = lats[order[i]];
+                this.times[i] = times[order[i]];
+            }
+        }
+    }
+
+    private ColumnarTrajectory(ColumnarTrajectory parent, int offset, int length) {
+        this.oid = parent.oid;
+        this.lngs = parent.lngs;
+        this.lats = parent.lats;
+        this.times = parent.times;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * 由GPS点序列构建的轨迹转换为列式轨迹
+     */
+    public static ColumnarTrajectory fromTrajectory(Trajectory trajectory) {
+        int numPoints = trajectory.getNumPoints();
+        double[] lngs = new double[numPoints];
+        double[] lats = new double[numPoints];
+        long[] times = new long[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            GpsPoint gpsPoint = trajectory.getGpsPoint(i);
+            lngs[i] = gpsPoint.getGeom().getX();
+            lats[i] = gpsPoint.getGeom().getY();
+            times[i] = gpsPoint.getTime().getTime();
+        }
+        return new ColumnarTrajectory(trajectory.getOid(), lngs, lats, times);
+    }
+
+    /**
+     * 将多段轨迹按顺序拼接为一条轨迹（会复制数组）
+     *
+     * @param pieces 按时间顺序排列的轨迹片段，对象ID取第一段的对象ID
+     * @return 拼接后的轨迹，只有一段时直接返回该段
+     */
+    public static ColumnarTrajectory concat(List<ColumnarTrajectory> pieces) {
+        if (pieces.size() == 1) {
+            return pieces.get(0);
+        }
+        int numPoints = 0;
+        for (ColumnarTrajectory piece : pieces) {
+            numPoints += piece.length;
+        }
+        double[] lngs = new double[numPoints];
+        double[] lats = new double[numPoints];
+        long[] times = new long[numPoints];
+        int position = 0;
+        for (ColumnarTrajectory piece : pieces) {
+            System.arraycopy(piece.lngs, piece.offset, lngs, position, piece.length);
+            System.arraycopy(piece.lats, piece.offset, lats, position, piece.length);
+            System.arraycopy(piece.times, piece.offset, times, position, piece.length);
+            position += piece.length;
+        }
+        return new ColumnarTrajectory(pieces.get(0).oid, lngs, lats, times);
+    }
+
+    /**
+     * 转换为由GPS点序列构建的轨迹
+     */
+    public Trajectory toTrajectory() {
+        List<GpsPoint> gpsList = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            gpsList.add(getGpsPoint(i));
+        }
+        return new Trajectory(oid, gpsList, true);
+    }
+
+    /**
+     * 获取子轨迹视图，与当前轨迹共享底层数组
+     *
+     * @param from 起始下标（包含）
+     * @param to   结束下标（不包含）
+     * @return 子轨迹
+     */
+    public ColumnarTrajectory subTrajectory(int from, int to) {
+        if (from < 0 || to > length || to - from < 2) {
+            throw new IllegalArgumentException("子轨迹的范围不合法：[" + from + ", " + to + ")");
+        }
+        if (from == 0 && to == length) {
+            return this;
+        }
+        return new ColumnarTrajectory(this, offset + from, to - from);
+    }
+
+    public String getOid() {
+        return oid;
+    }
+
+    public int getNumPoints() {
+        return length;
+    }
+
+    /**
+     * @return 当前轨迹在底层数组中的起始下标，由同一条轨迹切分出的视图可以据此定位原始GPS点
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public double getLng(int index) {
+        return lngs[offset + index];
+    }
+
+    public double getLat(int index) {
+        return lats[offset + index];
+    }
+
+    /**
+     * @return 时间戳（毫秒）
+     */
+    public long getTime(int index) {
+        return times[offset + index];
+    }
+
+    /**
+     * 按需创建GPS点对象，用于对接原有的接口
+     */
+    public GpsPoint getGpsPoint(int index) {
+        return new GpsPoint(oid, getLng(index), getLat(index), new Timestamp(getTime(index)));
+    }
+
+    /**
+     * @return 两个GPS点的球面距离（米）
+     */
+    public double distInMeter(int fromIndex, int toIndex) {
+        return DistanceKernel.haversine(getLng(fromIndex), getLat(fromIndex), getLng(toIndex), getLat(toIndex));
+    }
+
+    /**
+     * @return 两个GPS点的时间差（秒），与{@link GpsPoint#timeIntervalInSec(GpsPoint)}一致
+     */
+    public long timeIntervalInSec(int fromIndex, int toIndex) {
+        return Math.abs(getTime(toIndex) - getTime(fromIndex)) / 1000;
+    }
+
+    /**
+     * @return 两个GPS点的平均速度（米/秒），与{@link GpsPoint#speedInMeterPerSec(GpsPoint)}一致
+     */
+    public double speedInMeterPerSec(int fromIndex, int toIndex) {
+        return distInMeter(fromIndex, toIndex) / timeIntervalInSec(fromIndex, toIndex);
+    }
+
+    public LineString getLineString() {
+        LineString cached = lineString;
+        if (cached == null) {
+            Coordinate[] coordinates = new Coordinate[length];
+            for (int i = 0; i < length; i++) {
+                coordinates[i] = new Coordinate(getLng(i), getLat(i));
+            }
+            cached = DefaultUtil.GEOMETRY_FACTORY.createLineString(coordinates);
+            lineString = cached;
+        }
+        return cached;
+    }
+}
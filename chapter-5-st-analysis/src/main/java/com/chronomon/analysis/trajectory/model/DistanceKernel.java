@@ -0,0 +1,205 @@
+package com.chronomon.analysis.trajectory.model;
+
+import org.locationtech.spatial4j.context.jts.JtsSpatialContext;
+import org.locationtech.spatial4j.distance.DistanceUtils;
+import org.locationtech.spatial4j.distance.GeodesicSphereDistCalc;
+import org.locationtech.spatial4j.shape.impl.PointImpl;
+
+import java.util.Random;
+
+/**
+ * 球面距离计算内核：只使用基本类型，计算过程中不创建任何对象
+ * <p>
+ * 1. haversine：球面大圆距离，与原先spatial4j余弦定理的结果一致，短距离时数值更稳定
+ * 2. equirectangular：等距圆柱投影近似，只需一次三角函数运算，适合GPS点与候选路段之间等短距离计算；
+ * 两点经纬度差都不超过{@link #FAST_MODE_MAX_DEGREES}且纬度不超过{@link #FAST_MODE_MAX_LATITUDE}时，
+ * 相对haversine的误差不超过1e-5（见main中的精度对照表），超出该范围时{@link #fastDistInMeter}自动回退到haversine
+ * 3. 批量版本：对坐标数组逐段或一对多计算，结果写入调用方提供的数组
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class DistanceKernel {
+
+    /**
+     * 地球平均半径（米），与spatial4j保持一致
+     */
+    public static final double EARTH_MEAN_RADIUS_IN_M = DistanceUtils.EARTH_MEAN_RADIUS_KM * 1000;
+
+    /**
+     * 近似计算允许的最大经纬度差（度），约为赤道上的11公里
+     */
+    public static final double FAST_MODE_MAX_DEGREES = 0.1;
+
+    /**
+     * 近似计算允许的最大纬度（度），纬度越高经线收敛越快，近似误差越大
+     */
+    public static final double FAST_MODE_MAX_LATITUDE = 70.0;
+
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+
+    private DistanceKernel() {
+    }
+
+    /**
+     * haversine公式计算两点间的球面距离
+     *
+     * @param fromX 起点经度
+     * @param fromY 起点纬度
+     * @param toX   终点经度
+     * @param toY   终点纬度
+     * @return 球面距离（米）
+     */
+    public static double haversine(double fromX, double fromY, double toX, double toY) {
+        double fromLat = fromY * DEGREES_TO_RADIANS;
+        double toLat = toY * DEGREES_TO_RADIANS;
+        double sinHalfDeltaLat = Math.sin((toLat - fromLat) * 0.5);
+        double sinHalfDeltaLon = Math.sin((toX - fromX) * DEGREES_TO_RADIANS * 0.5);
+        double h = sinHalfDeltaLat * sinHalfDeltaLat
+                + Math.cos(fromLat) * Math.cos(toLat) * sinHalfDeltaLon * sinHalfDeltaLon;
+        return 2 * EARTH_MEAN_RADIUS_IN_M * Math.asin(Math.sqrt(Math.min(1.0, h)));
+    }
+
+    /**
+     * 等距圆柱投影近似计算两点间的距离，不检查适用范围
+     *
+     * @param fromX 起点经度
+     * @param fromY 起点纬度
+     * @param toX   终点经度
+     * @param toY   终点纬度
+     * @return 近似距离（米）
+     */
+    public static double equirectangular(double fromX, double fromY, double toX, double toY) {
+        double deltaLon = (toX - fromX) * Math.cos((fromY + toY) * 0.5 * DEGREES_TO_RADIANS);
+        double deltaLat = toY - fromY;
+        return EARTH_MEAN_RADIUS_IN_M * DEGREES_TO_RADIANS * Math.sqrt(deltaLon * deltaLon + deltaLat * deltaLat);
+    }
+
+    /**
+     * 误差有界的快速距离：两点足够近时使用等距圆柱投影近似，否则回退到haversine
+     *
+     * @param fromX 起点经度
+     * @param fromY 起点纬度
+     * @param toX   终点经度
+     * @param toY   终点纬度
+     * @return 距离（米），相对误差不超过1e-5
+     */
+    public static double fastDistInMeter(double fromX, double fromY, double toX, double toY) {
+        if (Math.abs(toX - fromX) <= FAST_MODE_MAX_DEGREES
+                && Math.abs(toY - fromY) <= FAST_MODE_MAX_DEGREES
+                && Math.abs(fromY) <= FAST_MODE_MAX_LATITUDE) {
+            return equirectangular(fromX, fromY, toX, toY);
+        }
+        return haversine(fromX, fromY, toX, toY);
+    }
+
+    /**
+     * 批量计算折线上相邻两点间的球面距离
+     *
+     * @param xs     经度数组
+     * @param ys     纬度数组
+     * @param from   起始下标（包含）
+     * @param to     结束下标（不包含）
+     * @param output 输出数组，output[i]为点i与点i+1之间的距离（米），i位于[from, to - 1)
+     */
+    public static void consecutiveDistInMeter(double[] xs, double[] ys, int from, int to, double[] output) {
+        for (int i = from; i < to - 1; i++) {
+            output[i] = haversine(xs[i], ys[i], xs[i + 1], ys[i + 1]);
+        }
+    }
+
+    /**
+     * 批量计算一个点到多个点的球面距离
+     *
+     * @param x      中心点经度
+     * @param y      中心点纬度
+     * @param xs     目标点经度数组
+     * @param ys     目标点纬度数组
+     * @param count  目标点数量
+     * @param output 输出数组，output[i]为中心点到第i个目标点的距离（米）
+     */
+    public static void oneToManyDistInMeter(double x, double y, double[] xs, double[] ys, int count, double[] output) {
+        double lat = y * DEGREES_TO_RADIANS;
+        double cosLat = Math.cos(lat);
+        for (int i = 0; i < count; i++) {
+            double toLat = ys[i] * DEGREES_TO_RADIANS;
+            double sinHalfDeltaLat = Math.sin((toLat - lat) * 0.5);
+            double sinHalfDeltaLon = Math.sin((xs[i] - x) * DEGREES_TO_RADIANS * 0.5);
+            double h = sinHalfDeltaLat * sinHalfDeltaLat + cosLat * Math.cos(toLat) * sinHalfDeltaLon * sinHalfDeltaLon;
+            output[i] = 2 * EARTH_MEAN_RADIUS_IN_M * Math.asin(Math.sqrt(Math.min(1.0, h)));
+        }
+    }
+
+    /**
+     * 精度对照表与耗时对比
+     */
+    public static void main(String[] args) {
+        // 精度对照：不同纬度、不同距离下近似计算相对haversine的最大相对误差
+        System.out.println("纬度\t距离(米)\t余弦定理误差\t等距圆柱近似误差");
+        double[] latitudes = {0.0, 30.0, 45.0, 60.0, 70.0};
+        double[] distances = {10.0, 100.0, 1000.0, 10000.0};
+        for (double latitude : latitudes) {
+            for (double distance : distances) {
+                double maxCosineError = 0.0;
+                double maxFastError = 0.0;
+                for (int bearing = 0; bearing < 360; bearing += 5) {
+                    double degrees = distance / (EARTH_MEAN_RADIUS_IN_M * DEGREES_TO_RADIANS);
+                    double toX = 116.0 + degrees * Math.sin(bearing * DEGREES_TO_RADIANS) / Math.cos(latitude * DEGREES_TO_RADIANS);
+                    double toY = latitude + degrees * Math.cos(bearing * DEGREES_TO_RADIANS);
+                    double expected = haversine(116.0, latitude, toX, toY);
+                    maxCosineError = Math.max(maxCosineError, Math.abs(lawOfCosines(116.0, latitude, toX, toY) - expected) / expected);
+                    maxFastError = Math.max(maxFastError, Math.abs(equirectangular(116.0, latitude, toX, toY) - expected) / expected);
+                }
+                System.out.printf("%.0f\t%.0f\t%.2e\t%.2e%n", latitude, distance, maxCosineError, maxFastError);
+            }
+        }
+
+        // 耗时对比：北京范围内的随机短距离点对
+        int count = 1_000_000;
+        Random random = new Random(42);
+        double[] xs = new double[count + 1];
+        double[] ys = new double[count + 1];
+        for (int i = 0; i <= count; i++) {
+            xs[i] = 116.3 + random.nextDouble() * 0.01;
+            ys[i] = 39.9 + random.nextDouble() * 0.01;
+        }
+        double[] output = new double[count];
+        for (int round = 0; round < 5; round++) {
+            double sink = 0.0;
+            long startTime = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sink += lawOfCosines(xs[i], ys[i], xs[i + 1], ys[i + 1]);
+            }
+            long cosineTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sink += haversine(xs[i], ys[i], xs[i + 1], ys[i + 1]);
+            }
+            long haversineTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sink += fastDistInMeter(xs[i], ys[i], xs[i + 1], ys[i + 1]);
+            }
+            long fastTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            consecutiveDistInMeter(xs, ys, 0, count + 1, output);
+            long batchTime = System.nanoTime() - startTime;
+
+            System.out.printf("第%d轮（ns/次）：spatial4j余弦定理 %.1f，haversine %.1f，快速近似 %.1f，批量haversine %.1f（%.0f）%n",
+                    round + 1, (double) cosineTime / count, (double) haversineTime / count,
+                    (double) fastTime / count, (double) batchTime / count, sink + output[count - 1]);
+        }
+    }
+
+    /**
+     * 原先DistanceUtil的实现，仅用于对照
+     */
+    private static double lawOfCosines(double fromX, double fromY, double toX, double toY) {
+        double degrees = new GeodesicSphereDistCalc.LawOfCosines().distance(
+                new PointImpl(fromX, fromY, JtsSpatialContext.GEO), new PointImpl(toX, toY, JtsSpatialContext.GEO));
+        return DistanceUtils.degrees2Dist(degrees, DistanceUtils.EARTH_MEAN_RADIUS_KM) * 1000;
+    }
+}
@@ -3,14 +3,10 @@ package com.chronomon.analysis.trajectory.model;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Point;
-import org.locationtech.spatial4j.context.jts.JtsSpatialContext;
 import org.locationtech.spatial4j.distance.DistanceUtils;
-import org.locationtech.spatial4j.distance.GeodesicSphereDistCalc;
-import org.locationtech.spatial4j.shape.impl.PointImpl;
-import org.locationtech.spatial4j.shape.jts.JtsPoint;
 
 /**
- * 距离计算工具
+ * 距离计算工具，距离计算委托给{@link DistanceKernel}
  *
  * @author wangrubin
  * @date 2023-11-05
@@ -27,8 +23,7 @@ public class DistanceUtil {
      * @return 球面距离（米）
      */
     public static double distInMeter(double fromX, double fromY, double toX, double toY) {
-        double degrees = new GeodesicSphereDistCalc.LawOfCosines().distance(new PointImpl(fromX, fromY, JtsSpatialContext.GEO), new PointImpl(toX, toY, JtsSpatialContext.GEO));
-        return DistanceUtils.degrees2Dist(degrees, DistanceUtils.EARTH_MEAN_RADIUS_KM) * 1000;
+        return DistanceKernel.haversine(fromX, fromY, toX, toY);
     }
 
     /**
@@ -39,8 +34,7 @@ public class DistanceUtil {
      * @return 球面距离（米）
      */
     public static double distInMeter(Point from, Point to) {
-        double degrees = new GeodesicSphereDistCalc.LawOfCosines().distance(new JtsPoint(from, JtsSpatialContext.GEO), new JtsPoint(to, JtsSpatialContext.GEO));
-        return DistanceUtils.degrees2Dist(degrees, DistanceUtils.EARTH_MEAN_RADIUS_KM) * 1000;
+        return DistanceKernel.haversine(from.getX(), from.getY(), to.getX(), to.getY());
     }
 
     /**
@@ -84,7 +84,7 @@ public class GpsPoint implements Comparable<GpsPoint> {
      * @return 球面距离（米）
      */
     public double distInMeter(GpsPoint other) {
-        return DistanceUtil.distInMeter(this.geom, other.geom);
+        return DistanceKernel.haversine(this.geom.getX(), this.geom.getY(), other.geom.getX(), other.geom.getY());
     }
 
     /**
@@ -0,0 +1,323 @@
+package com.chronomon.analysis.trajectory.road;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 紧凑路网图：以CSR（压缩稀疏行）的形式存储有向图，节点ID直接作为数组下标
+ * <p>
+ * 1. 节点u的出边为[offsets[u], offsets[u + 1])，边的终点、权重（路段长度）分别存放在基本类型数组中，遍历出边时不需要哈希查找和装箱
+ * 2. 同一节点的出边顺序与{@link RoadGraph#outgoingEdgesOf}一致，因此最短路径的结果（包括等长路径的选择）与原先相同
+ * 3. 保留边到路段对象的映射，用于还原最短路径途经的路段；{@link RoadGraph}仍然可以通过{@link RoadNetwork#getRoadGraph()}获取
+ * 4. 路网增量更新时由{@link #update}逐节点复制未删除的出边并追加新增的出边，不经过jgrapht的图结构
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class CompactRoadGraph {
+
+    /**
+     * 节点数组的长度，即最大节点ID加1（节点ID从1开始，下标0不对应任何节点）
+     */
+    private final int nodeCount;
+
+    private final RoadNode[] nodes;
+
+    private final double[] nodeLngs;
+
+    private final double[] nodeLats;
+
+    private final int[] offsets;
+
+    private final int[] sources;
+
+    private final int[] targets;
+
+    private final double[] weights;
+
+    private final IRoadSegment[] segments;
+
+    /**
+     * 路段ID到边下标的映射，下标为roadId + maxRoadId（反向路段的ID为负数），不存在的路段为-1
+     */
+    private final int[] roadEdges;
+
+    private final int maxRoadId;
+
+    private CompactRoadGraph(int nodeCount, RoadNode[] nodes, int[] offsets, int[] sources, int[] targets,
+                             double[] weights, IRoadSegment[] segments, int maxRoadId) {
+        this.nodeCount = nodeCount;
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.sources = sources;
+        this.targets = targets;
+        this.weights = weights;
+        this.segments = segments;
+        this.maxRoadId = maxRoadId;
+        this.roadEdges = new int[2 * maxRoadId + 1];
+        Arrays.fill(roadEdges, -1);
+        for (int edge = 0; edge < segments.length; edge++) {
+            roadEdges[segments[edge].getRoadId() + maxRoadId] = edge;
+        }
+        this.nodeLngs = new double[nodeCount];
+        this.nodeLats = new double[nodeCount];
+        for (RoadNode node : nodes) {
+            if (node != null) {
+                nodeLngs[node.nodeId] = node.geom.getX();
+                nodeLats[node.nodeId] = node.geom.getY();
+            }
+        }
+    }
+
+    /**
+     * 由路网的图结构构建紧凑图，应通过{@link RoadNetwork#getCompactGraph()}获取缓存的实例
+     */
+    static CompactRoadGraph build(RoadGraph graph, int maxNodeId, int maxRoadId) {
+        int nodeCount = maxNodeId + 1;
+        RoadNode[] nodes = new RoadNode[nodeCount];
+        for (RoadNode node : graph.vertexSet()) {
+            nodes[node.nodeId] = node;
+        }
+
+        int edgeCount = graph.edgeSet().size();
+        int[] offsets = new int[nodeCount + 1];
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        double[] weights = new double[edgeCount];
+        IRoadSegment[] segments = new IRoadSegment[edgeCount];
+        int edge = 0;
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            offsets[nodeId] = edge;
+            if (nodes[nodeId] == null) {
+                continue;
+            }
+            for (IRoadSegment segment : graph.outgoingEdgesOf(nodes[nodeId])) {
+                sources[edge] = nodeId;
+                targets[edge] = segment.getToNode().nodeId;
+                weights[edge] = segment.getLengthInM();
+                segments[edge] = segment;
+                edge++;
+            }
+        }
+        offsets[nodeCount] = edge;
+        return new CompactRoadGraph(nodeCount, nodes, offsets, sources, targets, weights, segments, maxRoadId);
+    }
+
+    /**
+     * 增量更新：删除路段对应的边（包括反向路段），在起点的出边末尾追加新增路段的边，当前图保持不变
+     *
+     * @param removedRoadIds 删除的路段ID（正数）
+     * @param addedSegments  新增的路段，已经赋予了路段ID和起终点
+     * @param maxNodeId      更新后的最大节点ID
+     * @param maxRoadId      更新后的最大路段ID
+     * @return 新的紧凑图，未变化的节点和路段对象与当前图共享
+     */
+    CompactRoadGraph update(Set<Integer> removedRoadIds, List<RoadSegment> addedSegments, int maxNodeId,
+                            int maxRoadId) {
+        boolean[] removedRoads = new boolean[this.maxRoadId + 1];
+        for (int roadId : removedRoadIds) {
+            removedRoads[roadId] = true;
+        }
+        int newNodeCount = maxNodeId + 1;
+        RoadNode[] newNodes = Arrays.copyOf(nodes, newNodeCount);
+        int[] addedOutCounts = new int[newNodeCount];
+        List<IRoadSegment> addedEdges = new ArrayList<>(2 * addedSegments.size());
+        for (RoadSegment segment : addedSegments) {
+            addedEdges.add(segment);
+            segment.getReversedOne().ifPresent(addedEdges::add);
+        }
+        for (IRoadSegment segment : addedEdges) {
+            newNodes[segment.getFromNode().nodeId] = segment.getFromNode();
+            newNodes[segment.getToNode().nodeId] = segment.getToNode();
+            addedOutCounts[segment.getFromNode().nodeId]++;
+        }
+        // 新增的边按起点分组，同一起点的边保持加入的顺序
+        int[] addedOffsets = new int[newNodeCount + 1];
+        for (int nodeId = 0; nodeId < newNodeCount; nodeId++) {
+            addedOffsets[nodeId + 1] = addedOffsets[nodeId] + addedOutCounts[nodeId];
+        }
+        IRoadSegment[] addedByNode = new IRoadSegment[addedEdges.size()];
+        int[] fillPosition = Arrays.copyOf(addedOffsets, newNodeCount);
+        for (IRoadSegment segment : addedEdges) {
+            addedByNode[fillPosition[segment.getFromNode().nodeId]++] = segment;
+        }
+
+        int edgeCount = targets.length + addedEdges.size();
+        int[] newOffsets = new int[newNodeCount + 1];
+        int[] newSources = new int[edgeCount];
+        int[] newTargets = new int[edgeCount];
+        double[] newWeights = new double[edgeCount];
+        IRoadSegment[] newSegments = new IRoadSegment[edgeCount];
+        int newEdge = 0;
+        for (int nodeId = 0; nodeId < newNodeCount; nodeId++) {
+            newOffsets[nodeId] = newEdge;
+            if (nodeId < nodeCount) {
+                for (int edge = offsets[nodeId]; edge < offsets[nodeId + 1]; edge++) {
+                    if (removedRoads[Math.abs(segments[edge].getRoadId())]) {
+                        continue;
+                    }
+                    newSources[newEdge] = nodeId;
+                    newTargets[newEdge] = targets[edge];
+                    newWeights[newEdge] = weights[edge];
+                    newSegments[newEdge] = segments[edge];
+                    newEdge++;
+                }
+            }
+            for (int i = addedOffsets[nodeId]; i < addedOffsets[nodeId + 1]; i++) {
+                IRoadSegment segment = addedByNode[i];
+                newSources[newEdge] = nodeId;
+                newTargets[newEdge] = segment.getToNode().nodeId;
+                newWeights[newEdge] = segment.getLengthInM();
+                newSegments[newEdge] = segment;
+                newEdge++;
+            }
+        }
+        newOffsets[newNodeCount] = newEdge;
+        return new CompactRoadGraph(newNodeCount, newNodes, newOffsets, Arrays.copyOf(newSources, newEdge),
+                Arrays.copyOf(newTargets, newEdge), Arrays.copyOf(newWeights, newEdge),
+                Arrays.copyOf(newSegments, newEdge), maxRoadId);
+    }
+
+    /**
+     * @param ignoredRoadIds 不考虑的路段ID（正数），即将被删除的路段
+     * @return 从起点到终点是否已经存在一条边
+     */
+    boolean hasEdge(int fromNodeId, int toNodeId, Set<Integer> ignoredRoadIds) {
+        if (fromNodeId >= nodeCount) {
+            return false;
+        }
+        for (int edge = offsets[fromNodeId]; edge < offsets[fromNodeId + 1]; edge++) {
+            if (targets[edge] == toNodeId && !ignoredRoadIds.contains(Math.abs(segments[edge].getRoadId()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 由紧凑图还原jgrapht的图结构，同一节点的出边顺序保持不变
+     */
+    RoadGraph toRoadGraph() {
+        RoadGraph graph = new RoadGraph(true);
+        for (IRoadSegment segment : segments) {
+            graph.addRoadSegment(segment);
+        }
+        return graph;
+    }
+
+    /**
+     * 写入路网快照：CSR数组以及每条边对应的路段ID
+     */
+    void writeSnapshot(WritableByteChannel channel) throws IOException {
+        int[] roadIds = new int[segments.length];
+        for (int edge = 0; edge < segments.length; edge++) {
+            roadIds[edge] = segments[edge].getRoadId();
+        }
+        RoadNetworkSnapshot.writeInts(channel, nodeCount, maxRoadId);
+        RoadNetworkSnapshot.writeIntArray(channel, offsets);
+        RoadNetworkSnapshot.writeIntArray(channel, targets);
+        RoadNetworkSnapshot.writeDoubleArray(channel, weights);
+        RoadNetworkSnapshot.writeIntArray(channel, roadIds);
+    }
+
+    /**
+     * 从路网快照还原紧凑图
+     *
+     * @param buffer         快照内容，读取后位置移动到紧凑图之后
+     * @param nodes          以节点ID为下标的节点数组
+     * @param segmentsById   以路段ID为下标的路段数组，反向路段由双向路段获取
+     */
+    static CompactRoadGraph readSnapshot(ByteBuffer buffer, RoadNode[] nodes,
+                                         RoadSegment[] segmentsById) throws IOException {
+        int nodeCount = buffer.getInt();
+        int maxRoadId = buffer.getInt();
+        if (nodeCount != nodes.length) {
+            throw new IOException("快照中紧凑图的节点数量与节点数组不一致");
+        }
+        int[] offsets = RoadNetworkSnapshot.readIntArray(buffer);
+        int[] targets = RoadNetworkSnapshot.readIntArray(buffer);
+        double[] weights = RoadNetworkSnapshot.readDoubleArray(buffer);
+        int[] roadIds = RoadNetworkSnapshot.readIntArray(buffer);
+
+        int[] sources = new int[targets.length];
+        IRoadSegment[] segments = new IRoadSegment[targets.length];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            for (int edge = offsets[nodeId]; edge < offsets[nodeId + 1]; edge++) {
+                sources[edge] = nodeId;
+                int roadId = Math.abs(roadIds[edge]);
+                RoadSegment segment = roadId < segmentsById.length ? segmentsById[roadId] : null;
+                if (segment == null || (roadIds[edge] < 0 && !segment.getReversedOne().isPresent())) {
+                    throw new IOException("快照中缺少路段" + roadIds[edge]);
+                }
+                segments[edge] = roadIds[edge] > 0 ? segment : segment.getReversedOne().get();
+            }
+        }
+        return new CompactRoadGraph(nodeCount, nodes, offsets, sources, targets, weights, segments, maxRoadId);
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    public RoadNode getNode(int nodeId) {
+        return nodes[nodeId];
+    }
+
+    public double getNodeLng(int nodeId) {
+        return nodeLngs[nodeId];
+    }
+
+    public double getNodeLat(int nodeId) {
+        return nodeLats[nodeId];
+    }
+
+    /**
+     * @return 节点第一条出边的下标
+     */
+    public int getFirstEdge(int nodeId) {
+        return offsets[nodeId];
+    }
+
+    /**
+     * @return 节点最后一条出边的下一个下标
+     */
+    public int getEndEdge(int nodeId) {
+        return offsets[nodeId + 1];
+    }
+
+    public int getSource(int edge) {
+        return sources[edge];
+    }
+
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+
+    public double getWeight(int edge) {
+        return weights[edge];
+    }
+
+    public IRoadSegment getSegment(int edge) {
+        return segments[edge];
+    }
+
+    /**
+     * @param roadId 路段ID，反向路段为负数
+     * @return 路段对应的边下标，路段不在图中时返回-1
+     */
+    public int getEdgeByRoadId(int roadId) {
+        if (roadId < -maxRoadId || roadId > maxRoadId) {
+            return -1;
+        }
+        return roadEdges[roadId + maxRoadId];
+    }
+}
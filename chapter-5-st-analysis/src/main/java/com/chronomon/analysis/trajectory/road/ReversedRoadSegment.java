@@ -23,14 +23,10 @@ public class ReversedRoadSegment implements IRoadSegment {
     private final RoadSegment baseOne;
 
     /**
-     * 反向路的坐标序列，与baseOne的坐标序列正好相反
+     * 在双向路的构造函数中创建，此时双向路可能尚未初始化完成（例如由快照加载的路段），因此不能访问其坐标
      */
-    private final List<Coordinate> coordinateList;
-
     public ReversedRoadSegment(RoadSegment baseOne) {
         this.baseOne = baseOne;
-        coordinateList = new ArrayList<>(baseOne.getCoordinateList());
-        Collections.reverse(coordinateList);
     }
 
     @Override
@@ -75,6 +71,9 @@ public class ReversedRoadSegment implements IRoadSegment {
 
     @Override
     public List<Coordinate> getCoordinateList() {
+        // 按需生成与baseOne的坐标序列正好相反的序列，不为每条双向路常驻一份副本
+        List<Coordinate> coordinateList = new ArrayList<>(baseOne.getCoordinateList());
+        Collections.reverse(coordinateList);
         return coordinateList;
     }
 
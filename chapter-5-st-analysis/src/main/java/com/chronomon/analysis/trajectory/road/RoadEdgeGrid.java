@@ -0,0 +1,579 @@
+package com.chronomon.analysis.trajectory.road;
+
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * 路段折线边的均匀网格索引：用于地图匹配的候选路段搜索
+ * <p>
+ * 1. 索引的单位是折线的每一条边（相邻两个坐标点构成的线段），而不是整条路段，网格单元内的边以CSR形式存放在数组中，
+ * 只存储包含边的网格单元，单元编号升序排列，内存与路段数量成正比，与路网外包框的面积无关
+ * 2. 每一行网格预先计算经度方向每度对应的米数，查询时以GPS点为原点建立局部等距圆柱坐标系（单位为米），
+ * 用点到线段的解析公式计算投影，不需要构造JTS几何对象
+ * 3. 每条路段只保留距离最近的一条边上的投影，按投影距离排序后最多返回K条路段
+ * 4. 构建完成后只读，查询不修改任何共享状态，可以被多个线程并发调用
+ * 5. 路网增量更新时不重建索引：{@link #update}返回共享原有数组的新索引，被删除的路段以掩码过滤，
+ * 新增的路段放在一个只包含新增路段的小索引中，查询时合并两者的结果；增量累计过多时再整体重建
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class RoadEdgeGrid {
+
+    /**
+     * 默认的网格边长（米）
+     */
+    public static final double DEFAULT_CELL_SIZE_IN_M = 100.0;
+
+    private static final double METERS_PER_DEGREE = DistanceKernel.EARTH_MEAN_RADIUS_IN_M * Math.PI / 180;
+
+    /**
+     * 增量（删除和新增的路段）占基础索引路段数量的比例超过该值时，整体重建索引
+     */
+    private static final double MAX_DELTA_RATIO = 0.1;
+
+    private final double minX;
+
+    private final double minY;
+
+    /**
+     * 网格单元的宽和高（度）
+     */
+    private final double cellWidth;
+
+    private final double cellHeight;
+
+    private final int columnCount;
+
+    private final int rowCount;
+
+    /**
+     * 每一行网格中心纬度处，经度方向每度对应的米数
+     */
+    private final double[] rowMetersPerLng;
+
+    /**
+     * 包含边的网格单元的编号row * columnCount + column，升序排列
+     */
+    private final long[] cellKeys;
+
+    /**
+     * 网格单元cellKeys[k]内的边为cellEdges[cellOffsets[k], cellOffsets[k + 1])
+     */
+    private final int[] cellOffsets;
+
+    private final int[] cellEdges;
+
+    private final RoadSegment[] segments;
+
+    /**
+     * 每条边所属的路段（segments的下标）以及在路段中的序号
+     */
+    private final int[] edgeSegment;
+
+    private final int[] edgeIndex;
+
+    private final double[] edgeFromX;
+
+    private final double[] edgeFromY;
+
+    private final double[] edgeToX;
+
+    private final double[] edgeToY;
+
+    /**
+     * 边的起点到路段起点的路线距离，以及边的长度（米）
+     */
+    private final double[] edgeStartOffset;
+
+    private final double[] edgeLength;
+
+    /**
+     * 已删除的路段（segments的下标），没有删除时为null
+     */
+    private final boolean[] removedMask;
+
+    private final int removedCount;
+
+    /**
+     * 增量更新中新增路段的索引，没有新增时为null
+     */
+    private final RoadEdgeGrid overlay;
+
+    public RoadEdgeGrid(Collection<RoadSegment> roadSegments, double cellSizeInM) {
+        if (cellSizeInM <= 0.0) {
+            throw new IllegalArgumentException("网格边长必须大于0");
+        }
+        this.segments = roadSegments.toArray(new RoadSegment[0]);
+        Arrays.sort(segments, Comparator.comparingInt(RoadSegment::getRoadId));
+
+        int edgeCount = 0;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (RoadSegment segment : segments) {
+            edgeCount += segment.getNumPoints() - 1;
+            for (int i = 0; i < segment.getNumPoints(); i++) {
+                double x = segment.getCoordinateN(i).x;
+                double y = segment.getCoordinateN(i).y;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+        }
+        if (segments.length == 0) {
+            minX = minY = maxX = maxY = 0.0;
+        }
+
+        this.edgeSegment = new int[edgeCount];
+        this.edgeIndex = new int[edgeCount];
+        this.edgeFromX = new double[edgeCount];
+        this.edgeFromY = new double[edgeCount];
+        this.edgeToX = new double[edgeCount];
+        this.edgeToY = new double[edgeCount];
+        this.edgeStartOffset = new double[edgeCount];
+        this.edgeLength = new double[edgeCount];
+        int edge = 0;
+        for (int s = 0; s < segments.length; s++) {
+            RoadSegment segment = segments[s];
+            for (int i = 0; i + 1 < segment.getNumPoints(); i++) {
+                edgeSegment[edge] = s;
+                edgeIndex[edge] = i;
+                edgeFromX[edge] = segment.getCoordinateN(i).x;
+                edgeFromY[edge] = segment.getCoordinateN(i).y;
+                edgeToX[edge] = segment.getCoordinateN(i + 1).x;
+                edgeToY[edge] = segment.getCoordinateN(i + 1).y;
+                edgeStartOffset[edge] = segment.distanceFromStartInM(i);
+                edgeLength[edge] = segment.distanceFromStartInM(i + 1) - edgeStartOffset[edge];
+                edge++;
+            }
+        }
+
+        // 网格的经度宽度按整个范围的中心纬度换算
+        double middleLat = (minY + maxY) / 2;
+        this.minX = minX;
+        this.minY = minY;
+        this.cellHeight = cellSizeInM / METERS_PER_DEGREE;
+        this.cellWidth = cellSizeInM / (METERS_PER_DEGREE * Math.cos(Math.toRadians(middleLat)));
+        double columnSpan = (maxX - minX) / cellWidth;
+        double rowSpan = (maxY - minY) / cellHeight;
+        if (columnSpan >= Integer.MAX_VALUE || rowSpan >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("路网范围内的网格行列数超出上限：%.0f列，%.0f行，请增大网格边长", columnSpan + 1, rowSpan + 1));
+        }
+        this.columnCount = (int) columnSpan + 1;
+        this.rowCount = (int) rowSpan + 1;
+        this.rowMetersPerLng = new double[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            double rowLat = minY + (row + 0.5) * cellHeight;
+            rowMetersPerLng[row] = METERS_PER_DEGREE * Math.cos(Math.toRadians(rowLat));
+        }
+
+        // 每条边登记到其外包框覆盖的所有单元：先收集非空单元的编号并去重排序，再统计每个单元的边数，最后按边的顺序填充
+        long[] pairCount = new long[1];
+        for (edge = 0; edge < edgeCount; edge++) {
+            forEachCell(edge, cell -> pairCount[0]++);
+        }
+        if (pairCount[0] >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("边登记的网格单元数量超出上限，请增大网格边长");
+        }
+        long[] pairKeys = new long[(int) pairCount[0]];
+        int[] pairSize = new int[1];
+        for (edge = 0; edge < edgeCount; edge++) {
+            forEachCell(edge, cell -> pairKeys[pairSize[0]++] = cell);
+        }
+        Arrays.sort(pairKeys);
+        int cellCount = 0;
+        for (int i = 0; i < pairKeys.length; i++) {
+            if (i == 0 || pairKeys[i] != pairKeys[i - 1]) {
+                pairKeys[cellCount++] = pairKeys[i];
+            }
+        }
+        this.cellKeys = Arrays.copyOf(pairKeys, cellCount);
+        this.cellOffsets = new int[cellCount + 1];
+        for (edge = 0; edge < edgeCount; edge++) {
+            forEachCell(edge, cell -> cellOffsets[Arrays.binarySearch(cellKeys, cell) + 1]++);
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellOffsets[cell + 1] += cellOffsets[cell];
+        }
+        this.cellEdges = new int[cellOffsets[cellCount]];
+        int[] fillPosition = Arrays.copyOf(cellOffsets, cellCount);
+        for (edge = 0; edge < edgeCount; edge++) {
+            int currentEdge = edge;
+            forEachCell(edge, cell -> cellEdges[fillPosition[Arrays.binarySearch(cellKeys, cell)]++] = currentEdge);
+        }
+        this.removedMask = null;
+        this.removedCount = 0;
+        this.overlay = null;
+    }
+
+    private RoadEdgeGrid(double[] bounds, int columnCount, int rowCount, double[] rowMetersPerLng,
+                         long[] cellKeys, int[] cellOffsets, int[] cellEdges, RoadSegment[] segments, int[] edgeSegment, int[] edgeIndex,
+                         double[] edgeFromX, double[] edgeFromY, double[] edgeToX, double[] edgeToY,
+                         double[] edgeStartOffset, double[] edgeLength) {
+        this.minX = bounds[0];
+        this.minY = bounds[1];
+        this.cellWidth = bounds[2];
+        this.cellHeight = bounds[3];
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.rowMetersPerLng = rowMetersPerLng;
+        this.cellKeys = cellKeys;
+        this.cellOffsets = cellOffsets;
+        this.cellEdges = cellEdges;
+        this.segments = segments;
+        this.edgeSegment = edgeSegment;
+        this.edgeIndex = edgeIndex;
+        this.edgeFromX = edgeFromX;
+        this.edgeFromY = edgeFromY;
+        this.edgeToX = edgeToX;
+        this.edgeToY = edgeToY;
+        this.edgeStartOffset = edgeStartOffset;
+        this.edgeLength = edgeLength;
+        this.removedMask = null;
+        this.removedCount = 0;
+        this.overlay = null;
+    }
+
+    /**
+     * 增量更新得到的索引，与基础索引共享所有数组
+     */
+    private RoadEdgeGrid(RoadEdgeGrid base, boolean[] removedMask, int removedCount, RoadEdgeGrid overlay) {
+        this.minX = base.minX;
+        this.minY = base.minY;
+        this.cellWidth = base.cellWidth;
+        this.cellHeight = base.cellHeight;
+        this.columnCount = base.columnCount;
+        this.rowCount = base.rowCount;
+        this.rowMetersPerLng = base.rowMetersPerLng;
+        this.cellKeys = base.cellKeys;
+        this.cellOffsets = base.cellOffsets;
+        this.cellEdges = base.cellEdges;
+        this.segments = base.segments;
+        this.edgeSegment = base.edgeSegment;
+        this.edgeIndex = base.edgeIndex;
+        this.edgeFromX = base.edgeFromX;
+        this.edgeFromY = base.edgeFromY;
+        this.edgeToX = base.edgeToX;
+        this.edgeToY = base.edgeToY;
+        this.edgeStartOffset = base.edgeStartOffset;
+        this.edgeLength = base.edgeLength;
+        this.removedMask = removedMask;
+        this.removedCount = removedCount;
+        this.overlay = overlay;
+    }
+
+    /**
+     * 增量更新：返回删除和新增路段之后的索引，当前索引保持不变
+     * <p>
+     * 删除的路段和新增的路段累计超过基础索引路段数量的{@link #MAX_DELTA_RATIO}时，整体重建索引
+     *
+     * @param removedSegments 删除的路段，必须在当前索引中
+     * @param addedSegments   新增的路段，已经赋予了路段ID
+     * @return 新的索引
+     */
+    RoadEdgeGrid update(Collection<RoadSegment> removedSegments, Collection<RoadSegment> addedSegments) {
+        List<RoadSegment> overlaySegments = new ArrayList<>();
+        if (overlay != null) {
+            overlaySegments.addAll(Arrays.asList(overlay.segments));
+        }
+        boolean[] newRemovedMask = removedMask;
+        int newRemovedCount = removedCount;
+        for (RoadSegment segment : removedSegments) {
+            int index = indexOf(segment);
+            if (index >= 0) {
+                if (newRemovedMask == removedMask) {
+                    newRemovedMask = removedMask == null ? new boolean[segments.length] : removedMask.clone();
+                }
+                if (!newRemovedMask[index]) {
+                    newRemovedMask[index] = true;
+                    newRemovedCount++;
+                }
+            } else {
+                overlaySegments.remove(segment);
+            }
+        }
+        overlaySegments.addAll(addedSegments);
+
+        double cellSizeInM = cellHeight * METERS_PER_DEGREE;
+        if (newRemovedCount + overlaySegments.size() > segments.length * MAX_DELTA_RATIO) {
+            List<RoadSegment> liveSegments = new ArrayList<>(segments.length - newRemovedCount + overlaySegments.size());
+            for (int i = 0; i < segments.length; i++) {
+                if (newRemovedMask == null || !newRemovedMask[i]) {
+                    liveSegments.add(segments[i]);
+                }
+            }
+            liveSegments.addAll(overlaySegments);
+            return new RoadEdgeGrid(liveSegments, cellSizeInM);
+        }
+        RoadEdgeGrid newOverlay = overlaySegments.isEmpty() ? null : new RoadEdgeGrid(overlaySegments, cellSizeInM);
+        return new RoadEdgeGrid(this, newRemovedMask, newRemovedCount, newOverlay);
+    }
+
+    /**
+     * @return 不包含增量的索引，没有增量时返回自身，用于写入路网快照
+     */
+    RoadEdgeGrid compact() {
+        if (removedMask == null && overlay == null) {
+            return this;
+        }
+        List<RoadSegment> liveSegments = new ArrayList<>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            if (removedMask == null || !removedMask[i]) {
+                liveSegments.add(segments[i]);
+            }
+        }
+        if (overlay != null) {
+            liveSegments.addAll(Arrays.asList(overlay.segments));
+        }
+        return new RoadEdgeGrid(liveSegments, cellHeight * METERS_PER_DEGREE);
+    }
+
+    /**
+     * @return 路段在segments中的下标，不在基础索引中时返回-1
+     */
+    private int indexOf(RoadSegment segment) {
+        int low = 0;
+        int high = segments.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int roadId = segments[middle].getRoadId();
+            if (roadId < segment.getRoadId()) {
+                low = middle + 1;
+            } else if (roadId > segment.getRoadId()) {
+                high = middle - 1;
+            } else {
+                return segments[middle] == segment ? middle : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 写入路网快照：网格参数、单元的CSR数组以及每条边的坐标和偏移量，路段以ID的顺序引用
+     */
+    void writeSnapshot(WritableByteChannel channel) throws IOException {
+        RoadNetworkSnapshot.writeDoubleArray(channel, new double[]{minX, minY, cellWidth, cellHeight});
+        RoadNetworkSnapshot.writeInts(channel, columnCount, rowCount, segments.length);
+        RoadNetworkSnapshot.writeDoubleArray(channel, rowMetersPerLng);
+        RoadNetworkSnapshot.writeLongArray(channel, cellKeys);
+        RoadNetworkSnapshot.writeIntArray(channel, cellOffsets);
+        RoadNetworkSnapshot.writeIntArray(channel, cellEdges);
+        RoadNetworkSnapshot.writeIntArray(channel, edgeSegment);
+        RoadNetworkSnapshot.writeIntArray(channel, edgeIndex);
+        RoadNetworkSnapshot.writeDoubleArray(channel, edgeFromX);
+        RoadNetworkSnapshot.writeDoubleArray(channel, edgeFromY);
+        RoadNetworkSnapshot.writeDoubleArray(channel, edgeToX);
+        RoadNetworkSnapshot.writeDoubleArray(channel, edgeToY);
+        RoadNetworkSnapshot.writeDoubleArray(channel, edgeStartOffset);
+        RoadNetworkSnapshot.writeDoubleArray(channel, edgeLength);
+    }
+
+    /**
+     * 从路网快照还原网格索引
+     *
+     * @param buffer   快照内容，读取后位置移动到网格索引之后
+     * @param segments 按ID排序的路段，与写入快照时的路段一致
+     */
+    static RoadEdgeGrid readSnapshot(ByteBuffer buffer, RoadSegment[] segments) throws IOException {
+        double[] bounds = RoadNetworkSnapshot.readDoubleArray(buffer);
+        int columnCount = buffer.getInt();
+        int rowCount = buffer.getInt();
+        if (buffer.getInt() != segments.length) {
+            throw new IOException("快照中网格索引的路段数量与路段数组不一致");
+        }
+        return new RoadEdgeGrid(bounds, columnCount, rowCount, RoadNetworkSnapshot.readDoubleArray(buffer),
+                RoadNetworkSnapshot.readLongArray(buffer), RoadNetworkSnapshot.readIntArray(buffer), RoadNetworkSnapshot.readIntArray(buffer), segments,
+                RoadNetworkSnapshot.readIntArray(buffer), RoadNetworkSnapshot.readIntArray(buffer),
+                RoadNetworkSnapshot.readDoubleArray(buffer), RoadNetworkSnapshot.readDoubleArray(buffer),
+                RoadNetworkSnapshot.readDoubleArray(buffer), RoadNetworkSnapshot.readDoubleArray(buffer),
+                RoadNetworkSnapshot.readDoubleArray(buffer), RoadNetworkSnapshot.readDoubleArray(buffer));
+    }
+
+    /**
+     * @return 索引中的边数量，包括增量更新中新增的边，不包括已删除路段的边
+     */
+    public int getEdgeCount() {
+        int edgeCount = edgeSegment.length + (overlay == null ? 0 : overlay.getEdgeCount());
+        if (removedMask != null) {
+            for (int i = 0; i < segments.length; i++) {
+                if (removedMask[i]) {
+                    edgeCount -= segments[i].getNumPoints() - 1;
+                }
+            }
+        }
+        return edgeCount;
+    }
+
+    /**
+     * 搜索点附近的路段，并计算点在每条路段上的投影
+     *
+     * @param x                 经度
+     * @param y                 纬度
+     * @param searchDistInM     搜索半径（米），投影距离超过该值的路段被过滤掉
+     * @param maxCandidateCount 最多返回的路段数量
+     * @return 按投影距离从小到大排序的候选投影
+     */
+    public List<Candidate> search(double x, double y, double searchDistInM, int maxCandidateCount) {
+        int row = clamp((int) Math.floor((y - minY) / cellHeight), rowCount);
+        double metersPerLng = rowMetersPerLng[row];
+        double deltaX = searchDistInM / metersPerLng;
+        double deltaY = searchDistInM / METERS_PER_DEGREE;
+        int minColumn = (int) Math.floor((x - deltaX - minX) / cellWidth);
+        int maxColumn = (int) Math.floor((x + deltaX - minX) / cellWidth);
+        int minRow = (int) Math.floor((y - deltaY - minY) / cellHeight);
+        int maxRow = (int) Math.floor((y + deltaY - minY) / cellHeight);
+        if (maxColumn < 0 || maxRow < 0 || minColumn >= columnCount || minRow >= rowCount) {
+            return overlay == null ? new ArrayList<>(0) : overlay.search(x, y, searchDistInM, maxCandidateCount);
+        }
+        minColumn = Math.max(minColumn, 0);
+        minRow = Math.max(minRow, 0);
+        maxColumn = Math.min(maxColumn, columnCount - 1);
+        maxRow = Math.min(maxRow, rowCount - 1);
+
+        // 每条路段只保留距离最近的边，候选路段一般只有几条，线性查找即可
+        double maxSquaredDist = searchDistInM * searchDistInM;
+        int foundCount = 0;
+        int[] foundSegment = new int[8];
+        int[] foundEdge = new int[8];
+        double[] foundSquaredDist = new double[8];
+        double[] foundFraction = new double[8];
+        for (int r = minRow; r <= maxRow; r++) {
+            // 同一行的单元编号连续，定位到该行第一个非空单元后顺序扫描
+            long rowMaxKey = (long) r * columnCount + maxColumn;
+            int cell = Arrays.binarySearch(cellKeys, (long) r * columnCount + minColumn);
+            for (cell = cell < 0 ? -cell - 1 : cell; cell < cellKeys.length && cellKeys[cell] <= rowMaxKey; cell++) {
+                for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+                    int edge = cellEdges[i];
+                    // 以搜索点为原点的局部平面坐标（米）
+                    double fromX = (edgeFromX[edge] - x) * metersPerLng;
+                    double fromY = (edgeFromY[edge] - y) * METERS_PER_DEGREE;
+                    double dx = (edgeToX[edge] - x) * metersPerLng - fromX;
+                    double dy = (edgeToY[edge] - y) * METERS_PER_DEGREE - fromY;
+                    double squaredLength = dx * dx + dy * dy;
+                    double fraction = squaredLength == 0.0 ? 0.0 : -(fromX * dx + fromY * dy) / squaredLength;
+                    fraction = Math.max(0.0, Math.min(1.0, fraction));
+                    double nearestX = fromX + fraction * dx;
+                    double nearestY = fromY + fraction * dy;
+                    double squaredDist = nearestX * nearestX + nearestY * nearestY;
+                    if (squaredDist > maxSquaredDist) {
+                        continue;
+                    }
+
+                    int segment = edgeSegment[edge];
+                    if (removedMask != null && removedMask[segment]) {
+                        continue;
+                    }
+                    int found = 0;
+                    while (found < foundCount && foundSegment[found] != segment) {
+                        found++;
+                    }
+                    if (found == foundCount) {
+                        if (foundCount == foundSegment.length) {
+                            foundSegment = Arrays.copyOf(foundSegment, foundCount * 2);
+                            foundEdge = Arrays.copyOf(foundEdge, foundCount * 2);
+                            foundSquaredDist = Arrays.copyOf(foundSquaredDist, foundCount * 2);
+                            foundFraction = Arrays.copyOf(foundFraction, foundCount * 2);
+                        }
+                        foundCount++;
+                    } else if (squaredDist > foundSquaredDist[found] ||
+                            (squaredDist == foundSquaredDist[found] && edge >= foundEdge[found])) {
+                        // 距离相同时保留序号较小的边，与JTS的DistanceOp一致
+                        continue;
+                    }
+                    foundSegment[found] = segment;
+                    foundEdge[found] = edge;
+                    foundSquaredDist[found] = squaredDist;
+                    foundFraction[found] = fraction;
+                }
+            }
+        }
+
+        List<Candidate> candidateList = new ArrayList<>(foundCount);
+        for (int found = 0; found < foundCount; found++) {
+            int edge = foundEdge[found];
+            double fraction = foundFraction[found];
+            candidateList.add(new Candidate(segments[edgeSegment[edge]], edgeIndex[edge],
+                    edgeFromX[edge] + fraction * (edgeToX[edge] - edgeFromX[edge]),
+                    edgeFromY[edge] + fraction * (edgeToY[edge] - edgeFromY[edge]),
+                    Math.sqrt(foundSquaredDist[found]),
+                    edgeStartOffset[edge] + fraction * edgeLength[edge]));
+        }
+        if (overlay != null) {
+            candidateList.addAll(overlay.search(x, y, searchDistInM, maxCandidateCount));
+        }
+        candidateList.sort(Comparator.comparingDouble(candidate -> candidate.projectDistInM));
+        if (candidateList.size() > maxCandidateCount) {
+            return new ArrayList<>(candidateList.subList(0, maxCandidateCount));
+        }
+        return candidateList;
+    }
+
+    private void forEachCell(int edge, LongConsumer action) {
+        int minColumn = clamp((int) ((Math.min(edgeFromX[edge], edgeToX[edge]) - minX) / cellWidth), columnCount);
+        int maxColumn = clamp((int) ((Math.max(edgeFromX[edge], edgeToX[edge]) - minX) / cellWidth), columnCount);
+        int minRow = clamp((int) ((Math.min(edgeFromY[edge], edgeToY[edge]) - minY) / cellHeight), rowCount);
+        int maxRow = clamp((int) ((Math.max(edgeFromY[edge], edgeToY[edge]) - minY) / cellHeight), rowCount);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                action.accept((long) row * columnCount + column);
+            }
+        }
+    }
+
+    private static int clamp(int index, int count) {
+        return Math.max(0, Math.min(count - 1, index));
+    }
+
+    /**
+     * 点在路段上的投影
+     */
+    public static final class Candidate {
+
+        public final RoadSegment roadSegment;
+
+        /**
+         * 投影到了路段的第几截
+         */
+        public final int segmentIndex;
+
+        /**
+         * 投影点的经纬度
+         */
+        public final double x;
+
+        public final double y;
+
+        /**
+         * 投影点与搜索点之间的距离（米）
+         */
+        public final double projectDistInM;
+
+        /**
+         * 投影点与路段起点之间的路线距离（米）
+         */
+        public final double offsetDistInM;
+
+        private Candidate(RoadSegment roadSegment, int segmentIndex, double x, double y,
+                          double projectDistInM, double offsetDistInM) {
+            this.roadSegment = roadSegment;
+            this.segmentIndex = segmentIndex;
+            this.x = x;
+            this.y = y;
+            this.projectDistInM = projectDistInM;
+            this.offsetDistInM = offsetDistInM;
+        }
+    }
+}
@@ -2,20 +2,43 @@ package com.chronomon.analysis.trajectory.road;
 
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.index.strtree.STRtree;
-import org.locationtech.jts.operation.distance.DistanceOp;
-import org.locationtech.jts.operation.distance.GeometryLocation;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 路网对象：根据路段的联通关系构建的图对象，用于计算最短路径
+ * <p>
+ * 路网在构造函数中一次性完成修复、建图（包括拆分成环的路段）、建立空间索引和紧凑图，构造完成后不再修改，
+ * 所有字段通过final安全发布，因此同一个路网对象可以被多个线程同时用于地图匹配。
+ * 由{@link RoadNetworkSnapshot}加载的路网直接还原紧凑图和网格索引，jgrapht图和R树只在首次访问时构建。
+ * 路网的变化通过{@link #update}发布为新版本的路网：紧凑图和网格索引在原有结构上增量修改，未变化的路段和节点对象在版本之间共享，
+ * 旧版本保持不变，正在使用旧版本的匹配器不受影响。
+ * 注意：传入的路段对象在构造时会被赋予路段ID和起终点，同一批路段对象不能用于构建多个路网
  *
  * @author wangrubin3
  * @date 2023-10-27
  */
 public class RoadNetwork {
+
+    /**
+     * 默认的拓扑修复吸附容差（米），只修复几何上重合的节点和路口
+     */
+    public static final double DEFAULT_SNAP_TOLERANCE_IN_M = 0.01;
+
+    /**
+     * 版本号在JVM内全局唯一，用于判断缓存是否由上一版本的路网产生
+     */
+    private static final AtomicLong VERSION_ASSIGNER = new AtomicLong();
+
+    /**
+     * 在已有节点上查找新增路段端点时的距离容差（米），端点坐标必须与节点完全相同
+     */
+    private static final double NODE_SEARCH_DIST_IN_M = 1e-6;
+
+    private final long version = VERSION_ASSIGNER.incrementAndGet();
+
     private final AtomicInteger roadIdAssigner = new AtomicInteger(1);
 
     private final AtomicInteger roadNodeIdAssigner = new AtomicInteger(1);
@@ -24,14 +47,182 @@ public class RoadNetwork {
 
     private final Map<Integer, RoadSegment> roadSegmentMap;
 
+    /**
+     * 由快照加载的路网在首次访问时才构建，因此不是final
+     */
+    private volatile RoadGraph directedGraph;
+
+    private final CompactRoadGraph compactGraph;
+
+    private volatile STRtree roadRtree;
+
+    private final RoadEdgeGrid roadEdgeGrid;
+
+    /**
+     * 拓扑修复的统计结果，未修复时为null
+     */
+    private final TopologyRepairReport repairReport;
+
+    /**
+     * 由上一版本更新得到时的修改内容，否则为null
+     */
+    private final RoadNetworkChange lastChange;
+
+    /**
+     * @param roadSegmentList 路段
+     * @param fixConnect      是否以{@link #DEFAULT_SNAP_TOLERANCE_IN_M}为容差修复路网拓扑
+     */
     public RoadNetwork(List<RoadSegment> roadSegmentList, boolean fixConnect) {
+        this(roadSegmentList, fixConnect ? DEFAULT_SNAP_TOLERANCE_IN_M : 0.0);
+    }
+
+    /**
+     * @param roadSegmentList  路段
+     * @param snapToleranceInM 拓扑修复的吸附容差（米）：距离不超过容差的节点合并，
+     *                         节点与其他路段的距离不超过容差时在该处打断路段，不大于0时不修复
+     */
+    public RoadNetwork(List<RoadSegment> roadSegmentList, double snapToleranceInM) {
         this.roadSegmentMap = new HashMap<>(roadSegmentList.size());
         for (RoadSegment segment : roadSegmentList) {
             addSegment(segment);
         }
-        if (fixConnect) {
-            fixConnection();
+        this.repairReport = snapToleranceInM > 0.0 ?
+                new TopologyRepair(roadNodeMap, roadSegmentMap, roadIdAssigner, snapToleranceInM).repair() : null;
+        // 建图时可能拆分路段，因此空间索引和紧凑图都在建图之后构建
+        this.directedGraph = buildRoadGraph();
+        this.roadRtree = buildRoadRtree();
+        this.compactGraph = CompactRoadGraph.build(directedGraph, getMaxNodeId(), getMaxRoadId());
+        this.roadEdgeGrid = new RoadEdgeGrid(roadSegmentMap.values(), RoadEdgeGrid.DEFAULT_CELL_SIZE_IN_M);
+        this.lastChange = null;
+        // 坐标到节点的映射只在构建时用于节点去重
+        this.roadNodeMap.clear();
+    }
+
+    /**
+     * 由路网快照还原路网，路段已经赋予了ID和起终点
+     */
+    RoadNetwork(Map<Integer, RoadSegment> roadSegmentMap, int maxNodeId, int maxRoadId,
+                CompactRoadGraph compactGraph, RoadEdgeGrid roadEdgeGrid) {
+        this.roadSegmentMap = roadSegmentMap;
+        this.roadNodeIdAssigner.set(maxNodeId + 1);
+        this.roadIdAssigner.set(maxRoadId + 1);
+        this.compactGraph = compactGraph;
+        this.roadEdgeGrid = roadEdgeGrid;
+        this.repairReport = null;
+        this.lastChange = null;
+    }
+
+    /**
+     * 由上一版本的路网增量更新，jgrapht图和R树只在首次访问时构建
+     */
+    private RoadNetwork(RoadNetwork base, Set<Integer> removedRoadIds, List<RoadSegment> requestedSegments) {
+        this.roadIdAssigner.set(base.roadIdAssigner.get());
+        this.roadNodeIdAssigner.set(base.roadNodeIdAssigner.get());
+        this.roadSegmentMap = new HashMap<>(base.roadSegmentMap);
+        List<RoadSegment> removedSegments = new ArrayList<>(removedRoadIds.size());
+        for (int roadId : removedRoadIds) {
+            removedSegments.add(roadSegmentMap.remove(roadId));
+        }
+
+        // 与已有边（或本次新增的边）起终点相同的路段一分为二，与构建路网时的处理一致
+        List<RoadSegment> addedSegments = new ArrayList<>(requestedSegments.size());
+        Set<Long> addedEdges = new HashSet<>();
+        for (RoadSegment segment : requestedSegments) {
+            RoadNode fromNode = findOrCreateNode(base, segment.getPointN(0));
+            RoadNode toNode = findOrCreateNode(base, segment.getPointN(segment.getNumPoints() - 1));
+            boolean dual = segment.direction == DirectionEnum.DUAL_DIRECT;
+            if (hasEdge(base, removedRoadIds, addedEdges, fromNode, toNode) ||
+                    (dual && hasEdge(base, removedRoadIds, addedEdges, toNode, fromNode))) {
+                for (LineString part : splitRing(segment.getRoadLine())) {
+                    RoadSegment partSegment = new RoadSegment(part, segment.direction);
+                    RoadNode partFrom = findOrCreateNode(base, partSegment.getPointN(0));
+                    RoadNode partTo = findOrCreateNode(base, partSegment.getPointN(partSegment.getNumPoints() - 1));
+                    addUpdatedSegment(partSegment, partFrom, partTo, addedEdges, addedSegments);
+                }
+            } else {
+                addUpdatedSegment(segment, fromNode, toNode, addedEdges, addedSegments);
+            }
+        }
+
+        this.compactGraph = base.compactGraph.update(removedRoadIds, addedSegments, getMaxNodeId(), getMaxRoadId());
+        this.roadEdgeGrid = base.roadEdgeGrid.update(removedSegments, addedSegments);
+        this.repairReport = null;
+        this.lastChange = new RoadNetworkChange(base.version, version, new HashSet<>(removedRoadIds), addedSegments);
+        this.roadNodeMap.clear();
+    }
+
+    /**
+     * 增量更新：删除、新增和修改路段，得到新版本的路网，当前路网保持不变
+     * <p>
+     * 1. 紧凑图逐节点复制未删除的出边并追加新增的边，网格索引以删除掩码和新增路段的小索引叠加在原有索引上，都不需要重建
+     * 2. jgrapht图和R树在新版本首次访问时由紧凑图和路段重新构建
+     * 3. 节点的出入度只在构建路网时统计，增量更新不修改（节点对象在版本之间共享）
+     * 4. 依赖当前版本的缓存通过新版本的{@link #getLastChange()}判断哪些内容失效，
+     * 例如{@link com.chronomon.analysis.trajectory.mapmatch.transfer.ShortestPathCache#update}
+     *
+     * @param update 路段的修改
+     * @return 新版本的路网
+     */
+    public RoadNetwork update(RoadNetworkUpdate update) {
+        for (int roadId : update.getRemovedRoadIds()) {
+            if (!roadSegmentMap.containsKey(roadId)) {
+                throw new IllegalArgumentException("路网中不存在路段" + roadId);
+            }
         }
+        for (RoadSegment segment : update.getAddedSegments()) {
+            if (segment.hasRoadId()) {
+                throw new IllegalArgumentException("路段已经属于某个路网，不能重复加入");
+            }
+        }
+        return new RoadNetwork(this, update.getRemovedRoadIds(), update.getAddedSegments());
+    }
+
+    /**
+     * 在上一版本的路网和本次新增的节点中查找坐标完全相同的节点，找不到时创建新节点
+     */
+    private RoadNode findOrCreateNode(RoadNetwork base, Point point) {
+        Coordinate coordinate = point.getCoordinate();
+        RoadNode roadNode = roadNodeMap.get(coordinate);
+        if (roadNode != null) {
+            return roadNode;
+        }
+        for (RoadEdgeGrid.Candidate candidate : base.roadEdgeGrid.search(coordinate.x, coordinate.y,
+                NODE_SEARCH_DIST_IN_M, Integer.MAX_VALUE)) {
+            RoadSegment segment = candidate.roadSegment;
+            if (segment.getFromNode().geom.getCoordinate().equals2D(coordinate)) {
+                return segment.getFromNode();
+            }
+            if (segment.getToNode().geom.getCoordinate().equals2D(coordinate)) {
+                return segment.getToNode();
+            }
+        }
+        roadNode = new RoadNode(roadNodeIdAssigner.getAndIncrement(), point);
+        roadNodeMap.put(coordinate, roadNode);
+        return roadNode;
+    }
+
+    private static boolean hasEdge(RoadNetwork base, Set<Integer> removedRoadIds, Set<Long> addedEdges,
+                                   RoadNode fromNode, RoadNode toNode) {
+        return addedEdges.contains(edgeKey(fromNode, toNode)) ||
+                base.compactGraph.hasEdge(fromNode.nodeId, toNode.nodeId, removedRoadIds);
+    }
+
+    private void addUpdatedSegment(RoadSegment segment, RoadNode fromNode, RoadNode toNode, Set<Long> addedEdges,
+                                   List<RoadSegment> addedSegments) {
+        int roadId = roadIdAssigner.getAndIncrement();
+        segment.setRoadId(roadId);
+        segment.setFromNode(fromNode);
+        segment.setToNode(toNode);
+        roadSegmentMap.put(roadId, segment);
+        addedSegments.add(segment);
+        addedEdges.add(edgeKey(fromNode, toNode));
+        if (segment.direction == DirectionEnum.DUAL_DIRECT) {
+            addedEdges.add(edgeKey(toNode, fromNode));
+        }
+    }
+
+    private static long edgeKey(RoadNode fromNode, RoadNode toNode) {
+        return ((long) fromNode.nodeId << 32) | (toNode.nodeId & 0xFFFFFFFFL);
     }
 
     private void addSegment(RoadSegment segment) {
@@ -64,158 +255,163 @@ public class RoadNetwork {
         return roadNode;
     }
 
-    private volatile RoadGraph directedGraph = null;
-
-    private volatile STRtree roadRtree = null;
-
-
     /**
-     * 修复路网
-     * 1. 在路段交点处增加节点
-     * 2. 对于没有方向的路段，根据相交路段的方向设置一个最优可能的方向值
+     * 由路段构建有向图，成环（起终点之间已经存在边）的路段一分为二后再加入
      */
-    private void fixConnection() {
-        getRoadRtree();
-        Set<RoadNode> roadNodeSet = roadNodeMap.values()
-                .stream().filter(node -> node.inCount == 0 || node.outCount == 0)
-                .collect(Collectors.toSet());
-
-        Map<Integer, Set<RoadSegment>> truncatedRoadMap = new HashMap<>();
-        for (RoadNode roadNode : roadNodeSet) {
-            Envelope queryEnv = roadNode.geom.getEnvelopeInternal();
-            RoadSegmentVisitor visitor = new RoadSegmentVisitor(queryEnv);
-            roadRtree.query(queryEnv, visitor);
-            List<RoadSegment> candidateSegmentList = visitor.segmentList;
-            if (candidateSegmentList.size() > 2) {
-                continue;
-            }
-            for (RoadSegment segment : candidateSegmentList) {
-                if (segment.getFromNode().nodeId == roadNode.nodeId ||
-                        segment.getToNode().nodeId == roadNode.nodeId) {
-                    continue;
-                }
-
-                Set<RoadSegment> subRoadSegmentSet = truncatedRoadMap.get(segment.getRoadId());
-                if (subRoadSegmentSet != null) {
-                    segment = truncatedRoadMap.get(segment.getRoadId()).stream()
-                            .filter(subSegment -> subSegment.intersects(roadNode.geom))
-                            .findFirst().get();
-                }
-
-                DistanceOp distanceOp = new DistanceOp(segment.getRoadLine(), roadNode.geom);
-                assert distanceOp.distance() == 0.0;
-                GeometryLocation locationOnSegment = distanceOp.nearestLocations()[0];
-                int segmentIndex = locationOnSegment.getSegmentIndex();
-                List<RoadSegment> twoHalfSegments = truncateRoadSegment(segment, roadNode, segmentIndex);
-
-                if (subRoadSegmentSet != null) {
-                    subRoadSegmentSet.remove(segment);
-                    subRoadSegmentSet.addAll(twoHalfSegments);
-                } else {
-                    truncatedRoadMap.put(segment.getRoadId(), new HashSet<>(twoHalfSegments));
-                }
+    private RoadGraph buildRoadGraph() {
+        RoadGraph directedGraph = new RoadGraph(true);
+        new ArrayList<>(roadSegmentMap.values()).forEach(segment -> {
+            boolean success = directedGraph.addRoadSegment(segment);
+            if (!success) {
+                // 添加边失败，说明存在环，需要将当前路段一分为二
+                LineString[] parts = splitRing(segment.getRoadLine());
+
+                // 原路段不在图中，从路段集合中删除，避免被空间索引检索为候选路段
+                roadSegmentMap.remove(segment.getRoadId());
+                RoadSegment firstSegment = new RoadSegment(parts[0], segment.direction);
+                RoadSegment secondSegment = new RoadSegment(parts[1], segment.direction);
+                addSegment(firstSegment);
+                addSegment(secondSegment);
+
+                directedGraph.addRoadSegment(firstSegment);
+                directedGraph.addRoadSegment(secondSegment);
+                firstSegment.getReversedOne().map(directedGraph::addRoadSegment);
+                secondSegment.getReversedOne().map(directedGraph::addRoadSegment);
+            } else {
+                segment.getReversedOne().map(directedGraph::addRoadSegment);
             }
-        }
-        roadRtree = null; // 因为Segment发生了变化，原来的RTree失效
+        });
+        return directedGraph;
     }
 
-    private List<RoadSegment> truncateRoadSegment(RoadSegment segment, RoadNode roadNode, int segmentIndex) {
-        List<Coordinate> firstPart = new ArrayList<>(segmentIndex + 2);
-        List<Coordinate> secondPart = new ArrayList<>(segment.getNumPoints() - segmentIndex);
-        secondPart.add(roadNode.geom.getCoordinate());
-        for (int i = 0; i < segment.getNumPoints(); i++) {
-            if (i <= segmentIndex) {
-                firstPart.add(segment.getCoordinateN(i));
-            } else {
-                secondPart.add(segment.getCoordinateN(i));
+    /**
+     * 将成环的路段一分为二：多于两个坐标点时在第二个坐标点处切分，否则在中点处切分
+     */
+    private static LineString[] splitRing(LineString roadLine) {
+        List<Coordinate> firstPart = new ArrayList<>(2);
+        List<Coordinate> secondPart = new ArrayList<>(roadLine.getNumPoints());
+
+        if (roadLine.getNumPoints() > 2) {
+            firstPart.add(roadLine.getCoordinateN(0));
+            firstPart.add(roadLine.getCoordinateN(1));
+            for (int i = 1; i < roadLine.getNumPoints(); i++) {
+                secondPart.add(roadLine.getCoordinateN(i));
             }
+        } else {
+            Coordinate startPoint = roadLine.getCoordinateN(0);
+            Coordinate endPoint = roadLine.getCoordinateN(1);
+            Coordinate minPoint = LineSegment.midPoint(startPoint, endPoint);
+            firstPart.add(startPoint);
+            firstPart.add(minPoint);
+            secondPart.add(minPoint);
+            secondPart.add(endPoint);
         }
-        firstPart.add(roadNode.geom.getCoordinate());
-
-        // 删除掉原来的，新增分段后的
-        roadSegmentMap.remove(segment.getRoadId());
-        LineString firstLine = segment.getRoadLine().getFactory().createLineString(firstPart.toArray(new Coordinate[0]));
-        LineString secondLine = segment.getRoadLine().getFactory().createLineString(secondPart.toArray(new Coordinate[0]));
-
-        int firstRoadId = roadIdAssigner.getAndIncrement();
-        RoadSegment firstSegment = new RoadSegment(firstLine, segment.direction);
-        firstSegment.setRoadId(firstRoadId);
-        firstSegment.setFromNode(segment.getFromNode());
-        firstSegment.setToNode(roadNode);
-        roadSegmentMap.put(firstRoadId, firstSegment);
+        return new LineString[]{
+                roadLine.getFactory().createLineString(firstPart.toArray(new Coordinate[2])),
+                roadLine.getFactory().createLineString(secondPart.toArray(new Coordinate[0]))};
+    }
 
-        int secondRoadId = roadIdAssigner.getAndIncrement();
-        RoadSegment secondSegment = new RoadSegment(secondLine, segment.direction);
-        secondSegment.setRoadId(secondRoadId);
-        secondSegment.setFromNode(roadNode);
-        secondSegment.setToNode(segment.getToNode());
-        roadSegmentMap.put(secondRoadId, secondSegment);
+    private STRtree buildRoadRtree() {
+        STRtree roadRtree = new STRtree();
+        roadSegmentMap.values().forEach(segment -> {
+            Envelope env = segment.getEnvelop();
+            roadRtree.insert(env, segment);
+        });
+        // 构建完成后的查询是只读的，可以被多个线程并发执行
+        roadRtree.build();
+        return roadRtree;
+    }
 
-        return Arrays.asList(firstSegment, secondSegment);
+    /**
+     * 释放jgrapht图和R树，与由快照加载的路网一样在首次访问时重新构建，用于只需要紧凑图和网格索引的路网
+     */
+    synchronized void releaseDerivedIndexes() {
+        directedGraph = null;
+        roadRtree = null;
     }
 
     public RoadGraph getRoadGraph() {
-        if (directedGraph == null) {
+        RoadGraph graph = directedGraph;
+        if (graph == null) {
             synchronized (this) {
                 if (directedGraph == null) {
-                    directedGraph = new RoadGraph(true);
-                    new ArrayList<>(roadSegmentMap.values()).forEach(segment -> {
-                        boolean success = directedGraph.addRoadSegment(segment);
-                        if (!success) {
-                            // 添加边失败，说明存在环，需要将当前路段一分为二
-                            LineString roadLine = segment.getRoadLine();
-                            List<Coordinate> firstPart = new ArrayList<>(2);
-                            List<Coordinate> secondPart = new ArrayList<>(roadLine.getNumPoints());
-
-                            if (roadLine.getNumPoints() > 2) {
-                                firstPart.add(roadLine.getCoordinateN(0));
-                                firstPart.add(roadLine.getCoordinateN(1));
-                                for (int i = 1; i < roadLine.getNumPoints(); i++) {
-                                    secondPart.add(roadLine.getCoordinateN(i));
-                                }
-                            } else {
-                                Coordinate startPoint = roadLine.getCoordinateN(0);
-                                Coordinate endPoint = roadLine.getCoordinateN(1);
-                                Coordinate minPoint = LineSegment.midPoint(startPoint, endPoint);
-                                firstPart.add(startPoint);
-                                firstPart.add(minPoint);
-                                secondPart.add(minPoint);
-                                secondPart.add(endPoint);
-                            }
-
-                            RoadSegment firstSegment = new RoadSegment(roadLine.getFactory().createLineString(firstPart.toArray(new Coordinate[2])), segment.direction);
-                            RoadSegment secondSegment = new RoadSegment(roadLine.getFactory().createLineString(secondPart.toArray(new Coordinate[0])), segment.direction);
-                            addSegment(firstSegment);
-                            addSegment(secondSegment);
-
-                            directedGraph.addRoadSegment(firstSegment);
-                            directedGraph.addRoadSegment(secondSegment);
-                            firstSegment.getReversedOne().map(directedGraph::addRoadSegment);
-                            secondSegment.getReversedOne().map(directedGraph::addRoadSegment);
-                        } else {
-                            segment.getReversedOne().map(directedGraph::addRoadSegment);
-                        }
-                    });
-                    roadRtree = null; // 因为Segment发生了变化，原来的RTree失效
+                    directedGraph = compactGraph.toRoadGraph();
                 }
+                graph = directedGraph;
             }
         }
-        return directedGraph;
+        return graph;
+    }
+
+    /**
+     * @return 路网中的所有路段，被拆分的路段已经替换为拆分后的路段
+     */
+    public Collection<RoadSegment> getRoadSegments() {
+        return Collections.unmodifiableCollection(roadSegmentMap.values());
+    }
+
+    /**
+     * 紧凑图：与{@link #getRoadGraph()}的结构相同，以数组形式存储，用于最短路径搜索等热点计算
+     */
+    public CompactRoadGraph getCompactGraph() {
+        return compactGraph;
+    }
+
+    /**
+     * 节点ID从1开始连续分配，可以直接作为数组下标
+     *
+     * @return 最大的节点ID
+     */
+    public int getMaxNodeId() {
+        return roadNodeIdAssigner.get() - 1;
+    }
+
+    /**
+     * @return 最大的路段ID，被拆分的路段ID不再使用
+     */
+    public int getMaxRoadId() {
+        return roadIdAssigner.get() - 1;
     }
 
     public STRtree getRoadRtree() {
-        if (null == roadRtree) {
+        STRtree rtree = roadRtree;
+        if (rtree == null) {
             synchronized (this) {
-                roadRtree = new STRtree();
-                roadSegmentMap.values().forEach(segment -> {
-                    Envelope env = segment.getEnvelop();
-                    roadRtree.insert(env, segment);
-                });
-                roadRtree.build();
+                if (roadRtree == null) {
+                    roadRtree = buildRoadRtree();
+                }
+                rtree = roadRtree;
             }
-
         }
-        return roadRtree;
+        return rtree;
+    }
+
+    /**
+     * @return 拓扑修复的统计结果，构造时没有修复路网时返回null
+     */
+    public TopologyRepairReport getRepairReport() {
+        return repairReport;
+    }
+
+    /**
+     * @return 路网的版本号，JVM内唯一，每次{@link #update}得到更大的版本号
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return 由上一版本增量更新得到时的修改内容，其他方式构建的路网返回null
+     */
+    public RoadNetworkChange getLastChange() {
+        return lastChange;
+    }
+
+    /**
+     * @return 路段折线边的网格索引，用于地图匹配的候选路段搜索
+     */
+    public RoadEdgeGrid getRoadEdgeGrid() {
+        return roadEdgeGrid;
     }
 
 }
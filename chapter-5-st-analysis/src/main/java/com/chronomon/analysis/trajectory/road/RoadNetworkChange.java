@@ -0,0 +1,50 @@
+package com.chronomon.analysis.trajectory.road;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一次增量更新实际对路网做出的修改，由新版本的路网通过{@link RoadNetwork#getLastChange()}提供，
+ * 用于判断依赖旧版本路网的缓存（例如最短路径缓存）中哪些内容失效
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class RoadNetworkChange {
+
+    /**
+     * 更新前路网的版本号
+     */
+    public final long baseVersion;
+
+    /**
+     * 更新后路网的版本号
+     */
+    public final long version;
+
+    private final Set<Integer> removedRoadIds;
+
+    private final List<RoadSegment> addedSegments;
+
+    RoadNetworkChange(long baseVersion, long version, Set<Integer> removedRoadIds, List<RoadSegment> addedSegments) {
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.removedRoadIds = Collections.unmodifiableSet(removedRoadIds);
+        this.addedSegments = Collections.unmodifiableList(addedSegments);
+    }
+
+    /**
+     * @return 删除的路段ID（正数），反向路段随之删除
+     */
+    public Set<Integer> getRemovedRoadIds() {
+        return removedRoadIds;
+    }
+
+    /**
+     * @return 新增的路段，已经赋予了路段ID和起终点；与已有边重复而被一分为二的路段以拆分后的两段出现
+     */
+    public List<RoadSegment> getAddedSegments() {
+        return addedSegments;
+    }
+}
@@ -3,6 +3,9 @@ package com.chronomon.analysis.trajectory.road;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -26,11 +29,63 @@ public class RoadNetworkHolder {
     }
 
     public static synchronized RoadNetwork getRoadNetwork(List<RoadSegment> roadSegmentList, String cacheKey) {
-        return roadNetworkCache.get(cacheKey, s -> {
-            RoadNetwork cacheRoadNetwork = new RoadNetwork(roadSegmentList, false);
-            cacheRoadNetwork.getRoadRtree();
-            cacheRoadNetwork.getRoadGraph();
-            return cacheRoadNetwork;
+        // 路网在构造时完成建图和空间索引，不需要预热
+        return roadNetworkCache.get(cacheKey, s -> new RoadNetwork(roadSegmentList, false));
+    }
+
+    /**
+     * 由路网快照加载路网，同一JVM中相同路径的快照只加载一次
+     *
+     * @param snapshotPath 由{@link RoadNetworkSnapshot#write}生成的快照文件
+     */
+    public static synchronized RoadNetwork getRoadNetwork(Path snapshotPath) {
+        return roadNetworkCache.get(snapshotPath.toAbsolutePath().toString(), s -> {
+            try {
+                return RoadNetworkSnapshot.read(snapshotPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("路网快照加载失败：" + snapshotPath, e);
+            }
+        });
+    }
+
+    /**
+     * 由路网快照加载路网，同一JVM中内容相同的快照只加载一次，即使各个子任务拿到的是分布式缓存中不同路径的副本
+     *
+     * @param snapshotPath 快照文件的本地路径
+     * @param contentHash  快照内容的摘要，由{@link RoadNetworkSnapshot#contentHash}计算
+     */
+    public static synchronized RoadNetwork getRoadNetwork(Path snapshotPath, String contentHash) {
+        return roadNetworkCache.get(contentHash, s -> {
+            try {
+                return RoadNetworkSnapshot.read(snapshotPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("路网快照加载失败：" + snapshotPath, e);
+            }
         });
     }
+
+    /**
+     * @return 缓存键对应的当前版本的路网，不存在时返回null；不加锁，可以在每条数据的处理中调用
+     */
+    public static RoadNetwork peekRoadNetwork(String cacheKey) {
+        return roadNetworkCache.getIfPresent(cacheKey);
+    }
+
+    /**
+     * 对缓存键对应的路网执行增量更新，并以新版本替换：之后通过{@link #peekRoadNetwork}获取的都是新版本；
+     * 依赖路网的缓存（例如最短路径缓存）在切换到新版本时根据{@link RoadNetwork#getLastChange()}自行更新
+     *
+     * @param cacheKey 路网的缓存键
+     * @param update   路段的修改
+     * @return 新版本的路网
+     */
+    public static synchronized RoadNetwork update(String cacheKey, RoadNetworkUpdate update) {
+        RoadNetwork roadNetwork = roadNetworkCache.getIfPresent(cacheKey);
+        if (roadNetwork == null) {
+            throw new IllegalStateException("路网尚未加载，无法更新：" + cacheKey);
+        }
+        RoadNetwork newRoadNetwork = roadNetwork.update(update);
+        roadNetworkCache.put(cacheKey, newRoadNetwork);
+        return newRoadNetwork;
+    }
 }
@@ -0,0 +1,282 @@
+package com.chronomon.analysis.trajectory.road;
+
+import com.chronomon.analysis.trajectory.model.DefaultUtil;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 路网的二进制快照：离线将构建好的路网写入单个文件，匹配器和Flink的TaskManager启动时通过内存映射直接加载
+ * <p>
+ * 1. 文件依次存放节点坐标、路段几何和累计长度、紧凑图的CSR邻接数组以及折线边的网格索引，数组都带有长度前缀，字节序为小端
+ * 2. 加载时不需要节点去重、修复路网、建图和建立空间索引：路段的坐标和累计长度直接作为内存映射上的视图
+ * （{@link SnapshotRoadSegment}），不拷贝到堆内存，也不创建JTS折线；节点、紧凑图的CSR数组和网格索引批量拷贝到堆内存，
+ * 最短路径搜索和候选路段搜索的内层循环仍然直接访问基本类型数组
+ * 3. jgrapht图和R树不写入快照，由快照加载的路网在首次访问时才构建
+ * 4. 快照与构建时的路网完全一致（包括节点ID和路段ID），因此收缩层次结构等按ID保存的文件可以继续使用
+ * 5. 单个MappedByteBuffer的容量上限为2GB，快照文件不能超过该大小
+ * 6. 由快照加载的路网引用文件的内存映射，路网被回收之前不应修改快照文件
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class RoadNetworkSnapshot {
+
+    private static final int MAGIC = 0x524E5331;
+
+    /**
+     * 版本2：网格索引只存储非空的网格单元
+     */
+    private static final int VERSION = 2;
+
+    private RoadNetworkSnapshot() {
+    }
+
+    /**
+     * 将路网写入快照文件
+     *
+     * @param rn   构建好的路网
+     * @param path 快照文件路径，已存在时覆盖
+     */
+    public static void write(RoadNetwork rn, Path path) throws IOException {
+        CompactRoadGraph graph = rn.getCompactGraph();
+        RoadSegment[] segments = rn.getRoadSegments().toArray(new RoadSegment[0]);
+        Arrays.sort(segments, Comparator.comparingInt(RoadSegment::getRoadId));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeInts(channel, MAGIC, VERSION, rn.getMaxNodeId(), rn.getMaxRoadId());
+
+            // 节点：以节点ID为下标，不在图中的节点坐标为NaN
+            int nodeCount = graph.getNodeCount();
+            double[] nodeLngs = new double[nodeCount];
+            double[] nodeLats = new double[nodeCount];
+            int[] inCounts = new int[nodeCount];
+            int[] outCounts = new int[nodeCount];
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                RoadNode node = graph.getNode(nodeId);
+                nodeLngs[nodeId] = node == null ? Double.NaN : node.geom.getX();
+                nodeLats[nodeId] = node == null ? Double.NaN : node.geom.getY();
+                inCounts[nodeId] = node == null ? 0 : node.inCount;
+                outCounts[nodeId] = node == null ? 0 : node.outCount;
+            }
+            writeDoubleArray(channel, nodeLngs);
+            writeDoubleArray(channel, nodeLats);
+            writeIntArray(channel, inCounts);
+            writeIntArray(channel, outCounts);
+
+            // 路段：按ID排序，坐标和累计长度以CSR形式存放
+            int[] roadIds = new int[segments.length];
+            int[] fromNodes = new int[segments.length];
+            int[] toNodes = new int[segments.length];
+            int[] directions = new int[segments.length];
+            int[] coordinateOffsets = new int[segments.length + 1];
+            for (int i = 0; i < segments.length; i++) {
+                roadIds[i] = segments[i].getRoadId();
+                fromNodes[i] = segments[i].getFromNode().nodeId;
+                toNodes[i] = segments[i].getToNode().nodeId;
+                directions[i] = segments[i].direction.code;
+                coordinateOffsets[i + 1] = coordinateOffsets[i] + segments[i].getNumPoints();
+            }
+            double[] xs = new double[coordinateOffsets[segments.length]];
+            double[] ys = new double[xs.length];
+            double[] cumulativeLengths = new double[xs.length];
+            for (int i = 0; i < segments.length; i++) {
+                for (int n = 0; n < segments[i].getNumPoints(); n++) {
+                    Coordinate coordinate = segments[i].getCoordinateN(n);
+                    xs[coordinateOffsets[i] + n] = coordinate.x;
+                    ys[coordinateOffsets[i] + n] = coordinate.y;
+                    cumulativeLengths[coordinateOffsets[i] + n] = segments[i].distanceFromStartInM(n);
+                }
+            }
+            writeIntArray(channel, roadIds);
+            writeIntArray(channel, fromNodes);
+            writeIntArray(channel, toNodes);
+            writeIntArray(channel, directions);
+            writeIntArray(channel, coordinateOffsets);
+            writeDoubleArray(channel, xs);
+            writeDoubleArray(channel, ys);
+            writeDoubleArray(channel, cumulativeLengths);
+
+            graph.writeSnapshot(channel);
+            // 增量更新得到的路网，网格索引中的增量先合并到索引中再写入
+            rn.getRoadEdgeGrid().compact().writeSnapshot(channel);
+        }
+    }
+
+    /**
+     * 通过内存映射加载快照文件
+     *
+     * @param path 快照文件路径
+     * @return 与写入时一致的路网
+     */
+    public static RoadNetwork read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("路网快照超过2GB，无法映射：" + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("不是路网快照文件：" + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("不支持的路网快照版本：" + version);
+            }
+            int maxNodeId = buffer.getInt();
+            int maxRoadId = buffer.getInt();
+
+            GeometryFactory geometryFactory = DefaultUtil.GEOMETRY_FACTORY;
+            double[] nodeLngs = readDoubleArray(buffer);
+            double[] nodeLats = readDoubleArray(buffer);
+            int[] inCounts = readIntArray(buffer);
+            int[] outCounts = readIntArray(buffer);
+            RoadNode[] nodes = new RoadNode[nodeLngs.length];
+            for (int nodeId = 0; nodeId < nodes.length; nodeId++) {
+                if (!Double.isNaN(nodeLngs[nodeId])) {
+                    nodes[nodeId] = new RoadNode(nodeId,
+                            geometryFactory.createPoint(new Coordinate(nodeLngs[nodeId], nodeLats[nodeId])));
+                    nodes[nodeId].inCount = inCounts[nodeId];
+                    nodes[nodeId].outCount = outCounts[nodeId];
+                }
+            }
+
+            int[] roadIds = readIntArray(buffer);
+            int[] fromNodes = readIntArray(buffer);
+            int[] toNodes = readIntArray(buffer);
+            int[] directions = readIntArray(buffer);
+            int[] coordinateOffsets = readIntArray(buffer);
+            SnapshotRoadSegment.CoordinateView view = new SnapshotRoadSegment.CoordinateView(
+                    viewDoubleArray(buffer), viewDoubleArray(buffer), viewDoubleArray(buffer));
+            RoadSegment[] segments = new RoadSegment[roadIds.length];
+            // 以路段ID为下标，紧凑图还原边到路段的映射时不需要哈希查找
+            RoadSegment[] segmentsById = new RoadSegment[maxRoadId + 1];
+            Map<Integer, RoadSegment> roadSegmentMap = new HashMap<>(roadIds.length * 4 / 3 + 1);
+            for (int i = 0; i < segments.length; i++) {
+                RoadSegment segment = new SnapshotRoadSegment(DirectionEnum.getByCode(directions[i]), view,
+                        coordinateOffsets[i], coordinateOffsets[i + 1] - coordinateOffsets[i]);
+                segment.setRoadId(roadIds[i]);
+                segment.setFromNode(nodes[fromNodes[i]]);
+                segment.setToNode(nodes[toNodes[i]]);
+                segments[i] = segment;
+                segmentsById[roadIds[i]] = segment;
+                roadSegmentMap.put(roadIds[i], segment);
+            }
+
+            CompactRoadGraph graph = CompactRoadGraph.readSnapshot(buffer, nodes, segmentsById);
+            RoadEdgeGrid grid = RoadEdgeGrid.readSnapshot(buffer, segments);
+            return new RoadNetwork(roadSegmentMap, maxNodeId, maxRoadId, graph, grid);
+        }
+    }
+
+    /**
+     * 计算快照文件内容的SHA-256摘要，内容相同的快照无论位于哪个路径都得到相同的摘要，可以作为路网的缓存键
+     *
+     * @param path 快照文件路径
+     * @return 十六进制的摘要
+     */
+    public static String contentHash(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(path)) {
+            int length;
+            while ((length = in.read(bytes)) > 0) {
+                digest.update(bytes, 0, length);
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    static void writeInts(WritableByteChannel channel, int... values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(values);
+        writeFully(channel, buffer);
+    }
+
+    static void writeIntArray(WritableByteChannel channel, int[] array) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 * array.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(array.length);
+        buffer.asIntBuffer().put(array);
+        writeFully(channel, buffer);
+    }
+
+    static void writeLongArray(WritableByteChannel channel, long[] array) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 8 * array.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(array.length);
+        buffer.asLongBuffer().put(array);
+        writeFully(channel, buffer);
+    }
+
+    static void writeDoubleArray(WritableByteChannel channel, double[] array) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 8 * array.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(array.length);
+        buffer.asDoubleBuffer().put(array);
+        writeFully(channel, buffer);
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static int[] readIntArray(ByteBuffer buffer) {
+        int[] array = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + 4 * array.length);
+        return array;
+    }
+
+    static long[] readLongArray(ByteBuffer buffer) {
+        long[] array = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(array);
+        buffer.position(buffer.position() + 8 * array.length);
+        return array;
+    }
+
+    /**
+     * @return 缓冲区中带长度前缀的double数组的只读视图，不拷贝数据，缓冲区的位置移动到数组之后
+     */
+    static DoubleBuffer viewDoubleArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        ByteBuffer slice = buffer.slice().order(buffer.order());
+        slice.limit(8 * length);
+        buffer.position(buffer.position() + 8 * length);
+        return slice.asDoubleBuffer().asReadOnlyBuffer();
+    }
+
+    static double[] readDoubleArray(ByteBuffer buffer) {
+        double[] array = new double[buffer.getInt()];
+        buffer.asDoubleBuffer().get(array);
+        buffer.position(buffer.position() + 8 * array.length);
+        return array;
+    }
+}
@@ -0,0 +1,73 @@
+package com.chronomon.analysis.trajectory.road;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 路网的增量更新：一批路段的删除、新增和修改，由{@link RoadNetwork#update}应用到路网上，得到新版本的路网
+ * <p>
+ * 1. 删除以路段ID指定，ID来自{@link RoadNetwork#getRoadSegments()}；道路封闭即删除对应路段
+ * 2. 新增的路段对象尚未加入任何路网，应用更新时被赋予新的路段ID和起终点，端点与已有节点坐标完全相同时连接到该节点
+ * 3. 修改（包括改变通行方向）等价于删除原路段并新增修改后的路段，修改后的路段使用新的路段ID
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class RoadNetworkUpdate {
+
+    private final Set<Integer> removedRoadIds = new LinkedHashSet<>();
+
+    private final List<RoadSegment> addedSegments = new ArrayList<>();
+
+    /**
+     * 新增路段
+     *
+     * @param segment 尚未加入任何路网的路段
+     */
+    public RoadNetworkUpdate addSegment(RoadSegment segment) {
+        if (segment.hasRoadId() || addedSegments.stream().anyMatch(added -> added == segment)) {
+            throw new IllegalArgumentException("路段已经属于某个路网，不能重复加入");
+        }
+        addedSegments.add(segment);
+        return this;
+    }
+
+    /**
+     * 删除路段
+     *
+     * @param roadId 路网中的路段ID
+     */
+    public RoadNetworkUpdate removeSegment(int roadId) {
+        if (roadId <= 0) {
+            throw new IllegalArgumentException("路段ID必须大于0：" + roadId);
+        }
+        removedRoadIds.add(roadId);
+        return this;
+    }
+
+    /**
+     * 修改路段：删除原路段，新增修改后的路段
+     *
+     * @param roadId      路网中的路段ID
+     * @param replacement 修改后的路段，尚未加入任何路网
+     */
+    public RoadNetworkUpdate modifySegment(int roadId, RoadSegment replacement) {
+        removeSegment(roadId);
+        return addSegment(replacement);
+    }
+
+    public boolean isEmpty() {
+        return removedRoadIds.isEmpty() && addedSegments.isEmpty();
+    }
+
+    Set<Integer> getRemovedRoadIds() {
+        return Collections.unmodifiableSet(removedRoadIds);
+    }
+
+    List<RoadSegment> getAddedSegments() {
+        return Collections.unmodifiableList(addedSegments);
+    }
+}
@@ -1,6 +1,6 @@
 package com.chronomon.analysis.trajectory.road;
 
-import com.chronomon.analysis.trajectory.model.DistanceUtil;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
 import org.locationtech.jts.geom.*;
 
 import java.util.Arrays;
@@ -16,9 +16,9 @@ import java.util.Optional;
 public class RoadSegment implements IRoadSegment {
 
     /**
-     * 路段的空间线
+     * 路段的空间线，由快照加载的路段为null（见{@link SnapshotRoadSegment}）
      */
-    public final LineString roadLine;
+    private final LineString roadLine;
 
     /**
      * 路段的方向：正向或者双向
@@ -41,6 +41,11 @@ public class RoadSegment implements IRoadSegment {
     private RoadNode toNode;
     private ReversedRoadSegment reversedRoadSegment = null;
 
+    /**
+     * 累计长度：cumulativeLengths[i]为第i个坐标点到路段起点的路线距离（米），构造时计算，之后只读；由快照加载的路段为null
+     */
+    private final double[] cumulativeLengths;
+
     public RoadSegment(LineString roadLine, DirectionEnum direction) {
         if (direction == DirectionEnum.UN_KNOWN || direction == DirectionEnum.DUAL_DIRECT) {
             // 双向路：需要创建其反向路
@@ -56,6 +61,29 @@ public class RoadSegment implements IRoadSegment {
             this.direction = direction;
             this.roadLine = roadLine;
         }
+        this.cumulativeLengths = computeCumulativeLengths(this.roadLine);
+    }
+
+    /**
+     * 由路网快照还原路段：方向已经是正向或者双向，坐标和累计长度由子类从快照中读取
+     */
+    RoadSegment(DirectionEnum direction) {
+        this.roadLine = null;
+        this.direction = direction;
+        this.cumulativeLengths = null;
+        if (direction == DirectionEnum.DUAL_DIRECT) {
+            this.reversedRoadSegment = new ReversedRoadSegment(this);
+        }
+    }
+
+    private static double[] computeCumulativeLengths(LineString roadLine) {
+        CoordinateSequence sequence = roadLine.getCoordinateSequence();
+        double[] cumulativeLengths = new double[sequence.size()];
+        for (int i = 1; i < cumulativeLengths.length; i++) {
+            cumulativeLengths[i] = cumulativeLengths[i - 1] + DistanceKernel.haversine(
+                    sequence.getX(i - 1), sequence.getY(i - 1), sequence.getX(i), sequence.getY(i));
+        }
+        return cumulativeLengths;
     }
 
     public void setRoadId(int roadId) {
@@ -78,6 +106,13 @@ public class RoadSegment implements IRoadSegment {
         return Optional.ofNullable(reversedRoadSegment);
     }
 
+    /**
+     * @return 是否已经加入路网（被赋予了路段ID）
+     */
+    boolean hasRoadId() {
+        return roadId != -1;
+    }
+
     @Override
     public int getRoadId() {
         if (roadId == -1) {
@@ -134,21 +169,12 @@ public class RoadSegment implements IRoadSegment {
 
     @Override
     public double getLengthInM() {
-        return distanceFromStartInM(roadLine.getNumPoints() - 1);
+        return cumulativeLengths[cumulativeLengths.length - 1];
     }
 
+    @Override
     public double distanceFromStartInM(int index) {
-        if (index == 0) return 0.0;
-        Coordinate coordinate = roadLine.getCoordinateN(index);
-        double distance = coordinate.getZ();
-        if (Double.isNaN(distance)) {
-            double preStepDistance = distanceFromStartInM(index - 1);
-            double currentStepDistance = DistanceUtil.distInMeter(
-                    roadLine.getPointN(index - 1), roadLine.getPointN(index));
-            distance = preStepDistance + currentStepDistance;
-            coordinate.setZ(distance);
-        }
-        return distance;
+        return cumulativeLengths[index];
     }
 
     @Override
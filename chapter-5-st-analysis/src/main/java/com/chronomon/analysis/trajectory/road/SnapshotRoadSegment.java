@@ -0,0 +1,126 @@
+package com.chronomon.analysis.trajectory.road;
+
+import com.chronomon.analysis.trajectory.model.DefaultUtil;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+
+import java.nio.DoubleBuffer;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * 由路网快照加载的路段：坐标和累计长度不拷贝到堆内存，直接读取快照文件内存映射上的只读视图
+ * <p>
+ * 1. 同一个快照的路段共享一组视图，每条路段只记录其坐标在视图中的起始下标和数量
+ * 2. 匹配用到的坐标、长度和外包框都直接由视图计算；JTS折线只在{@link #getRoadLine()}被调用时创建，且不缓存，
+ * 避免少量访问过折线的路段让路网重新占用与折线数量成正比的堆内存
+ * 3. 视图使用绝对位置读取，不修改缓冲区的状态，可以被多个线程并发访问
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+final class SnapshotRoadSegment extends RoadSegment {
+
+    private final CoordinateView view;
+
+    /**
+     * 第一个坐标在视图中的下标
+     */
+    private final int start;
+
+    private final int numPoints;
+
+    SnapshotRoadSegment(DirectionEnum direction, CoordinateView view, int start, int numPoints) {
+        super(direction);
+        this.view = view;
+        this.start = start;
+        this.numPoints = numPoints;
+    }
+
+    @Override
+    public LineString getRoadLine() {
+        Coordinate[] coordinates = new Coordinate[numPoints];
+        for (int n = 0; n < numPoints; n++) {
+            coordinates[n] = getCoordinateN(n);
+        }
+        return DefaultUtil.GEOMETRY_FACTORY.createLineString(coordinates);
+    }
+
+    @Override
+    public Coordinate getCoordinateN(int n) {
+        return new Coordinate(view.xs.get(start + n), view.ys.get(start + n));
+    }
+
+    @Override
+    public Point getPointN(int n) {
+        return DefaultUtil.GEOMETRY_FACTORY.createPoint(getCoordinateN(n));
+    }
+
+    @Override
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    @Override
+    public Envelope getEnvelop() {
+        Envelope env = new Envelope();
+        for (int n = start; n < start + numPoints; n++) {
+            env.expandToInclude(view.xs.get(n), view.ys.get(n));
+        }
+        return env;
+    }
+
+    @Override
+    public boolean intersects(Geometry geom) {
+        return getEnvelop().intersects(geom.getEnvelopeInternal()) && getRoadLine().intersects(geom);
+    }
+
+    @Override
+    public List<Coordinate> getCoordinateList() {
+        return new AbstractList<Coordinate>() {
+            @Override
+            public Coordinate get(int index) {
+                return getCoordinateN(index);
+            }
+
+            @Override
+            public int size() {
+                return numPoints;
+            }
+        };
+    }
+
+    @Override
+    public double getLengthInM() {
+        return view.cumulativeLengths.get(start + numPoints - 1);
+    }
+
+    @Override
+    public double distanceFromStartInM(int index) {
+        return view.cumulativeLengths.get(start + index);
+    }
+
+    /**
+     * 快照中全部路段的坐标和累计长度，按路段依次排列
+     */
+    static final class CoordinateView {
+
+        private final DoubleBuffer xs;
+
+        private final DoubleBuffer ys;
+
+        private final DoubleBuffer cumulativeLengths;
+
+        CoordinateView(DoubleBuffer xs, DoubleBuffer ys, DoubleBuffer cumulativeLengths) {
+            if (xs.limit() != ys.limit() || xs.limit() != cumulativeLengths.limit()) {
+                throw new IllegalArgumentException("坐标与累计长度的数量不一致");
+            }
+            this.xs = xs;
+            this.ys = ys;
+            this.cumulativeLengths = cumulativeLengths;
+        }
+    }
+}
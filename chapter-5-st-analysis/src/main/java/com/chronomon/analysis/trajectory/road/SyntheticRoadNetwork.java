@@ -0,0 +1,196 @@
+package com.chronomon.analysis.trajectory.road;
+
+import com.chronomon.analysis.trajectory.model.DefaultUtil;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import com.chronomon.analysis.trajectory.model.GpsPoint;
+import com.chronomon.analysis.trajectory.model.Trajectory;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 合成路网：生成规则网格状的路网以及在网格上随机行驶的轨迹，用于在没有真实数据时测试和对比地图匹配的性能
+ * <p>
+ * 1. 网格的每条边是一个路段，路段中点随机偏移，使路段成为带拐点的折线
+ * 2. 60%的路段为双向路，其余路段随机为正向或反向的单向路
+ * 3. 轨迹沿网格随机游走，每条边上均匀采样若干个GPS点，并叠加高斯噪声
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class SyntheticRoadNetwork {
+
+    /**
+     * 网格左下角的经度
+     */
+    private static final double ORIGIN_LNG = 116.3;
+
+    /**
+     * 网格左下角的纬度
+     */
+    private static final double ORIGIN_LAT = 39.9;
+
+    /**
+     * 网格间距（度），约200米
+     */
+    public static final double DEFAULT_SPACING = 0.002;
+
+    private SyntheticRoadNetwork() {
+    }
+
+    /**
+     * 生成网格状路网的路段
+     *
+     * @param size    每行（列）的节点数量
+     * @param spacing 网格间距（度）
+     * @param seed    随机种子
+     * @return 路段列表
+     */
+    public static List<RoadSegment> grid(int size, double spacing, long seed) {
+        Random random = new Random(seed);
+        List<RoadSegment> segmentList = new ArrayList<>(2 * size * size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                // 相邻路段的端点坐标必须完全相同才能连通，因此统一由网格下标计算
+                double x = lng(i, spacing);
+                double y = lat(j, spacing);
+                if (i + 1 < size) {
+                    segmentList.add(createSegment(random, spacing, x, y, lng(i + 1, spacing), y));
+                }
+                if (j + 1 < size) {
+                    segmentList.add(createSegment(random, spacing, x, y, x, lat(j + 1, spacing)));
+                }
+            }
+        }
+        return segmentList;
+    }
+
+    /**
+     * 生成未经拓扑处理的网格状路网，模拟原始导入的路网数据：
+     * 每一行是一条贯穿整行、在路口处不打断的折线，列方向的路段按网格边生成，但端点坐标带有随机偏移，
+     * 既不与相邻路段的端点重合，也不严格落在行折线上
+     *
+     * @param size      每行（列）的节点数量
+     * @param spacing   网格间距（度）
+     * @param jitterInM 列方向路段端点的最大偏移（米）
+     * @param seed      随机种子
+     * @return 路段列表
+     */
+    public static List<RoadSegment> rawGrid(int size, double spacing, double jitterInM, long seed) {
+        Random random = new Random(seed);
+        List<RoadSegment> segmentList = new ArrayList<>(size * size);
+        for (int j = 0; j < size; j++) {
+            Coordinate[] coordinates = new Coordinate[size];
+            for (int i = 0; i < size; i++) {
+                coordinates[i] = new Coordinate(lng(i, spacing), lat(j, spacing));
+            }
+            segmentList.add(new RoadSegment(DefaultUtil.GEOMETRY_FACTORY.createLineString(coordinates),
+                    DirectionEnum.DUAL_DIRECT));
+        }
+        double jitter = jitterInM / (DistanceKernel.EARTH_MEAN_RADIUS_IN_M * Math.PI / 180);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j + 1 < size; j++) {
+                Coordinate[] coordinates = {
+                        new Coordinate(lng(i, spacing) + (random.nextDouble() - 0.5) * jitter,
+                                lat(j, spacing) + (random.nextDouble() - 0.5) * jitter),
+                        new Coordinate(lng(i, spacing) + (random.nextDouble() - 0.5) * jitter,
+                                lat(j + 1, spacing) + (random.nextDouble() - 0.5) * jitter)};
+                segmentList.add(new RoadSegment(DefaultUtil.GEOMETRY_FACTORY.createLineString(coordinates),
+                        DirectionEnum.DUAL_DIRECT));
+            }
+        }
+        return segmentList;
+    }
+
+    /**
+     * 生成在网格上随机行驶的轨迹
+     *
+     * @param size          网格每行（列）的节点数量，需与{@link #grid}一致
+     * @param spacing       网格间距（度），需与{@link #grid}一致
+     * @param edgeCount     轨迹经过的网格边数量
+     * @param pointsPerEdge 每条边上的GPS点数量
+     * @param intervalInSec 相邻GPS点的时间间隔（秒）
+     * @param noiseInDegree GPS噪声的标准差（度）
+     * @param random        随机数生成器
+     * @param oid           对象ID
+     * @return 轨迹
+     */
+    public static Trajectory randomWalk(int size, double spacing, int edgeCount, int pointsPerEdge,
+                                        int intervalInSec, double noiseInDegree, Random random, String oid) {
+        return randomWalk(size, spacing, random.nextInt(size), random.nextInt(size), edgeCount, pointsPerEdge,
+                intervalInSec, noiseInDegree, random, oid);
+    }
+
+    /**
+     * 从指定的网格节点出发，生成在网格上随机行驶的轨迹
+     *
+     * @param startColumn 起点的列下标
+     * @param startRow    起点的行下标
+     * @see #randomWalk(int, double, int, int, int, double, Random, String)
+     */
+    public static Trajectory randomWalk(int size, double spacing, int startColumn, int startRow, int edgeCount,
+                                        int pointsPerEdge, int intervalInSec, double noiseInDegree,
+                                        Random random, String oid) {
+        int i = startColumn;
+        int j = startRow;
+        long time = 1600000000000L;
+        List<GpsPoint> gpsPointList = new ArrayList<>(edgeCount * pointsPerEdge);
+        int walked = 0;
+        while (walked < edgeCount) {
+            int di = 0;
+            int dj = 0;
+            switch (random.nextInt(4)) {
+                case 0:
+                    di = 1;
+                    break;
+                case 1:
+                    di = -1;
+                    break;
+                case 2:
+                    dj = 1;
+                    break;
+                default:
+                    dj = -1;
+            }
+            if (i + di < 0 || i + di >= size || j + dj < 0 || j + dj >= size) {
+                continue;
+            }
+            double fromX = lng(i, spacing);
+            double fromY = lat(j, spacing);
+            for (int k = 0; k < pointsPerEdge; k++) {
+                double fraction = (k + random.nextDouble()) / pointsPerEdge;
+                double x = fromX + di * spacing * fraction + random.nextGaussian() * noiseInDegree;
+                double y = fromY + dj * spacing * fraction + random.nextGaussian() * noiseInDegree;
+                gpsPointList.add(new GpsPoint(oid, x, y, new Timestamp(time)));
+                time += intervalInSec * 1000L;
+            }
+            i += di;
+            j += dj;
+            walked++;
+        }
+        return new Trajectory(oid, gpsPointList, true);
+    }
+
+    private static double lng(int i, double spacing) {
+        return ORIGIN_LNG + i * spacing;
+    }
+
+    private static double lat(int j, double spacing) {
+        return ORIGIN_LAT + j * spacing;
+    }
+
+    private static RoadSegment createSegment(Random random, double spacing, double fromX, double fromY,
+                                             double toX, double toY) {
+        double jitter = spacing / 5;
+        Coordinate middle = new Coordinate((fromX + toX) / 2 + (random.nextDouble() - 0.5) * jitter,
+                (fromY + toY) / 2 + (random.nextDouble() - 0.5) * jitter);
+        int dice = random.nextInt(10);
+        DirectionEnum direction = dice < 6 ? DirectionEnum.DUAL_DIRECT
+                : (dice < 8 ? DirectionEnum.FORWARD_DIRECT : DirectionEnum.BACKWARD_DIRECT);
+        Coordinate[] coordinates = {new Coordinate(fromX, fromY), middle, new Coordinate(toX, toY)};
+        return new RoadSegment(DefaultUtil.GEOMETRY_FACTORY.createLineString(coordinates), direction);
+    }
+}
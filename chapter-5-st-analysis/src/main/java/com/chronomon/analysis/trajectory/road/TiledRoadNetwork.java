@@ -0,0 +1,457 @@
+package com.chronomon.analysis.trajectory.road;
+
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 分块路网：将路段按经纬度划分到规则的瓦片中，每个瓦片是一个独立的路网快照，只在用到时才加载
+ * <p>
+ * 1. 每个瓦片除了核心区域内的路段，还包含核心区域向外扩展一圈缓冲区（halo）内的路段，
+ * 因此在瓦片核心区域附近的候选路段搜索和跨越瓦片边界的最短路径都可以在单个瓦片的路网内完成
+ * 2. 已加载的瓦片由Caffeine缓存，按路网在堆内存中的估计大小计算权重，超过预算时淘汰最近最少使用的瓦片
+ * （Caffeine的W-TinyLFU策略同时考虑访问频率）。估计值由节点、路段、坐标、边和网格索引项的数量按实测的单位字节数累加，
+ * 与GC后实测的堆内存相差2%以内；由快照加载的路段坐标位于内存映射中，快照文件的字节数与堆内存不成比例，
+ * 合并的路网更是没有对应的快照，不能作为权重
+ * 3. 瓦片目录中的索引文件记录了瓦片的划分方式以及每个瓦片快照的大小，没有路段的瓦片不生成快照
+ * 4. 同一段路在多个瓦片中的路段ID和节点ID互不相关，匹配结果应只使用坐标
+ * 5. 相邻的几个瓦片可以合并成一个路网（{@link #getRoadNetwork(List)}），用于最短路径可能越过单个瓦片缓冲区的状态转移，
+ * 合并的路网与单个瓦片共用同一个缓存和预算，同样只保留紧凑图和网格索引，按自身的估计大小计算权重
+ * 6. 路网被淘汰或移除时，在执行淘汰的线程中同步通知{@link #addRemovalListener}注册的监听器，
+ * 使用方应在通知中释放为该路网创建的匹配器等对象，否则被淘汰的路网仍然无法回收
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class TiledRoadNetwork {
+
+    private static final int MAGIC = 0x544C5231;
+
+    private static final String INDEX_FILE = "tiles.index";
+
+    private static final double METERS_PER_DEGREE = DistanceKernel.EARTH_MEAN_RADIUS_IN_M * Math.PI / 180;
+
+    /**
+     * 估计堆内存时每个节点的字节数，包括节点对象、坐标点、紧凑图中的节点数组
+     */
+    private static final long NODE_BYTES = 180L;
+
+    /**
+     * 每条路段的字节数，包括路段对象、折线对象、累计长度数组和路段ID的映射
+     */
+    private static final long SEGMENT_BYTES = 320L;
+
+    /**
+     * 折线上每个坐标的字节数
+     */
+    private static final long COORDINATE_BYTES = 56L;
+
+    /**
+     * 由快照加载的每条路段的字节数，坐标和累计长度位于快照的内存映射中，不占用堆内存
+     */
+    private static final long SNAPSHOT_SEGMENT_BYTES = 220L;
+
+    /**
+     * 紧凑图中每条边的字节数
+     */
+    private static final long EDGE_BYTES = 32L;
+
+    /**
+     * 网格索引中每个登记项的字节数
+     */
+    private static final long GRID_ENTRY_BYTES = 24L;
+
+    private final Path directory;
+
+    private final double originX;
+
+    private final double originY;
+
+    private final double tileSize;
+
+    /**
+     * 缓冲区在经度和纬度方向上的宽度（度）
+     */
+    private final double haloLng;
+
+    private final double haloLat;
+
+    private final int columnCount;
+
+    private final int rowCount;
+
+    /**
+     * 每个瓦片快照的字节数，下标为row * columnCount + column，没有路段的瓦片为0
+     */
+    private final long[] tileBytes;
+
+    /**
+     * 已加载的路网，键为按升序排列的瓦片编号，只有一个编号时即单个瓦片的路网
+     */
+    private final LoadingCache<List<Integer>, RoadNetwork> tileCache;
+
+    /**
+     * 路网被淘汰或移除时的监听器
+     */
+    private final List<Consumer<RoadNetwork>> removalListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 打开已经划分好的瓦片目录
+     *
+     * @param directory      瓦片目录，由{@link #build}生成
+     * @param maxHeapInBytes 已加载路网的估计堆内存之和的上限
+     */
+    public TiledRoadNetwork(Path directory, long maxHeapInBytes) throws IOException {
+        this.directory = directory;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(directory.resolve(INDEX_FILE))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是分块路网的索引文件：" + directory);
+            }
+            this.originX = in.readDouble();
+            this.originY = in.readDouble();
+            this.tileSize = in.readDouble();
+            this.haloLng = in.readDouble();
+            this.haloLat = in.readDouble();
+            this.columnCount = in.readInt();
+            this.rowCount = in.readInt();
+            this.tileBytes = new long[columnCount * rowCount];
+            for (int tile = 0; tile < tileBytes.length; tile++) {
+                tileBytes[tile] = in.readLong();
+            }
+        }
+        this.tileCache = Caffeine.newBuilder()
+                .maximumWeight(maxHeapInBytes)
+                .weigher((List<Integer> tiles, RoadNetwork rn) -> (int) Math.min(Integer.MAX_VALUE, estimateHeapBytes(rn)))
+                // 在执行淘汰的线程中同步通知，通知返回后监听器不再持有被淘汰的路网
+                .executor(Runnable::run)
+                .removalListener((List<Integer> tiles, RoadNetwork rn, RemovalCause cause) -> {
+                    for (Consumer<RoadNetwork> listener : removalListeners) {
+                        listener.accept(rn);
+                    }
+                })
+                .recordStats()
+                .build(this::loadTiles);
+    }
+
+    /**
+     * 离线划分瓦片：每个瓦片的路段构建成一个路网并写入快照
+     *
+     * @param roadSegmentList  全部路段，不会被修改
+     * @param tileSizeInDegree 瓦片的边长（度）
+     * @param haloInM          缓冲区宽度（米），应大于搜索半径与相邻GPS点之间的路网距离之和
+     * @param directory        输出目录
+     */
+    public static void build(List<RoadSegment> roadSegmentList, double tileSizeInDegree, double haloInM,
+                             Path directory) throws IOException {
+        if (tileSizeInDegree <= 0.0 || haloInM < 0.0) {
+            throw new IllegalArgumentException("瓦片边长必须大于0，缓冲区宽度不能小于0");
+        }
+        Envelope extent = new Envelope();
+        for (RoadSegment segment : roadSegmentList) {
+            extent.expandToInclude(segment.getEnvelop());
+        }
+        double originX = Math.floor(extent.getMinX() / tileSizeInDegree) * tileSizeInDegree;
+        double originY = Math.floor(extent.getMinY() / tileSizeInDegree) * tileSizeInDegree;
+        int columnCount = (int) ((extent.getMaxX() - originX) / tileSizeInDegree) + 1;
+        int rowCount = (int) ((extent.getMaxY() - originY) / tileSizeInDegree) + 1;
+        // 经度方向的缓冲区按纬度绝对值最大处换算，保证所有瓦片的缓冲区都不小于指定宽度
+        double maxAbsLat = Math.max(Math.abs(extent.getMinY()), Math.abs(extent.getMaxY()));
+        double haloLat = haloInM / METERS_PER_DEGREE;
+        double haloLng = haloInM / (METERS_PER_DEGREE * Math.cos(Math.toRadians(Math.min(maxAbsLat, 89.0))));
+
+        // 每条路段登记到与其外包框相交的所有扩展后的瓦片
+        Map<Integer, List<RoadSegment>> tileSegmentMap = new HashMap<>();
+        for (RoadSegment segment : roadSegmentList) {
+            Envelope env = segment.getEnvelop();
+            int minColumn = Math.max(0, (int) Math.floor((env.getMinX() - haloLng - originX) / tileSizeInDegree));
+            int maxColumn = Math.min(columnCount - 1, (int) Math.floor((env.getMaxX() + haloLng - originX) / tileSizeInDegree));
+            int minRow = Math.max(0, (int) Math.floor((env.getMinY() - haloLat - originY) / tileSizeInDegree));
+            int maxRow = Math.min(rowCount - 1, (int) Math.floor((env.getMaxY() + haloLat - originY) / tileSizeInDegree));
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    tileSegmentMap.computeIfAbsent(row * columnCount + column, tile -> new ArrayList<>()).add(segment);
+                }
+            }
+        }
+
+        Files.createDirectories(directory);
+        long[] tileBytes = new long[columnCount * rowCount];
+        for (Map.Entry<Integer, List<RoadSegment>> entry : tileSegmentMap.entrySet()) {
+            // 构建路网时会修改路段对象，因此每个瓦片使用路段的副本
+            List<RoadSegment> tileSegmentList = new ArrayList<>(entry.getValue().size());
+            for (RoadSegment segment : entry.getValue()) {
+                tileSegmentList.add(new RoadSegment(segment.getRoadLine(), segment.direction));
+            }
+            Path tilePath = tilePath(directory, entry.getKey());
+            RoadNetworkSnapshot.write(new RoadNetwork(tileSegmentList, false), tilePath);
+            tileBytes[entry.getKey()] = Files.size(tilePath);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(directory.resolve(INDEX_FILE))))) {
+            out.writeInt(MAGIC);
+            out.writeDouble(originX);
+            out.writeDouble(originY);
+            out.writeDouble(tileSizeInDegree);
+            out.writeDouble(haloLng);
+            out.writeDouble(haloLat);
+            out.writeInt(columnCount);
+            out.writeInt(rowCount);
+            for (long bytes : tileBytes) {
+                out.writeLong(bytes);
+            }
+        }
+    }
+
+    /**
+     * @return 坐标所在的瓦片编号，超出划分范围时返回-1
+     */
+    public int getTile(double x, double y) {
+        int column = (int) Math.floor((x - originX) / tileSize);
+        int row = (int) Math.floor((y - originY) / tileSize);
+        if (column < 0 || row < 0 || column >= columnCount || row >= rowCount) {
+            return -1;
+        }
+        return row * columnCount + column;
+    }
+
+    /**
+     * 获取瓦片的路网，未加载时从快照加载
+     *
+     * @param tile 瓦片编号
+     * @return 瓦片的路网，瓦片中没有路段或者编号无效时返回null
+     */
+    public RoadNetwork getRoadNetwork(int tile) {
+        if (tile < 0 || tile >= tileBytes.length || tileBytes[tile] == 0L) {
+            return null;
+        }
+        return tileCache.get(Collections.singletonList(tile));
+    }
+
+    /**
+     * 获取多个瓦片合并后的路网，缓冲区重叠部分的路段只保留一份，未加载时从快照加载并合并
+     *
+     * @param tiles 按升序排列的瓦片编号，由{@link #getTiles}得到
+     * @return 合并后的路网，没有瓦片时返回null
+     */
+    public RoadNetwork getRoadNetwork(List<Integer> tiles) {
+        if (tiles.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < tiles.size(); i++) {
+            int tile = tiles.get(i);
+            if (tile < 0 || tile >= tileBytes.length || tileBytes[tile] == 0L || (i > 0 && tile <= tiles.get(i - 1))) {
+                throw new IllegalArgumentException("瓦片编号无效或者没有按升序排列：" + tiles);
+            }
+        }
+        return tileCache.get(tiles);
+    }
+
+    /**
+     * 选择瓦片：合并这些瓦片的路网后，与范围相交的路段都在路网中
+     * <p>
+     * 每个瓦片包含与核心区域向外扩展缓冲区宽度的范围相交的路段，因此只需要核心区域与 范围向内收缩缓冲区宽度 相交的瓦片，
+     * 范围在某个方向上不足两倍缓冲区宽度时取该方向的中心
+     *
+     * @param env 经纬度范围
+     * @return 按升序排列的瓦片编号，不包括没有路段的瓦片
+     */
+    public List<Integer> getTiles(Envelope env) {
+        double minX = env.getMinX() + haloLng;
+        double maxX = env.getMaxX() - haloLng;
+        if (minX > maxX) {
+            minX = maxX = (env.getMinX() + env.getMaxX()) / 2;
+        }
+        double minY = env.getMinY() + haloLat;
+        double maxY = env.getMaxY() - haloLat;
+        if (minY > maxY) {
+            minY = maxY = (env.getMinY() + env.getMaxY()) / 2;
+        }
+        int minColumn = Math.max(0, (int) Math.floor((minX - originX) / tileSize));
+        int maxColumn = Math.min(columnCount - 1, (int) Math.floor((maxX - originX) / tileSize));
+        int minRow = Math.max(0, (int) Math.floor((minY - originY) / tileSize));
+        int maxRow = Math.min(rowCount - 1, (int) Math.floor((maxY - originY) / tileSize));
+        List<Integer> tiles = new ArrayList<>();
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                if (tileBytes[row * columnCount + column] > 0L) {
+                    tiles.add(row * columnCount + column);
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * 判断坐标是否可以在瓦片内匹配：位于核心区域向外扩展半个缓冲区的范围内，
+     * 剩余的半个缓冲区留给候选路段搜索和绕行的最短路径
+     */
+    public boolean isMatchable(int tile, double x, double y) {
+        if (tile < 0) {
+            return false;
+        }
+        double minX = originX + (tile % columnCount) * tileSize;
+        double minY = originY + (tile / columnCount) * tileSize;
+        return x >= minX - haloLng / 2 && x <= minX + tileSize + haloLng / 2
+                && y >= minY - haloLat / 2 && y <= minY + tileSize + haloLat / 2;
+    }
+
+    public int getTileCount() {
+        return tileBytes.length;
+    }
+
+    /**
+     * @return 所有瓦片快照的字节数之和
+     */
+    public long getTotalBytes() {
+        long totalBytes = 0L;
+        for (long bytes : tileBytes) {
+            totalBytes += bytes;
+        }
+        return totalBytes;
+    }
+
+    /**
+     * 注册路网被淘汰或移除时的监听器，在执行淘汰的线程中同步调用
+     *
+     * @param listener 参数为被淘汰的路网
+     */
+    public void addRemovalListener(Consumer<RoadNetwork> listener) {
+        removalListeners.add(listener);
+    }
+
+    /**
+     * 判断路网是否仍在缓存中，不计入命中率的统计
+     *
+     * @param tiles 按升序排列的瓦片编号
+     * @param rn    由{@link #getRoadNetwork(List)}得到的路网
+     */
+    public boolean isLoaded(List<Integer> tiles, RoadNetwork rn) {
+        return tileCache.asMap().get(tiles) == rn;
+    }
+
+    /**
+     * 估计路网占用的堆内存，只计算紧凑图、网格索引以及节点和路段对象，不包括按需构建的jgrapht图和R树以及快照的内存映射
+     *
+     * @return 估计的字节数
+     */
+    public static long estimateHeapBytes(RoadNetwork rn) {
+        long segmentBytes = 0L;
+        for (RoadSegment segment : rn.getRoadSegments()) {
+            segmentBytes += segment instanceof SnapshotRoadSegment ? SNAPSHOT_SEGMENT_BYTES :
+                    SEGMENT_BYTES + COORDINATE_BYTES * segment.getNumPoints();
+        }
+        CompactRoadGraph graph = rn.getCompactGraph();
+        return NODE_BYTES * graph.getNodeCount() + segmentBytes + EDGE_BYTES * graph.getEdgeCount()
+                + GRID_ENTRY_BYTES * rn.getRoadEdgeGrid().getEdgeCount();
+    }
+
+    /**
+     * @return 当前已加载路网的估计堆内存之和
+     */
+    public long getLoadedBytes() {
+        return tileCache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    /**
+     * @return 已加载的路网数量，包括单个瓦片和合并的瓦片
+     */
+    public long getLoadedTileCount() {
+        return tileCache.estimatedSize();
+    }
+
+    /**
+     * 执行缓存的待处理维护：被淘汰的路网在维护之前可能仍被缓存内部的缓冲区引用，测量堆内存之前应先调用
+     */
+    public void cleanUp() {
+        tileCache.cleanUp();
+    }
+
+    public CacheStats stats() {
+        return tileCache.stats();
+    }
+
+    private RoadNetwork loadTiles(List<Integer> tiles) {
+        if (tiles.size() == 1) {
+            return loadTile(tiles.get(0));
+        }
+        // 相邻瓦片的缓冲区相互重叠，同一条路段按坐标和通行方向去重
+        Map<SegmentKey, RoadSegment> segmentMap = new LinkedHashMap<>();
+        for (int tile : tiles) {
+            RoadNetwork rn = tileCache.getIfPresent(Collections.singletonList(tile));
+            for (RoadSegment segment : (rn == null ? loadTile(tile) : rn).getRoadSegments()) {
+                segmentMap.putIfAbsent(new SegmentKey(segment), segment);
+            }
+        }
+        // 构建路网时会修改路段对象，因此使用路段的副本
+        List<RoadSegment> segmentList = new ArrayList<>(segmentMap.size());
+        for (RoadSegment segment : segmentMap.values()) {
+            segmentList.add(new RoadSegment(segment.getRoadLine(), segment.direction));
+        }
+        RoadNetwork rn = new RoadNetwork(segmentList, false);
+        // 匹配只用到紧凑图和网格索引，与单个瓦片的路网保持相同的结构
+        rn.releaseDerivedIndexes();
+        return rn;
+    }
+
+    private RoadNetwork loadTile(int tile) {
+        try {
+            return RoadNetworkSnapshot.read(tilePath(directory, tile));
+        } catch (IOException e) {
+            throw new UncheckedIOException("瓦片加载失败：" + tile, e);
+        }
+    }
+
+    private static final class SegmentKey {
+
+        private final Coordinate[] coordinates;
+
+        private final DirectionEnum direction;
+
+        private SegmentKey(RoadSegment segment) {
+            this.coordinates = segment.getCoordinateList().toArray(new Coordinate[0]);
+            this.direction = segment.direction;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SegmentKey)) {
+                return false;
+            }
+            SegmentKey other = (SegmentKey) o;
+            return direction == other.direction && Arrays.equals(coordinates, other.coordinates);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(coordinates) + direction.hashCode();
+        }
+    }
+
+    private static Path tilePath(Path directory, int tile) {
+        return directory.resolve("tile_" + tile + ".snapshot");
+    }
+}
@@ -0,0 +1,382 @@
+package com.chronomon.analysis.trajectory.road;
+
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 路网拓扑修复：修复原始路网数据中的节点未吸附和路口未打断的问题
+ * <p>
+ * 1. 节点吸附：节点按吸附容差划分到哈希网格中，每个节点只与相邻9个网格中的节点比较，
+ * 距离不超过容差的节点合并为ID最小的节点，关联路段的端点坐标随之移动
+ * 2. 路段打断：在路段折线边的网格索引上，为每个节点搜索容差范围内不以该节点为端点的路段，
+ * 节点落在路段内部时在该处打断路段，同一路段上的多个打断点按路线距离排序后一次性切分
+ * 3. 两个阶段的搜索以及切分路段的几何计算都只读共享数据，并行执行；分配路段ID和修改路段集合在最后串行完成
+ * 4. 修复完成后按路段重新统计每个节点的出入度
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+final class TopologyRepair {
+
+    /**
+     * 节点附近的非关联路段超过该数量时，无法判断应该与哪条路段相连，不做打断
+     */
+    private static final int MAX_SPLIT_SEGMENT_COUNT = 2;
+
+    private static final double METERS_PER_DEGREE = DistanceKernel.EARTH_MEAN_RADIUS_IN_M * Math.PI / 180;
+
+    private final Map<Coordinate, RoadNode> roadNodeMap;
+
+    private final Map<Integer, RoadSegment> roadSegmentMap;
+
+    private final AtomicInteger roadIdAssigner;
+
+    private final double snapToleranceInM;
+
+    TopologyRepair(Map<Coordinate, RoadNode> roadNodeMap, Map<Integer, RoadSegment> roadSegmentMap,
+                   AtomicInteger roadIdAssigner, double snapToleranceInM) {
+        if (snapToleranceInM <= 0.0) {
+            throw new IllegalArgumentException("吸附容差必须大于0");
+        }
+        this.roadNodeMap = roadNodeMap;
+        this.roadSegmentMap = roadSegmentMap;
+        this.roadIdAssigner = roadIdAssigner;
+        this.snapToleranceInM = snapToleranceInM;
+    }
+
+    TopologyRepairReport repair() {
+        int nodeCount = roadNodeMap.size();
+        long startTime = System.nanoTime();
+        int[] snapResult = snapNodes();
+        long snapTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        int[] splitResult = splitSegments();
+        recountDegrees();
+        long splitTime = System.nanoTime() - startTime;
+        return new TopologyRepairReport(snapToleranceInM, nodeCount, snapResult[0], snapResult[1],
+                splitResult[0], splitResult[1], splitResult[2], splitResult[3],
+                snapTime / 1_000_000, splitTime / 1_000_000);
+    }
+
+    /**
+     * 合并距离不超过容差的节点
+     *
+     * @return 合并掉的节点数量、删除的退化路段数量
+     */
+    private int[] snapNodes() {
+        List<RoadNode> nodeList = new ArrayList<>(roadNodeMap.values());
+        if (nodeList.isEmpty()) {
+            return new int[]{0, 0};
+        }
+        // 纬度越高，容差对应的经度跨度越大，按最高纬度计算格网宽度，保证任意纬度上的容差都不超过一个格网
+        double maxAbsLat = nodeList.stream().mapToDouble(node -> Math.abs(node.geom.getY())).max().orElse(0.0);
+        double cellHeight = snapToleranceInM / METERS_PER_DEGREE;
+        double cellWidth = snapToleranceInM / (METERS_PER_DEGREE * Math.cos(Math.toRadians(Math.min(maxAbsLat, 89.0))));
+        Map<Long, List<RoadNode>> cellNodeMap = new HashMap<>();
+        int maxNodeId = 0;
+        for (RoadNode node : nodeList) {
+            long cell = cellKey((long) Math.floor(node.geom.getX() / cellWidth), (long) Math.floor(node.geom.getY() / cellHeight));
+            cellNodeMap.computeIfAbsent(cell, key -> new ArrayList<>(1)).add(node);
+            maxNodeId = Math.max(maxNodeId, node.nodeId);
+        }
+
+        // 并行搜索距离不超过容差的节点对，每对只由ID较大的节点记录一次
+        List<RoadNode[]> pairList = nodeList.parallelStream().flatMap(node -> {
+            long column = (long) Math.floor(node.geom.getX() / cellWidth);
+            long row = (long) Math.floor(node.geom.getY() / cellHeight);
+            List<RoadNode[]> nearList = new ArrayList<>(0);
+            for (long r = row - 1; r <= row + 1; r++) {
+                for (long c = column - 1; c <= column + 1; c++) {
+                    for (RoadNode other : cellNodeMap.getOrDefault(cellKey(c, r), Collections.emptyList())) {
+                        if (other.nodeId < node.nodeId && DistanceKernel.fastDistInMeter(node.geom.getX(),
+                                node.geom.getY(), other.geom.getX(), other.geom.getY()) <= snapToleranceInM) {
+                            nearList.add(new RoadNode[]{node, other});
+                        }
+                    }
+                }
+            }
+            return nearList.stream();
+        }).collect(Collectors.toList());
+        if (pairList.isEmpty()) {
+            return new int[]{0, 0};
+        }
+
+        // 并查集：每组节点合并到ID最小的节点
+        int[] parent = new int[maxNodeId + 1];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (RoadNode[] pair : pairList) {
+            int root1 = find(parent, pair[0].nodeId);
+            int root2 = find(parent, pair[1].nodeId);
+            parent[Math.max(root1, root2)] = Math.min(root1, root2);
+        }
+        RoadNode[] nodeById = new RoadNode[maxNodeId + 1];
+        for (RoadNode node : nodeList) {
+            nodeById[node.nodeId] = node;
+        }
+        int mergedCount = 0;
+        for (RoadNode node : nodeList) {
+            if (find(parent, node.nodeId) != node.nodeId) {
+                roadNodeMap.remove(node.geom.getCoordinate());
+                mergedCount++;
+            }
+        }
+
+        // 端点被合并的路段替换为移动端点之后的新路段，两端合并为同一节点的直线段退化为一个点，直接删除
+        int removedCount = 0;
+        for (RoadSegment segment : new ArrayList<>(roadSegmentMap.values())) {
+            RoadNode fromNode = nodeById[find(parent, segment.getFromNode().nodeId)];
+            RoadNode toNode = nodeById[find(parent, segment.getToNode().nodeId)];
+            if (fromNode == segment.getFromNode() && toNode == segment.getToNode()) {
+                continue;
+            }
+            roadSegmentMap.remove(segment.getRoadId());
+            if (fromNode == toNode && segment.getNumPoints() == 2) {
+                removedCount++;
+                continue;
+            }
+            Coordinate[] coordinates = segment.getRoadLine().getCoordinates();
+            coordinates[0] = fromNode.geom.getCoordinate();
+            coordinates[coordinates.length - 1] = toNode.geom.getCoordinate();
+            LineString roadLine = segment.getRoadLine().getFactory().createLineString(coordinates);
+            addSegment(new RoadSegment(roadLine, segment.direction), fromNode, toNode);
+        }
+        return new int[]{mergedCount, removedCount};
+    }
+
+    /**
+     * 在节点落在路段内部的位置打断路段
+     *
+     * @return 打断路段的节点数量、有歧义的节点数量、被打断的路段数量、新增的路段数量
+     */
+    private int[] splitSegments() {
+        RoadEdgeGrid grid = new RoadEdgeGrid(roadSegmentMap.values(),
+                Math.max(RoadEdgeGrid.DEFAULT_CELL_SIZE_IN_M, snapToleranceInM * 2));
+        AtomicInteger splitNodeCount = new AtomicInteger();
+        AtomicInteger ambiguousNodeCount = new AtomicInteger();
+
+        // 并行搜索每个节点附近不以其为端点的路段
+        List<SplitPoint> splitPointList = new ArrayList<>(roadNodeMap.values()).parallelStream().flatMap(node -> {
+            List<RoadEdgeGrid.Candidate> candidateList = grid.search(node.geom.getX(), node.geom.getY(),
+                    snapToleranceInM, Integer.MAX_VALUE);
+            List<SplitPoint> nodeSplitList = new ArrayList<>(0);
+            for (RoadEdgeGrid.Candidate candidate : candidateList) {
+                RoadSegment segment = candidate.roadSegment;
+                if (segment.getFromNode() == node || segment.getToNode() == node) {
+                    continue;
+                }
+                // 投影点与路段端点重合时不需要打断（距离端点容差以内的节点已经在吸附阶段合并）
+                if (candidate.offsetDistInM > 0.0 && candidate.offsetDistInM < segment.getLengthInM()) {
+                    nodeSplitList.add(new SplitPoint(segment, candidate.segmentIndex, candidate.offsetDistInM, node));
+                }
+            }
+            if (nodeSplitList.size() > MAX_SPLIT_SEGMENT_COUNT) {
+                ambiguousNodeCount.incrementAndGet();
+                return Stream.empty();
+            }
+            if (!nodeSplitList.isEmpty()) {
+                splitNodeCount.incrementAndGet();
+            }
+            return nodeSplitList.stream();
+        }).collect(Collectors.toList());
+
+        // 每条路段的打断点按折线边和路线距离排序后并行切分，得到各段的坐标和端点
+        Map<RoadSegment, List<SplitPoint>> segmentSplitMap = splitPointList.stream()
+                .collect(Collectors.groupingBy(splitPoint -> splitPoint.segment));
+        List<List<Piece>> piecesList = segmentSplitMap.entrySet().parallelStream()
+                .map(entry -> cut(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+
+        int addedCount = 0;
+        for (List<Piece> pieces : piecesList) {
+            roadSegmentMap.remove(pieces.get(0).origin.getRoadId());
+            for (Piece piece : pieces) {
+                LineString roadLine = piece.origin.getRoadLine().getFactory().createLineString(piece.coordinates);
+                addSegment(new RoadSegment(roadLine, piece.origin.direction), piece.fromNode, piece.toNode);
+                addedCount++;
+            }
+        }
+        return new int[]{splitNodeCount.get(), ambiguousNodeCount.get(), piecesList.size(), addedCount};
+    }
+
+    private static List<Piece> cut(RoadSegment segment, List<SplitPoint> splitPointList) {
+        // 共享顶点两侧的打断点路线距离相同或只差舍入误差，必须先按折线边排序，否则按边消费时会跳过排在后面的打断点；
+        // 并行收集的打断点顺序不确定，最后按节点ID排序
+        splitPointList.sort(Comparator.<SplitPoint>comparingInt(splitPoint -> splitPoint.edgeIndex)
+                .thenComparingDouble(splitPoint -> splitPoint.offsetInM)
+                .thenComparingInt(splitPoint -> splitPoint.node.nodeId));
+        List<Piece> pieces = new ArrayList<>(splitPointList.size() + 1);
+        List<Coordinate> current = new ArrayList<>();
+        current.add(segment.getCoordinateN(0));
+        RoadNode fromNode = segment.getFromNode();
+        int next = 0;
+        for (int i = 0; i + 1 < segment.getNumPoints(); i++) {
+            while (next < splitPointList.size() && splitPointList.get(next).edgeIndex == i) {
+                RoadNode splitNode = splitPointList.get(next++).node;
+                Coordinate splitCoordinate = splitNode.geom.getCoordinate();
+                appendDistinct(current, splitCoordinate);
+                if (current.size() > 1) {
+                    pieces.add(new Piece(segment, current, fromNode, splitNode));
+                    fromNode = splitNode;
+                    current = new ArrayList<>();
+                    current.add(splitCoordinate);
+                }
+            }
+            appendDistinct(current, segment.getCoordinateN(i + 1));
+        }
+        if (current.size() > 1) {
+            pieces.add(new Piece(segment, current, fromNode, segment.getToNode()));
+        } else {
+            // 最后一个打断点与终点重合，并入上一段
+            Piece last = pieces.remove(pieces.size() - 1);
+            pieces.add(new Piece(segment, Arrays.asList(last.coordinates), last.fromNode, segment.getToNode()));
+        }
+        return pieces;
+    }
+
+    private static void appendDistinct(List<Coordinate> coordinateList, Coordinate coordinate) {
+        if (!coordinateList.get(coordinateList.size() - 1).equals2D(coordinate)) {
+            coordinateList.add(coordinate);
+        }
+    }
+
+    private void addSegment(RoadSegment segment, RoadNode fromNode, RoadNode toNode) {
+        int roadId = roadIdAssigner.getAndIncrement();
+        segment.setRoadId(roadId);
+        segment.setFromNode(fromNode);
+        segment.setToNode(toNode);
+        roadSegmentMap.put(roadId, segment);
+    }
+
+    private void recountDegrees() {
+        for (RoadNode node : roadNodeMap.values()) {
+            node.inCount = 0;
+            node.outCount = 0;
+        }
+        for (RoadSegment segment : roadSegmentMap.values()) {
+            segment.getFromNode().outCount++;
+            segment.getToNode().inCount++;
+            if (segment.direction == DirectionEnum.DUAL_DIRECT) {
+                segment.getFromNode().inCount++;
+                segment.getToNode().outCount++;
+            }
+        }
+    }
+
+    private static int find(int[] parent, int nodeId) {
+        while (parent[nodeId] != nodeId) {
+            parent[nodeId] = parent[parent[nodeId]];
+            nodeId = parent[nodeId];
+        }
+        return nodeId;
+    }
+
+    private static long cellKey(long column, long row) {
+        return (column << 32) ^ (row & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 修复一份未经拓扑处理的网格路网，对比修复前后的连通性
+     * <p>
+     * 参数依次为：网格大小（默认300）、吸附容差（米，默认1）
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        double snapToleranceInM = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+
+        RoadNetwork rawNetwork = new RoadNetwork(
+                SyntheticRoadNetwork.rawGrid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 0.6, 7), false);
+        int[] rawComponent = largestComponent(rawNetwork.getCompactGraph());
+        System.out.printf("修复前：路段%d条，节点%d个，最大连通分量%d个节点%n",
+                rawNetwork.getRoadSegments().size(), rawComponent[1], rawComponent[0]);
+
+        long startTime = System.nanoTime();
+        RoadNetwork repairedNetwork = new RoadNetwork(
+                SyntheticRoadNetwork.rawGrid(size, SyntheticRoadNetwork.DEFAULT_SPACING, 0.6, 7), snapToleranceInM);
+        long buildTime = System.nanoTime() - startTime;
+        System.out.println(repairedNetwork.getRepairReport());
+        int[] repairedComponent = largestComponent(repairedNetwork.getCompactGraph());
+        System.out.printf("修复后：路段%d条，节点%d个，最大连通分量%d个节点；构建路网共%dms%n",
+                repairedNetwork.getRoadSegments().size(), repairedComponent[1], repairedComponent[0],
+                buildTime / 1_000_000);
+    }
+
+    /**
+     * @return 紧凑图中最大（弱）连通分量的节点数量、有关联边的节点数量
+     */
+    private static int[] largestComponent(CompactRoadGraph graph) {
+        int[] parent = new int[graph.getNodeCount()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            int root1 = find(parent, graph.getSource(edge));
+            int root2 = find(parent, graph.getTarget(edge));
+            parent[Math.max(root1, root2)] = Math.min(root1, root2);
+        }
+        int[] sizes = new int[parent.length];
+        int maxSize = 0;
+        int nodeCount = 0;
+        for (int i = 0; i < parent.length; i++) {
+            if (graph.getEndEdge(i) > graph.getFirstEdge(i)) {
+                nodeCount++;
+                maxSize = Math.max(maxSize, ++sizes[find(parent, i)]);
+            }
+        }
+        return new int[]{maxSize, nodeCount};
+    }
+
+    private static final class SplitPoint {
+
+        final RoadSegment segment;
+
+        /**
+         * 打断点所在的折线边的序号
+         */
+        final int edgeIndex;
+
+        final double offsetInM;
+
+        final RoadNode node;
+
+        SplitPoint(RoadSegment segment, int edgeIndex, double offsetInM, RoadNode node) {
+            this.segment = segment;
+            this.edgeIndex = edgeIndex;
+            this.offsetInM = offsetInM;
+            this.node = node;
+        }
+    }
+
+    private static final class Piece {
+
+        final RoadSegment origin;
+
+        final Coordinate[] coordinates;
+
+        final RoadNode fromNode;
+
+        final RoadNode toNode;
+
+        Piece(RoadSegment origin, Collection<Coordinate> coordinates, RoadNode fromNode, RoadNode toNode) {
+            this.origin = origin;
+            this.coordinates = coordinates.toArray(new Coordinate[0]);
+            this.fromNode = fromNode;
+            this.toNode = toNode;
+        }
+    }
+}
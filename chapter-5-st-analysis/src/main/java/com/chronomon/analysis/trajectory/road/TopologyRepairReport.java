@@ -0,0 +1,77 @@
+package com.chronomon.analysis.trajectory.road;
+
+/**
+ * 路网拓扑修复的统计结果
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class TopologyRepairReport {
+
+    /**
+     * 吸附容差（米）
+     */
+    public final double snapToleranceInM;
+
+    /**
+     * 修复前的节点数量
+     */
+    public final int nodeCount;
+
+    /**
+     * 被吸附到其他节点上而合并掉的节点数量
+     */
+    public final int mergedNodeCount;
+
+    /**
+     * 两端合并到同一节点而被删除的路段数量
+     */
+    public final int removedSegmentCount;
+
+    /**
+     * 落在其他路段内部、并在该处打断路段的节点数量
+     */
+    public final int splitNodeCount;
+
+    /**
+     * 附近的非关联路段过多、无法判断应该与哪条路段相连而跳过的节点数量
+     */
+    public final int ambiguousNodeCount;
+
+    /**
+     * 被打断的路段数量，以及打断后新增的路段数量
+     */
+    public final int splitSegmentCount;
+
+    public final int addedSegmentCount;
+
+    /**
+     * 节点吸附和路段打断两个阶段的耗时（毫秒）
+     */
+    public final long snapTimeInMs;
+
+    public final long splitTimeInMs;
+
+    TopologyRepairReport(double snapToleranceInM, int nodeCount, int mergedNodeCount, int removedSegmentCount,
+                         int splitNodeCount, int ambiguousNodeCount, int splitSegmentCount, int addedSegmentCount,
+                         long snapTimeInMs, long splitTimeInMs) {
+        this.snapToleranceInM = snapToleranceInM;
+        this.nodeCount = nodeCount;
+        this.mergedNodeCount = mergedNodeCount;
+        this.removedSegmentCount = removedSegmentCount;
+        this.splitNodeCount = splitNodeCount;
+        this.ambiguousNodeCount = ambiguousNodeCount;
+        this.splitSegmentCount = splitSegmentCount;
+        this.addedSegmentCount = addedSegmentCount;
+        this.snapTimeInMs = snapTimeInMs;
+        this.splitTimeInMs = splitTimeInMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("容差%.2fm，节点%d个：合并%d个节点（删除%d条退化路段），%d个节点打断了%d条路段（新增%d条），" +
+                        "%d个节点有歧义被跳过；吸附%dms，打断%dms",
+                snapToleranceInM, nodeCount, mergedNodeCount, removedSegmentCount, splitNodeCount, splitSegmentCount,
+                addedSegmentCount, ambiguousNodeCount, snapTimeInMs, splitTimeInMs);
+    }
+}
@@ -0,0 +1,240 @@
+package com.chronomon.analysis.trajectory.road.ch;
+
+import com.chronomon.analysis.trajectory.road.CompactRoadGraph;
+import com.chronomon.analysis.trajectory.road.IRoadSegment;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+import com.chronomon.analysis.trajectory.road.RoadNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 收缩层次结构（Contraction Hierarchies）：对路网节点排序并依次收缩，收缩时添加保持最短距离不变的捷径边
+ * <p>
+ * 1. 边表中既有原始路段，也有捷径边，捷径边记录其替代的两条子边，查询结果可以逐层展开为原始路段
+ * 2. 按照节点的收缩顺序（rank）将边分为向上边和向下边，以CSR（压缩稀疏行）的形式存储，查询时只需沿rank升高的方向搜索
+ * 3. 结构只依赖路网的节点ID和路段ID，可以保存到文件，加载时根据路段ID还原为路网中的路段对象
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class ContractionHierarchy {
+
+    /**
+     * 文件头："CH01"
+     */
+    private static final int MAGIC = 0x43483031;
+
+    /**
+     * 节点数组的长度，即路网的最大节点ID加1
+     */
+    final int nodeCount;
+
+    /**
+     * 节点的收缩顺序，越晚收缩的节点rank越大
+     */
+    final int[] rank;
+
+    final int edgeCount;
+
+    final int[] edgeFrom;
+
+    final int[] edgeTo;
+
+    final double[] edgeWeight;
+
+    /**
+     * 原始边对应的路段ID（反向路段为负数），捷径边为0
+     */
+    final int[] edgeRoadId;
+
+    /**
+     * 捷径边的两条子边，原始边为-1
+     */
+    final int[] edgeFirst;
+
+    final int[] edgeSecond;
+
+    /**
+     * 向上边：upEdges[upOffset[u], upOffset[u + 1])为从u出发、终点rank更大的边
+     */
+    final int[] upOffset;
+
+    final int[] upEdges;
+
+    /**
+     * 向下边：downEdges[downOffset[v], downOffset[v + 1])为到达v、起点rank更大的边，供反向搜索使用
+     */
+    final int[] downOffset;
+
+    final int[] downEdges;
+
+    /**
+     * 原始边对应的路段对象，捷径边为null
+     */
+    private final IRoadSegment[] edgeSegment;
+
+    ContractionHierarchy(int nodeCount, int[] rank, int edgeCount, int[] edgeFrom, int[] edgeTo,
+                         double[] edgeWeight, int[] edgeRoadId, int[] edgeFirst, int[] edgeSecond,
+                         IRoadSegment[] edgeSegment) {
+        this.nodeCount = nodeCount;
+        this.rank = rank;
+        this.edgeCount = edgeCount;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeight = edgeWeight;
+        this.edgeRoadId = edgeRoadId;
+        this.edgeFirst = edgeFirst;
+        this.edgeSecond = edgeSecond;
+        this.edgeSegment = edgeSegment;
+
+        this.upOffset = new int[nodeCount + 1];
+        this.downOffset = new int[nodeCount + 1];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            if (rank[edgeTo[edge]] > rank[edgeFrom[edge]]) {
+                upOffset[edgeFrom[edge] + 1]++;
+            } else {
+                downOffset[edgeTo[edge] + 1]++;
+            }
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            upOffset[node + 1] += upOffset[node];
+            downOffset[node + 1] += downOffset[node];
+        }
+        this.upEdges = new int[upOffset[nodeCount]];
+        this.downEdges = new int[downOffset[nodeCount]];
+        int[] upCursor = new int[nodeCount];
+        int[] downCursor = new int[nodeCount];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            int from = edgeFrom[edge];
+            int to = edgeTo[edge];
+            if (rank[to] > rank[from]) {
+                upEdges[upOffset[from] + upCursor[from]++] = edge;
+            } else {
+                downEdges[downOffset[to] + downCursor[to]++] = edge;
+            }
+        }
+    }
+
+    /**
+     * 在路网上构建收缩层次结构
+     */
+    public static ContractionHierarchy build(RoadNetwork rn) {
+        return new ContractionHierarchyBuilder(rn).build();
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return 捷径边的数量
+     */
+    public int getShortcutCount() {
+        int count = 0;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            if (edgeFirst[edge] >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 将一条边展开为原始路段，按行驶顺序追加到path中
+     */
+    void unpack(int edge, List<IRoadSegment> path) {
+        if (edgeFirst[edge] < 0) {
+            path.add(edgeSegment[edge]);
+        } else {
+            unpack(edgeFirst[edge], path);
+            unpack(edgeSecond[edge], path);
+        }
+    }
+
+    /**
+     * 保存到文件
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(nodeCount);
+            out.writeInt(edgeCount);
+            for (int node = 0; node < nodeCount; node++) {
+                out.writeInt(rank[node]);
+            }
+            for (int edge = 0; edge < edgeCount; edge++) {
+                out.writeInt(edgeFrom[edge]);
+                out.writeInt(edgeTo[edge]);
+                out.writeDouble(edgeWeight[edge]);
+                out.writeInt(edgeRoadId[edge]);
+                out.writeInt(edgeFirst[edge]);
+                out.writeInt(edgeSecond[edge]);
+            }
+        }
+    }
+
+    /**
+     * 从文件加载，并将原始边还原为路网中的路段对象
+     *
+     * @param path 文件路径
+     * @param rn   构建该结构时使用的路网（由相同的路段按相同的顺序构建）
+     * @return 收缩层次结构
+     */
+    public static ContractionHierarchy load(Path path, RoadNetwork rn) throws IOException {
+        CompactRoadGraph graph = rn.getCompactGraph();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是收缩层次结构文件：" + path);
+            }
+            int nodeCount = in.readInt();
+            if (nodeCount != rn.getMaxNodeId() + 1) {
+                throw new IllegalArgumentException("路网节点数量与收缩层次结构不一致");
+            }
+            int edgeCount = in.readInt();
+            int[] rank = new int[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                rank[node] = in.readInt();
+            }
+            int[] edgeFrom = new int[edgeCount];
+            int[] edgeTo = new int[edgeCount];
+            double[] edgeWeight = new double[edgeCount];
+            int[] edgeRoadId = new int[edgeCount];
+            int[] edgeFirst = new int[edgeCount];
+            int[] edgeSecond = new int[edgeCount];
+            IRoadSegment[] edgeSegment = new IRoadSegment[edgeCount];
+            for (int edge = 0; edge < edgeCount; edge++) {
+                edgeFrom[edge] = in.readInt();
+                edgeTo[edge] = in.readInt();
+                edgeWeight[edge] = in.readDouble();
+                edgeRoadId[edge] = in.readInt();
+                edgeFirst[edge] = in.readInt();
+                edgeSecond[edge] = in.readInt();
+                if (edgeFirst[edge] < 0) {
+                    int graphEdge = graph.getEdgeByRoadId(edgeRoadId[edge]);
+                    IRoadSegment segment = graphEdge < 0 ? null : graph.getSegment(graphEdge);
+                    if (segment == null
+                            || segment.getFromNode().nodeId != edgeFrom[edge]
+                            || segment.getToNode().nodeId != edgeTo[edge]) {
+                        throw new IllegalArgumentException("路段" + edgeRoadId[edge] + "与收缩层次结构不一致");
+                    }
+                    edgeSegment[edge] = segment;
+                }
+            }
+            return new ContractionHierarchy(nodeCount, rank, edgeCount, edgeFrom, edgeTo, edgeWeight,
+                    edgeRoadId, edgeFirst, edgeSecond, edgeSegment);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.chronomon.analysis.trajectory.road.ch;
+
+import com.chronomon.analysis.trajectory.road.CompactRoadGraph;
+import com.chronomon.analysis.trajectory.road.IRoadSegment;
+import com.chronomon.analysis.trajectory.road.RoadNetwork;
+
+import java.util.Arrays;
+
+/**
+ * 收缩层次结构的构建器
+ * <p>
+ * 1. 节点优先级为两倍的边差（收缩后新增的捷径数减去删除的边数）加上已收缩的邻居数和节点深度，
+ * 每次收缩优先级最小的节点，出堆时重新计算优先级（lazy update），收缩后更新邻居的优先级
+ * 2. 收缩节点v时，对每个前驱x执行不经过v的见证搜索（witness search），x经由v到后继y的路径比见证路径更短时才添加捷径x->y
+ * 3. 见证搜索限制了出堆节点数量，搜索不完整只会多添加捷径，不会影响查询结果的正确性
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+final class ContractionHierarchyBuilder {
+
+    /**
+     * 模拟收缩（计算优先级）时见证搜索最多确定的节点数量
+     */
+    private static final int SIMULATE_SETTLED_LIMIT = 50;
+
+    /**
+     * 真正收缩时见证搜索最多确定的节点数量
+     */
+    private static final int CONTRACT_SETTLED_LIMIT = 500;
+
+    private final RoadNetwork rn;
+
+    private int nodeCount;
+
+    private int edgeCount = 0;
+
+    private int[] edgeFrom = new int[1024];
+
+    private int[] edgeTo = new int[1024];
+
+    private double[] edgeWeight = new double[1024];
+
+    private int[] edgeRoadId = new int[1024];
+
+    private int[] edgeFirst = new int[1024];
+
+    private int[] edgeSecond = new int[1024];
+
+    private IRoadSegment[] edgeSegment = new IRoadSegment[1024];
+
+    /**
+     * 每个节点的出边和入边，收缩过程中逐步剔除与已收缩节点相连的边
+     */
+    private IntList[] outEdges;
+
+    private IntList[] inEdges;
+
+    private boolean[] contracted;
+
+    private int[] contractedNeighbors;
+
+    /**
+     * 节点在层次结构中的深度：收缩节点后，邻居的深度至少比它大1
+     */
+    private int[] level;
+
+    /**
+     * 见证搜索的距离标签，版本号不一致视为未访问
+     */
+    private int[] witnessVersion;
+
+    private double[] witnessDistance;
+
+    private NodeHeap witnessHeap;
+
+    private int witnessStamp = 0;
+
+    /**
+     * 收缩节点时按邻居节点分组，同一邻居只保留权重最小的边
+     */
+    private int[] groupVersion;
+
+    private int[] groupEdge;
+
+    private int groupStamp = 0;
+
+    private final IntList inGroup = new IntList();
+
+    private final IntList outGroup = new IntList();
+
+    private final IntList neighbors = new IntList();
+
+    ContractionHierarchyBuilder(RoadNetwork rn) {
+        this.rn = rn;
+    }
+
+    ContractionHierarchy build() {
+        CompactRoadGraph graph = rn.getCompactGraph();
+        nodeCount = graph.getNodeCount();
+        outEdges = new IntList[nodeCount];
+        inEdges = new IntList[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            outEdges[node] = new IntList();
+            inEdges[node] = new IntList();
+        }
+        contracted = new boolean[nodeCount];
+        contractedNeighbors = new int[nodeCount];
+        level = new int[nodeCount];
+        witnessVersion = new int[nodeCount];
+        witnessDistance = new double[nodeCount];
+        witnessHeap = new NodeHeap(nodeCount);
+        groupVersion = new int[nodeCount];
+        groupEdge = new int[nodeCount];
+
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            int from = graph.getSource(edge);
+            int to = graph.getTarget(edge);
+            if (from != to) {
+                // 自环不会出现在最短路径上
+                IRoadSegment segment = graph.getSegment(edge);
+                addEdge(from, to, graph.getWeight(edge), segment.getRoadId(), -1, -1, segment);
+            }
+        }
+
+        NodeHeap priorityHeap = new NodeHeap(nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            priorityHeap.update(node, priority(node));
+        }
+
+        int[] rank = new int[nodeCount];
+        int order = 0;
+        while (!priorityHeap.isEmpty()) {
+            int node = priorityHeap.poll();
+            double nodePriority = priority(node);
+            if (!priorityHeap.isEmpty() && nodePriority > priorityHeap.peekKey()) {
+                // 优先级已经变化，重新入堆
+                priorityHeap.update(node, nodePriority);
+                continue;
+            }
+
+            contract(node, true);
+            contracted[node] = true;
+            rank[node] = order++;
+
+            // 更新邻居节点：剔除与已收缩节点相连的边，并重新计算优先级
+            neighbors.size = 0;
+            groupStamp++;
+            for (int i = 0; i < inGroup.size; i++) {
+                addNeighbor(edgeFrom[inGroup.data[i]]);
+            }
+            for (int i = 0; i < outGroup.size; i++) {
+                addNeighbor(edgeTo[outGroup.data[i]]);
+            }
+            for (int i = 0; i < neighbors.size; i++) {
+                updateNeighbor(node, neighbors.data[i], priorityHeap);
+            }
+        }
+
+        return new ContractionHierarchy(nodeCount, rank, edgeCount,
+                Arrays.copyOf(edgeFrom, edgeCount), Arrays.copyOf(edgeTo, edgeCount),
+                Arrays.copyOf(edgeWeight, edgeCount), Arrays.copyOf(edgeRoadId, edgeCount),
+                Arrays.copyOf(edgeFirst, edgeCount), Arrays.copyOf(edgeSecond, edgeCount),
+                Arrays.copyOf(edgeSegment, edgeCount));
+    }
+
+    private void addNeighbor(int neighbor) {
+        if (groupVersion[neighbor] != groupStamp) {
+            groupVersion[neighbor] = groupStamp;
+            neighbors.add(neighbor);
+        }
+    }
+
+    private void updateNeighbor(int node, int neighbor, NodeHeap priorityHeap) {
+        if (contracted[neighbor] || !priorityHeap.contains(neighbor)) {
+            return;
+        }
+        contractedNeighbors[neighbor]++;
+        level[neighbor] = Math.max(level[neighbor], level[node] + 1);
+        removeContracted(outEdges[neighbor], edgeTo);
+        removeContracted(inEdges[neighbor], edgeFrom);
+        priorityHeap.update(neighbor, priority(neighbor));
+    }
+
+    private void removeContracted(IntList edges, int[] endpoint) {
+        int size = 0;
+        for (int i = 0; i < edges.size; i++) {
+            int edge = edges.data[i];
+            if (!contracted[endpoint[edge]]) {
+                edges.data[size++] = edge;
+            }
+        }
+        edges.size = size;
+    }
+
+    private double priority(int node) {
+        int shortcutCount = contract(node, false);
+        int removedCount = inGroup.size + outGroup.size;
+        return 2 * (shortcutCount - removedCount) + contractedNeighbors[node] + level[node];
+    }
+
+    /**
+     * 收缩节点，或者模拟收缩以计算需要添加的捷径数量
+     *
+     * @param node     待收缩节点
+     * @param shortcut 是否真正添加捷径
+     * @return 需要添加的捷径数量
+     */
+    private int contract(int node, boolean shortcut) {
+        group(inEdges[node], edgeFrom, node, inGroup);
+        group(outEdges[node], edgeTo, node, outGroup);
+
+        int shortcutCount = 0;
+        for (int i = 0; i < inGroup.size; i++) {
+            int inEdge = inGroup.data[i];
+            int from = edgeFrom[inEdge];
+            double maxCost = -1.0;
+            for (int j = 0; j < outGroup.size; j++) {
+                int outEdge = outGroup.data[j];
+                if (edgeTo[outEdge] != from) {
+                    maxCost = Math.max(maxCost, edgeWeight[inEdge] + edgeWeight[outEdge]);
+                }
+            }
+            if (maxCost < 0.0) {
+                // 所有后继都是前驱本身
+                continue;
+            }
+
+            witnessSearch(from, node, maxCost, shortcut ? CONTRACT_SETTLED_LIMIT : SIMULATE_SETTLED_LIMIT);
+            for (int j = 0; j < outGroup.size; j++) {
+                int outEdge = outGroup.data[j];
+                int to = edgeTo[outEdge];
+                if (to == from) {
+                    continue;
+                }
+                double viaDistance = edgeWeight[inEdge] + edgeWeight[outEdge];
+                double witness = witnessVersion[to] == witnessStamp ? witnessDistance[to] : Double.POSITIVE_INFINITY;
+                if (witness > viaDistance) {
+                    shortcutCount++;
+                    if (shortcut) {
+                        addEdge(from, to, viaDistance, 0, inEdge, outEdge, null);
+                    }
+                }
+            }
+        }
+        return shortcutCount;
+    }
+
+    /**
+     * 按邻居节点对边分组，同一邻居只保留权重最小的边
+     */
+    private void group(IntList edges, int[] endpoint, int node, IntList output) {
+        groupStamp++;
+        output.size = 0;
+        for (int i = 0; i < edges.size; i++) {
+            int edge = edges.data[i];
+            int neighbor = endpoint[edge];
+            if (neighbor == node || contracted[neighbor]) {
+                continue;
+            }
+            if (groupVersion[neighbor] != groupStamp) {
+                groupVersion[neighbor] = groupStamp;
+                groupEdge[neighbor] = output.size;
+                output.add(edge);
+            } else if (edgeWeight[edge] < edgeWeight[output.data[groupEdge[neighbor]]]) {
+                output.data[groupEdge[neighbor]] = edge;
+            }
+        }
+    }
+
+    /**
+     * 从source出发、不经过excluded的有限Dijkstra搜索
+     */
+    private void witnessSearch(int source, int excluded, double maxCost, int settledLimit) {
+        witnessStamp++;
+        witnessHeap.clear();
+        witnessVersion[source] = witnessStamp;
+        witnessDistance[source] = 0.0;
+        witnessHeap.update(source, 0.0);
+        int settledCount = 0;
+        while (!witnessHeap.isEmpty() && settledCount < settledLimit) {
+            if (witnessHeap.peekKey() > maxCost) {
+                break;
+            }
+            int node = witnessHeap.poll();
+            settledCount++;
+            IntList edges = outEdges[node];
+            for (int i = 0; i < edges.size; i++) {
+                int edge = edges.data[i];
+                int to = edgeTo[edge];
+                if (to == excluded || contracted[to]) {
+                    continue;
+                }
+                double distance = witnessDistance[node] + edgeWeight[edge];
+                if (witnessVersion[to] != witnessStamp) {
+                    witnessVersion[to] = witnessStamp;
+                    witnessDistance[to] = distance;
+                    witnessHeap.update(to, distance);
+                } else if (distance < witnessDistance[to] && witnessHeap.contains(to)) {
+                    witnessDistance[to] = distance;
+                    witnessHeap.update(to, distance);
+                }
+            }
+        }
+    }
+
+    private void addEdge(int from, int to, double weight, int roadId, int first, int second, IRoadSegment segment) {
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+            edgeRoadId = Arrays.copyOf(edgeRoadId, capacity);
+            edgeFirst = Arrays.copyOf(edgeFirst, capacity);
+            edgeSecond = Arrays.copyOf(edgeSecond, capacity);
+            edgeSegment = Arrays.copyOf(edgeSegment, capacity);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        edgeWeight[edgeCount] = weight;
+        edgeRoadId[edgeCount] = roadId;
+        edgeFirst[edgeCount] = first;
+        edgeSecond[edgeCount] = second;
+        edgeSegment[edgeCount] = segment;
+        outEdges[from].add(edgeCount);
+        inEdges[to].add(edgeCount);
+        edgeCount++;
+    }
+
+    /**
+     * 可增长的int数组
+     */
+    private static final class IntList {
+        private int[] data = new int[4];
+
+        private int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.chronomon.analysis.trajectory.road.ch;
+
+import com.chronomon.analysis.trajectory.road.IRoadSegment;
+import com.chronomon.analysis.trajectory.road.RoadNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基于收缩层次结构的多对多最短路径查询（bucket-based many-to-many）
+ * <p>
+ * 1. {@link #setTargets}：从每个终点出发沿向下边反向搜索，搜索空间中的每个节点都记录一个桶条目（终点、到终点的距离）
+ * 2. {@link #search}：从起点出发沿向上边正向搜索，确定每个节点的距离后扫描该节点的桶，更新到各终点的最短距离
+ * 3. 一组终点可以对应多个起点，反向搜索的结果在多次正向搜索之间复用
+ * 4. 与{@link com.chronomon.analysis.trajectory.mapmatch.transfer.RoutingContext}一样使用版本号重置标签，
+ * 该类不是线程安全的，每个线程应持有独立的实例
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+public final class ContractionHierarchyQuery {
+
+    private final ContractionHierarchy ch;
+
+    private final NodeHeap heap;
+
+    /**
+     * 终点：终点节点ID到终点序号的映射
+     */
+    private final int[] targetVersion;
+
+    private final int[] targetIndex;
+
+    private int targetCount = 0;
+
+    /**
+     * 桶：每个节点的条目链表头，版本号为bucketStamp时有效
+     */
+    private final int[] bucketVersion;
+
+    private final int[] bucketHead;
+
+    private int bucketStamp = 0;
+
+    private int entryCount = 0;
+
+    private int[] entryNext = new int[256];
+
+    private int[] entryTarget = new int[256];
+
+    private double[] entryDistance = new double[256];
+
+    /**
+     * 条目所在节点到终点方向的第一条边，终点本身为-1
+     */
+    private int[] entryEdge = new int[256];
+
+    /**
+     * 沿entryEdge到达的下一个节点对应的条目
+     */
+    private int[] entryParent = new int[256];
+
+    /**
+     * 反向搜索的标签
+     */
+    private final int[] backwardVersion;
+
+    private final double[] backwardDistance;
+
+    private final int[] backwardEdge;
+
+    private final int[] backwardParent;
+
+    private int backwardStamp = 0;
+
+    /**
+     * 正向搜索的标签
+     */
+    private final int[] forwardVersion;
+
+    private final double[] forwardDistance;
+
+    private final int[] forwardEdge;
+
+    private int forwardStamp = 0;
+
+    /**
+     * 上一次正向搜索到每个终点的最短距离，以及正反搜索的交汇节点和条目
+     */
+    private double[] bestDistance = new double[16];
+
+    private int[] meetNode = new int[16];
+
+    private int[] meetEntry = new int[16];
+
+    private int[] pathEdges = new int[64];
+
+    private long settledCount = 0L;
+
+    public ContractionHierarchyQuery(ContractionHierarchy ch) {
+        this.ch = ch;
+        int nodeCount = ch.nodeCount;
+        this.heap = new NodeHeap(nodeCount);
+        this.targetVersion = new int[nodeCount];
+        this.targetIndex = new int[nodeCount];
+        this.bucketVersion = new int[nodeCount];
+        this.bucketHead = new int[nodeCount];
+        this.backwardVersion = new int[nodeCount];
+        this.backwardDistance = new double[nodeCount];
+        this.backwardEdge = new int[nodeCount];
+        this.backwardParent = new int[nodeCount];
+        this.forwardVersion = new int[nodeCount];
+        this.forwardDistance = new double[nodeCount];
+        this.forwardEdge = new int[nodeCount];
+    }
+
+    /**
+     * 设置终点，并为每个终点执行反向搜索
+     *
+     * @param targets 终点集合
+     * @param maxCost 代价上限（米），反向搜索不会确定距离超过上限的节点
+     */
+    public void setTargets(Collection<RoadNode> targets, double maxCost) {
+        bucketStamp = nextStamp(bucketStamp, targetVersion, bucketVersion);
+        entryCount = 0;
+        targetCount = 0;
+        for (RoadNode target : targets) {
+            int nodeId = target.nodeId;
+            if (targetVersion[nodeId] == bucketStamp) {
+                continue;
+            }
+            targetVersion[nodeId] = bucketStamp;
+            targetIndex[nodeId] = targetCount;
+            backwardSearch(nodeId, targetCount, maxCost);
+            targetCount++;
+        }
+        if (bestDistance.length < targetCount) {
+            bestDistance = new double[targetCount];
+            meetNode = new int[targetCount];
+            meetEntry = new int[targetCount];
+        }
+    }
+
+    /**
+     * 从起点出发正向搜索，计算到所有终点的最短距离
+     *
+     * @param source  起点
+     * @param maxCost 代价上限（米），长度超过上限的路径视为不存在
+     */
+    public void search(RoadNode source, double maxCost) {
+        forwardStamp = nextStamp(forwardStamp, forwardVersion);
+        Arrays.fill(bestDistance, 0, targetCount, Double.POSITIVE_INFINITY);
+        int unresolved = targetCount;
+        double maxBestDistance = Double.POSITIVE_INFINITY;
+
+        heap.clear();
+        int sourceId = source.nodeId;
+        forwardVersion[sourceId] = forwardStamp;
+        forwardDistance[sourceId] = 0.0;
+        forwardEdge[sourceId] = -1;
+        heap.update(sourceId, 0.0);
+        while (!heap.isEmpty()) {
+            double top = heap.peekKey();
+            if (top > maxCost || (unresolved == 0 && top >= maxBestDistance)) {
+                // 后续节点经过的路径都不会更短
+                break;
+            }
+            int node = heap.poll();
+            settledCount++;
+            double nodeDistance = forwardDistance[node];
+
+            if (bucketVersion[node] == bucketStamp) {
+                boolean improved = false;
+                for (int entry = bucketHead[node]; entry >= 0; entry = entryNext[entry]) {
+                    int target = entryTarget[entry];
+                    double distance = nodeDistance + entryDistance[entry];
+                    if (distance <= maxCost && distance < bestDistance[target]) {
+                        if (bestDistance[target] == Double.POSITIVE_INFINITY) {
+                            unresolved--;
+                        }
+                        bestDistance[target] = distance;
+                        meetNode[target] = node;
+                        meetEntry[target] = entry;
+                        improved = true;
+                    }
+                }
+                if (improved && unresolved == 0) {
+                    maxBestDistance = 0.0;
+                    for (int target = 0; target < targetCount; target++) {
+                        maxBestDistance = Math.max(maxBestDistance, bestDistance[target]);
+                    }
+                }
+            }
+
+            for (int i = ch.upOffset[node]; i < ch.upOffset[node + 1]; i++) {
+                int edge = ch.upEdges[i];
+                int to = ch.edgeTo[edge];
+                double toDistance = nodeDistance + ch.edgeWeight[edge];
+                if (forwardVersion[to] != forwardStamp) {
+                    forwardVersion[to] = forwardStamp;
+                    forwardDistance[to] = toDistance;
+                    forwardEdge[to] = edge;
+                    heap.update(to, toDistance);
+                } else if (toDistance < forwardDistance[to] && heap.contains(to)) {
+                    forwardDistance[to] = toDistance;
+                    forwardEdge[to] = edge;
+                    heap.update(to, toDistance);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 上一次搜索中起点到终点的最短距离，不可达或不是终点时返回正无穷
+     */
+    public double getDistance(RoadNode target) {
+        int nodeId = target.nodeId;
+        if (targetVersion[nodeId] != bucketStamp) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return bestDistance[targetIndex[nodeId]];
+    }
+
+    /**
+     * @return 上一次搜索中起点到终点的最短路径途经的原始路段，不可达时返回null
+     */
+    public List<IRoadSegment> getPath(RoadNode target) {
+        if (getDistance(target) == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        int index = targetIndex[target.nodeId];
+        List<IRoadSegment> path = new ArrayList<>();
+
+        // 正向部分：从交汇节点回溯到起点，再按行驶顺序展开
+        int edgeCount = 0;
+        for (int edge = forwardEdge[meetNode[index]]; edge >= 0; edge = forwardEdge[ch.edgeFrom[edge]]) {
+            if (edgeCount == pathEdges.length) {
+                pathEdges = Arrays.copyOf(pathEdges, edgeCount * 2);
+            }
+            pathEdges[edgeCount++] = edge;
+        }
+        for (int i = edgeCount - 1; i >= 0; i--) {
+            ch.unpack(pathEdges[i], path);
+        }
+
+        // 反向部分：沿桶条目从交汇节点走到终点
+        for (int entry = meetEntry[index]; entryEdge[entry] >= 0; entry = entryParent[entry]) {
+            ch.unpack(entryEdge[entry], path);
+        }
+        return path;
+    }
+
+    /**
+     * @return 累计确定距离的节点数量（正向与反向搜索之和）
+     */
+    public long getSettledCount() {
+        return settledCount;
+    }
+
+    private void backwardSearch(int targetId, int target, double maxCost) {
+        backwardStamp = nextStamp(backwardStamp, backwardVersion);
+        heap.clear();
+        backwardVersion[targetId] = backwardStamp;
+        backwardDistance[targetId] = 0.0;
+        backwardEdge[targetId] = -1;
+        backwardParent[targetId] = -1;
+        heap.update(targetId, 0.0);
+        while (!heap.isEmpty() && heap.peekKey() <= maxCost) {
+            int node = heap.poll();
+            settledCount++;
+            double nodeDistance = backwardDistance[node];
+            int entry = addEntry(node, target, nodeDistance, backwardEdge[node], backwardParent[node]);
+
+            for (int i = ch.downOffset[node]; i < ch.downOffset[node + 1]; i++) {
+                int edge = ch.downEdges[i];
+                int from = ch.edgeFrom[edge];
+                double fromDistance = nodeDistance + ch.edgeWeight[edge];
+                if (backwardVersion[from] != backwardStamp) {
+                    backwardVersion[from] = backwardStamp;
+                    backwardDistance[from] = fromDistance;
+                    backwardEdge[from] = edge;
+                    backwardParent[from] = entry;
+                    heap.update(from, fromDistance);
+                } else if (fromDistance < backwardDistance[from] && heap.contains(from)) {
+                    backwardDistance[from] = fromDistance;
+                    backwardEdge[from] = edge;
+                    backwardParent[from] = entry;
+                    heap.update(from, fromDistance);
+                }
+            }
+        }
+    }
+
+    private int addEntry(int node, int target, double distance, int edge, int parent) {
+        if (entryCount == entryNext.length) {
+            int capacity = entryCount * 2;
+            entryNext = Arrays.copyOf(entryNext, capacity);
+            entryTarget = Arrays.copyOf(entryTarget, capacity);
+            entryDistance = Arrays.copyOf(entryDistance, capacity);
+            entryEdge = Arrays.copyOf(entryEdge, capacity);
+            entryParent = Arrays.copyOf(entryParent, capacity);
+        }
+        if (bucketVersion[node] != bucketStamp) {
+            bucketVersion[node] = bucketStamp;
+            bucketHead[node] = -1;
+        }
+        int entry = entryCount++;
+        entryNext[entry] = bucketHead[node];
+        entryTarget[entry] = target;
+        entryDistance[entry] = distance;
+        entryEdge[entry] = edge;
+        entryParent[entry] = parent;
+        bucketHead[node] = entry;
+        return entry;
+    }
+
+    private static int nextStamp(int stamp, int[]... versions) {
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            // 版本号用尽时才真正清空数组
+            for (int[] version : versions) {
+                Arrays.fill(version, 0);
+            }
+            stamp = 1;
+        }
+        return stamp;
+    }
+}
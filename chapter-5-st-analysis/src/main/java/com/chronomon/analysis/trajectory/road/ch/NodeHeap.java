@@ -0,0 +1,127 @@
+package com.chronomon.analysis.trajectory.road.ch;
+
+import java.util.Arrays;
+
+/**
+ * 以节点ID为元素的二叉最小堆，支持修改堆中节点的键值
+ *
+ * @author wangrubin
+ * @date 2026-10-19
+ */
+final class NodeHeap {
+
+    private final int[] heap;
+
+    /**
+     * 节点在堆中的位置，-1表示不在堆中
+     */
+    private final int[] position;
+
+    private final double[] key;
+
+    private int size = 0;
+
+    NodeHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.position = new int[capacity];
+        this.key = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int node) {
+        return position[node] >= 0;
+    }
+
+    double peekKey() {
+        return key[heap[0]];
+    }
+
+    int peek() {
+        return heap[0];
+    }
+
+    /**
+     * 插入节点，节点已在堆中时修改其键值
+     */
+    void update(int node, double nodeKey) {
+        if (position[node] < 0) {
+            key[node] = nodeKey;
+            heap[size] = node;
+            position[node] = size;
+            siftUp(size++);
+        } else {
+            double oldKey = key[node];
+            key[node] = nodeKey;
+            if (nodeKey < oldKey) {
+                siftUp(position[node]);
+            } else {
+                siftDown(position[node]);
+            }
+        }
+    }
+
+    int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        int last = heap[--size];
+        if (size > 0) {
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * 清空堆，代价与堆中剩余的节点数量成正比
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int pos) {
+        int node = heap[pos];
+        double nodeKey = key[node];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int parentNode = heap[parent];
+            if (key[parentNode] <= nodeKey) {
+                break;
+            }
+            heap[pos] = parentNode;
+            position[parentNode] = pos;
+            pos = parent;
+        }
+        heap[pos] = node;
+        position[node] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int node = heap[pos];
+        double nodeKey = key[node];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && key[heap[right]] < key[heap[child]]) {
+                child = right;
+            }
+            int childNode = heap[child];
+            if (nodeKey <= key[childNode]) {
+                break;
+            }
+            heap[pos] = childNode;
+            position[childNode] = pos;
+            pos = child;
+        }
+        heap[pos] = node;
+        position[node] = pos;
+    }
+}
@@ -1,6 +1,7 @@
 package com.chronomon.analysis.trajectory.segment;
 
 import com.chronomon.analysis.trajectory.filter.TrajNoiseFilter;
+import com.chronomon.analysis.trajectory.model.ColumnarTrajectory;
 import com.chronomon.analysis.trajectory.model.GpsPoint;
 import com.chronomon.analysis.trajectory.model.Trajectory;
 import com.chronomon.analysis.trajectory.staypoint.TrajStayPointDetector;
@@ -20,24 +21,44 @@ public class TrajSegmenter {
                 sliceTrajectory(trajectory);
     }
 
+    public static List<ColumnarTrajectory> sliceByStayPoint(ColumnarTrajectory trajectory,
+                                                            double maxStayDistInMeter,
+                                                            long minStayTimeInSecond) {
+        return new TrajStayPointDetector(maxStayDistInMeter, minStayTimeInSecond).
+                sliceTrajectory(trajectory);
+    }
+
     public static List<Trajectory> sliceByTimeInterval(Trajectory trajectory,
                                                        long maxTimeIntervalInSecond) {
-
+        // 在列式轨迹上切分，再根据视图的下标范围截取原始的GPS点序列
         List<GpsPoint> gpsPointList = trajectory.getSortedGpsList();
         List<Trajectory> subTrajectoryList = new ArrayList<>();
+        for (ColumnarTrajectory sub : sliceByTimeInterval(ColumnarTrajectory.fromTrajectory(trajectory), maxTimeIntervalInSecond)) {
+            List<GpsPoint> subGpsPointList = gpsPointList.subList(sub.getOffset(), sub.getOffset() + sub.getNumPoints());
+            subTrajectoryList.add(new Trajectory(trajectory.getOid(), subGpsPointList, true));
+        }
+        return subTrajectoryList;
+    }
+
+    /**
+     * 按照时间间隔切分列式轨迹，子轨迹都是原始轨迹的视图
+     */
+    public static List<ColumnarTrajectory> sliceByTimeInterval(ColumnarTrajectory trajectory,
+                                                               long maxTimeIntervalInSecond) {
+        int numPoints = trajectory.getNumPoints();
+        List<ColumnarTrajectory> subTrajectoryList = new ArrayList<>();
         int startIndex = 0;
-        for (int currIndex = 1; currIndex < gpsPointList.size(); currIndex++) {
-            long timeInterval = gpsPointList.get(currIndex - 1).timeIntervalInSec(gpsPointList.get(currIndex));
+        for (int currIndex = 1; currIndex < numPoints; currIndex++) {
+            long timeInterval = trajectory.timeIntervalInSec(currIndex - 1, currIndex);
             if (timeInterval > maxTimeIntervalInSecond && startIndex < currIndex - 1) {
-                List<GpsPoint> subGpsPointList = gpsPointList.subList(startIndex, currIndex);
-                subTrajectoryList.add(new Trajectory(trajectory.getOid(), subGpsPointList, true));
+                subTrajectoryList.add(trajectory.subTrajectory(startIndex, currIndex));
                 startIndex = currIndex;
             }
         }
 
-        if (startIndex < gpsPointList.size() - 1) {
+        if (startIndex < numPoints - 1) {
             // 末尾的子轨迹
-            subTrajectoryList.add(new Trajectory(trajectory.getOid(), gpsPointList.subList(startIndex, gpsPointList.size())));
+            subTrajectoryList.add(trajectory.subTrajectory(startIndex, numPoints));
         }
         return subTrajectoryList;
     }
@@ -1,9 +1,11 @@
 package com.chronomon.analysis.trajectory.staypoint;
 
 import com.chronomon.analysis.trajectory.filter.TrajNoiseFilter;
-import com.chronomon.analysis.trajectory.model.DistanceUtil;
+import com.chronomon.analysis.trajectory.model.ColumnarTrajectory;
+import com.chronomon.analysis.trajectory.model.DistanceKernel;
 import com.chronomon.analysis.trajectory.model.GpsPoint;
 import com.chronomon.analysis.trajectory.model.Trajectory;
+import org.locationtech.jts.geom.Point;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,7 +21,7 @@ public class TrajStayPointDetector {
 
     public List<StayPoint> detectStayPoint(Trajectory trajectory) {
         List<GpsPoint> gpsPointList = trajectory.getSortedGpsList();
-        List<StayPointMark> stayPointMarks = this.calStayPointMarks(gpsPointList);
+        List<StayPointMark> stayPointMarks = this.calStayPointMarks(ColumnarTrajectory.fromTrajectory(trajectory));
 
         List<StayPoint> stayPointList = new ArrayList<>(stayPointMarks.size());
         for (StayPointMark mark : stayPointMarks) {
@@ -30,39 +32,63 @@ public class TrajStayPointDetector {
         return stayPointList;
     }
 
+    /**
+     * 在列式轨迹上检测驻留点
+     *
+     * @return 每个驻留点包含的GPS点，以原始轨迹视图的形式返回
+     */
+    public List<ColumnarTrajectory> detectStayPoint(ColumnarTrajectory trajectory) {
+        List<StayPointMark> stayPointMarks = this.calStayPointMarks(trajectory);
+
+        List<ColumnarTrajectory> stayPointList = new ArrayList<>(stayPointMarks.size());
+        for (StayPointMark mark : stayPointMarks) {
+            stayPointList.add(trajectory.subTrajectory(mark.startIndex, mark.endIndex));
+        }
+        return stayPointList;
+    }
+
     public List<Trajectory> sliceTrajectory(Trajectory trajectory) {
         List<GpsPoint> gpsPointList = trajectory.getSortedGpsList();
-        List<StayPointMark> stayPointMarks = this.calStayPointMarks(gpsPointList);
+        List<Trajectory> subTrajectories = new ArrayList<>();
+        for (ColumnarTrajectory sub : sliceTrajectory(ColumnarTrajectory.fromTrajectory(trajectory))) {
+            List<GpsPoint> subGpsList = gpsPointList.subList(sub.getOffset(), sub.getOffset() + sub.getNumPoints());
+            subTrajectories.add(new Trajectory(trajectory.getOid(), subGpsList, true));
+        }
+        return subTrajectories;
+    }
+
+    /**
+     * 以驻留点为界切分列式轨迹，子轨迹都是原始轨迹的视图
+     */
+    public List<ColumnarTrajectory> sliceTrajectory(ColumnarTrajectory trajectory) {
+        List<StayPointMark> stayPointMarks = this.calStayPointMarks(trajectory);
 
         int trajStartIndex = 0;
-        List<Trajectory> subTrajectories = new ArrayList<>();
+        List<ColumnarTrajectory> subTrajectories = new ArrayList<>();
         for (StayPointMark mark : stayPointMarks) {
             if (trajStartIndex < mark.startIndex) {
                 //当GPS点数量小于2，不能构成一个轨迹，直接丢弃
-                List<GpsPoint> subGpsList = gpsPointList.subList(trajStartIndex, mark.startIndex + 1); // 轨迹中包含驻留点的第一个GPS点
-                subTrajectories.add(new Trajectory(trajectory.getOid(), subGpsList, true));
+                subTrajectories.add(trajectory.subTrajectory(trajStartIndex, mark.startIndex + 1)); // 轨迹中包含驻留点的第一个GPS点
             }
             trajStartIndex = mark.endIndex - 1; // 轨迹包含驻留点的最后一个GPS点
         }
 
-        if (trajStartIndex < gpsPointList.size() - 1) {
+        if (trajStartIndex < trajectory.getNumPoints() - 1) {
             // 最后一段子轨迹不要忘记
-            subTrajectories.add(new Trajectory(trajectory.getOid(), gpsPointList.subList(trajStartIndex, gpsPointList.size())));
+            subTrajectories.add(trajectory.subTrajectory(trajStartIndex, trajectory.getNumPoints()));
         }
 
         return subTrajectories;
     }
 
-    private List<StayPointMark> calStayPointMarks(List<GpsPoint> gpsPointList) {
+    private List<StayPointMark> calStayPointMarks(ColumnarTrajectory trajectory) {
         List<StayPointMark> stayPointMarks = new ArrayList<>();
 
         int currIndex = 0;
-        while (currIndex < gpsPointList.size()) {
-            int endIndex = getFirstExceedIndex(gpsPointList, currIndex);
+        while (currIndex < trajectory.getNumPoints()) {
+            int endIndex = getFirstExceedIndex(trajectory, currIndex);
 
-            GpsPoint anchorPoint = gpsPointList.get(currIndex);
-            GpsPoint lastPoint = gpsPointList.get(endIndex - 1);
-            boolean isExceedTime = isExceedMinTimeThreshold(anchorPoint, lastPoint);
+            boolean isExceedTime = trajectory.getTime(currIndex) + minStayTimeInSecond * 1000 < trajectory.getTime(endIndex - 1);
             if (isExceedTime) {
                 stayPointMarks.add(new StayPointMark(currIndex, endIndex));
                 currIndex = endIndex;
@@ -74,6 +100,20 @@ public class TrajStayPointDetector {
         return stayPointMarks;
     }
 
+    public int getFirstExceedIndex(ColumnarTrajectory trajectory, int anchorIndex) {
+        double anchorLng = trajectory.getLng(anchorIndex);
+        double anchorLat = trajectory.getLat(anchorIndex);
+        int currIndex = anchorIndex + 1;
+        while (currIndex < trajectory.getNumPoints()) {
+            double distance = DistanceKernel.fastDistInMeter(anchorLng, anchorLat, trajectory.getLng(currIndex), trajectory.getLat(currIndex));
+            if (distance > maxStayDistInMeter) {
+                return currIndex;
+            }
+            currIndex++;
+        }
+        return currIndex;
+    }
+
     public int getFirstExceedIndex(List<GpsPoint> gpsPointList, int anchorIndex) {
 
         GpsPoint anchor = gpsPointList.get(anchorIndex);
@@ -92,7 +132,9 @@ public class TrajStayPointDetector {
     }
 
     public boolean isExceedMaxDistThreshold(GpsPoint from, GpsPoint to) {
-        return DistanceUtil.distInMeter(from.getGeom(), to.getGeom()) > maxStayDistInMeter;
+        Point fromGeom = from.getGeom();
+        Point toGeom = to.getGeom();
+        return DistanceKernel.fastDistInMeter(fromGeom.getX(), fromGeom.getY(), toGeom.getX(), toGeom.getY()) > maxStayDistInMeter;
     }
 
     private static class StayPointMark {